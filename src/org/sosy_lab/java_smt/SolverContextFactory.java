@@ -21,14 +21,20 @@ package org.sosy_lab.java_smt;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.lang.reflect.Constructor;
 import java.net.URLClassLoader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import org.sosy_lab.common.Classes;
 import org.sosy_lab.common.Classes.ClassLoaderBuilder;
+import org.sosy_lab.common.ShutdownManager;
 import org.sosy_lab.common.ShutdownNotifier;
 import org.sosy_lab.common.configuration.Configuration;
 import org.sosy_lab.common.configuration.FileOption;
@@ -41,6 +47,9 @@ import org.sosy_lab.common.log.LogManager;
 import org.sosy_lab.java_smt.api.FloatingPointRoundingMode;
 import org.sosy_lab.java_smt.api.SolverContext;
 import org.sosy_lab.java_smt.logging.LoggingSolverContext;
+import org.sosy_lab.java_smt.pooling.PoolingSolverContext;
+import org.sosy_lab.java_smt.portfolio.PortfolioSolverContext;
+import org.sosy_lab.java_smt.remote.RemoteSolverContext;
 import org.sosy_lab.java_smt.solvers.mathsat5.Mathsat5SolverContext;
 import org.sosy_lab.java_smt.solvers.princess.PrincessSolverContext;
 import org.sosy_lab.java_smt.solvers.smtinterpol.SmtInterpolSolverContext;
@@ -78,6 +87,40 @@ public class SolverContextFactory {
   @Option(secure = true, description = "Log solver actions, this may be slow!")
   private boolean useLogger = false;
 
+  @Option(
+    secure = true,
+    description =
+        "Keep closed prover environments and reuse them for later requests with the same options"
+            + " instead of creating new solver instances."
+  )
+  private boolean reuseProvers = false;
+
+  @Option(
+    secure = true,
+    description =
+        "Maximum number of unused prover environments that are kept for reuse"
+            + " for each combination of prover options."
+  )
+  private int maxReusableProvers = 16;
+
+  @Option(
+    secure = true,
+    description =
+        "Solvers that race against each other for every satisfiability check."
+            + " The solver chosen by solver.solver is still used for creating formulas,"
+            + " models, and all other operations."
+  )
+  private List<Solvers> portfolio = ImmutableList.of();
+
+  @Option(
+    description =
+        "Run the satisfiability checks of the solver in this number of separate processes,"
+            + " such that crashes and the memory of satisfiability checks do not affect this JVM."
+            + " Formulas are still created with the same solver inside this JVM."
+            + " 0 disables this feature."
+  )
+  private int isolatedProcesses = 0;
+
   @Option(secure = true, description = "Default rounding mode for floating point operations.")
   private FloatingPointRoundingMode floatingPointRoundingMode =
       FloatingPointRoundingMode.NEAREST_TIES_TO_EVEN;
@@ -97,6 +140,14 @@ public class SolverContextFactory {
     if (!logAllQueries) {
       logfile = null;
     }
+    if (maxReusableProvers < 0) {
+      throw new InvalidConfigurationException(
+          "Invalid value for solver.maxReusableProvers: " + maxReusableProvers);
+    }
+    if (isolatedProcesses < 0) {
+      throw new InvalidConfigurationException(
+          "Invalid value for solver.isolatedProcesses: " + isolatedProcesses);
+    }
   }
 
   /** Create new context with solver chosen according to the supplied configuration. */
@@ -108,9 +159,28 @@ public class SolverContextFactory {
   @SuppressWarnings("resource") // returns unclosed context object
   public SolverContext generateContext(Solvers solverToCreate)
       throws InvalidConfigurationException {
-    SolverContext context;
+    SolverContext context =
+        isolatedProcesses > 0
+            ? generateIsolated(solverToCreate)
+            : generateContext(solverToCreate, shutdownNotifier);
+
+    if (!portfolio.isEmpty()) {
+      context = generatePortfolio(context);
+    }
+    if (reuseProvers) {
+      context = new PoolingSolverContext(context, maxReusableProvers);
+    }
+    if (useLogger) {
+      context = new LoggingSolverContext(logger, context);
+    }
+    return context;
+  }
+
+  private SolverContext generateContext(
+      Solvers solverToCreate, ShutdownNotifier pShutdownNotifier)
+      throws InvalidConfigurationException {
     try {
-      context = generateContext0(solverToCreate);
+      return generateContext0(solverToCreate, pShutdownNotifier);
     } catch (UnsatisfiedLinkError e) {
       throw new InvalidConfigurationException(
           String.format(
@@ -120,23 +190,56 @@ public class SolverContextFactory {
               solverToCreate, e.getMessage()),
           e);
     }
+  }
 
-    if (useLogger) {
-      context = new LoggingSolverContext(logger, context);
+  /**
+   * Create a context running the checks of the solver in separate processes. Formulas are created
+   * by a context of the same solver in this JVM, such that all of its theories are available.
+   */
+  @SuppressWarnings("resource") // the frontend is closed by the isolated context
+  private SolverContext generateIsolated(Solvers solverToCreate)
+      throws InvalidConfigurationException {
+    SolverContext frontend = generateContext(solverToCreate, shutdownNotifier);
+    try {
+      return RemoteSolverContext.create(
+          frontend, solverToCreate, config, isolatedProcesses, shutdownNotifier, logger);
+    } catch (InvalidConfigurationException e) {
+      frontend.close();
+      throw e;
     }
-    return context;
   }
 
-  private SolverContext generateContext0(Solvers solverToCreate)
+  /**
+   * Create a context racing the solvers of the portfolio. Each racing solver gets its own shutdown
+   * manager such that it can be stopped independently. Solvers that are not available are skipped.
+   */
+  @SuppressWarnings("resource") // contexts are closed by the portfolio context
+  private SolverContext generatePortfolio(SolverContext main) {
+    Map<SolverContext, ShutdownManager> racingContexts = new LinkedHashMap<>();
+    for (Solvers racingSolver : portfolio) {
+      ShutdownManager shutdownManager = ShutdownManager.createWithParent(shutdownNotifier);
+      try {
+        racingContexts.put(
+            generateContext(racingSolver, shutdownManager.getNotifier()), shutdownManager);
+      } catch (InvalidConfigurationException e) {
+        logger.logUserException(
+            Level.WARNING, e, "Solver " + racingSolver + " is not used in the portfolio");
+      }
+    }
+    return new PortfolioSolverContext(logger, main, racingContexts);
+  }
+
+  private SolverContext generateContext0(
+      Solvers solverToCreate, ShutdownNotifier pShutdownNotifier)
       throws InvalidConfigurationException {
     switch (solverToCreate) {
       case SMTINTERPOL:
         return SmtInterpolSolverContext.create(
-            config, logger, shutdownNotifier, logfile, randomSeed);
+            config, logger, pShutdownNotifier, logfile, randomSeed);
 
       case MATHSAT5:
         return Mathsat5SolverContext.create(
-            logger, config, shutdownNotifier, logfile, randomSeed, floatingPointRoundingMode);
+            logger, config, pShutdownNotifier, logfile, randomSeed, floatingPointRoundingMode);
 
       case Z3:
 
@@ -144,11 +247,11 @@ public class SolverContextFactory {
         // java.library.path without affecting the main class loader.
         return getFactoryForSolver(z3ClassLoader, Z3_FACTORY_CLASS)
             .generateSolverContext(
-                config, logger, shutdownNotifier, logfile, randomSeed, floatingPointRoundingMode);
+                config, logger, pShutdownNotifier, logfile, randomSeed, floatingPointRoundingMode);
 
       case PRINCESS:
         // TODO: pass randomSeed to Princess
-        return PrincessSolverContext.create(config, shutdownNotifier, logfile);
+        return PrincessSolverContext.create(config, pShutdownNotifier, logfile);
 
       default:
         throw new AssertionError("no solver selected");
@@ -0,0 +1,371 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.ShutdownManager;
+import org.sosy_lab.common.ShutdownNotifier;
+import org.sosy_lab.common.configuration.Configuration;
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+
+/**
+ * A fixed number of solver contexts, each of which is used by exactly one worker thread. Tasks are
+ * submitted to the pool and executed by the next free worker with its own context, such that no
+ * context is ever used concurrently.
+ *
+ * <p>Formulas passed to a task are serialized to SMT-LIB in the submitting thread and parsed by
+ * the context that executes the task. Formulas returned by a task are translated back in the same
+ * way, but are parsed by the thread that retrieves the result. Thus the formula manager of the
+ * caller is never used by the worker threads.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * try (SolverContextPool pool = SolverContextPool.create(config, logger, notifier, solver, 4)) {
+ *   CompletableFuture<Boolean> unsat =
+ *       pool.submit(
+ *           ImmutableList.of(query),
+ *           context.getFormulaManager(),
+ *           (ctx, formulas) -> { ... check formulas.get(0) with a prover of ctx ... });
+ * }
+ * }</pre>
+ */
+public final class SolverContextPool implements AutoCloseable {
+
+  private final ShutdownManager shutdownManager;
+  private final ImmutableList<SolverContext> contexts;
+  private final ExecutorService executor;
+
+  /** Contexts that are currently not assigned to a worker thread. */
+  private final BlockingQueue<SolverContext> unassignedContexts;
+
+  /** The context of the current worker thread, assigned on the first task of the thread. */
+  private final ThreadLocal<SolverContext> contextOfWorker = new ThreadLocal<>();
+
+  /** Futures of all submitted tasks that are not yet done. */
+  private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean closed = false;
+
+  private SolverContextPool(ShutdownManager pShutdownManager, List<SolverContext> pContexts) {
+    shutdownManager = pShutdownManager;
+    contexts = ImmutableList.copyOf(pContexts);
+    unassignedContexts = new LinkedBlockingQueue<>(contexts);
+    ThreadFactory threadFactory =
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("solver-pool-%d").build();
+    executor =
+        Executors.newFixedThreadPool(
+            contexts.size(), worker -> threadFactory.newThread(() -> runWorker(worker)));
+  }
+
+  /** Run a worker thread and give its context back to the pool when the thread terminates. */
+  private void runWorker(Runnable worker) {
+    try {
+      worker.run();
+    } finally {
+      SolverContext context = contextOfWorker.get();
+      if (context != null) {
+        unassignedContexts.add(context);
+      }
+    }
+  }
+
+  private SolverContext getContextOfWorker() {
+    SolverContext context = contextOfWorker.get();
+    if (context == null) {
+      // The executor may start the replacement of a terminated worker thread
+      // before the terminated thread has given its context back.
+      context = Uninterruptibles.takeUninterruptibly(unassignedContexts);
+      contextOfWorker.set(context);
+    }
+    return context;
+  }
+
+  /**
+   * Create a pool of solver contexts.
+   *
+   * @param config configuration for the contexts, see {@link SolverContextFactory}.
+   * @param logger used by the contexts.
+   * @param shutdownNotifier stops all running tasks if shutdown is requested.
+   * @param solver the solver of all contexts.
+   * @param size the number of contexts and worker threads.
+   */
+  public static SolverContextPool create(
+      Configuration config,
+      LogManager logger,
+      ShutdownNotifier shutdownNotifier,
+      Solvers solver,
+      int size)
+      throws InvalidConfigurationException {
+    checkArgument(size > 0, "pool needs at least one context");
+    ShutdownManager shutdownManager = ShutdownManager.createWithParent(shutdownNotifier);
+    SolverContextFactory factory =
+        new SolverContextFactory(config, logger, shutdownManager.getNotifier());
+    ImmutableList.Builder<SolverContext> contexts = ImmutableList.builder();
+    try {
+      for (int i = 0; i < size; i++) {
+        contexts.add(factory.generateContext(solver));
+      }
+    } catch (InvalidConfigurationException e) {
+      contexts.build().forEach(SolverContext::close);
+      throw e;
+    }
+    return new SolverContextPool(shutdownManager, contexts.build());
+  }
+
+  /** The number of contexts, which is also the maximal number of tasks running in parallel. */
+  public int getSize() {
+    return contexts.size();
+  }
+
+  /**
+   * Execute a task with one of the contexts of this pool. The task must not keep any references to
+   * the context or its formulas after it returns, except for the returned value.
+   *
+   * @return a future that is completed with the result of the task, or exceptionally if the task
+   *     throws an exception.
+   */
+  public <T> CompletableFuture<T> submit(Function<SolverContext, T> task) {
+    checkState(!closed);
+    CompletableFuture<T> result = new CompletableFuture<>();
+    pending.add(result);
+    result.whenComplete((value, exception) -> pending.remove(result));
+    executor.execute(
+        () -> {
+          // the future may already be cancelled by the caller or by closing the pool
+          if (!result.isDone()) {
+            try {
+              result.complete(task.apply(getContextOfWorker()));
+            } catch (Throwable t) {
+              // also errors like OutOfMemoryError, otherwise waiting for the future would never end
+              result.completeExceptionally(t);
+            } finally {
+              // an interrupt of this task must not affect the next task of this thread
+              Thread.interrupted();
+            }
+          }
+        });
+    return result;
+  }
+
+  /**
+   * Execute a task with one of the contexts of this pool, after translating the given formulas into
+   * this context.
+   *
+   * @param formulas formulas created by {@code formulaManager}.
+   * @param formulaManager the formula manager of the formulas, only used by the calling thread.
+   * @param task receives the context executing it and the translated formulas.
+   */
+  public <T> CompletableFuture<T> submit(
+      List<BooleanFormula> formulas,
+      FormulaManager formulaManager,
+      BiFunction<SolverContext, List<BooleanFormula>, T> task) {
+    List<String> smtlib = dump(formulas, formulaManager);
+    return submit(context -> task.apply(context, parse(smtlib, context.getFormulaManager())));
+  }
+
+  /**
+   * Execute a task with one of the contexts of this pool, translating the given formulas into this
+   * context and the resulting formula back into {@code formulaManager}.
+   *
+   * @param formulas formulas created by {@code formulaManager}.
+   * @param formulaManager the formula manager of the formulas and of the result, only used by the
+   *     calling thread.
+   * @param task receives the context executing it and the translated formulas.
+   * @return a future for the result, which is parsed by the first call to one of its {@code get}
+   *     methods. These have to be called by the thread that uses {@code formulaManager}.
+   */
+  public Future<BooleanFormula> submitAndTranslateBack(
+      List<BooleanFormula> formulas,
+      FormulaManager formulaManager,
+      BiFunction<SolverContext, List<BooleanFormula>, BooleanFormula> task) {
+    CompletableFuture<String> smtlib =
+        submit(
+            formulas,
+            formulaManager,
+            (context, translated) -> {
+              BooleanFormula result = task.apply(context, translated);
+              return context.getFormulaManager().dumpFormula(result).toString();
+            });
+    return new TranslatingFuture(smtlib, formulaManager);
+  }
+
+  /** Future that parses the SMT-LIB result of a task in the thread that retrieves it. */
+  private static final class TranslatingFuture implements Future<BooleanFormula> {
+
+    private final CompletableFuture<String> smtlib;
+    private final FormulaManager formulaManager;
+    private @Nullable BooleanFormula result = null;
+
+    private TranslatingFuture(CompletableFuture<String> pSmtlib, FormulaManager pFormulaManager) {
+      smtlib = pSmtlib;
+      formulaManager = pFormulaManager;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return smtlib.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return smtlib.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return smtlib.isDone();
+    }
+
+    @Override
+    public BooleanFormula get() throws InterruptedException, ExecutionException {
+      return translate(smtlib.get());
+    }
+
+    @Override
+    public BooleanFormula get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return translate(smtlib.get(timeout, unit));
+    }
+
+    private BooleanFormula translate(String formula) {
+      if (result == null) {
+        result = formulaManager.parse(formula);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Check many independent queries for unsatisfiability by splitting them into one contiguous
+   * chunk per context of this pool. Each chunk is checked with {@link
+   * SolverContext#checkAll(List)}.
+   *
+   * @param queries formulas created by {@code formulaManager}.
+   * @param formulaManager the formula manager of the queries, only used by the calling thread.
+   * @return a future for a list with one entry per query, which is true iff the query is
+   *     unsatisfiable.
+   */
+  public CompletableFuture<List<Boolean>> checkAll(
+      List<BooleanFormula> queries, FormulaManager formulaManager) {
+    int chunkSize = Math.max(1, IntMath.divide(queries.size(), getSize(), RoundingMode.CEILING));
+    List<CompletableFuture<List<Boolean>>> chunkResults = new ArrayList<>();
+    for (List<BooleanFormula> chunk : Lists.partition(queries, chunkSize)) {
+      chunkResults.add(submit(chunk, formulaManager, SolverContextPool::checkChunk));
+    }
+    return CompletableFuture.allOf(chunkResults.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            ignored -> {
+              List<Boolean> results = new ArrayList<>(queries.size());
+              for (CompletableFuture<List<Boolean>> chunkResult : chunkResults) {
+                results.addAll(chunkResult.join());
+              }
+              return results;
+            });
+  }
+
+  private static List<Boolean> checkChunk(SolverContext context, List<BooleanFormula> chunk) {
+    try {
+      return context.checkAll(chunk);
+    } catch (SolverException e) {
+      throw new CompletionException(e);
+    } catch (InterruptedException e) {
+      // the future reports the interrupt, it must not stay set on the pooled thread
+      throw new CompletionException(e);
+    }
+  }
+
+  private static List<String> dump(List<BooleanFormula> formulas, FormulaManager formulaManager) {
+    ImmutableList.Builder<String> smtlib = ImmutableList.builder();
+    for (BooleanFormula formula : formulas) {
+      smtlib.add(formulaManager.dumpFormula(formula).toString());
+    }
+    return smtlib.build();
+  }
+
+  private static List<BooleanFormula> parse(List<String> smtlib, FormulaManager formulaManager) {
+    ImmutableList.Builder<BooleanFormula> formulas = ImmutableList.builder();
+    for (String s : smtlib) {
+      formulas.add(formulaManager.parse(s));
+    }
+    return formulas.build();
+  }
+
+  /**
+   * Stop all running tasks, wait for the worker threads to terminate, and close all contexts.
+   * Futures of tasks that are not yet done are cancelled.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    shutdownManager.requestShutdown("solver context pool closed");
+    executor.shutdownNow();
+    for (CompletableFuture<?> future : pending) {
+      future.cancel(false);
+    }
+    boolean interrupted = false;
+    while (!executor.isTerminated()) {
+      try {
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    contexts.forEach(SolverContext::close);
+  }
+}
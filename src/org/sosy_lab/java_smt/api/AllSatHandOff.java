@@ -0,0 +1,262 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.api;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatIterator;
+
+/**
+ * Iterator over the models of {@link ProverEnvironment#allSat}, see {@link
+ * ProverEnvironment#allSatIterator}.
+ *
+ * <p>The allSat loop of the solver runs in a separate thread and passes each model to this
+ * callback, which hands it over to the consumer and blocks until the consumer requests the next
+ * model. Thus the solver never runs ahead of the consumer, and only one of both threads uses the
+ * prover and its formula manager at any time. Closing the iterator makes the callback throw an
+ * exception that leaves the allSat loop of the solver.
+ */
+final class AllSatHandOff implements AllSatIterator, AllSatCallback<Void> {
+
+  /** Thrown by the callback to leave the allSat loop of the solver. */
+  private static final class StopEnumeration extends RuntimeException {
+
+    private static final long serialVersionUID = -4311238627540387375L;
+
+    private StopEnumeration() {
+      super("allSat enumeration was stopped", null, false, false);
+    }
+  }
+
+  private final ProverEnvironment prover;
+  private final List<BooleanFormula> important;
+  private final int maxModels;
+  private final long timeLimit;
+  private final long startTime = System.nanoTime();
+
+  /** The thread running the allSat loop, started when the first model is requested. */
+  @GuardedBy("this")
+  private @Nullable CompletableFuture<Void> producer = null;
+
+  /** The model found by the producer and not yet returned by {@link #next}. */
+  @GuardedBy("this")
+  private @Nullable List<BooleanFormula> nextModel = null;
+
+  @GuardedBy("this")
+  private boolean modelRequested = false;
+
+  /** Whether the producer waits in {@link #apply} until the next model is requested. */
+  @GuardedBy("this")
+  private boolean producerWaiting = false;
+
+  /** Whether the allSat loop has returned. */
+  @GuardedBy("this")
+  private boolean finished = false;
+
+  @GuardedBy("this")
+  private boolean closed = false;
+
+  @GuardedBy("this")
+  private @Nullable Throwable failure = null;
+
+  @GuardedBy("this")
+  private int returnedModels = 0;
+
+  /**
+   * @param pTimeLimit the time limit in nanoseconds since this call, see {@link
+   *     ProverEnvironment#allSatIterator}.
+   */
+  AllSatHandOff(
+      ProverEnvironment pProver, List<BooleanFormula> pImportant, int pMaxModels, long pTimeLimit) {
+    checkArgument(pMaxModels >= 0, "negative number of models %s", pMaxModels);
+    checkArgument(pTimeLimit >= 0, "negative time limit %s", pTimeLimit);
+    prover = checkNotNull(pProver);
+    important = ImmutableList.copyOf(pImportant);
+    maxModels = pMaxModels;
+    timeLimit = pTimeLimit;
+  }
+
+  @Override
+  public boolean hasNext() {
+    boolean timedOut = false;
+    synchronized (this) {
+      if (nextModel != null) {
+        return true;
+      }
+      if (!closed && !finished && returnedModels < maxModels) {
+        modelRequested = true;
+        if (producer == null) {
+          producer = AsyncProverCall.submit(prover, this::enumerate);
+        } else {
+          notifyAll();
+        }
+        try {
+          timedOut = !awaitModel();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failure = e;
+        }
+        if (nextModel != null) {
+          return true;
+        }
+      }
+    }
+
+    // The enumeration is complete, has failed, or has reached one of its limits.
+    close();
+    synchronized (this) {
+      if (failure != null && !timedOut) {
+        throw new CompletionException(failure);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Wait until the producer has found a model or returned.
+   *
+   * @return false if the time limit was reached before.
+   */
+  @GuardedBy("this")
+  private boolean awaitModel() throws InterruptedException {
+    while (nextModel == null && !finished) {
+      long remaining = timeLimit - (System.nanoTime() - startTime);
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+
+  @Override
+  public List<BooleanFormula> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    synchronized (this) {
+      List<BooleanFormula> model = nextModel;
+      nextModel = null;
+      returnedModels++;
+      return model;
+    }
+  }
+
+  @Override
+  public void close() {
+    CompletableFuture<Void> running;
+    synchronized (this) {
+      closed = true;
+      nextModel = null;
+      notifyAll();
+      running = producer;
+      if (running == null || finished) {
+        return;
+      }
+      if (producerWaiting) {
+        // the producer leaves the allSat loop without further solver calls
+        awaitFinished();
+        return;
+      }
+    }
+    // The producer still searches for the next model, so we interrupt the solver.
+    // Cancelling waits until the allSat loop has returned.
+    running.cancel(true);
+  }
+
+  @GuardedBy("this")
+  private void awaitFinished() {
+    boolean interrupted = false;
+    while (!finished) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** The task of the producer thread. */
+  private @Nullable Void enumerate() {
+    try {
+      prover.allSat(this, important);
+    } catch (Throwable t) {
+      synchronized (this) {
+        // Exceptions caused by closing the iterator are expected. Any other failure, including
+        // errors, has to be reported by hasNext, otherwise the enumeration would look complete.
+        if (!closed && failure == null) {
+          failure = t;
+        }
+      }
+    } finally {
+      synchronized (this) {
+        finished = true;
+        notifyAll();
+      }
+    }
+    return null;
+  }
+
+  /** Hand the model over to the consumer and wait until the next model is requested. */
+  @Override
+  public void apply(List<BooleanFormula> model) {
+    synchronized (this) {
+      if (closed) {
+        throw new StopEnumeration();
+      }
+      nextModel = ImmutableList.copyOf(model);
+      modelRequested = false;
+      notifyAll();
+
+      producerWaiting = true;
+      try {
+        while (!modelRequested && !closed) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        failure = e;
+        throw new StopEnumeration();
+      } finally {
+        producerWaiting = false;
+      }
+      if (closed) {
+        throw new StopEnumeration();
+      }
+    }
+  }
+
+  @Override
+  public @Nullable Void getResult() {
+    return null;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Future of an asynchronous solver operation, see {@link BasicProverEnvironment#isUnsatAsync()}.
+ * Cancelling the future with {@code mayInterruptIfRunning} interrupts the running operation via
+ * {@link BasicProverEnvironment#interrupt()}. In any case, cancelling waits until a running
+ * operation has returned, such that the prover can be used again afterwards.
+ */
+final class AsyncProverCall<R> extends CompletableFuture<R> {
+
+  /** Dedicated threads for solver operations, such that they never block a common pool. */
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("java-smt-async-%d").build());
+
+  /** Solver operation executed by {@link #submit}. */
+  interface Call<R> {
+    R call() throws SolverException, InterruptedException;
+  }
+
+  private final BasicProverEnvironment<?> prover;
+
+  /** The thread executing the operation while it is running. */
+  @GuardedBy("this")
+  private @Nullable Thread runner = null;
+
+  private AsyncProverCall(BasicProverEnvironment<?> pProver) {
+    prover = pProver;
+  }
+
+  /** Execute the operation in a separate thread. The call has to use only the given prover. */
+  static <R> CompletableFuture<R> submit(BasicProverEnvironment<?> prover, Call<R> call) {
+    checkNotNull(call);
+    AsyncProverCall<R> future = new AsyncProverCall<>(checkNotNull(prover));
+    EXECUTOR.execute(() -> future.run(call));
+    return future;
+  }
+
+  private void run(Call<R> call) {
+    synchronized (this) {
+      if (isDone()) {
+        return; // cancelled before it was started
+      }
+      runner = Thread.currentThread();
+    }
+    try {
+      complete(call.call());
+    } catch (Throwable t) {
+      // also errors like OutOfMemoryError, otherwise waiting for the future would never end
+      completeExceptionally(t);
+    } finally {
+      synchronized (this) {
+        runner = null;
+        notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    boolean cancelled = super.cancel(mayInterruptIfRunning);
+    if (cancelled) {
+      synchronized (this) {
+        if (runner != null && mayInterruptIfRunning) {
+          prover.interrupt();
+        }
+        boolean interrupted = false;
+        while (runner != null && runner != Thread.currentThread()) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    return cancelled;
+  }
+}
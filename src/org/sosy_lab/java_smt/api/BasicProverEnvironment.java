@@ -19,8 +19,11 @@
  */
 package org.sosy_lab.java_smt.api;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 
 /**
@@ -44,6 +47,17 @@ public interface BasicProverEnvironment<T> extends AutoCloseable {
   /** Remove one formula from the environment stack. */
   void pop();
 
+  /**
+   * Remove the given number of levels from the environment stack. This is equivalent to calling
+   * {@link #pop()} the given number of times, but some solvers can remove several levels at once.
+   */
+  default void pop(int levels) {
+    checkArgument(levels >= 0, "cannot pop a negative number of levels");
+    for (int i = 0; i < levels; i++) {
+      pop();
+    }
+  }
+
   /** Add constraint to the context. */
   @Nullable
   @CanIgnoreReturnValue
@@ -55,6 +69,25 @@ public interface BasicProverEnvironment<T> extends AutoCloseable {
   /** Check whether the conjunction of all formulas on the stack is unsatisfiable. */
   boolean isUnsat() throws SolverException, InterruptedException;
 
+  /**
+   * Check asynchronously whether the conjunction of all formulas on the stack is unsatisfiable. The
+   * check runs in a dedicated thread, and neither this prover nor its context may be used until the
+   * returned future is done. Cancelling the future with {@code mayInterruptIfRunning} stops the
+   * check via {@link #interrupt()}, and waits until the check has returned.
+   */
+  default CompletableFuture<Boolean> isUnsatAsync() {
+    return AsyncProverCall.submit(this, this::isUnsat);
+  }
+
+  /**
+   * Stop the operation that is currently running on this prover in another thread, for example a
+   * check started by {@link #isUnsatAsync()}. The stopped operation throws an {@link
+   * InterruptedException}, and the prover can be used for further operations afterwards. A request
+   * that arrives while no operation is running stops the next operation of this prover. Solvers
+   * that do not support stopping a single operation ignore this request.
+   */
+  default void interrupt() {}
+
   /**
    * Get a satisfying assignment. This should be called only immediately after an {@link #isUnsat()}
    * call that returned <code>false</code>. A model might contain additional symbols with their
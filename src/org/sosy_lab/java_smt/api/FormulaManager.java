@@ -208,9 +208,11 @@ public interface FormulaManager {
 
   /**
    * Translates the formula from another context into the context represented by {@code this}.
-   * Default implementation relies on string serialization ({@link #dumpFormula(BooleanFormula)} and
-   * {@link #parse(String)}), but each solver may implement more efficient translation between its
-   * own contexts.
+   * Default implementation rebuilds the formula with the theory managers of this context, visiting
+   * each shared subformula only once. Parts that can not be rebuilt this way (e.g., quantifiers)
+   * are translated via string serialization ({@link #dumpFormula(BooleanFormula)} and {@link
+   * #parse(String)}). Each solver may implement more efficient translation between its own
+   * contexts.
    *
    * @param formula Formula belonging to {@code otherContext}.
    * @param otherContext Formula manager belonging to the other context.
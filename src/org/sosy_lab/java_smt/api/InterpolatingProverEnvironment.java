@@ -23,6 +23,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class provides an interface to an incremental SMT solver with methods for pushing and
@@ -63,6 +64,14 @@ public interface InterpolatingProverEnvironment<T> extends BasicProverEnvironmen
    */
   BooleanFormula getInterpolant(List<T> formulasOfA) throws SolverException, InterruptedException;
 
+  /**
+   * Asynchronous variant of {@link #getInterpolant}, see {@link #isUnsatAsync()} for the
+   * restrictions on using this prover while the returned future is not done.
+   */
+  default CompletableFuture<BooleanFormula> getInterpolantAsync(List<T> formulasOfA) {
+    return AsyncProverCall.submit(this, () -> getInterpolant(formulasOfA));
+  }
+
   /**
    * This method returns interpolants of an 'inductive sequence'. This property must be supported by
    * the interpolation-strategy of the underlying SMT-solver! Depending on the underlying SMT-solver
@@ -22,9 +22,13 @@ package org.sosy_lab.java_smt.api;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
 import org.sosy_lab.common.rationals.Rational;
@@ -62,14 +66,56 @@ public interface Model extends Iterable<ValueAssignment>, AutoCloseable {
   @Nullable
   BigInteger evaluate(BitvectorFormula f);
 
+  /**
+   * Evaluate several formulas at once. The result contains the value of each formula at the same
+   * position as in the input, or null where {@link #evaluate(Formula)} would return null.
+   * Depending on the solver, evaluating a batch is cheaper than evaluating each formula on its
+   * own.
+   *
+   * @param formulas Input formulas
+   * @return An unmodifiable list of values, see {@link #evaluate(Formula)} for the possible types.
+   * @throws IllegalArgumentException if a formula has unexpected type, e.g Array.
+   */
+  default List<Object> evaluateAll(List<? extends Formula> formulas) {
+    List<Object> values = new ArrayList<>(formulas.size());
+    for (Formula f : formulas) {
+      values.add(evaluate(f));
+    }
+    return Collections.unmodifiableList(values);
+  }
+
   /**
    * Iterate over all values present in the model. Note that iterating multiple times may be
    * inefficient for some solvers, it is recommended to use {@link
-   * BasicProverEnvironment#getModelAssignments()} instead in this case.
+   * BasicProverEnvironment#getModelAssignments()} instead in this case. The assignments may be
+   * computed lazily during the iteration, thus the iterator must not be used after closing the
+   * model.
    */
   @Override
   Iterator<ValueAssignment> iterator();
 
+  /**
+   * Iterate over the values of the given symbols only. Symbols are identified by their name as
+   * given by {@link ValueAssignment#getName()}, i.e., the variable name for variables, the function
+   * name for UFs, and the array name for arrays. Some solvers can skip all work for other symbols,
+   * which is much cheaper than filtering {@link #iterator()} for large models.
+   *
+   * <p>Like {@link #iterator()}, the returned iterator may compute the assignments lazily, and thus
+   * must not be used after closing the model.
+   */
+  default Iterator<ValueAssignment> iterator(Collection<String> symbolNames) {
+    return Iterators.filter(iterator(), assignment -> symbolNames.contains(assignment.getName()));
+  }
+
+  /**
+   * Copy all assignments of this model into a compact {@link ModelSnapshot} that does not depend
+   * on the solver. This is useful for keeping many models, as the model itself can be closed
+   * directly afterwards.
+   */
+  default ModelSnapshot snapshot() {
+    return ModelSnapshot.of(this);
+  }
+
   /** Pretty-printing of the model values. */
   @Override
   String toString();
@@ -0,0 +1,334 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.api;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+
+/**
+ * An immutable copy of the assignments of a {@link Model} that does not depend on the solver. The
+ * model can be closed as soon as the snapshot is taken, and the snapshot stays valid even after
+ * the solver context is closed.
+ *
+ * <p>The snapshot is stored compactly: names are interned, integer and bitvector values that fit
+ * into a long and boolean values are stored in primitive arrays, and the formulas of the
+ * assignments are not kept. The arguments of function applications and the indices of array
+ * elements are stored in the same way, concatenated into one array for all assignments. The
+ * assignments are sorted by name and arguments, such that a value is looked up with a binary
+ * search over both.
+ */
+public final class ModelSnapshot {
+
+  private static final byte LONG_VALUE = 0;
+  private static final byte TRUE_VALUE = 1;
+  private static final byte FALSE_VALUE = 2;
+  private static final byte OBJECT_VALUE = 3;
+
+  private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+  private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+  /** Names of the assigned symbols, sorted. */
+  private final String[] names;
+
+  /**
+   * The arguments of the i-th assignment are stored at the positions from {@code argumentStart[i]}
+   * (inclusive) to {@code argumentStart[i + 1]} (exclusive) of the argument arrays.
+   */
+  private final int[] argumentStart;
+
+  private final Values arguments;
+  private final Values values;
+
+  /**
+   * A sequence of values, stored by their kind. Booleans are stored as kind only, values that fit
+   * into a long in a long array, and only the remaining values as objects.
+   */
+  private static final class Values {
+
+    private final byte[] kinds;
+    private final long[] longs;
+
+    /** Values of kind {@code OBJECT_VALUE}, null if there are none. */
+    private @Nullable Object[] objects = null;
+
+    private Values(int size) {
+      kinds = new byte[size];
+      longs = new long[size];
+    }
+
+    private void set(int i, Object value) {
+      byte kind = kindOf(value);
+      kinds[i] = kind;
+      if (kind == LONG_VALUE) {
+        longs[i] = ((BigInteger) value).longValue();
+      } else if (kind == OBJECT_VALUE) {
+        if (objects == null) {
+          objects = new Object[kinds.length];
+        }
+        objects[i] = value;
+      }
+    }
+
+    private Object get(int i) {
+      switch (kinds[i]) {
+        case LONG_VALUE:
+          return BigInteger.valueOf(longs[i]);
+        case TRUE_VALUE:
+          return true;
+        case FALSE_VALUE:
+          return false;
+        default:
+          return objects[i];
+      }
+    }
+
+    /**
+     * Compare the i-th value with the given one, consistent with {@link
+     * ModelSnapshot#compareValues}.
+     */
+    private int compareTo(int i, Object value) {
+      byte kind = kindOf(value);
+      if (kinds[i] != kind) {
+        return Byte.compare(kinds[i], kind);
+      }
+      switch (kind) {
+        case LONG_VALUE:
+          return Long.compare(longs[i], ((BigInteger) value).longValue());
+        case OBJECT_VALUE:
+          return compareObjects(objects[i], value);
+        default:
+          return 0;
+      }
+    }
+
+    private boolean isEqualTo(int i, Object value) {
+      return kinds[i] == OBJECT_VALUE ? objects[i].equals(value) : compareTo(i, value) == 0;
+    }
+  }
+
+  private ModelSnapshot(String[] pNames, int[] pArgumentStart, Values pArguments, Values pValues) {
+    names = pNames;
+    argumentStart = pArgumentStart;
+    arguments = pArguments;
+    values = pValues;
+  }
+
+  /** Copy the given assignments, e.g., from a {@link Model}, into a new snapshot. */
+  public static ModelSnapshot of(Iterable<ValueAssignment> assignments) {
+    List<ValueAssignment> sorted = new ArrayList<>();
+    int argumentCount = 0;
+    for (ValueAssignment assignment : assignments) {
+      sorted.add(checkNotNull(assignment));
+      argumentCount += argumentsOf(assignment).size();
+    }
+    sorted.sort(
+        (a, b) -> {
+          int result = a.getName().compareTo(b.getName());
+          return result != 0 ? result : compareArguments(argumentsOf(a), argumentsOf(b));
+        });
+
+    int size = sorted.size();
+    String[] names = new String[size];
+    int[] argumentStart = new int[size + 1];
+    Values arguments = new Values(argumentCount);
+    Values values = new Values(size);
+    int k = 0;
+    for (int i = 0; i < size; i++) {
+      ValueAssignment assignment = sorted.get(i);
+      names[i] = assignment.getName().intern();
+      argumentStart[i] = k;
+      for (Object argument : argumentsOf(assignment)) {
+        arguments.set(k++, argument);
+      }
+      values.set(i, assignment.getValue());
+    }
+    argumentStart[size] = k;
+    return new ModelSnapshot(names, argumentStart, arguments, values);
+  }
+
+  private static List<Object> argumentsOf(ValueAssignment assignment) {
+    return assignment.isFunction() ? assignment.getArgumentsInterpretation() : ImmutableList.of();
+  }
+
+  private static byte kindOf(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value ? TRUE_VALUE : FALSE_VALUE;
+    } else if (value.getClass() == BigInteger.class
+        && ((BigInteger) value).compareTo(MIN_LONG) >= 0
+        && ((BigInteger) value).compareTo(MAX_LONG) <= 0) {
+      return LONG_VALUE;
+    } else {
+      return OBJECT_VALUE;
+    }
+  }
+
+  /** Order of the arguments of the assignments: shorter lists first, then lexicographically. */
+  private static int compareArguments(List<?> args1, List<?> args2) {
+    int result = Integer.compare(args1.size(), args2.size());
+    for (int j = 0; result == 0 && j < args1.size(); j++) {
+      result = compareValues(args1.get(j), args2.get(j));
+    }
+    return result;
+  }
+
+  /** Order of values: by their kind, then by the long value or {@link #compareObjects}. */
+  private static int compareValues(Object value1, Object value2) {
+    byte kind = kindOf(value1);
+    if (kind != kindOf(value2)) {
+      return Byte.compare(kind, kindOf(value2));
+    }
+    switch (kind) {
+      case LONG_VALUE:
+        return Long.compare(((BigInteger) value1).longValue(), ((BigInteger) value2).longValue());
+      case OBJECT_VALUE:
+        return compareObjects(value1, value2);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Order of other values: by class, then by their natural order if they have one, otherwise by
+   * their string representation. Different values may be equal in this order, thus lookups check
+   * all assignments in the range of equal keys with {@link Object#equals}.
+   */
+  @SuppressWarnings("unchecked")
+  private static int compareObjects(Object value1, Object value2) {
+    if (value1.getClass() != value2.getClass()) {
+      return value1.getClass().getName().compareTo(value2.getClass().getName());
+    } else if (value1 instanceof Comparable) {
+      return ((Comparable<Object>) value1).compareTo(value2);
+    } else {
+      return value1.toString().compareTo(value2.toString());
+    }
+  }
+
+  /** The number of assignments in this snapshot. */
+  public int size() {
+    return names.length;
+  }
+
+  /** The name of the symbol of the i-th assignment, assignments are sorted by name first. */
+  public String getName(int i) {
+    checkElementIndex(i, size());
+    return names[i];
+  }
+
+  /** The arguments or array indices of the i-th assignment, empty for variables. */
+  public List<Object> getArguments(int i) {
+    checkElementIndex(i, size());
+    ImmutableList.Builder<Object> builder = ImmutableList.builder();
+    for (int k = argumentStart[i]; k < argumentStart[i + 1]; k++) {
+      builder.add(arguments.get(k));
+    }
+    return builder.build();
+  }
+
+  /** The value of the i-th assignment, see {@link Model#evaluate(Formula)} for its type. */
+  public Object getValue(int i) {
+    checkElementIndex(i, size());
+    return values.get(i);
+  }
+
+  /** The value of a variable, or null if the snapshot has no value for it. */
+  public @Nullable Object getValue(String name) {
+    return getValue(name, ImmutableList.of());
+  }
+
+  /**
+   * The value of a function application or an array element, or null if the snapshot has no value
+   * for it.
+   *
+   * @param name the name of the function or array
+   * @param args the interpretation of the arguments or the indices, as in {@link
+   *     ValueAssignment#getArgumentsInterpretation()}
+   */
+  public @Nullable Object getValue(String name, List<?> args) {
+    checkNotNull(name);
+    checkNotNull(args);
+    // binary search for the first assignment that is not smaller than the key
+    int low = 0;
+    int high = names.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareTo(mid, name, args) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    for (int i = low; i < names.length && compareTo(i, name, args) == 0; i++) {
+      if (hasArguments(i, args)) {
+        return values.get(i);
+      }
+    }
+    return null;
+  }
+
+  /** Compare the key of the i-th assignment with the given key, in the order of the assignments. */
+  private int compareTo(int i, String name, List<?> args) {
+    int result = names[i].compareTo(name);
+    if (result != 0) {
+      return result;
+    }
+    int start = argumentStart[i];
+    result = Integer.compare(argumentStart[i + 1] - start, args.size());
+    for (int j = 0; result == 0 && j < args.size(); j++) {
+      result = arguments.compareTo(start + j, args.get(j));
+    }
+    return result;
+  }
+
+  private boolean hasArguments(int i, List<?> args) {
+    for (int j = 0; j < args.size(); j++) {
+      if (!arguments.isEqualTo(argumentStart[i] + j, args.get(j))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < size(); i++) {
+      if (i > 0) {
+        sb.append('\n');
+      }
+      sb.append(names[i]);
+      if (argumentStart[i + 1] > argumentStart[i]) {
+        sb.append('(');
+        Joiner.on(", ").appendTo(sb, getArguments(i));
+        sb.append(')');
+      }
+      sb.append(": ").append(getValue(i));
+    }
+    return sb.toString();
+  }
+}
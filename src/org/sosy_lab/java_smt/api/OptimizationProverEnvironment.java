@@ -20,6 +20,7 @@
 package org.sosy_lab.java_smt.api;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.sosy_lab.common.rationals.Rational;
 
 /** Interface for optimization modulo SMT. */
@@ -50,6 +51,14 @@ public interface OptimizationProverEnvironment extends BasicProverEnvironment<Vo
    */
   OptStatus check() throws InterruptedException, SolverException;
 
+  /**
+   * Asynchronous variant of {@link #check()}, see {@link #isUnsatAsync()} for the restrictions on
+   * using this prover while the returned future is not done.
+   */
+  default CompletableFuture<OptStatus> checkAsync() {
+    return AsyncProverCall.submit(this, this::check);
+  }
+
   /**
    * @param epsilon Value to substitute for the {@code epsilon}.
    * @return Upper approximation of the optimized value, or absent optional if the objective is
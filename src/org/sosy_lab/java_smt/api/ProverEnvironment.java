@@ -20,8 +20,16 @@
 package org.sosy_lab.java_smt.api;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.sosy_lab.common.ShutdownNotifier;
 import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
 
@@ -55,6 +63,48 @@ public interface ProverEnvironment extends BasicProverEnvironment<Void> {
   <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
       throws InterruptedException, SolverException;
 
+  /**
+   * Asynchronous variant of {@link #allSat}, see {@link #isUnsatAsync()} for the restrictions on
+   * using this prover while the returned future is not done.
+   */
+  default <T> CompletableFuture<T> allSatAsync(
+      AllSatCallback<T> callback, List<BooleanFormula> important) {
+    return AsyncProverCall.submit(this, () -> allSat(callback, important));
+  }
+
+  /**
+   * Lazy variant of {@link #allSat}, which computes each model only when the returned iterator is
+   * asked for it. The enumeration stops when all models were returned, when {@code maxModels}
+   * models were returned, when the time limit is reached, or when the iterator is closed. The
+   * iterator has to be closed if it is not exhausted, and the prover must not be used before.
+   *
+   * <p>The solver runs in a separate thread, but never concurrently to the caller. If the solver
+   * fails, {@link Iterator#hasNext()} throws a {@link CompletionException} with the cause of the
+   * failure, for example a {@link SolverException} or an {@link InterruptedException}.
+   *
+   * @param important the predicates of the models, see {@link #allSat}.
+   * @param maxModels the maximal number of models, {@link Integer#MAX_VALUE} for no limit.
+   * @param timeLimit the time since this call after which no further models are returned, {@link
+   *     Long#MAX_VALUE} for no limit. The running solver call is interrupted when it is reached.
+   */
+  default AllSatIterator allSatIterator(
+      List<BooleanFormula> important, int maxModels, long timeLimit, TimeUnit unit) {
+    return new AllSatHandOff(this, important, maxModels, unit.toNanos(timeLimit));
+  }
+
+  /**
+   * Stream of the models of {@link #allSatIterator}. Closing the stream stops the enumeration,
+   * thus the stream should be used with try-with-resources.
+   */
+  default Stream<List<BooleanFormula>> allSatStream(
+      List<BooleanFormula> important, int maxModels, long timeLimit, TimeUnit unit) {
+    AllSatIterator models = allSatIterator(important, maxModels, timeLimit, unit);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(models, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(models::close);
+  }
+
   /**
    * Check whether the conjunction of all formulas on the stack together with the list of
    * assumptions is satisfiable.
@@ -75,6 +125,14 @@ public interface ProverEnvironment extends BasicProverEnvironment<Void> {
   Optional<List<BooleanFormula>> unsatCoreOverAssumptions(Collection<BooleanFormula> assumptions)
       throws SolverException, InterruptedException;
 
+  /** Iterator over the models of {@link #allSatIterator}. */
+  interface AllSatIterator extends Iterator<List<BooleanFormula>>, AutoCloseable {
+
+    /** Stop the enumeration, afterwards the prover can be used again. */
+    @Override
+    void close();
+  }
+
   /**
    * Interface for the {@link #allSat} callback.
    *
@@ -86,6 +144,9 @@ public interface ProverEnvironment extends BasicProverEnvironment<Void> {
      * Callback for each possible satisfying assignment to given {@code important} predicates. If
      * the predicate is assigned {@code true} in the model, it is returned as-is in the list, and
      * otherwise it is negated. TODO: this interface does not work properly for negated predicates.
+     *
+     * <p>The model may be partial: if a predicate is missing from the list, every value of it
+     * yields a satisfying assignment, given the values of the other predicates in the list.
      */
     void apply(List<BooleanFormula> model);
 
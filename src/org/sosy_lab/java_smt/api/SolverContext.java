@@ -20,6 +20,8 @@
 
 package org.sosy_lab.java_smt.api;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
 
 /**
@@ -56,7 +58,15 @@ public interface SolverContext extends AutoCloseable {
      * Whether the solver should generate an unsat core for unsatisfiable formulas <b>only</b> over
      * the assumptions explicitly passed to the solver.
      */
-    GENERATE_UNSAT_CORE_OVER_ASSUMPTIONS
+    GENERATE_UNSAT_CORE_OVER_ASSUMPTIONS,
+
+    /**
+     * Whether push and pop operations should be delayed until the next satisfiability check. With
+     * this option, levels that are pushed and popped again without a check in between are never
+     * sent to the solver, and several pops are executed as one. This is useful for search
+     * algorithms that push and pop speculatively much more often than they check.
+     */
+    LAZY_STACK
   }
 
   /**
@@ -82,6 +92,43 @@ public interface SolverContext extends AutoCloseable {
    */
   OptimizationProverEnvironment newOptimizationProverEnvironment();
 
+  /**
+   * Check many independent queries for unsatisfiability. All queries are checked with a single
+   * prover environment, each on its own level of the assertion stack, such that the setup of the
+   * prover is only done once.
+   *
+   * @return a list with one entry per query, which is true iff the query is unsatisfiable.
+   */
+  default List<Boolean> checkAll(List<BooleanFormula> queries)
+      throws SolverException, InterruptedException {
+    List<Boolean> results = new ArrayList<>(queries.size());
+    checkAll(queries, (query, unsat) -> results.add(unsat));
+    return results;
+  }
+
+  /**
+   * Streaming variant of {@link #checkAll(List)}: the queries are only requested when they are
+   * checked, and each result is passed to the callback as soon as it is known.
+   */
+  default void checkAll(Iterable<BooleanFormula> queries, CheckAllCallback callback)
+      throws SolverException, InterruptedException {
+    try (ProverEnvironment prover = newProverEnvironment()) {
+      for (BooleanFormula query : queries) {
+        prover.push(query);
+        boolean unsat = prover.isUnsat();
+        prover.pop();
+        callback.result(query, unsat);
+      }
+    }
+  }
+
+  /** Receives the results of {@link #checkAll(Iterable, CheckAllCallback)}. */
+  interface CheckAllCallback {
+
+    /** Called once per query in the order of the queries. */
+    void result(BooleanFormula query, boolean isUnsat) throws InterruptedException;
+  }
+
   /** Get version information out of the solver. */
   String getVersion();
 
@@ -294,7 +294,12 @@ public abstract class AbstractFormulaManager<TFormulaInfo, TType, TEnv, TFuncDec
 
   @Override
   public BooleanFormula translateFrom(BooleanFormula other, FormulaManager otherContext) {
-    return parse(otherContext.dumpFormula(other).toString());
+    try {
+      return new FormulaTranslator(otherContext, this).translate(other);
+    } catch (UnsupportedOperationException e) {
+      // The formula contains constructs that can not be visited, e.g., bound variables.
+      return parse(otherContext.dumpFormula(other).toString());
+    }
   }
 
   @Override
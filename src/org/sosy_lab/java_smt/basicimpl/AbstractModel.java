@@ -21,9 +21,20 @@ package org.sosy_lab.java_smt.basicimpl;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import javax.annotation.Nullable;
 import org.sosy_lab.common.rationals.Rational;
 import org.sosy_lab.java_smt.api.ArrayFormula;
@@ -31,13 +42,23 @@ import org.sosy_lab.java_smt.api.BitvectorFormula;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.Formula;
 import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.ModelSnapshot;
 import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
 import org.sosy_lab.java_smt.api.NumeralFormula.RationalFormula;
 
 public abstract class AbstractModel<TFormulaInfo, TType, TEnv> implements Model {
 
+  /** Marks formulas without a value in {@link #evaluationCache}. */
+  private static final Object NO_VALUE = new Object();
+
   protected final FormulaCreator<TFormulaInfo, TType, TEnv, ?> creator;
 
+  /**
+   * Values of all formulas evaluated so far. The keys are formulas and not their infos, such that
+   * the terms stay alive and solvers with reference counting can not reuse them for other terms.
+   */
+  private final Map<Formula, Object> evaluationCache = new HashMap<>();
+
   protected AbstractModel(FormulaCreator<TFormulaInfo, TType, TEnv, ?> creator) {
     this.creator = creator;
   }
@@ -45,25 +66,25 @@ public abstract class AbstractModel<TFormulaInfo, TType, TEnv> implements Model
   @Nullable
   @Override
   public BigInteger evaluate(IntegerFormula f) {
-    return (BigInteger) evaluateImpl(creator.extractInfo(f));
+    return (BigInteger) evaluateCached(f);
   }
 
   @Nullable
   @Override
   public Rational evaluate(RationalFormula f) {
-    return (Rational) evaluateImpl(creator.extractInfo(f));
+    return (Rational) evaluateCached(f);
   }
 
   @Nullable
   @Override
   public Boolean evaluate(BooleanFormula f) {
-    return (Boolean) evaluateImpl(creator.extractInfo(f));
+    return (Boolean) evaluateCached(f);
   }
 
   @Nullable
   @Override
   public BigInteger evaluate(BitvectorFormula f) {
-    return (BigInteger) evaluateImpl(creator.extractInfo(f));
+    return (BigInteger) evaluateCached(f);
   }
 
   @Nullable
@@ -72,11 +93,68 @@ public abstract class AbstractModel<TFormulaInfo, TType, TEnv> implements Model
     Preconditions.checkArgument(
         !(f instanceof ArrayFormula),
         "cannot compute a simple constant evaluation for an array-formula");
-    return evaluateImpl(creator.extractInfo(f));
+    return evaluateCached(f);
+  }
+
+  @Override
+  public final List<Object> evaluateAll(List<? extends Formula> formulas) {
+    // only formulas that were not evaluated before are passed to the solver, each of them once
+    Set<Formula> missing = new LinkedHashSet<>();
+    for (Formula f : formulas) {
+      Preconditions.checkArgument(
+          !(f instanceof ArrayFormula),
+          "cannot compute a simple constant evaluation for an array-formula");
+      if (!evaluationCache.containsKey(f)) {
+        missing.add(f);
+      }
+    }
+    if (!missing.isEmpty()) {
+      List<TFormulaInfo> infos = new ArrayList<>(missing.size());
+      for (Formula f : missing) {
+        infos.add(creator.extractInfo(f));
+      }
+      List<Object> values = evaluateAllImpl(infos);
+      assert values.size() == infos.size();
+      Iterator<Object> valueIterator = values.iterator();
+      for (Formula f : missing) {
+        Object value = valueIterator.next();
+        evaluationCache.put(f, value == null ? NO_VALUE : value);
+      }
+    }
+
+    List<Object> result = new ArrayList<>(formulas.size());
+    for (Formula f : formulas) {
+      Object value = evaluationCache.get(f);
+      result.add(value == NO_VALUE ? null : value);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  private @Nullable Object evaluateCached(Formula f) {
+    Object value = evaluationCache.get(f);
+    if (value == null) {
+      value = evaluateImpl(creator.extractInfo(f));
+      evaluationCache.put(f, value == null ? NO_VALUE : value);
+      return value;
+    }
+    return value == NO_VALUE ? null : value;
   }
 
   protected abstract Object evaluateImpl(TFormulaInfo f);
 
+  /**
+   * Evaluate a batch of terms, returning a modifiable list with one (possibly null) value per
+   * term. The default implementation evaluates each term on its own, solvers with a cheaper way to
+   * evaluate many terms should override this.
+   */
+  protected List<Object> evaluateAllImpl(List<TFormulaInfo> infos) {
+    List<Object> values = new ArrayList<>(infos.size());
+    for (TFormulaInfo info : infos) {
+      values.add(evaluateImpl(info));
+    }
+    return values;
+  }
+
   @Override
   public String toString() {
     return Joiner.on('\n').join(iterator());
@@ -91,14 +169,62 @@ public abstract class AbstractModel<TFormulaInfo, TType, TEnv> implements Model
       super(pCreator);
     }
 
+    /**
+     * Iterate over the model. The assignments are produced lazily, if the solver supports it, and
+     * are remembered for later iterations once the iteration is complete.
+     */
     @Override
     public final Iterator<ValueAssignment> iterator() {
-      if (modelAssignments == null) {
-        modelAssignments = modelToList();
+      if (modelAssignments != null) {
+        return modelAssignments.iterator();
+      }
+      final Iterator<ValueAssignment> lazyAssignments = modelIterator(name -> true);
+      final ImmutableList.Builder<ValueAssignment> seen = ImmutableList.builder();
+      return new AbstractIterator<ValueAssignment>() {
+        @Override
+        protected ValueAssignment computeNext() {
+          if (lazyAssignments.hasNext()) {
+            ValueAssignment assignment = lazyAssignments.next();
+            seen.add(assignment);
+            return assignment;
+          }
+          if (modelAssignments == null) {
+            modelAssignments = seen.build();
+          }
+          return endOfData();
+        }
+      };
+    }
+
+    @Override
+    public final Iterator<ValueAssignment> iterator(Collection<String> symbolNames) {
+      if (modelAssignments != null) {
+        return Iterators.filter(
+            modelAssignments.iterator(), assignment -> symbolNames.contains(assignment.getName()));
       }
-      return modelAssignments.iterator();
+      return modelIterator(symbolNames::contains);
+    }
+
+    @Override
+    public final ModelSnapshot snapshot() {
+      if (modelAssignments != null) {
+        return ModelSnapshot.of(modelAssignments);
+      }
+      // the assignments are only needed for the snapshot, thus they are not cached
+      return ModelSnapshot.of(() -> modelIterator(name -> true));
     }
 
     protected abstract ImmutableList<ValueAssignment> modelToList();
+
+    /**
+     * Produce the assignments of all symbols whose names are accepted by the filter, without
+     * duplicates. Solvers should check the filter before computing the assignments of a symbol
+     * and should compute the assignments only while iterating. The default implementation
+     * filters the whole model.
+     */
+    protected Iterator<ValueAssignment> modelIterator(Predicate<String> symbolFilter) {
+      return Iterators.filter(
+          modelToList().iterator(), assignment -> symbolFilter.test(assignment.getName()));
+    }
   }
 }
@@ -27,6 +27,7 @@ import org.sosy_lab.java_smt.api.FormulaManager;
 import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.basicimpl.lazyStack.LazyStackTheoremProver;
 import org.sosy_lab.java_smt.basicimpl.withAssumptionsWrapper.InterpolatingProverWithAssumptionsWrapper;
 import org.sosy_lab.java_smt.basicimpl.withAssumptionsWrapper.ProverWithAssumptionsWrapper;
 
@@ -53,6 +54,9 @@ public abstract class AbstractSolverContext implements SolverContext {
       // we add a wrapper to it
       out = new ProverWithAssumptionsWrapper(out);
     }
+    if (opts.contains(ProverOptions.LAZY_STACK)) {
+      out = new LazyStackTheoremProver(out);
+    }
     return out;
   }
 
@@ -63,7 +67,7 @@ public abstract class AbstractSolverContext implements SolverContext {
   public final InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
 
     InterpolatingProverEnvironment<?> out = newProverEnvironmentWithInterpolation0();
-    if (!supportsAssumptionSolving()) {
+    if (!supportsAssumptionSolvingWithInterpolation()) {
       // In the case we do not already have a prover environment with assumptions,
       // we add a wrapper to it
       out = new InterpolatingProverWithAssumptionsWrapper<>(out, fmgr);
@@ -89,4 +93,16 @@ public abstract class AbstractSolverContext implements SolverContext {
    * class is undefined.
    */
   protected abstract boolean supportsAssumptionSolving();
+
+  /**
+   * Whether the solver supports solving under some given assumptions in interpolating prover
+   * environments by itself, i.e., whether {@link
+   * InterpolatingProverEnvironment#isUnsatWithAssumptions(java.util.Collection)} is fully
+   * implemented and interpolants do not contain any symbols only used in assumptions.
+   *
+   * <p>By default, this is the same as {@link #supportsAssumptionSolving()}.
+   */
+  protected boolean supportsAssumptionSolvingWithInterpolation() {
+    return supportsAssumptionSolving();
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.basicimpl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+
+/**
+ * Solver-independent implementation of {@link ProverEnvironment#allSat}, based only on {@link
+ * ProverEnvironment#isUnsatWithAssumptions} and {@link Model#evaluate}.
+ *
+ * <p>The blocking clauses of a call are asserted on a new level of the stack, which is popped when
+ * the call returns, also if the callback stopped the enumeration with an exception. Thus the
+ * prover can be used for further checks and enumerations, and the blocking clauses neither pile up
+ * nor introduce auxiliary variables into later models. Additional assumptions restrict the
+ * enumeration without being asserted, e.g., to one cube of a split search space.
+ *
+ * <p>The blocking clauses only contain the important predicates, i.e., the enumeration is
+ * projected onto them. Predicates without a value in a model are omitted from the model, like in
+ * partial models of the solvers. The prover has to provide a model after each satisfiable check,
+ * e.g., by creating it with {@link ProverOptions#GENERATE_MODELS}.
+ */
+public final class AssumptionBasedAllSat {
+
+  private final ProverEnvironment prover;
+  private final BooleanFormulaManager bmgr;
+
+  public AssumptionBasedAllSat(ProverEnvironment pProver, BooleanFormulaManager pBmgr) {
+    prover = checkNotNull(pProver);
+    bmgr = checkNotNull(pBmgr);
+  }
+
+  /** Enumerate the models of the prover, see {@link ProverEnvironment#allSat}. */
+  public <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    return allSat(callback, important, ImmutableList.of());
+  }
+
+  /**
+   * Enumerate the models of the prover that satisfy the assumptions, see {@link
+   * ProverEnvironment#allSat}. The assumptions are not part of the models, unless they are also
+   * important predicates.
+   */
+  public <T> T allSat(
+      AllSatCallback<T> callback,
+      List<BooleanFormula> important,
+      Collection<BooleanFormula> assumptions)
+      throws InterruptedException, SolverException {
+    prover.push();
+    try {
+      while (!isUnsat(assumptions)) {
+        List<BooleanFormula> model = getModel(important);
+        callback.apply(model);
+        prover.addConstraint(bmgr.not(bmgr.and(model)));
+      }
+    } finally {
+      // removes exactly the blocking clauses of this call
+      prover.pop();
+    }
+    return callback.getResult();
+  }
+
+  private boolean isUnsat(Collection<BooleanFormula> assumptions)
+      throws SolverException, InterruptedException {
+    return assumptions.isEmpty() ? prover.isUnsat() : prover.isUnsatWithAssumptions(assumptions);
+  }
+
+  private List<BooleanFormula> getModel(List<BooleanFormula> important) throws SolverException {
+    List<BooleanFormula> literals = new ArrayList<>(important.size());
+    try (Model model = prover.getModel()) {
+      for (BooleanFormula predicate : important) {
+        Boolean value = model.evaluate(predicate);
+        if (value != null) {
+          literals.add(value ? predicate : bmgr.not(predicate));
+        }
+      }
+    }
+    return literals;
+  }
+}
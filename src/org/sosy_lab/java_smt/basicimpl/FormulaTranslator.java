@@ -0,0 +1,483 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.basicimpl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSet;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.api.ArrayFormula;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BitvectorFormulaManager;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.FormulaType.BitvectorType;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.NumeralFormula;
+import org.sosy_lab.java_smt.api.NumeralFormulaManager;
+import org.sosy_lab.java_smt.api.QuantifiedFormulaManager.Quantifier;
+import org.sosy_lab.java_smt.api.visitors.FormulaVisitor;
+
+/**
+ * Translates formulas between two contexts by traversing the formula once and rebuilding each
+ * distinct subformula with the theory managers of the target context. Bitvector operations, which
+ * are reported as {@link org.sosy_lab.java_smt.api.FunctionDeclarationKind#OTHER}, are recognized
+ * by their SMT-LIB name.
+ *
+ * <p>Subformulas that can not be rebuilt (e.g., quantified formulas or operators without a
+ * counterpart in the API) are translated on their own via SMT-LIB. Only boolean formulas can be
+ * dumped, thus for a term of another sort the smallest boolean subformula containing it is
+ * translated via SMT-LIB, and the rest of the formula is still rebuilt structurally.
+ */
+final class FormulaTranslator implements FormulaVisitor<Void> {
+
+  /** Bitvector operations with a counterpart in {@link BitvectorFormulaManager}. */
+  private static final ImmutableSet<String> BITVECTOR_OPERATIONS =
+      ImmutableSet.of(
+          "bvneg", "bvnot", "bvadd", "bvsub", "bvmul", "bvand", "bvor", "bvxor", "concat",
+          "bvudiv", "bvsdiv", "bvurem", "bvsrem", "bvshl", "bvlshr", "bvashr", "bvult", "bvule",
+          "bvugt", "bvuge", "bvslt", "bvsle", "bvsgt", "bvsge", "zero_extend", "sign_extend");
+
+  /** Names of extract operations that contain the indices, e.g., {@code (_ extract 7 0)}. */
+  private static final Pattern EXTRACT_WITH_INDICES =
+      Pattern.compile("[^0-9]*extract[^0-9]+([0-9]+)[^0-9]+([0-9]+)[^0-9]*");
+
+  private final FormulaManager source;
+  private final FormulaManager target;
+  private final BooleanFormulaManager bmgr;
+
+  private final Deque<Formula> toProcess = new ArrayDeque<>();
+  private final Map<Formula, Formula> cache = new HashMap<>();
+
+  /** Non-boolean terms that can not be rebuilt, neither can the formulas containing them. */
+  private final Set<Formula> untranslatable = new HashSet<>();
+
+  FormulaTranslator(FormulaManager pSource, FormulaManager pTarget) {
+    source = checkNotNull(pSource);
+    target = checkNotNull(pTarget);
+    bmgr = target.getBooleanFormulaManager();
+  }
+
+  /**
+   * Translate a formula of the source context into the target context. The results are cached, so
+   * subformulas shared between several calls are only translated once.
+   */
+  BooleanFormula translate(BooleanFormula f) {
+    toProcess.push(f);
+    while (!toProcess.isEmpty()) {
+      Formula tt = toProcess.peek();
+      if (cache.containsKey(tt) || untranslatable.contains(tt)) {
+        toProcess.pop();
+      } else {
+        source.visit(tt, this);
+      }
+    }
+    return (BooleanFormula) checkNotNull(cache.get(f));
+  }
+
+  @Override
+  public Void visitFreeVariable(Formula f, String name) {
+    cache.put(f, target.makeVariable(source.getFormulaType(f), name));
+    return null;
+  }
+
+  @Override
+  public Void visitBoundVariable(Formula f, int deBruijnIdx) {
+    throw new UnsupportedOperationException("Bound variables can not be translated");
+  }
+
+  @Override
+  public Void visitConstant(Formula f, Object value) {
+    try {
+      cache.put(f, makeConstant(source.getFormulaType(f), value));
+    } catch (UnsupportedOperationException e) {
+      translateViaSmtLib(f);
+    }
+    return null;
+  }
+
+  /**
+   * Translate a formula that can not be rebuilt via SMT-LIB. Other terms are marked, such that the
+   * boolean formulas containing them are translated via SMT-LIB instead.
+   */
+  private void translateViaSmtLib(Formula f) {
+    if (f instanceof BooleanFormula) {
+      cache.put(f, target.parse(source.dumpFormula((BooleanFormula) f).toString()));
+    } else {
+      untranslatable.add(f);
+    }
+  }
+
+  private Formula makeConstant(FormulaType<?> type, Object value) {
+    if (type.isBooleanType() && value instanceof Boolean) {
+      return bmgr.makeBoolean((Boolean) value);
+    } else if (type.isIntegerType() && value instanceof BigInteger) {
+      return target.getIntegerFormulaManager().makeNumber((BigInteger) value);
+    } else if (type.isRationalType() && value instanceof BigInteger) {
+      return target.getRationalFormulaManager().makeNumber((BigInteger) value);
+    } else if (type.isRationalType() && value instanceof Rational) {
+      return target.getRationalFormulaManager().makeNumber((Rational) value);
+    } else if (type.isBitvectorType() && value instanceof BigInteger) {
+      return target
+          .getBitvectorFormulaManager()
+          .makeBitvector(((BitvectorType) type).getSize(), (BigInteger) value);
+    }
+    throw new UnsupportedOperationException("Constant " + value + " of type " + type);
+  }
+
+  @Override
+  public Void visitFunction(
+      Formula f, List<Formula> args, FunctionDeclaration<?> functionDeclaration) {
+    if (!isSupported(functionDeclaration, args) || containsUntranslatable(args)) {
+      translateViaSmtLib(f);
+      return null;
+    }
+
+    List<Formula> newArgs = new ArrayList<>(args.size());
+    boolean allArgumentsTranslated = true;
+    for (Formula arg : args) {
+      Formula newArg = cache.get(arg);
+      if (newArg == null) {
+        toProcess.push(arg);
+        allArgumentsTranslated = false;
+      } else {
+        newArgs.add(newArg);
+      }
+    }
+
+    if (allArgumentsTranslated) {
+      try {
+        cache.put(f, makeFunction(f, newArgs, functionDeclaration));
+      } catch (UnsupportedOperationException e) {
+        // e.g., the target context lacks the theory
+        translateViaSmtLib(f);
+      }
+    }
+    return null;
+  }
+
+  private boolean containsUntranslatable(List<Formula> args) {
+    for (Formula arg : args) {
+      if (untranslatable.contains(arg)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Void visitQuantifier(
+      BooleanFormula f, Quantifier quantifier, List<Formula> boundVariables, BooleanFormula body) {
+    translateViaSmtLib(f);
+    return null;
+  }
+
+  private boolean isSupported(FunctionDeclaration<?> decl, List<Formula> args) {
+    switch (decl.getKind()) {
+      case AND:
+      case OR:
+      case NOT:
+      case IFF:
+      case ITE:
+      case XOR:
+      case IMPLIES:
+      case UF:
+      case SELECT:
+      case STORE:
+        return true;
+      case EQ:
+        return args.size() == 2
+            && (source.getFormulaType(args.get(0)).isBooleanType()
+                || hasNumeralArguments(args)
+                || hasBitvectorArguments(args));
+      case DISTINCT:
+      case ADD:
+      case SUB:
+      case MUL:
+      case UMINUS:
+      case EQ_ZERO:
+      case GTE_ZERO:
+        return hasNumeralArguments(args);
+      case DIV:
+      case MODULO:
+      case LT:
+      case LTE:
+      case GT:
+      case GTE:
+        return args.size() == 2 && hasNumeralArguments(args);
+      case OTHER:
+        return !args.isEmpty()
+            && hasBitvectorArguments(args)
+            && (BITVECTOR_OPERATIONS.contains(decl.getName())
+                || getExtractIndices(decl.getName()) != null);
+      default:
+        return false;
+    }
+  }
+
+  private boolean hasBitvectorArguments(List<Formula> args) {
+    for (Formula arg : args) {
+      if (!source.getFormulaType(arg).isBitvectorType()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the indices (msb and lsb) of an extract operation with the given name, or null if the
+   * name is not the name of an extract operation or does not contain the indices.
+   */
+  static @Nullable int[] getExtractIndices(String name) {
+    Matcher matcher = EXTRACT_WITH_INDICES.matcher(name);
+    if (!matcher.matches()) {
+      return null;
+    }
+    return new int[] {Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))};
+  }
+
+  private boolean hasNumeralArguments(List<Formula> args) {
+    for (Formula arg : args) {
+      FormulaType<?> type = source.getFormulaType(arg);
+      if (!type.isIntegerType() && !type.isRationalType()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Formula makeFunction(Formula f, List<Formula> args, FunctionDeclaration<?> decl) {
+    switch (decl.getKind()) {
+      case AND:
+        return bmgr.and(asBooleans(args));
+      case OR:
+        return bmgr.or(asBooleans(args));
+      case NOT:
+        return bmgr.not((BooleanFormula) args.get(0));
+      case IFF:
+        return bmgr.equivalence((BooleanFormula) args.get(0), (BooleanFormula) args.get(1));
+      case XOR:
+        return bmgr.xor((BooleanFormula) args.get(0), (BooleanFormula) args.get(1));
+      case IMPLIES:
+        return bmgr.implication((BooleanFormula) args.get(0), (BooleanFormula) args.get(1));
+      case ITE:
+        return bmgr.ifThenElse((BooleanFormula) args.get(0), args.get(1), args.get(2));
+      case UF:
+        return target
+            .getUFManager()
+            .declareAndCallUF(decl.getName(), source.getFormulaType(f), args);
+      case SELECT:
+        return target
+            .getArrayFormulaManager()
+            .select((ArrayFormula<Formula, Formula>) args.get(0), args.get(1));
+      case STORE:
+        return target
+            .getArrayFormulaManager()
+            .store((ArrayFormula<Formula, Formula>) args.get(0), args.get(1), args.get(2));
+      case EQ:
+        if (args.get(0) instanceof BooleanFormula) {
+          return bmgr.equivalence((BooleanFormula) args.get(0), (BooleanFormula) args.get(1));
+        } else if (args.get(0) instanceof BitvectorFormula) {
+          return target
+              .getBitvectorFormulaManager()
+              .equal((BitvectorFormula) args.get(0), (BitvectorFormula) args.get(1));
+        }
+        return getNumeralManager(args).equal(asNumeral(args, 0), asNumeral(args, 1));
+      case OTHER:
+        return makeBitvectorOperation(f, decl.getName(), args);
+      default:
+        return makeArithmetic(decl, args);
+    }
+  }
+
+  private Formula makeBitvectorOperation(Formula f, String name, List<Formula> args) {
+    BitvectorFormulaManager bvmgr = target.getBitvectorFormulaManager();
+    BitvectorFormula first = asBitvector(args, 0);
+    switch (name) {
+      case "bvneg":
+        return bvmgr.negate(first);
+      case "bvnot":
+        return bvmgr.not(first);
+      case "bvadd":
+        return foldBitvectors(args, bvmgr::add);
+      case "bvsub":
+        return foldBitvectors(args, bvmgr::subtract);
+      case "bvmul":
+        return foldBitvectors(args, bvmgr::multiply);
+      case "bvand":
+        return foldBitvectors(args, bvmgr::and);
+      case "bvor":
+        return foldBitvectors(args, bvmgr::or);
+      case "bvxor":
+        return foldBitvectors(args, bvmgr::xor);
+      case "concat":
+        return foldBitvectors(args, bvmgr::concat);
+      case "bvudiv":
+        return bvmgr.divide(first, asBitvector(args, 1), false);
+      case "bvsdiv":
+        return bvmgr.divide(first, asBitvector(args, 1), true);
+      case "bvurem":
+        return bvmgr.modulo(first, asBitvector(args, 1), false);
+      case "bvsrem":
+        return bvmgr.modulo(first, asBitvector(args, 1), true);
+      case "bvshl":
+        return bvmgr.shiftLeft(first, asBitvector(args, 1));
+      case "bvlshr":
+        return bvmgr.shiftRight(first, asBitvector(args, 1), false);
+      case "bvashr":
+        return bvmgr.shiftRight(first, asBitvector(args, 1), true);
+      case "bvult":
+        return bvmgr.lessThan(first, asBitvector(args, 1), false);
+      case "bvule":
+        return bvmgr.lessOrEquals(first, asBitvector(args, 1), false);
+      case "bvugt":
+        return bvmgr.greaterThan(first, asBitvector(args, 1), false);
+      case "bvuge":
+        return bvmgr.greaterOrEquals(first, asBitvector(args, 1), false);
+      case "bvslt":
+        return bvmgr.lessThan(first, asBitvector(args, 1), true);
+      case "bvsle":
+        return bvmgr.lessOrEquals(first, asBitvector(args, 1), true);
+      case "bvsgt":
+        return bvmgr.greaterThan(first, asBitvector(args, 1), true);
+      case "bvsge":
+        return bvmgr.greaterOrEquals(first, asBitvector(args, 1), true);
+      case "zero_extend":
+      case "sign_extend":
+        FormulaType<?> type = source.getFormulaType(f);
+        int extensionBits = ((BitvectorType) type).getSize() - bvmgr.getLength(first);
+        return bvmgr.extend(first, extensionBits, name.equals("sign_extend"));
+      default:
+        int[] indices = checkNotNull(getExtractIndices(name));
+        return bvmgr.extract(first, indices[0], indices[1], false);
+    }
+  }
+
+  private static BitvectorFormula foldBitvectors(
+      List<Formula> args, BinaryOperator<BitvectorFormula> operation) {
+    BitvectorFormula result = asBitvector(args, 0);
+    for (int i = 1; i < args.size(); i++) {
+      result = operation.apply(result, asBitvector(args, i));
+    }
+    return result;
+  }
+
+  private Formula makeArithmetic(FunctionDeclaration<?> decl, List<Formula> args) {
+    NumeralFormulaManager<NumeralFormula, ? extends NumeralFormula> nmgr = getNumeralManager(args);
+    switch (decl.getKind()) {
+      case DISTINCT:
+        List<BooleanFormula> inequalities = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+          for (int j = i + 1; j < args.size(); j++) {
+            inequalities.add(bmgr.not(nmgr.equal(asNumeral(args, i), asNumeral(args, j))));
+          }
+        }
+        return bmgr.and(inequalities);
+      case ADD:
+        return nmgr.sum(asNumerals(args));
+      case SUB:
+        NumeralFormula difference = asNumeral(args, 0);
+        for (int i = 1; i < args.size(); i++) {
+          difference = nmgr.subtract(difference, asNumeral(args, i));
+        }
+        return difference;
+      case MUL:
+        NumeralFormula product = asNumeral(args, 0);
+        for (int i = 1; i < args.size(); i++) {
+          product = nmgr.multiply(product, asNumeral(args, i));
+        }
+        return product;
+      case UMINUS:
+        return nmgr.negate(asNumeral(args, 0));
+      case DIV:
+        return nmgr.divide(asNumeral(args, 0), asNumeral(args, 1));
+      case MODULO:
+        return nmgr.modulo(asNumeral(args, 0), asNumeral(args, 1));
+      case LT:
+        return nmgr.lessThan(asNumeral(args, 0), asNumeral(args, 1));
+      case LTE:
+        return nmgr.lessOrEquals(asNumeral(args, 0), asNumeral(args, 1));
+      case GT:
+        return nmgr.greaterThan(asNumeral(args, 0), asNumeral(args, 1));
+      case GTE:
+        return nmgr.greaterOrEquals(asNumeral(args, 0), asNumeral(args, 1));
+      case EQ_ZERO:
+        return nmgr.equal(asNumeral(args, 0), nmgr.makeNumber(0));
+      case GTE_ZERO:
+        return nmgr.greaterOrEquals(asNumeral(args, 0), nmgr.makeNumber(0));
+      default:
+        throw new AssertionError("unexpected operator " + decl);
+    }
+  }
+
+  /** Integer arithmetic is used if all arguments are integers, rational arithmetic otherwise. */
+  @SuppressWarnings("unchecked")
+  private NumeralFormulaManager<NumeralFormula, ? extends NumeralFormula> getNumeralManager(
+      List<Formula> args) {
+    boolean allIntegers = true;
+    for (Formula arg : args) {
+      FormulaType<?> type = target.getFormulaType(arg);
+      if (!type.isIntegerType()) {
+        allIntegers = false;
+      }
+    }
+    if (allIntegers) {
+      return (NumeralFormulaManager<NumeralFormula, ? extends NumeralFormula>)
+          (NumeralFormulaManager<?, ?>) target.getIntegerFormulaManager();
+    }
+    return (NumeralFormulaManager<NumeralFormula, ? extends NumeralFormula>)
+        (NumeralFormulaManager<?, ?>) target.getRationalFormulaManager();
+  }
+
+  private static BitvectorFormula asBitvector(List<Formula> args, int i) {
+    return (BitvectorFormula) args.get(i);
+  }
+
+  private static NumeralFormula asNumeral(List<Formula> args, int i) {
+    return (NumeralFormula) args.get(i);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<NumeralFormula> asNumerals(List<Formula> args) {
+    return (List<NumeralFormula>) (List<?>) args;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<BooleanFormula> asBooleans(List<Formula> args) {
+    return (List<BooleanFormula>) (List<?>) args;
+  }
+}
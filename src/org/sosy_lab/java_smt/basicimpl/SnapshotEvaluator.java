@@ -0,0 +1,621 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.basicimpl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.api.ArrayFormula;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.FormulaType.BitvectorType;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.ModelSnapshot;
+import org.sosy_lab.java_smt.api.QuantifiedFormulaManager.Quantifier;
+import org.sosy_lab.java_smt.api.visitors.FormulaVisitor;
+
+/**
+ * Evaluates formulas on a {@link ModelSnapshot} in Java, i.e., without a solver model. This allows
+ * to evaluate many formulas on many stored models after the models (but not the formula manager)
+ * were closed.
+ *
+ * <p>The formulas are traversed with a {@link FormulaVisitor}, and boolean connectives, ITE, linear
+ * and non-linear arithmetic over integers and rationals, bitvector operations, arrays, and UFs are
+ * interpreted in Java. Operations that are reported as {@link
+ * org.sosy_lab.java_smt.api.FunctionDeclarationKind#OTHER} are recognized by their SMT-LIB name.
+ * The values of all subterms are memoized, such that shared subterms of several formulas are
+ * evaluated only once per evaluator.
+ *
+ * <p>Like {@link Model#evaluate(Formula)}, the evaluation returns null if a value is missing in
+ * the snapshot, unless the value is irrelevant, e.g., because another operand of a conjunction is
+ * false. Quantifiers and unknown operations can not be evaluated and lead to an {@link
+ * UnsupportedOperationException}. Instances are not thread-safe.
+ */
+public final class SnapshotEvaluator {
+
+  /** Marks formulas without a value in {@link #values}. */
+  private static final Object NO_VALUE = new Object();
+
+  private final ModelSnapshot snapshot;
+  private final FormulaManager fmgr;
+  private final FormulaVisitor<Object> visitor = new EvaluationVisitor();
+  private final Map<Formula, Object> values = new HashMap<>();
+
+  public SnapshotEvaluator(ModelSnapshot pSnapshot, FormulaManager pFmgr) {
+    snapshot = checkNotNull(pSnapshot);
+    fmgr = checkNotNull(pFmgr);
+  }
+
+  /**
+   * Evaluate a formula on the snapshot.
+   *
+   * @return the value of the formula with the same types as {@link Model#evaluate(Formula)}, or
+   *     null if the snapshot lacks a value that is needed.
+   */
+  public @Nullable Object evaluate(Formula f) {
+    checkArgument(
+        !(f instanceof ArrayFormula),
+        "cannot compute a simple constant evaluation for an array-formula");
+    return evaluateTerm(f);
+  }
+
+  /** Type-safe evaluation for boolean formulas. */
+  public @Nullable Boolean evaluate(BooleanFormula f) {
+    return (Boolean) evaluateTerm(f);
+  }
+
+  private @Nullable Object evaluateTerm(Formula f) {
+    Object value = values.get(f);
+    if (value == null) {
+      value = fmgr.visit(f, visitor);
+      values.put(f, value == null ? NO_VALUE : value);
+      return value;
+    }
+    return value == NO_VALUE ? null : value;
+  }
+
+  /** Evaluate all formulas, returning null if any of the values is missing. */
+  private @Nullable List<Object> evaluateAll(List<Formula> formulas) {
+    List<Object> result = new ArrayList<>(formulas.size());
+    for (Formula f : formulas) {
+      Object value = evaluateTerm(f);
+      if (value == null) {
+        return null;
+      }
+      result.add(value);
+    }
+    return result;
+  }
+
+  private class EvaluationVisitor implements FormulaVisitor<Object> {
+
+    @Override
+    public @Nullable Object visitFreeVariable(Formula f, String name) {
+      if (f instanceof ArrayFormula) {
+        return new SymbolArray(name, ImmutableList.of());
+      }
+      return snapshot.getValue(name);
+    }
+
+    @Override
+    public Object visitBoundVariable(Formula f, int deBruijnIdx) {
+      throw new UnsupportedOperationException("cannot evaluate bound variable " + f);
+    }
+
+    @Override
+    public Object visitConstant(Formula f, Object value) {
+      if (value instanceof Number) {
+        return toNumber(toRational(value), fmgr.getFormulaType(f));
+      }
+      return value;
+    }
+
+    @Override
+    public Object visitQuantifier(
+        BooleanFormula f,
+        Quantifier quantifier,
+        List<Formula> boundVariables,
+        BooleanFormula body) {
+      throw new UnsupportedOperationException("cannot evaluate quantified formula " + f);
+    }
+
+    @Override
+    public @Nullable Object visitFunction(
+        Formula f, List<Formula> args, FunctionDeclaration<?> functionDeclaration) {
+      switch (functionDeclaration.getKind()) {
+        case AND:
+          return evaluateJunction(args, false);
+        case OR:
+          return evaluateJunction(args, true);
+        case NOT:
+          Boolean operand = (Boolean) evaluateTerm(args.get(0));
+          return operand == null ? null : !operand;
+        case IMPLIES:
+          return evaluateImplication(args.get(0), args.get(1));
+        case XOR:
+          return evaluateOperator("xor", f, args);
+        case IFF:
+        case EQ:
+          return evaluateOperator("=", f, args);
+        case DISTINCT:
+          return evaluateOperator("distinct", f, args);
+        case ITE:
+          Boolean condition = (Boolean) evaluateTerm(args.get(0));
+          return condition == null ? null : evaluateTerm(args.get(condition ? 1 : 2));
+        case SELECT:
+          return evaluateSelect(f, args);
+        case STORE:
+          return evaluateStore(args);
+        case UF:
+          List<Object> arguments = evaluateAll(args);
+          return arguments == null
+              ? null
+              : snapshot.getValue(functionDeclaration.getName(), arguments);
+        case VAR:
+          return visitFreeVariable(f, functionDeclaration.getName());
+        case UMINUS:
+          return evaluateOperator("-", f, args);
+        case SUB:
+          return evaluateOperator("-", f, args);
+        case ADD:
+          return evaluateOperator("+", f, args);
+        case DIV:
+          return evaluateOperator("/", f, args);
+        case MUL:
+          return evaluateOperator("*", f, args);
+        case MODULO:
+          return evaluateOperator("mod", f, args);
+        case LT:
+          return evaluateOperator("<", f, args);
+        case LTE:
+          return evaluateOperator("<=", f, args);
+        case GT:
+          return evaluateOperator(">", f, args);
+        case GTE:
+          return evaluateOperator(">=", f, args);
+        case EQ_ZERO:
+          return evaluateOperator("eq_zero", f, args);
+        case GTE_ZERO:
+          return evaluateOperator("gte_zero", f, args);
+        case OTHER:
+          return evaluateOperator(functionDeclaration.getName(), f, args);
+        default:
+          throw new UnsupportedOperationException("cannot evaluate " + f);
+      }
+    }
+  }
+
+  /**
+   * Evaluate a conjunction (if the dominating value is false) or a disjunction (if it is true).
+   * Missing values do not matter if another operand has the dominating value.
+   */
+  private @Nullable Boolean evaluateJunction(List<Formula> args, boolean dominating) {
+    boolean missingValue = false;
+    for (Formula arg : args) {
+      Boolean value = (Boolean) evaluateTerm(arg);
+      if (value == null) {
+        missingValue = true;
+      } else if (value == dominating) {
+        return dominating;
+      }
+    }
+    return missingValue ? null : !dominating;
+  }
+
+  private @Nullable Boolean evaluateImplication(Formula premise, Formula conclusion) {
+    Boolean premiseValue = (Boolean) evaluateTerm(premise);
+    if (Boolean.FALSE.equals(premiseValue)) {
+      return true;
+    }
+    Boolean conclusionValue = (Boolean) evaluateTerm(conclusion);
+    if (Boolean.TRUE.equals(conclusionValue)) {
+      return true;
+    }
+    return premiseValue == null || conclusionValue == null ? null : false;
+  }
+
+  private @Nullable Object evaluateSelect(Formula f, List<Formula> args) {
+    ArrayValue array = (ArrayValue) evaluateTerm(args.get(0));
+    Object index = evaluateTerm(args.get(1));
+    if (array == null || index == null) {
+      return null;
+    }
+    return array.select(index, f instanceof ArrayFormula);
+  }
+
+  private @Nullable Object evaluateStore(List<Formula> args) {
+    List<Object> operands = evaluateAll(args);
+    if (operands == null) {
+      return null;
+    }
+    return new StoredArray((ArrayValue) operands.get(0), operands.get(1), operands.get(2));
+  }
+
+  /** Evaluate an interpreted operation, given by its SMT-LIB name. */
+  private @Nullable Object evaluateOperator(String operator, Formula f, List<Formula> args) {
+    List<Object> operands = evaluateAll(args);
+    if (operands == null) {
+      return null;
+    }
+    switch (operator) {
+      case "=":
+        for (int i = 1; i < operands.size(); i++) {
+          if (!valueEquals(operands.get(0), operands.get(i))) {
+            return false;
+          }
+        }
+        return true;
+      case "distinct":
+        for (int i = 0; i < operands.size(); i++) {
+          for (int j = i + 1; j < operands.size(); j++) {
+            if (valueEquals(operands.get(i), operands.get(j))) {
+              return false;
+            }
+          }
+        }
+        return true;
+      case "xor":
+        boolean parity = false;
+        for (Object operand : operands) {
+          parity ^= (Boolean) operand;
+        }
+        return parity;
+      default:
+        if (fmgr.getFormulaType(args.get(0)).isBitvectorType()) {
+          return evaluateBitvectorOperator(operator, f, args, operands);
+        }
+        return evaluateNumeralOperator(operator, f, operands);
+    }
+  }
+
+  private Object evaluateNumeralOperator(String operator, Formula f, List<Object> operands) {
+    List<Rational> numbers = new ArrayList<>(operands.size());
+    for (Object operand : operands) {
+      numbers.add(toRational(operand));
+    }
+    Rational first = numbers.get(0);
+    FormulaType<?> type = fmgr.getFormulaType(f);
+    Rational result;
+    switch (operator) {
+      case "+":
+        result = Rational.ZERO;
+        for (Rational number : numbers) {
+          result = result.plus(number);
+        }
+        break;
+      case "*":
+        result = Rational.ONE;
+        for (Rational number : numbers) {
+          result = result.times(number);
+        }
+        break;
+      case "-":
+        if (numbers.size() == 1) {
+          result = first.negate();
+        } else {
+          result = first;
+          for (Rational number : numbers.subList(1, numbers.size())) {
+            result = result.minus(number);
+          }
+        }
+        break;
+      case "/":
+        if (type.isIntegerType()) {
+          return evaluateNumeralOperator("div", f, operands);
+        }
+        result = first;
+        for (Rational number : numbers.subList(1, numbers.size())) {
+          if (number.signum() == 0) {
+            return null; // division by zero is not specified
+          }
+          result = result.divides(number);
+        }
+        break;
+      case "div":
+      case "mod":
+        BigInteger dividend = first.getNum();
+        BigInteger divisor = numbers.get(1).getNum();
+        if (divisor.signum() == 0) {
+          return null; // division by zero is not specified
+        }
+        // SMT-LIB defines the remainder to be non-negative
+        BigInteger remainder = dividend.mod(divisor.abs());
+        if (operator.equals("mod")) {
+          return remainder;
+        }
+        return dividend.subtract(remainder).divide(divisor);
+      case "abs":
+        result = first.abs();
+        break;
+      case "to_real":
+        result = first;
+        break;
+      case "to_int":
+        return floor(first);
+      case "is_int":
+        return first.isIntegral();
+      case "<":
+      case "<=":
+      case ">":
+      case ">=":
+        for (int i = 1; i < numbers.size(); i++) {
+          if (!compare(operator, numbers.get(i - 1).compareTo(numbers.get(i)))) {
+            return false;
+          }
+        }
+        return true;
+      case "eq_zero":
+        return first.signum() == 0;
+      case "gte_zero":
+        return first.signum() >= 0;
+      default:
+        throw new UnsupportedOperationException("cannot evaluate " + operator + " in " + f);
+    }
+    return toNumber(result, type);
+  }
+
+  private Object evaluateBitvectorOperator(
+      String operator, Formula f, List<Formula> args, List<Object> operands) {
+    int size = getBitvectorSize(args.get(0));
+    BigInteger modulus = BigInteger.ONE.shiftLeft(size);
+    BigInteger mask = modulus.subtract(BigInteger.ONE);
+    BigInteger first = (BigInteger) operands.get(0);
+    BigInteger second = operands.size() > 1 ? (BigInteger) operands.get(1) : null;
+    switch (operator) {
+      case "+":
+      case "bvadd":
+        return fold(operands, BigInteger::add).mod(modulus);
+      case "-":
+      case "bvsub":
+        return (second == null ? first.negate() : fold(operands, BigInteger::subtract))
+            .mod(modulus);
+      case "bvneg":
+        return first.negate().mod(modulus);
+      case "*":
+      case "bvmul":
+        return fold(operands, BigInteger::multiply).mod(modulus);
+      case "bvand":
+        return fold(operands, BigInteger::and);
+      case "bvor":
+        return fold(operands, BigInteger::or);
+      case "bvxor":
+        return fold(operands, BigInteger::xor);
+      case "bvnot":
+        return first.xor(mask);
+      case "bvudiv":
+        return unsignedDivide(first, second, mask);
+      case "bvurem":
+        return unsignedRemainder(first, second);
+      case "bvsdiv":
+        // the signed operations work on the absolute values as in the SMT-LIB definitions
+        BigInteger quotient = unsignedDivide(abs(first, size), abs(second, size), mask);
+        return first.testBit(size - 1) == second.testBit(size - 1)
+            ? quotient
+            : quotient.negate().mod(modulus);
+      case "bvsrem":
+        BigInteger remainder = unsignedRemainder(abs(first, size), abs(second, size));
+        return first.testBit(size - 1) ? remainder.negate().mod(modulus) : remainder;
+      case "bvsmod":
+        // the result has the sign of the divisor
+        BigInteger modulo = unsignedRemainder(abs(first, size), abs(second, size));
+        if (modulo.signum() == 0 || first.testBit(size - 1) == second.testBit(size - 1)) {
+          return first.testBit(size - 1) ? modulo.negate().mod(modulus) : modulo;
+        }
+        return (first.testBit(size - 1) ? second.subtract(modulo) : modulo.add(second))
+            .mod(modulus);
+      case "bvshl":
+        return second.compareTo(BigInteger.valueOf(size)) >= 0
+            ? BigInteger.ZERO
+            : first.shiftLeft(second.intValue()).and(mask);
+      case "bvlshr":
+        return second.compareTo(BigInteger.valueOf(size)) >= 0
+            ? BigInteger.ZERO
+            : first.shiftRight(second.intValue());
+      case "bvashr":
+        int shift = second.min(BigInteger.valueOf(size)).intValue();
+        return toSigned(first, size).shiftRight(shift).mod(modulus);
+      case "bvult":
+        return first.compareTo(second) < 0;
+      case "bvule":
+        return first.compareTo(second) <= 0;
+      case "bvugt":
+        return first.compareTo(second) > 0;
+      case "bvuge":
+        return first.compareTo(second) >= 0;
+      case "bvslt":
+        return toSigned(first, size).compareTo(toSigned(second, size)) < 0;
+      case "bvsle":
+        return toSigned(first, size).compareTo(toSigned(second, size)) <= 0;
+      case "bvsgt":
+        return toSigned(first, size).compareTo(toSigned(second, size)) > 0;
+      case "bvsge":
+        return toSigned(first, size).compareTo(toSigned(second, size)) >= 0;
+      case "concat":
+        BigInteger concatenation = first;
+        for (int i = 1; i < operands.size(); i++) {
+          BigInteger operand = (BigInteger) operands.get(i);
+          concatenation = concatenation.shiftLeft(getBitvectorSize(args.get(i))).or(operand);
+        }
+        return concatenation;
+      default:
+        // the size of the result is given by the type, the names may contain further indices
+        BigInteger resultModulus = BigInteger.ONE.shiftLeft(getBitvectorSize(f));
+        if (operator.startsWith("zero_extend")) {
+          return first;
+        } else if (operator.startsWith("sign_extend")) {
+          return toSigned(first, size).mod(resultModulus);
+        }
+        int[] indices = FormulaTranslator.getExtractIndices(operator);
+        if (indices == null) {
+          throw new UnsupportedOperationException("cannot evaluate " + operator + " in " + f);
+        }
+        return first.shiftRight(indices[1]).mod(resultModulus);
+    }
+  }
+
+  /** Unsigned division, where division by zero is defined to be the largest value. */
+  private static BigInteger unsignedDivide(
+      BigInteger dividend, BigInteger divisor, BigInteger max) {
+    return divisor.signum() == 0 ? max : dividend.divide(divisor);
+  }
+
+  /** Unsigned remainder, where the remainder of a division by zero is the dividend. */
+  private static BigInteger unsignedRemainder(BigInteger dividend, BigInteger divisor) {
+    return divisor.signum() == 0 ? dividend : dividend.mod(divisor);
+  }
+
+  /** The absolute value of a bitvector interpreted as signed number. */
+  private static BigInteger abs(BigInteger value, int size) {
+    return toSigned(value, size).abs();
+  }
+
+  private int getBitvectorSize(Formula f) {
+    FormulaType<?> type = fmgr.getFormulaType(f);
+    return ((BitvectorType) type).getSize();
+  }
+
+  private static BigInteger fold(List<Object> operands, BinaryOperator<BigInteger> operation) {
+    BigInteger result = (BigInteger) operands.get(0);
+    for (Object operand : operands.subList(1, operands.size())) {
+      result = operation.apply(result, (BigInteger) operand);
+    }
+    return result;
+  }
+
+  private static BigInteger toSigned(BigInteger value, int size) {
+    return value.testBit(size - 1) ? value.subtract(BigInteger.ONE.shiftLeft(size)) : value;
+  }
+
+  private static boolean compare(String operator, int comparison) {
+    switch (operator) {
+      case "<":
+        return comparison < 0;
+      case "<=":
+        return comparison <= 0;
+      case ">":
+        return comparison > 0;
+      default:
+        return comparison >= 0;
+    }
+  }
+
+  private static BigInteger floor(Rational value) {
+    BigInteger[] divideAndRemainder = value.getNum().divideAndRemainder(value.getDen());
+    BigInteger quotient = divideAndRemainder[0];
+    return divideAndRemainder[1].signum() < 0 ? quotient.subtract(BigInteger.ONE) : quotient;
+  }
+
+  private static Rational toRational(Object value) {
+    if (value instanceof Rational) {
+      return (Rational) value;
+    } else if (value instanceof BigInteger) {
+      return Rational.ofBigInteger((BigInteger) value);
+    } else if (value instanceof BigDecimal) {
+      return Rational.ofBigDecimal((BigDecimal) value);
+    } else if (value instanceof Long || value instanceof Integer) {
+      return Rational.ofLong(((Number) value).longValue());
+    }
+    throw new UnsupportedOperationException("cannot evaluate arithmetic on value " + value);
+  }
+
+  /** Convert a number into the representation of values of the given type. */
+  private static Object toNumber(Rational value, FormulaType<?> type) {
+    if ((type.isIntegerType() || type.isBitvectorType()) && value.isIntegral()) {
+      return value.getNum();
+    }
+    return value;
+  }
+
+  private static boolean valueEquals(Object value1, Object value2) {
+    if (value1 instanceof ArrayValue || value2 instanceof ArrayValue) {
+      throw new UnsupportedOperationException("cannot compare arrays without a solver");
+    }
+    if (value1 instanceof Number && value2 instanceof Number) {
+      return toRational(value1).equals(toRational(value2));
+    }
+    return value1.equals(value2);
+  }
+
+  /** The value of an array. */
+  private interface ArrayValue {
+
+    /**
+     * Get the element at the given index, or null if the snapshot lacks its value.
+     *
+     * @param isArray whether the elements are arrays themselves
+     */
+    @Nullable
+    Object select(Object index, boolean isArray);
+  }
+
+  /** An array variable or an element of an array variable that is an array itself. */
+  private class SymbolArray implements ArrayValue {
+
+    private final String name;
+    private final ImmutableList<Object> indices;
+
+    private SymbolArray(String pName, ImmutableList<Object> pIndices) {
+      name = pName;
+      indices = pIndices;
+    }
+
+    @Override
+    public @Nullable Object select(Object index, boolean isArray) {
+      ImmutableList<Object> elementIndices =
+          ImmutableList.builder().addAll(indices).add(index).build();
+      if (isArray) {
+        return new SymbolArray(name, elementIndices);
+      }
+      return snapshot.getValue(name, elementIndices);
+    }
+  }
+
+  /** An array that is modified at one index. */
+  private static class StoredArray implements ArrayValue {
+
+    private final ArrayValue base;
+    private final Object index;
+    private final Object value;
+
+    private StoredArray(ArrayValue pBase, Object pIndex, Object pValue) {
+      base = pBase;
+      index = pIndex;
+      value = pValue;
+    }
+
+    @Override
+    public @Nullable Object select(Object pIndex, boolean isArray) {
+      return valueEquals(index, pIndex) ? value : base.select(pIndex, isArray);
+    }
+  }
+}
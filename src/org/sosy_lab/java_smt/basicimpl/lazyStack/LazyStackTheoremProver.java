@@ -0,0 +1,159 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.basicimpl.lazyStack;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverException;
+
+/**
+ * Theorem prover that keeps pushed levels and their constraints in Java until the next query
+ * that needs the solver. A push followed by a pop without a check in between thus causes no
+ * operation in the wrapped prover at all, and several pending pops are executed as one.
+ *
+ * <p>Models and unsat cores always refer to the last check of the wrapped prover, thus retrieving
+ * them does not materialize pending levels.
+ */
+public class LazyStackTheoremProver implements ProverEnvironment {
+
+  private final ProverEnvironment delegate;
+
+  /** Levels that were pushed, but not yet pushed onto the wrapped prover, top level first. */
+  private final Deque<List<BooleanFormula>> pendingLevels = new ArrayDeque<>();
+
+  /** Number of levels that were pushed onto the wrapped prover. */
+  private int materializedLevels = 0;
+
+  public LazyStackTheoremProver(ProverEnvironment pDelegate) {
+    delegate = Preconditions.checkNotNull(pDelegate);
+  }
+
+  @Override
+  public void push() {
+    pendingLevels.push(new ArrayList<>());
+  }
+
+  @Override
+  public void pop() {
+    pop(1);
+  }
+
+  @Override
+  public void pop(int levels) {
+    Preconditions.checkArgument(levels >= 0);
+    Preconditions.checkState(levels <= pendingLevels.size() + materializedLevels);
+    int pending = Math.min(levels, pendingLevels.size());
+    for (int i = 0; i < pending; i++) {
+      pendingLevels.pop();
+    }
+    if (levels > pending) {
+      materializedLevels -= levels - pending;
+      delegate.pop(levels - pending);
+    }
+  }
+
+  @Override
+  public void interrupt() {
+    delegate.interrupt();
+  }
+
+  @Override
+  @Nullable
+  public Void addConstraint(BooleanFormula pConstraint) {
+    if (pendingLevels.isEmpty()) {
+      return delegate.addConstraint(pConstraint);
+    }
+    pendingLevels.peek().add(pConstraint);
+    return null;
+  }
+
+  /** Push all pending levels with their constraints onto the wrapped prover. */
+  private void materialize() {
+    Iterator<List<BooleanFormula>> bottomUp = pendingLevels.descendingIterator();
+    while (bottomUp.hasNext()) {
+      delegate.push();
+      materializedLevels++;
+      for (BooleanFormula constraint : bottomUp.next()) {
+        delegate.addConstraint(constraint);
+      }
+    }
+    pendingLevels.clear();
+  }
+
+  @Override
+  public boolean isUnsat() throws SolverException, InterruptedException {
+    materialize();
+    return delegate.isUnsat();
+  }
+
+  @Override
+  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
+      throws SolverException, InterruptedException {
+    materialize();
+    return delegate.isUnsatWithAssumptions(assumptions);
+  }
+
+  @Override
+  public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
+      Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
+    materialize();
+    return delegate.unsatCoreOverAssumptions(assumptions);
+  }
+
+  @Override
+  public <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    materialize();
+    return delegate.allSat(callback, important);
+  }
+
+  @Override
+  public List<BooleanFormula> getUnsatCore() {
+    return delegate.getUnsatCore();
+  }
+
+  @Override
+  public Model getModel() throws SolverException {
+    return delegate.getModel();
+  }
+
+  @Override
+  public ImmutableList<ValueAssignment> getModelAssignments() throws SolverException {
+    return delegate.getModelAssignments();
+  }
+
+  @Override
+  public void close() {
+    pendingLevels.clear();
+    delegate.close();
+  }
+}
@@ -58,6 +58,18 @@ abstract class ReusableStackAbstractProver<T, D extends BasicProverEnvironment<T
     delegate.pop();
   }
 
+  @Override
+  public void pop(int levels) {
+    Preconditions.checkState(size >= levels);
+    size -= levels;
+    delegate.pop(levels);
+  }
+
+  @Override
+  public void interrupt() {
+    delegate.interrupt();
+  }
+
   @Override
   public Model getModel() throws SolverException {
     Preconditions.checkState(size >= 0);
@@ -20,8 +20,12 @@
 package org.sosy_lab.java_smt.basicimpl.withAssumptionsWrapper;
 
 import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.sosy_lab.java_smt.api.BasicProverEnvironment;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.Model;
@@ -38,10 +42,41 @@ public class BasicProverWithAssumptionsWrapper<T, P extends BasicProverEnvironme
   }
 
   protected void clearAssumptions() {
-    for (int i = 0; i < solverAssumptionsAsFormula.size(); i++) {
-      delegate.pop();
+    popAssumptions(solverAssumptionsAsFormula.size());
+  }
+
+  /**
+   * Update the assumptions on the solver stack such that they match the given assumptions. The
+   * order of the assumptions is irrelevant, thus the longest prefix of the current assumptions
+   * that are also part of the given assumptions is kept on the stack. Only the levels above are
+   * popped and the missing assumptions are pushed again.
+   */
+  protected void updateAssumptions(Collection<BooleanFormula> pAssumptions) {
+    Set<BooleanFormula> missing = new LinkedHashSet<>(pAssumptions);
+    int reusable = 0;
+    while (reusable < solverAssumptionsAsFormula.size()
+        && missing.remove(solverAssumptionsAsFormula.get(reusable))) {
+      reusable++;
     }
-    solverAssumptionsAsFormula.clear();
+    popAssumptions(solverAssumptionsAsFormula.size() - reusable);
+    for (BooleanFormula assumption : missing) {
+      pushAssumption(assumption);
+    }
+  }
+
+  /** Push one assumption as a new level onto the solver stack. */
+  @CanIgnoreReturnValue
+  protected T pushAssumption(BooleanFormula pAssumption) {
+    T id = delegate.push(pAssumption);
+    solverAssumptionsAsFormula.add(pAssumption);
+    return id;
+  }
+
+  /** Pop the given number of assumptions from the top of the solver stack. */
+  protected void popAssumptions(int pNumber) {
+    delegate.pop(pNumber);
+    int size = solverAssumptionsAsFormula.size();
+    solverAssumptionsAsFormula.subList(size - pNumber, size).clear();
   }
 
   @Override
@@ -50,8 +85,20 @@ public class BasicProverWithAssumptionsWrapper<T, P extends BasicProverEnvironme
     delegate.pop();
   }
 
+  @Override
+  public void pop(int levels) {
+    clearAssumptions();
+    delegate.pop(levels);
+  }
+
+  @Override
+  public void interrupt() {
+    delegate.interrupt();
+  }
+
   @Override
   public T addConstraint(BooleanFormula constraint) {
+    clearAssumptions();
     return delegate.addConstraint(constraint);
   }
 
@@ -91,19 +91,22 @@ public class InterpolatingProverWithAssumptionsWrapper<T>
   @Override
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
       throws SolverException, InterruptedException {
-    clearAssumptions();
-
-    solverAssumptionsAsFormula.addAll(assumptions);
-    for (BooleanFormula formula : assumptions) {
-      solverAssumptionsFromPush.add(delegate.push(formula));
-    }
+    updateAssumptions(assumptions);
     return delegate.isUnsat();
   }
 
   @Override
-  protected void clearAssumptions() {
-    super.clearAssumptions();
-    solverAssumptionsFromPush.clear();
+  protected T pushAssumption(BooleanFormula pAssumption) {
+    T id = super.pushAssumption(pAssumption);
+    solverAssumptionsFromPush.add(id);
+    return id;
+  }
+
+  @Override
+  protected void popAssumptions(int pNumber) {
+    super.popAssumptions(pNumber);
+    int size = solverAssumptionsFromPush.size();
+    solverAssumptionsFromPush.subList(size - pNumber, size).clear();
   }
 
   class RemoveAssumptionsFromFormulaVisitor extends BooleanFormulaTransformationVisitor {
@@ -38,12 +38,7 @@ public class ProverWithAssumptionsWrapper
   @Override
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
       throws SolverException, InterruptedException {
-    clearAssumptions();
-
-    solverAssumptionsAsFormula.addAll(assumptions);
-    for (BooleanFormula formula : assumptions) {
-      delegate.push(formula);
-    }
+    updateAssumptions(assumptions);
     return delegate.isUnsat();
   }
 
@@ -1,10 +1,7 @@
 package org.sosy_lab.java_smt.example;
 
 import com.google.common.collect.ImmutableList;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import org.sosy_lab.common.ShutdownNotifier;
 import org.sosy_lab.common.configuration.Configuration;
@@ -14,17 +11,12 @@ import org.sosy_lab.common.log.LogManager;
 import org.sosy_lab.java_smt.SolverContextFactory;
 import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
 import org.sosy_lab.java_smt.api.BooleanFormula;
-import org.sosy_lab.java_smt.api.BooleanFormulaManager;
-import org.sosy_lab.java_smt.api.Formula;
-import org.sosy_lab.java_smt.api.FormulaManager;
 import org.sosy_lab.java_smt.api.IntegerFormulaManager;
-import org.sosy_lab.java_smt.api.Model;
 import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
-import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.SolverContext;
-import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
 import org.sosy_lab.java_smt.api.SolverException;
-import org.sosy_lab.java_smt.api.visitors.FormulaTransformationVisitor;
+import org.sosy_lab.java_smt.utils.Houdini;
+import org.sosy_lab.java_smt.utils.SolverUtils;
 
 /**
  * This application executes the inductive-invariant synthesis algorithm called "Houdini" taken from
@@ -40,13 +32,12 @@ import org.sosy_lab.java_smt.api.visitors.FormulaTransformationVisitor;
  *
  * <p>The Houdini algorithm finds and returns a maximal inductive subset L_I of a given set L of
  * candidate lemmas. It repeatedly checks the conjunction of L for inductiveness and updates L to
- * exclude the lemmas that give rise to counterexamples-to-induction.
+ * exclude the lemmas that give rise to counterexamples-to-induction. The algorithm itself is
+ * provided by {@link Houdini}.
  */
 public class HoudiniApp {
 
-  private final FormulaManager fmgr;
-  private final BooleanFormulaManager bfmgr;
-  private final SolverContext context;
+  private HoudiniApp() {}
 
   public static void main(String... args)
       throws InvalidConfigurationException, SolverException, InterruptedException {
@@ -64,7 +55,7 @@ public class HoudiniApp {
           SolverContextFactory.createSolverContext(config, logger, notifier, solver)) {
 
         // initialize Houdini
-        HoudiniApp houdini = new HoudiniApp(solverContext);
+        Houdini houdini = SolverUtils.houdini(solverContext);
 
         IntegerFormulaManager ifmgr = solverContext.getFormulaManager().getIntegerFormulaManager();
 
@@ -80,74 +71,10 @@ public class HoudiniApp {
         BooleanFormula transition = ifmgr.equal(xPrimed, ifmgr.add(x, one));
 
         // use Houdini and compute the maximal inductive subset
-        List<BooleanFormula> result = houdini.houdini(lemmas, transition);
+        List<BooleanFormula> result = houdini.findInductiveSubset(lemmas, transition);
 
         logger.log(Level.INFO, "Houdini returned", result);
       }
     }
   }
-
-  public HoudiniApp(SolverContext solverContext) {
-    context = solverContext;
-    fmgr = context.getFormulaManager();
-    bfmgr = context.getFormulaManager().getBooleanFormulaManager();
-  }
-
-  /** create a temporary symbol using the given index. */
-  private BooleanFormula getSelectorVar(int idx) {
-    return bfmgr.makeVariable("SEL_" + idx);
-  }
-
-  /** traverse the formula and replace all symbols in the formula with their primed version. */
-  private BooleanFormula prime(BooleanFormula input) {
-    return fmgr.transformRecursively(
-        input,
-        new FormulaTransformationVisitor(fmgr) {
-
-          @Override
-          public Formula visitFreeVariable(Formula f, String name) {
-            return fmgr.makeVariable(fmgr.getFormulaType(f), name + "'");
-          }
-        });
-  }
-
-  /**
-   * execute the Houdini algorithm to get the maximal inductive subset L_I for the given lemmas and
-   * the transition.
-   */
-  public List<BooleanFormula> houdini(List<BooleanFormula> lemmas, BooleanFormula transition)
-      throws SolverException, InterruptedException {
-    List<BooleanFormula> annotated = new ArrayList<>();
-    List<BooleanFormula> annotatedPrimes = new ArrayList<>();
-    Map<Integer, BooleanFormula> indexed = new HashMap<>();
-
-    for (int i = 0; i < lemmas.size(); i++) {
-      BooleanFormula lemma = lemmas.get(i);
-      BooleanFormula primed = prime(lemma);
-
-      annotated.add(bfmgr.or(getSelectorVar(i), lemma));
-      annotatedPrimes.add(bfmgr.or(getSelectorVar(i), primed));
-      indexed.put(i, lemma);
-    }
-
-    // create a prover environment for solving the formulas and receiving a model
-    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
-      prover.addConstraint(transition);
-      prover.addConstraint(bfmgr.and(annotated));
-      prover.addConstraint(bfmgr.not(bfmgr.and(annotatedPrimes)));
-
-      while (!prover.isUnsat()) {
-        try (Model m = prover.getModel()) {
-          for (int i = 0; i < annotatedPrimes.size(); i++) {
-            BooleanFormula annotatedPrime = annotatedPrimes.get(i);
-            if (!m.evaluate(annotatedPrime)) {
-              prover.addConstraint(getSelectorVar(i));
-              indexed.remove(i);
-            }
-          }
-        }
-      }
-    }
-    return new ArrayList<>(indexed.values());
-  }
 }
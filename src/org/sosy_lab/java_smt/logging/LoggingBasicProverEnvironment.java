@@ -56,6 +56,18 @@ class LoggingBasicProverEnvironment<T> implements BasicProverEnvironment<T> {
     wrapped.pop();
   }
 
+  @Override
+  public void pop(int levels) {
+    level -= levels;
+    logger.log(Level.FINER, "down to level " + level);
+    wrapped.pop(levels);
+  }
+
+  @Override
+  public void interrupt() {
+    wrapped.interrupt();
+  }
+
   @Override
   public T addConstraint(BooleanFormula constraint) {
     return wrapped.addConstraint(constraint);
@@ -0,0 +1,174 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.pooling;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+
+/**
+ * Prover environment borrowed from a {@link PoolingSolverContext}. An additional bottom level is
+ * pushed onto the pooled prover, such that constraints asserted without an explicit push can be
+ * removed again when this environment is closed.
+ *
+ * <p>A prover that was interrupted is not given back to the pool, because the interrupt could
+ * still be pending and would abort the first check of the next user. Interrupts after closing
+ * this environment are ignored.
+ */
+class PooledProverEnvironment implements ProverEnvironment {
+
+  private final ProverEnvironment delegate;
+  private final Set<ProverOptions> options;
+  private final PoolingSolverContext pool;
+  private int size = 0;
+
+  /** Written while holding the lock of this environment, such that interrupts can check it. */
+  private volatile boolean closed = false;
+
+  @GuardedBy("this")
+  private boolean interrupted = false;
+
+  PooledProverEnvironment(
+      ProverEnvironment pDelegate, Set<ProverOptions> pOptions, PoolingSolverContext pPool) {
+    delegate = checkNotNull(pDelegate);
+    options = checkNotNull(pOptions);
+    pool = checkNotNull(pPool);
+    delegate.push(); // bottom level that is removed on close()
+  }
+
+  @Override
+  public void push() {
+    checkState(!closed);
+    size++;
+    delegate.push();
+  }
+
+  @Override
+  public void pop() {
+    checkState(!closed);
+    checkState(size > 0);
+    size--;
+    delegate.pop();
+  }
+
+  @Override
+  public void pop(int levels) {
+    checkState(!closed);
+    checkState(size >= levels);
+    size -= levels;
+    delegate.pop(levels);
+  }
+
+  @Override
+  public synchronized void interrupt() {
+    if (!closed) {
+      interrupted = true;
+      delegate.interrupt();
+    }
+  }
+
+  @Override
+  @Nullable
+  public Void addConstraint(BooleanFormula constraint) {
+    checkState(!closed);
+    return delegate.addConstraint(constraint);
+  }
+
+  @Override
+  public boolean isUnsat() throws SolverException, InterruptedException {
+    checkState(!closed);
+    return delegate.isUnsat();
+  }
+
+  @Override
+  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
+      throws SolverException, InterruptedException {
+    checkState(!closed);
+    return delegate.isUnsatWithAssumptions(assumptions);
+  }
+
+  @Override
+  public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
+      Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
+    checkState(!closed);
+    return delegate.unsatCoreOverAssumptions(assumptions);
+  }
+
+  @Override
+  public Model getModel() throws SolverException {
+    checkState(!closed);
+    return delegate.getModel();
+  }
+
+  @Override
+  public ImmutableList<ValueAssignment> getModelAssignments() throws SolverException {
+    checkState(!closed);
+    return delegate.getModelAssignments();
+  }
+
+  @Override
+  public List<BooleanFormula> getUnsatCore() {
+    checkState(!closed);
+    return delegate.getUnsatCore();
+  }
+
+  @Override
+  public <R> R allSat(AllSatCallback<R> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    checkState(!closed);
+    return delegate.allSat(callback, important);
+  }
+
+  /** Clear the stack of the pooled prover and give it back to the pool. */
+  @Override
+  public void close() {
+    boolean reusable;
+    synchronized (this) {
+      checkState(!closed);
+      closed = true;
+      reusable = !interrupted;
+    }
+    try {
+      delegate.pop(size + 1);
+    } catch (RuntimeException e) {
+      // the prover is in an unknown state and must not be reused
+      delegate.close();
+      throw e;
+    }
+    if (reusable) {
+      pool.release(delegate, options);
+    } else {
+      delegate.close();
+    }
+  }
+}
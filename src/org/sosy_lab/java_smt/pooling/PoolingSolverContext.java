@@ -0,0 +1,131 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.pooling;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
+import org.sosy_lab.java_smt.api.OptimizationProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+
+/**
+ * {@link SolverContext} that keeps closed prover environments in a pool and hands them out again
+ * for later requests with the same set of {@link ProverOptions}, instead of creating and
+ * destroying a solver instance each time.
+ *
+ * <p>Each prover handed out by this context works on its own backtracking level of the pooled
+ * solver instance. Closing it removes all levels again, such that the solver instance is empty and
+ * can be reused without any observable difference to a freshly created prover.
+ */
+public final class PoolingSolverContext implements SolverContext {
+
+  private final SolverContext delegate;
+  private final int maxIdleProversPerOptions;
+  private final Map<Set<ProverOptions>, Deque<ProverEnvironment>> idleProvers = new HashMap<>();
+  private boolean closed = false;
+
+  /**
+   * @param pDelegate the context that creates the actual prover environments.
+   * @param pMaxIdleProversPerOptions how many unused prover environments are kept for each
+   *     combination of prover options. Further provers are closed for real.
+   */
+  public PoolingSolverContext(SolverContext pDelegate, int pMaxIdleProversPerOptions) {
+    checkArgument(pMaxIdleProversPerOptions >= 0, "pool size must not be negative");
+    delegate = checkNotNull(pDelegate);
+    maxIdleProversPerOptions = pMaxIdleProversPerOptions;
+  }
+
+  @Override
+  public FormulaManager getFormulaManager() {
+    return delegate.getFormulaManager();
+  }
+
+  @SuppressWarnings("resource")
+  @Override
+  public ProverEnvironment newProverEnvironment(ProverOptions... pOptions) {
+    checkState(!closed);
+    Set<ProverOptions> options = EnumSet.noneOf(ProverOptions.class);
+    Collections.addAll(options, pOptions);
+    Deque<ProverEnvironment> idle = idleProvers.get(options);
+    ProverEnvironment prover;
+    if (idle == null || idle.isEmpty()) {
+      prover = delegate.newProverEnvironment(pOptions);
+    } else {
+      prover = idle.pop();
+    }
+    return new PooledProverEnvironment(prover, options, this);
+  }
+
+  /**
+   * Take back a prover whose stack was completely cleared by {@link PooledProverEnvironment}. The
+   * prover is closed if the pool is already full or if this context was closed meanwhile.
+   */
+  void release(ProverEnvironment prover, Set<ProverOptions> options) {
+    Deque<ProverEnvironment> idle =
+        idleProvers.computeIfAbsent(options, unused -> new ArrayDeque<>());
+    if (closed || idle.size() >= maxIdleProversPerOptions) {
+      prover.close();
+    } else {
+      idle.push(prover);
+    }
+  }
+
+  @Override
+  public InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
+    return delegate.newProverEnvironmentWithInterpolation();
+  }
+
+  @Override
+  public OptimizationProverEnvironment newOptimizationProverEnvironment() {
+    return delegate.newOptimizationProverEnvironment();
+  }
+
+  @Override
+  public String getVersion() {
+    return delegate.getVersion();
+  }
+
+  @Override
+  public Solvers getSolverName() {
+    return delegate.getSolverName();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (Deque<ProverEnvironment> idle : idleProvers.values()) {
+      idle.forEach(ProverEnvironment::close);
+    }
+    idleProvers.clear();
+    delegate.close();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.portfolio;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import org.sosy_lab.common.ShutdownManager;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.SolverContext;
+
+/**
+ * One of the solvers of a {@link PortfolioSolverContext}. All operations on the solver are
+ * executed by a single thread, such that the solver is never used concurrently.
+ */
+final class PortfolioBackend {
+
+  private final SolverContext context;
+  private final ShutdownManager shutdownManager;
+  private final ExecutorService executor;
+  private final String name;
+  private final LogManager logger;
+
+  PortfolioBackend(SolverContext pContext, ShutdownManager pShutdownManager, LogManager pLogger) {
+    context = checkNotNull(pContext);
+    shutdownManager = checkNotNull(pShutdownManager);
+    logger = checkNotNull(pLogger);
+    name = context.getSolverName().toString();
+    executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("portfolio-" + name).build());
+  }
+
+  /** The context of this solver. Only use it from tasks given to {@link #execute(Runnable)}. */
+  SolverContext getContext() {
+    return context;
+  }
+
+  /** The formula manager of this solver. Only use it from tasks given to {@link #execute}. */
+  FormulaManager getFormulaManager() {
+    return context.getFormulaManager();
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /** Execute the task in the thread of this solver after all previously given tasks. */
+  void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /** Stop the currently running check, close the solver, and stop the thread. */
+  void close() {
+    shutdownManager.requestShutdown("portfolio solver context closed");
+    executor.execute(
+        () -> {
+          try {
+            context.close();
+          } catch (RuntimeException e) {
+            logger.logDebugException(e, "Could not close solver " + name);
+          }
+        });
+    executor.shutdown();
+  }
+
+  void logFailure(Throwable e) {
+    logger.logfUserException(
+        Level.INFO, e, "Solver %s failed and is not used for further checks", name);
+  }
+}
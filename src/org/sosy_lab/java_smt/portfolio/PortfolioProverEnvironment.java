@@ -0,0 +1,393 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.portfolio;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+
+/**
+ * Prover environment of a {@link PortfolioSolverContext}. All stack operations are applied to the
+ * prover of the main context directly and to the provers of the racing solvers asynchronously.
+ */
+class PortfolioProverEnvironment implements ProverEnvironment {
+
+  private final ProverEnvironment main;
+  private final FormulaManager mainMgr;
+  private final ImmutableList<RacingProver> racers;
+  private final LogManager logger;
+
+  /** Whether the prover of the main context has checked the current stack itself. */
+  private boolean mainChecked = false;
+
+  /** The assumptions of the last check, or null if the last check had no assumptions. */
+  private @Nullable Collection<BooleanFormula> lastAssumptions = null;
+
+  /** The answer of the currently running race, if any. */
+  private volatile @Nullable CompletableFuture<Boolean> currentAnswer = null;
+
+  private boolean closed = false;
+
+  PortfolioProverEnvironment(
+      ProverEnvironment pMain,
+      FormulaManager pMainMgr,
+      List<PortfolioBackend> pBackends,
+      ProverOptions[] pOptions,
+      LogManager pLogger) {
+    main = checkNotNull(pMain);
+    mainMgr = checkNotNull(pMainMgr);
+    logger = checkNotNull(pLogger);
+    if (ImmutableList.copyOf(pOptions).contains(ProverOptions.GENERATE_UNSAT_CORE)) {
+      // unsat cores refer to the last check, thus the main prover has to do all checks
+      racers = ImmutableList.of();
+    } else {
+      racers = ImmutableList.copyOf(Lists.transform(pBackends, b -> new RacingProver(b, pOptions)));
+    }
+  }
+
+  @Override
+  public void push() {
+    checkState(!closed);
+    mainChecked = false;
+    main.push();
+    for (RacingProver racer : racers) {
+      racer.run(ProverEnvironment::push);
+    }
+  }
+
+  @Override
+  public void pop() {
+    pop(1);
+  }
+
+  @Override
+  public void pop(int levels) {
+    checkState(!closed);
+    mainChecked = false;
+    main.pop(levels);
+    for (RacingProver racer : racers) {
+      racer.run(prover -> prover.pop(levels));
+    }
+  }
+
+  @Override
+  @Nullable
+  public Void addConstraint(BooleanFormula constraint) {
+    checkState(!closed);
+    mainChecked = false;
+    main.addConstraint(constraint);
+    if (!racers.isEmpty()) {
+      String smtlib = mainMgr.dumpFormula(constraint).toString();
+      for (RacingProver racer : racers) {
+        racer.run(prover -> prover.addConstraint(racer.parse(smtlib)));
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isUnsat() throws SolverException, InterruptedException {
+    checkState(!closed);
+    lastAssumptions = null;
+    return race(ProverEnvironment::isUnsat);
+  }
+
+  @Override
+  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
+      throws SolverException, InterruptedException {
+    checkState(!closed);
+    ImmutableList<BooleanFormula> assumptionList = ImmutableList.copyOf(assumptions);
+    lastAssumptions = assumptionList;
+    List<String> smtlib = new ArrayList<>(assumptions.size());
+    if (!racers.isEmpty()) {
+      for (BooleanFormula assumption : assumptions) {
+        smtlib.add(mainMgr.dumpFormula(assumption).toString());
+      }
+    }
+    return race(
+        prover -> prover.isUnsatWithAssumptions(assumptionList),
+        (prover, racer) ->
+            prover.isUnsatWithAssumptions(
+                ImmutableList.copyOf(Lists.transform(smtlib, racer::parse))));
+  }
+
+  private boolean race(MainCheck check) throws SolverException, InterruptedException {
+    return race(check, (prover, racer) -> check.check(prover));
+  }
+
+  /**
+   * Start the check on all racing solvers and wait for the first answer. The solvers that are
+   * still checking afterwards are interrupted, such that they do not delay the following tasks of
+   * their thread. If all racing solvers fail, the main prover has to answer the check by itself.
+   */
+  private boolean race(MainCheck mainCheck, RacingCheck racingCheck)
+      throws SolverException, InterruptedException {
+    mainChecked = false;
+    List<RacingProver> active = racers.stream().filter(r -> !r.failed).collect(Collectors.toList());
+    if (!active.isEmpty()) {
+      CompletableFuture<Boolean> answer = new CompletableFuture<>();
+      currentAnswer = answer;
+      AtomicInteger remaining = new AtomicInteger(active.size());
+      for (RacingProver racer : active) {
+        racer.backend.execute(
+            () -> {
+              try {
+                // skip checks that were already answered by another solver
+                if (!racer.failed && !answer.isDone()) {
+                  answer.complete(racer.check(racingCheck, answer));
+                }
+              } catch (SolverException | InterruptedException | RuntimeException e) {
+                if (!racer.consumeInterrupt(answer)) {
+                  racer.fail(e);
+                }
+              } finally {
+                if (remaining.decrementAndGet() == 0) {
+                  answer.completeExceptionally(new SolverException("all solvers failed"));
+                }
+              }
+            });
+      }
+      try {
+        return answer.get();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), InterruptedException.class);
+        logger.log(Level.FINE, "All racing solvers failed, using main solver");
+      } finally {
+        currentAnswer = null;
+        for (RacingProver racer : active) {
+          racer.interrupt(answer);
+        }
+      }
+    }
+    boolean result = mainCheck.check(main);
+    mainChecked = true;
+    return result;
+  }
+
+  /** Let the prover of the main context check the current stack, if it has not done this yet. */
+  private void checkMain() throws SolverException {
+    if (!mainChecked) {
+      try {
+        if (lastAssumptions == null) {
+          main.isUnsat();
+        } else {
+          main.isUnsatWithAssumptions(lastAssumptions);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolverException("Interrupted while checking the main solver", e);
+      }
+      mainChecked = true;
+    }
+  }
+
+  /**
+   * Stop the running race and interrupt the racing solvers that are still checking, or interrupt
+   * the main prover if it checks by itself.
+   */
+  @Override
+  public void interrupt() {
+    CompletableFuture<Boolean> answer = currentAnswer;
+    if (answer != null) {
+      answer.completeExceptionally(new InterruptedException("portfolio check was interrupted"));
+      for (RacingProver racer : racers) {
+        racer.interrupt(answer);
+      }
+    } else {
+      main.interrupt();
+    }
+  }
+
+  @Override
+  public Model getModel() throws SolverException {
+    checkState(!closed);
+    checkMain();
+    return main.getModel();
+  }
+
+  @Override
+  public ImmutableList<ValueAssignment> getModelAssignments() throws SolverException {
+    checkState(!closed);
+    checkMain();
+    return main.getModelAssignments();
+  }
+
+  @Override
+  public List<BooleanFormula> getUnsatCore() {
+    checkState(!closed);
+    return main.getUnsatCore();
+  }
+
+  @Override
+  public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
+      Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
+    checkState(!closed);
+    mainChecked = false;
+    return main.unsatCoreOverAssumptions(assumptions);
+  }
+
+  @Override
+  public <R> R allSat(AllSatCallback<R> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    checkState(!closed);
+    mainChecked = false;
+    return main.allSat(callback, important);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      for (RacingProver racer : racers) {
+        racer.run(ProverEnvironment::close);
+      }
+      main.close();
+    }
+  }
+
+  private interface MainCheck {
+    boolean check(ProverEnvironment prover) throws SolverException, InterruptedException;
+  }
+
+  private interface RacingCheck {
+    boolean check(ProverEnvironment prover, RacingProver racer)
+        throws SolverException, InterruptedException;
+  }
+
+  private interface ProverTask {
+    void run(ProverEnvironment prover) throws SolverException, InterruptedException;
+  }
+
+  /**
+   * The prover of one racing solver. Except for {@link #failed} and the fields for interrupting
+   * the solver, it is only accessed from the thread of the solver.
+   */
+  private static final class RacingProver {
+
+    private final PortfolioBackend backend;
+    private @Nullable ProverEnvironment prover = null;
+    private volatile boolean failed = false;
+
+    /** The answer of the race that the solver is currently checking, if any. */
+    private volatile @Nullable CompletableFuture<Boolean> checking = null;
+
+    /**
+     * Whether the solver was interrupted after losing a race. If the check of that race ended
+     * before the interrupt arrived, the interrupt may still be pending and abort the next check.
+     */
+    private final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+    private RacingProver(PortfolioBackend pBackend, ProverOptions[] pOptions) {
+      backend = pBackend;
+      backend.execute(
+          () -> {
+            try {
+              prover = backend.getContext().newProverEnvironment(pOptions);
+            } catch (RuntimeException e) {
+              fail(e);
+            }
+          });
+    }
+
+    /** Run the task in the thread of the solver, unless the solver has already failed. */
+    private void run(ProverTask task) {
+      backend.execute(
+          () -> {
+            if (!failed) {
+              try {
+                task.run(checkNotNull(prover));
+              } catch (SolverException | InterruptedException | RuntimeException e) {
+                fail(e);
+              }
+            }
+          });
+    }
+
+    /**
+     * Check the stack for the given race. A check that is aborted by the interrupt of an earlier
+     * race is repeated once.
+     */
+    private boolean check(RacingCheck check, CompletableFuture<Boolean> answer)
+        throws SolverException, InterruptedException {
+      checking = answer;
+      try {
+        try {
+          return check.check(checkNotNull(prover), this);
+        } catch (InterruptedException e) {
+          if (answer.isDone() || !interrupted.getAndSet(false)) {
+            throw e;
+          }
+          return check.check(checkNotNull(prover), this);
+        }
+      } finally {
+        checking = null;
+      }
+    }
+
+    /** Interrupt the solver if it is still checking for the given race. */
+    private void interrupt(CompletableFuture<Boolean> answer) {
+      if (checking == answer) {
+        interrupted.set(true);
+        checkNotNull(prover).interrupt();
+      }
+    }
+
+    /**
+     * Returns whether the solver failed in the given race only because it was interrupted after
+     * the race was decided.
+     */
+    private boolean consumeInterrupt(CompletableFuture<Boolean> answer) {
+      return answer.isDone() && interrupted.getAndSet(false);
+    }
+
+    private BooleanFormula parse(String smtlib) {
+      return backend.getFormulaManager().parse(smtlib);
+    }
+
+    private void fail(Throwable e) {
+      if (!failed) {
+        failed = true;
+        backend.logFailure(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.portfolio;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.sosy_lab.common.ShutdownManager;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
+import org.sosy_lab.java_smt.api.OptimizationProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+
+/**
+ * {@link SolverContext} that runs each satisfiability check on several solvers in parallel and
+ * returns the first answer.
+ *
+ * <p>All formulas are created with the formula manager of a main context, which is never used
+ * from a different thread. Constraints and assumptions are serialized to SMT-LIB and parsed by
+ * each racing solver in its own thread. Models, unsat cores, and all-sat queries are answered by
+ * the main context, which checks the current stack on demand if it did not answer the last check
+ * by itself. Interpolation and optimization are not raced and directly use the main context.
+ *
+ * <p>A racing solver that is still working on a check when the check is answered is interrupted,
+ * and skips all further checks that were already answered when it reaches them. Closing this
+ * context stops all running checks via the shutdown managers of the racing solvers.
+ */
+public final class PortfolioSolverContext implements SolverContext {
+
+  private final SolverContext main;
+  private final ImmutableList<PortfolioBackend> backends;
+  private final LogManager logger;
+  private final String version;
+  private boolean closed = false;
+
+  /**
+   * @param pLogger used for reporting solvers that fail.
+   * @param pMain the context for creating formulas, and for all operations that are not raced.
+   * @param pRacingContexts the contexts racing for each check, each with a shutdown manager that
+   *     stops the checks of its context. These contexts are owned by this context afterwards and
+   *     must not be used elsewhere.
+   */
+  public PortfolioSolverContext(
+      LogManager pLogger,
+      SolverContext pMain,
+      Map<SolverContext, ShutdownManager> pRacingContexts) {
+    logger = checkNotNull(pLogger);
+    main = checkNotNull(pMain);
+    ImmutableList.Builder<PortfolioBackend> builder = ImmutableList.builder();
+    List<String> versions = new ArrayList<>();
+    for (Entry<SolverContext, ShutdownManager> racing : pRacingContexts.entrySet()) {
+      builder.add(new PortfolioBackend(racing.getKey(), racing.getValue(), logger));
+      versions.add(racing.getKey().getVersion());
+    }
+    backends = builder.build();
+    version = "Portfolio of " + String.join(", ", versions);
+  }
+
+  @Override
+  public FormulaManager getFormulaManager() {
+    return main.getFormulaManager();
+  }
+
+  @SuppressWarnings("resource")
+  @Override
+  public ProverEnvironment newProverEnvironment(ProverOptions... options) {
+    checkState(!closed);
+    return new PortfolioProverEnvironment(
+        main.newProverEnvironment(options), main.getFormulaManager(), backends, options, logger);
+  }
+
+  @Override
+  public InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
+    checkState(!closed);
+    return main.newProverEnvironmentWithInterpolation();
+  }
+
+  @Override
+  public OptimizationProverEnvironment newOptimizationProverEnvironment() {
+    checkState(!closed);
+    return main.newOptimizationProverEnvironment();
+  }
+
+  @Override
+  public String getVersion() {
+    return version;
+  }
+
+  /** Returns the solver of the main context that is used for creating formulas. */
+  @Override
+  public Solvers getSolverName() {
+    return main.getSolverName();
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      for (PortfolioBackend backend : backends) {
+        backend.close();
+      }
+      main.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.CLOSE_MODEL;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Iterator;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.NumeralFormula.RationalFormula;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Request;
+
+/**
+ * A model that lives in a solver process. The assignments are transferred when the model is
+ * created, and each evaluation is a request to the process.
+ */
+class RemoteModel implements Model {
+
+  private final RemoteSolverContext context;
+  private final RemoteWorker worker;
+  private final int id;
+  private final int generation;
+  private final ImmutableList<ValueAssignment> assignments;
+  private boolean closed = false;
+
+  RemoteModel(
+      RemoteSolverContext pContext,
+      RemoteWorker pWorker,
+      int pId,
+      int pGeneration,
+      ImmutableList<ValueAssignment> pAssignments) {
+    context = pContext;
+    worker = pWorker;
+    id = pId;
+    generation = pGeneration;
+    assignments = pAssignments;
+  }
+
+  @Override
+  public @Nullable Object evaluate(Formula f) {
+    checkState(!closed);
+    checkState(
+        worker.getGeneration() == generation,
+        "the solver process of this model failed and was restarted");
+    Request request = context.makeEvaluationRequest(id, f);
+    try {
+      return worker.call(request, RemoteProtocol::readValue);
+    } catch (IOException | SolverException e) {
+      throw new IllegalStateException("evaluation in solver process failed", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("evaluation in solver process was interrupted", e);
+    }
+  }
+
+  @Override
+  public @Nullable BigInteger evaluate(IntegerFormula f) {
+    return (BigInteger) evaluate((Formula) f);
+  }
+
+  @Override
+  public @Nullable Rational evaluate(RationalFormula f) {
+    return (Rational) evaluate((Formula) f);
+  }
+
+  @Override
+  public @Nullable Boolean evaluate(BooleanFormula f) {
+    return (Boolean) evaluate((Formula) f);
+  }
+
+  @Override
+  public @Nullable BigInteger evaluate(BitvectorFormula f) {
+    return (BigInteger) evaluate((Formula) f);
+  }
+
+  @Override
+  public Iterator<ValueAssignment> iterator() {
+    return assignments.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return Joiner.on('\n').join(assignments);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      if (worker.getGeneration() == generation) {
+        try {
+          worker.send(new Request(CLOSE_MODEL, id));
+        } catch (IOException e) {
+          // the model is gone together with its process
+        }
+      }
+    }
+  }
+}
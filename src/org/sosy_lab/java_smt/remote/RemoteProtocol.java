@@ -0,0 +1,360 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.api.FloatingPointRoundingMode;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+
+/**
+ * The binary protocol between {@link RemoteWorker} in the JVM using the solver and {@link
+ * RemoteSolverServer} in the solver process.
+ *
+ * <p>Each request consists of a command, the id of its target (a prover or a model), an integer
+ * argument, and a list of formulas in SMT-LIB format. Commands that modify the state of the solver
+ * process have no reply, such that the client can send them in one batch together with the next
+ * query. An error of such a command is reported by the reply of the next query for the same
+ * target, after which the client replays the whole stack of the prover with {@link #NEW_PROVER}.
+ * Each reply starts with a status byte, followed by the result or an error message.
+ *
+ * <p>The models of {@link #ALL_SAT} are sent in chunks of at most {@link #ALL_SAT_CHUNK_SIZE}
+ * models. The solver process computes the next chunk only after the client requested it with
+ * {@link #ALL_SAT_NEXT}, and the client can end the enumeration early with {@link #ALL_SAT_STOP}.
+ */
+final class RemoteProtocol {
+
+  private RemoteProtocol() {}
+
+  // commands without reply
+  static final byte NEW_PROVER = 1;
+  static final byte CLOSE_PROVER = 2;
+  static final byte PUSH = 3;
+  static final byte POP = 4;
+  static final byte ADD_CONSTRAINT = 5;
+  static final byte CLOSE_MODEL = 6;
+  static final byte INTERRUPT = 7;
+  static final byte EXIT = 8;
+
+  // commands with reply
+  static final byte VERSION = 20;
+  static final byte IS_UNSAT = 21;
+  static final byte IS_UNSAT_WITH_ASSUMPTIONS = 22;
+  static final byte GET_MODEL = 23;
+  static final byte EVALUATE = 24;
+  static final byte GET_UNSAT_CORE = 25;
+  static final byte UNSAT_CORE_OVER_ASSUMPTIONS = 26;
+  static final byte ALL_SAT = 27;
+  static final byte ALL_SAT_NEXT = 28;
+  static final byte ALL_SAT_STOP = 29;
+
+  // status of replies
+  static final byte OK = 0;
+  static final byte SOLVER_EXCEPTION = 1;
+  static final byte INTERRUPTED = 2;
+  static final byte ILLEGAL_ARGUMENT = 3;
+  static final byte UNSUPPORTED = 4;
+  static final byte FAILURE = 5;
+
+  /** Target of {@link #INTERRUPT} for interrupting all provers of a process. */
+  static final int ALL_TARGETS = -1;
+
+  /** Argument of {@link #GET_MODEL} if the model is only needed for its assignments. */
+  static final int NO_MODEL = -1;
+
+  /** The maximal number of all-sat models in one reply. */
+  static final int ALL_SAT_CHUNK_SIZE = 64;
+
+  // tags of values
+  private static final byte NULL_VALUE = 0;
+  private static final byte BOOLEAN_VALUE = 1;
+  private static final byte INTEGER_VALUE = 2;
+  private static final byte RATIONAL_VALUE = 3;
+  private static final byte DOUBLE_VALUE = 4;
+  private static final byte FLOAT_VALUE = 5;
+  private static final byte ROUNDING_MODE_VALUE = 6;
+
+  static boolean hasReply(byte command) {
+    return command >= VERSION;
+  }
+
+  static int encodeOptions(ProverOptions... options) {
+    int bits = 0;
+    for (ProverOptions option : options) {
+      bits |= 1 << option.ordinal();
+    }
+    return bits;
+  }
+
+  static ProverOptions[] decodeOptions(int bits) {
+    List<ProverOptions> options = new ArrayList<>();
+    for (ProverOptions option : ProverOptions.values()) {
+      if ((bits & (1 << option.ordinal())) != 0) {
+        options.add(option);
+      }
+    }
+    return options.toArray(new ProverOptions[0]);
+  }
+
+  /** Reads the result of a successful reply. */
+  interface ReplyReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  static final class Request {
+
+    final byte command;
+    final int target;
+    final int argument;
+    final ImmutableList<String> formulas;
+
+    Request(byte pCommand, int pTarget, int pArgument, List<String> pFormulas) {
+      command = pCommand;
+      target = pTarget;
+      argument = pArgument;
+      formulas = ImmutableList.copyOf(pFormulas);
+    }
+
+    Request(byte pCommand, int pTarget) {
+      this(pCommand, pTarget, 0, ImmutableList.of());
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeByte(command);
+      out.writeInt(target);
+      out.writeInt(argument);
+      out.writeInt(formulas.size());
+      for (String formula : formulas) {
+        writeString(out, formula);
+      }
+    }
+
+    static Request read(DataInputStream in) throws IOException {
+      byte command = in.readByte();
+      int target = in.readInt();
+      int argument = in.readInt();
+      int size = in.readInt();
+      ImmutableList.Builder<String> formulas = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        formulas.add(readString(in));
+      }
+      return new Request(command, target, argument, formulas.build());
+    }
+  }
+
+  /**
+   * A value assignment of a model, independent of any context. The key is identified by its name
+   * and type, and by the types of the arguments for functions.
+   */
+  static final class Assignment {
+
+    final String name;
+    final FormulaType<?> type;
+    final Object value;
+    final ImmutableList<FormulaType<?>> argumentTypes;
+    final ImmutableList<Object> arguments;
+
+    Assignment(
+        String pName,
+        FormulaType<?> pType,
+        Object pValue,
+        List<FormulaType<?>> pArgumentTypes,
+        List<Object> pArguments) {
+      name = checkNotNull(pName);
+      type = checkNotNull(pType);
+      value = checkNotNull(pValue);
+      argumentTypes = ImmutableList.copyOf(pArgumentTypes);
+      arguments = ImmutableList.copyOf(pArguments);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      writeString(out, name);
+      writeString(out, type.toString());
+      writeValue(out, value);
+      out.writeInt(arguments.size());
+      for (int i = 0; i < arguments.size(); i++) {
+        writeString(out, argumentTypes.get(i).toString());
+        writeValue(out, arguments.get(i));
+      }
+    }
+
+    static Assignment read(DataInputStream in) throws IOException {
+      String name = readString(in);
+      FormulaType<?> type = FormulaType.fromString(readString(in));
+      Object value = checkNotNull(readValue(in));
+      int arity = in.readInt();
+      ImmutableList.Builder<FormulaType<?>> argumentTypes = ImmutableList.builder();
+      ImmutableList.Builder<Object> arguments = ImmutableList.builder();
+      for (int i = 0; i < arity; i++) {
+        argumentTypes.add(FormulaType.fromString(readString(in)));
+        arguments.add(checkNotNull(readValue(in)));
+      }
+      return new Assignment(name, type, value, argumentTypes.build(), arguments.build());
+    }
+
+    static List<Assignment> readList(DataInputStream in) throws IOException {
+      int size = in.readInt();
+      ImmutableList.Builder<Assignment> assignments = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        assignments.add(read(in));
+      }
+      return assignments.build();
+    }
+  }
+
+  /**
+   * Models of all-sat as indices of the important predicates, where a negated predicate at index i
+   * is represented as -i-1.
+   */
+  static final class AllSatChunk {
+
+    final ImmutableList<List<Integer>> models;
+
+    /** Whether the enumeration continues with another chunk. */
+    final boolean hasMore;
+
+    AllSatChunk(List<List<Integer>> pModels, boolean pHasMore) {
+      models = ImmutableList.copyOf(pModels);
+      hasMore = pHasMore;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(models.size());
+      for (List<Integer> model : models) {
+        writeIndices(out, model);
+      }
+      out.writeBoolean(hasMore);
+    }
+
+    static AllSatChunk read(DataInputStream in) throws IOException {
+      int size = in.readInt();
+      ImmutableList.Builder<List<Integer>> models = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        models.add(readIndices(in));
+      }
+      return new AllSatChunk(models.build(), in.readBoolean());
+    }
+  }
+
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    // DataOutputStream.writeUTF is limited to 64KB, which is too small for formulas
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeIndices(DataOutputStream out, List<Integer> indices) throws IOException {
+    out.writeInt(indices.size());
+    for (int index : indices) {
+      out.writeInt(index);
+    }
+  }
+
+  static List<Integer> readIndices(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    ImmutableList.Builder<Integer> indices = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      indices.add(in.readInt());
+    }
+    return indices.build();
+  }
+
+  /** Whether {@link #writeValue} can transmit the value, such that it is read with its type. */
+  static boolean isTransferable(@Nullable Object value) {
+    return value == null
+        || value instanceof Boolean
+        || value instanceof BigInteger
+        || value instanceof Rational
+        || value instanceof Double
+        || value instanceof Float
+        || value instanceof FloatingPointRoundingMode;
+  }
+
+  /**
+   * Write a value of a model, such that {@link #readValue} returns a value of the same type.
+   *
+   * @throws IllegalArgumentException if the value is not {@link #isTransferable transferable}.
+   */
+  static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL_VALUE);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN_VALUE);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof BigInteger) {
+      out.writeByte(INTEGER_VALUE);
+      writeString(out, value.toString());
+    } else if (value instanceof Rational) {
+      out.writeByte(RATIONAL_VALUE);
+      writeString(out, value.toString());
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE_VALUE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT_VALUE);
+      out.writeFloat((Float) value);
+    } else if (value instanceof FloatingPointRoundingMode) {
+      out.writeByte(ROUNDING_MODE_VALUE);
+      writeString(out, ((FloatingPointRoundingMode) value).name());
+    } else {
+      throw new IllegalArgumentException(
+          "model value " + value + " of " + value.getClass() + " can not be transferred");
+    }
+  }
+
+  static @Nullable Object readValue(DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL_VALUE:
+        return null;
+      case BOOLEAN_VALUE:
+        return in.readBoolean();
+      case INTEGER_VALUE:
+        return new BigInteger(readString(in));
+      case RATIONAL_VALUE:
+        return Rational.ofString(readString(in));
+      case DOUBLE_VALUE:
+        return in.readDouble();
+      case FLOAT_VALUE:
+        return in.readFloat();
+      case ROUNDING_MODE_VALUE:
+        return FloatingPointRoundingMode.valueOf(readString(in));
+      default:
+        throw new IOException("unknown value tag " + tag);
+    }
+  }
+}
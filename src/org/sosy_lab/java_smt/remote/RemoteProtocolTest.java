@@ -0,0 +1,76 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.api.FloatingPointRoundingMode;
+
+/** Checks that model values keep their type when they are sent to the client. */
+public class RemoteProtocolTest {
+
+  private static @Nullable Object transfer(@Nullable Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    RemoteProtocol.writeValue(new DataOutputStream(bytes), value);
+    return RemoteProtocol.readValue(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void valuesKeepTheirType() throws IOException {
+    Object[] values = {
+      true,
+      BigInteger.valueOf(-42),
+      Rational.of(BigInteger.ONE, BigInteger.valueOf(3)),
+      -0.0,
+      Double.NaN,
+      1.5f,
+      FloatingPointRoundingMode.TOWARD_ZERO
+    };
+    for (Object value : values) {
+      Object transferred = transfer(value);
+      assertThat(transferred).isEqualTo(value);
+      assertThat(transferred.getClass()).isEqualTo(value.getClass());
+    }
+    assertThat(transfer(null)).isNull();
+  }
+
+  @Test
+  public void unknownValuesAreRejected() throws IOException {
+    assertThat(RemoteProtocol.isTransferable(BigDecimal.ONE)).isFalse();
+    try {
+      transfer(BigDecimal.ONE);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected, the client would get a value of another type
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ADD_CONSTRAINT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT_NEXT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT_STOP;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.CLOSE_PROVER;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.GET_MODEL;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.GET_UNSAT_CORE;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.IS_UNSAT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.IS_UNSAT_WITH_ASSUMPTIONS;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.NEW_PROVER;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.NO_MODEL;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.POP;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.PUSH;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.UNSAT_CORE_OVER_ASSUMPTIONS;
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.AllSatChunk;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Assignment;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.ReplyReader;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Request;
+
+/**
+ * Prover environment that mirrors its assertion stack to a prover in a solver process. Stack
+ * operations are sent without waiting for a reply, and queries wait for the answer of the process.
+ * The stack is also kept in this JVM, such that it can be replayed after the process was restarted.
+ */
+class RemoteProverEnvironment implements ProverEnvironment {
+
+  /** How often a request is repeated after the process failed. */
+  private static final int MAX_RESTARTS = 1;
+
+  private final RemoteSolverContext context;
+  private final RemoteWorker worker;
+  private final BooleanFormulaManager bmgr;
+  private final int id;
+  private final int options;
+
+  /** The constraints of each level, the top level first. */
+  private final Deque<List<BooleanFormula>> stack = new ArrayDeque<>();
+
+  /** The generation of the process that knows the current stack, if any. */
+  private int synchronizedGeneration = -1;
+
+  /** The last check on the current stack, repeated for a model or unsat core after a restart. */
+  private @Nullable Request lastCheck = null;
+
+  private boolean closed = false;
+
+  RemoteProverEnvironment(
+      RemoteSolverContext pContext, RemoteWorker pWorker, ProverOptions... pOptions) {
+    context = checkNotNull(pContext);
+    worker = checkNotNull(pWorker);
+    bmgr = context.getFormulaManager().getBooleanFormulaManager();
+    id = context.nextId();
+    options = RemoteProtocol.encodeOptions(pOptions);
+    stack.push(new ArrayList<>());
+    worker.openProvers.incrementAndGet();
+    mirror(new Request(NEW_PROVER, id, options, ImmutableList.of()));
+  }
+
+  @Override
+  public void push() {
+    checkState(!closed);
+    lastCheck = null;
+    stack.push(new ArrayList<>());
+    mirror(new Request(PUSH, id));
+  }
+
+  @Override
+  public void pop() {
+    checkState(!closed);
+    checkState(stack.size() > 1, "cannot pop the bottom level of the stack");
+    lastCheck = null;
+    stack.pop();
+    mirror(new Request(POP, id));
+  }
+
+  @Override
+  public @Nullable Void addConstraint(BooleanFormula constraint) {
+    checkState(!closed);
+    lastCheck = null;
+    stack.peek().add(constraint);
+    mirror(addConstraintRequest(constraint));
+    return null;
+  }
+
+  private Request addConstraintRequest(BooleanFormula constraint) {
+    return new Request(ADD_CONSTRAINT, id, 0, ImmutableList.of(context.dump(constraint)));
+  }
+
+  /**
+   * Send a stack operation that has already been applied to {@link #stack}. If the process has to
+   * be synchronized first, the operation is part of the replayed stack and not sent again.
+   */
+  private void mirror(Request request) {
+    try {
+      if (!synchronize()) {
+        worker.send(request);
+      }
+    } catch (IOException e) {
+      // the process is restarted by the next query, which replays the stack
+      synchronizedGeneration = -1;
+    }
+  }
+
+  /**
+   * Replay the stack if the current process does not know it.
+   *
+   * @return whether the stack was replayed.
+   */
+  private boolean synchronize() throws IOException {
+    int generation = worker.getGeneration();
+    if (synchronizedGeneration == generation) {
+      return false;
+    }
+    worker.send(new Request(NEW_PROVER, id, options, ImmutableList.of()));
+    boolean bottom = true;
+    for (Iterator<List<BooleanFormula>> it = stack.descendingIterator(); it.hasNext(); ) {
+      if (!bottom) {
+        worker.send(new Request(PUSH, id));
+      }
+      bottom = false;
+      for (BooleanFormula constraint : it.next()) {
+        worker.send(addConstraintRequest(constraint));
+      }
+    }
+    synchronizedGeneration = generation;
+    return true;
+  }
+
+  /**
+   * Execute a query in the process, restarting the process if it failed.
+   *
+   * @param needsCheck whether the query depends on the result of the last check, which has to be
+   *     repeated after a restart.
+   */
+  private <T> T query(Request request, ReplyReader<T> reader, boolean needsCheck)
+      throws SolverException, InterruptedException {
+    checkState(!closed);
+    for (int restarts = 0; ; restarts++) {
+      int generation = worker.getGeneration();
+      try {
+        if (synchronize() && needsCheck && lastCheck != null) {
+          worker.call(lastCheck, DataInputStream::readBoolean);
+        }
+        return worker.call(request, reader);
+      } catch (IOException e) {
+        synchronizedGeneration = -1;
+        if (restarts >= MAX_RESTARTS) {
+          throw new SolverException("solver process failed", e);
+        }
+        try {
+          worker.restart(generation);
+        } catch (IOException restartFailure) {
+          restartFailure.addSuppressed(e);
+          throw new SolverException("solver process could not be restarted", restartFailure);
+        }
+      } catch (InterruptedException e) {
+        context.getShutdownNotifier().shutdownIfNecessary();
+        throw e;
+      } catch (RuntimeException e) {
+        // The error can stem from a stack operation that failed in the process, whose stack then
+        // differs from ours. Replaying the stack reports the error again for each query, until
+        // the failed operation is removed from the stack.
+        synchronizedGeneration = -1;
+        throw e;
+      }
+    }
+  }
+
+  private boolean check(Request request) throws SolverException, InterruptedException {
+    context.getShutdownNotifier().shutdownIfNecessary();
+    lastCheck = null;
+    boolean unsat = query(request, DataInputStream::readBoolean, false);
+    lastCheck = request;
+    return unsat;
+  }
+
+  @Override
+  public boolean isUnsat() throws SolverException, InterruptedException {
+    return check(new Request(IS_UNSAT, id));
+  }
+
+  @Override
+  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
+      throws SolverException, InterruptedException {
+    return check(new Request(IS_UNSAT_WITH_ASSUMPTIONS, id, 0, dumpAll(assumptions)));
+  }
+
+  private List<String> dumpAll(Collection<BooleanFormula> formulas) {
+    List<String> result = new ArrayList<>(formulas.size());
+    for (BooleanFormula formula : formulas) {
+      result.add(context.dump(formula));
+    }
+    return result;
+  }
+
+  @Override
+  public void interrupt() {
+    worker.interrupt(id);
+  }
+
+  @Override
+  public Model getModel() throws SolverException {
+    int modelId = context.nextId();
+    List<Assignment> assignments =
+        queryWithoutInterrupts(
+            new Request(GET_MODEL, id, modelId, ImmutableList.of()), Assignment::readList, true);
+    return new RemoteModel(
+        context, worker, modelId, worker.getGeneration(), context.toValueAssignments(assignments));
+  }
+
+  @Override
+  public ImmutableList<ValueAssignment> getModelAssignments() throws SolverException {
+    List<Assignment> assignments =
+        queryWithoutInterrupts(
+            new Request(GET_MODEL, id, NO_MODEL, ImmutableList.of()), Assignment::readList, true);
+    return context.toValueAssignments(assignments);
+  }
+
+  @Override
+  public List<BooleanFormula> getUnsatCore() {
+    List<Integer> indices;
+    try {
+      indices =
+          queryWithoutInterrupts(
+              new Request(GET_UNSAT_CORE, id), RemoteProtocol::readIndices, true);
+    } catch (SolverException e) {
+      throw new IllegalStateException(e);
+    }
+    List<BooleanFormula> asserted = new ArrayList<>();
+    for (Iterator<List<BooleanFormula>> it = stack.descendingIterator(); it.hasNext(); ) {
+      asserted.addAll(it.next());
+    }
+    List<BooleanFormula> core = new ArrayList<>(indices.size());
+    for (int index : indices) {
+      core.add(asserted.get(index));
+    }
+    return core;
+  }
+
+  @Override
+  public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
+      Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
+    context.getShutdownNotifier().shutdownIfNecessary();
+    List<BooleanFormula> assumptionList = ImmutableList.copyOf(assumptions);
+    lastCheck = null;
+    Optional<List<Integer>> indices =
+        query(
+            new Request(UNSAT_CORE_OVER_ASSUMPTIONS, id, 0, dumpAll(assumptionList)),
+            in -> in.readBoolean() ? Optional.of(RemoteProtocol.readIndices(in)) : Optional.empty(),
+            false);
+    if (!indices.isPresent()) {
+      return Optional.empty();
+    }
+    List<BooleanFormula> core = new ArrayList<>(indices.get().size());
+    for (int index : indices.get()) {
+      core.add(assumptionList.get(index));
+    }
+    return Optional.of(core);
+  }
+
+  /**
+   * Enumerate the models in the process and pass them to the callback chunk by chunk. Only the
+   * first chunk is repeated after a restart of the process, because the callback has not seen any
+   * model before. If the callback throws an exception, the enumeration in the process is stopped.
+   * Enumerations of other threads on the same process wait until this one is finished.
+   */
+  @Override
+  public <R> R allSat(AllSatCallback<R> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    context.getShutdownNotifier().shutdownIfNecessary();
+    worker.allSatLock.lockInterruptibly();
+    try {
+      return allSat0(callback, important);
+    } finally {
+      worker.allSatLock.unlock();
+    }
+  }
+
+  private <R> R allSat0(AllSatCallback<R> callback, List<BooleanFormula> important)
+      throws InterruptedException, SolverException {
+    lastCheck = null;
+    AllSatChunk chunk =
+        query(new Request(ALL_SAT, id, 0, dumpAll(important)), AllSatChunk::read, false);
+    while (true) {
+      try {
+        for (List<Integer> model : chunk.models) {
+          List<BooleanFormula> literals = new ArrayList<>(model.size());
+          for (int index : model) {
+            literals.add(index >= 0 ? important.get(index) : bmgr.not(important.get(-index - 1)));
+          }
+          callback.apply(literals);
+        }
+      } catch (RuntimeException e) {
+        if (chunk.hasMore) {
+          stopAllSat(e);
+        }
+        throw e;
+      }
+      if (!chunk.hasMore) {
+        return callback.getResult();
+      }
+      chunk = continueAllSat(new Request(ALL_SAT_NEXT, id));
+    }
+  }
+
+  /** Request the next chunk of all-sat, which fails if the process failed in between. */
+  private AllSatChunk continueAllSat(Request request)
+      throws SolverException, InterruptedException {
+    try {
+      return worker.call(request, AllSatChunk::read);
+    } catch (IOException e) {
+      synchronizedGeneration = -1;
+      throw new SolverException("solver process failed during all-sat", e);
+    } catch (InterruptedException e) {
+      context.getShutdownNotifier().shutdownIfNecessary();
+      throw e;
+    }
+  }
+
+  /** Stop all-sat in the process after the callback failed. */
+  private void stopAllSat(RuntimeException callbackFailure) {
+    try {
+      continueAllSat(new Request(ALL_SAT_STOP, id));
+    } catch (SolverException | InterruptedException | RuntimeException e) {
+      callbackFailure.addSuppressed(e);
+    }
+  }
+
+  /** Execute a query that is not interruptible by the solver. */
+  private <T> T queryWithoutInterrupts(Request request, ReplyReader<T> reader, boolean needsCheck)
+      throws SolverException {
+    try {
+      return query(request, reader, needsCheck);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolverException("solver process was interrupted", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      stack.clear();
+      worker.openProvers.decrementAndGet();
+      try {
+        worker.send(new Request(CLOSE_PROVER, id));
+      } catch (IOException e) {
+        // the prover is gone together with its process
+      }
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sosy_lab.common.ShutdownNotifier;
+import org.sosy_lab.common.configuration.Configuration;
+import org.sosy_lab.common.configuration.ConfigurationBuilder;
+import org.sosy_lab.java_smt.SolverContextFactory;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.test.SolverBasedTest0;
+
+/**
+ * Checks that provers survive the failure of their solver process and stream all-sat models, and
+ * that the process uses the configuration of the client.
+ */
+public class RemoteRestartTest extends SolverBasedTest0 {
+
+  /** Enough predicates for several chunks of all-sat models. */
+  private static final int PREDICATES = 8;
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Override
+  protected ConfigurationBuilder createTestConfigBuilder() {
+    return super.createTestConfigBuilder().setOption("solver.isolatedProcesses", "1");
+  }
+
+  private RemoteWorker getWorker() {
+    return ((RemoteSolverContext) context).getWorkers().get(0);
+  }
+
+  @Test
+  public void configurationIsPassedToProcess() throws Exception {
+    Path logFile = tempFolder.getRoot().toPath().resolve("solver.log");
+    Configuration processConfig =
+        createTestConfigBuilder()
+            .setOption("log.level", "ALL")
+            .setOption("log.file", logFile.toString())
+            .build();
+    // the context in this JVM logs to the logger of the test, only the process uses the file
+    try (SolverContext processContext =
+            SolverContextFactory.createSolverContext(
+                processConfig, logger, ShutdownNotifier.createDummy());
+        ProverEnvironment pe = processContext.newProverEnvironment()) {
+      pe.addConstraint(
+          processContext.getFormulaManager().getBooleanFormulaManager().makeVariable("a"));
+      assertThat(pe.isUnsat()).isFalse();
+    }
+    assertThat(new String(Files.readAllBytes(logFile), StandardCharsets.UTF_8))
+        .contains("SMTInterpol");
+  }
+
+  @Test
+  public void stackIsReplayedAfterKill() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(imgr.greaterThan(x, imgr.makeNumber(1)));
+      pe.push(imgr.lessThan(x, imgr.makeNumber(5)));
+      assertThatEnvironment(pe).isSatisfiable();
+
+      int generation = getWorker().getGeneration();
+      getWorker().kill();
+      pe.push(imgr.greaterThan(x, imgr.makeNumber(4)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+      assertThat(getWorker().getGeneration()).isEqualTo(generation + 1);
+
+      pe.pop();
+      assertThatEnvironment(pe).isSatisfiable();
+      getWorker().kill();
+      pe.pop();
+      pe.push(imgr.greaterThan(x, imgr.makeNumber(10)));
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(imgr.lessThan(x, imgr.makeNumber(2)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+    }
+  }
+
+  @Test
+  public void unparsableConstraintFailsEachCheck() throws Exception {
+    BooleanFormula a = bmgr.makeVariable("a");
+    // the reserved word is dumped without quotes, thus the process can not parse the constraint
+    BooleanFormula unparsable = bmgr.makeVariable("let");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(a);
+      pe.push(unparsable);
+      for (int i = 0; i < 2; i++) {
+        try {
+          pe.isUnsat();
+          fail();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+          // expected, the process does not know the constraint
+        }
+      }
+
+      pe.pop();
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(bmgr.not(a));
+      assertThatEnvironment(pe).isUnsatisfiable();
+    }
+  }
+
+  @Test
+  public void allSatInChunks() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(PREDICATES);
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.or(predicates));
+      int models = pe.allSat(new AllSatCollector(), predicates).size();
+      assertThat(models).isEqualTo((1 << PREDICATES) - 1);
+      assertThat(models).isGreaterThan(2 * RemoteProtocol.ALL_SAT_CHUNK_SIZE);
+    }
+  }
+
+  @Test
+  public void allSatStoppedByCallback() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(PREDICATES);
+    try (ProverEnvironment pe = context.newProverEnvironment();
+        ProverEnvironment other = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.or(predicates));
+      AllSatCollector callback = new AllSatCollector(RemoteProtocol.ALL_SAT_CHUNK_SIZE + 1);
+      try {
+        pe.allSat(callback, predicates);
+        fail();
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      assertThat(callback.getResult()).hasSize(RemoteProtocol.ALL_SAT_CHUNK_SIZE + 1);
+
+      // the process does not wait for the next chunk anymore
+      other.addConstraint(bmgr.not(predicates.get(0)));
+      assertThatEnvironment(other).isSatisfiable();
+      pe.addConstraint(bmgr.not(predicates.get(0)));
+      assertThat(pe.allSat(new AllSatCollector(), predicates).size())
+          .isEqualTo((1 << (PREDICATES - 1)) - 1);
+    }
+  }
+
+  @Test
+  public void otherProversDuringAllSat() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(PREDICATES);
+    try (ProverEnvironment pe = context.newProverEnvironment();
+        ProverEnvironment other = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.or(predicates));
+      other.addConstraint(bmgr.and(predicates));
+      List<Boolean> results = new ArrayList<>();
+      List<List<BooleanFormula>> models =
+          pe.allSat(
+              new AllSatCollector() {
+                @Override
+                public void apply(List<BooleanFormula> model) {
+                  super.apply(model);
+                  if (getResult().size() % RemoteProtocol.ALL_SAT_CHUNK_SIZE == 0) {
+                    try {
+                      results.add(other.isUnsat());
+                    } catch (SolverException | InterruptedException e) {
+                      throw new AssertionError(e);
+                    }
+                  }
+                }
+              },
+              predicates);
+      assertThat(models).hasSize((1 << PREDICATES) - 1);
+      assertThat(results).isNotEmpty();
+      assertThat(results).doesNotContain(true);
+    }
+  }
+
+  @Test
+  public void allSatOfTwoThreads() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(PREDICATES);
+    // the negated predicates of the models exist before the threads start
+    predicates.forEach(bmgr::not);
+    try (ProverEnvironment pe = context.newProverEnvironment();
+        ProverEnvironment other = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.or(predicates));
+      other.addConstraint(bmgr.or(predicates));
+      CountDownLatch otherStarted = new CountDownLatch(1);
+      CountDownLatch finished = new CountDownLatch(1);
+      AllSatCollector otherCallback =
+          new AllSatCollector() {
+            @Override
+            public void apply(List<BooleanFormula> model) {
+              super.apply(model);
+              otherStarted.countDown();
+              // keep the other enumeration open while the first one continues
+              Uninterruptibles.awaitUninterruptibly(finished, 1, TimeUnit.MINUTES);
+            }
+          };
+      List<Future<List<List<BooleanFormula>>>> otherModels = new ArrayList<>();
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        List<List<BooleanFormula>> models;
+        try {
+          models =
+              pe.allSat(
+                  new AllSatCollector() {
+                    @Override
+                    public void apply(List<BooleanFormula> model) {
+                      super.apply(model);
+                      if (getResult().size() == 1) {
+                        otherModels.add(
+                            executor.submit(() -> other.allSat(otherCallback, predicates)));
+                        // the other enumeration has to wait until this one is finished
+                        Uninterruptibles.awaitUninterruptibly(otherStarted, 1, TimeUnit.SECONDS);
+                      }
+                    }
+                  },
+                  predicates);
+        } finally {
+          finished.countDown();
+        }
+        assertThat(models).hasSize((1 << PREDICATES) - 1);
+        assertThat(otherModels.get(0).get()).hasSize((1 << PREDICATES) - 1);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void killDuringAllSat() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(PREDICATES);
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.or(predicates));
+      try {
+        pe.allSat(
+            new AllSatCollector() {
+              @Override
+              public void apply(List<BooleanFormula> model) {
+                super.apply(model);
+                if (getResult().size() == RemoteProtocol.ALL_SAT_CHUNK_SIZE) {
+                  try {
+                    getWorker().kill();
+                  } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                  }
+                }
+              }
+            },
+            predicates);
+        fail();
+      } catch (SolverException e) {
+        // expected, the models of the failed process can not be continued
+      }
+      pe.addConstraint(bmgr.not(predicates.get(0)));
+      assertThat(pe.allSat(new AllSatCollector(), predicates).size())
+          .isEqualTo((1 << (PREDICATES - 1)) - 1);
+    }
+  }
+}
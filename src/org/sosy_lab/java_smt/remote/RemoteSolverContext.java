@@ -0,0 +1,323 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_TARGETS;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.EVALUATE;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sosy_lab.common.ShutdownNotifier;
+import org.sosy_lab.common.ShutdownNotifier.ShutdownRequestListener;
+import org.sosy_lab.common.configuration.Configuration;
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.common.rationals.Rational;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.ArrayFormula;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.FloatingPointFormula;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.FormulaType.BitvectorType;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.NumeralFormula;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.OptimizationProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Assignment;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Request;
+
+/**
+ * {@link SolverContext} that runs the satisfiability checks of a solver in separate processes, such
+ * that a crash or the native memory of the solver does not affect this JVM.
+ *
+ * <p>All formulas are created with the formula manager of a frontend context inside this JVM, which
+ * uses the same solver as the processes. Constraints are serialized to SMT-LIB and sent to the
+ * solver process of the prover, where they are parsed again. Using the same solver on both sides
+ * makes all theories of the solver available and ensures that the process can parse what the
+ * frontend dumps. The processes use the same configuration as the frontend. Interpolation and
+ * optimization are not supported by the processes and directly use the frontend.
+ *
+ * <p>Each prover environment is assigned to the process with the fewest open provers. If a process
+ * fails, it is restarted and each of its provers replays its assertion stack before it continues.
+ * Models of the failed process can not be evaluated anymore.
+ */
+public final class RemoteSolverContext implements SolverContext {
+
+  /** Prefix of the variables used for evaluating non-boolean formulas in models. */
+  private static final String EVALUATION_PREFIX = "__remote_evaluation_";
+
+  private final SolverContext frontend;
+  private final FormulaManager fmgr;
+  private final Solvers solver;
+  private final ImmutableList<RemoteWorker> workers;
+  private final ShutdownNotifier shutdownNotifier;
+  private final ShutdownRequestListener interruptListener;
+  private final LogManager logger;
+
+  /** Ids of provers and models, which share the same namespace in the processes. */
+  private final AtomicInteger ids = new AtomicInteger(0);
+
+  private final Map<FormulaType<?>, String> evaluationVariables = new HashMap<>();
+  private boolean closed = false;
+
+  private RemoteSolverContext(
+      SolverContext pFrontend,
+      Solvers pSolver,
+      List<RemoteWorker> pWorkers,
+      ShutdownNotifier pShutdownNotifier,
+      LogManager pLogger) {
+    frontend = pFrontend;
+    fmgr = frontend.getFormulaManager();
+    solver = pSolver;
+    workers = ImmutableList.copyOf(pWorkers);
+    shutdownNotifier = pShutdownNotifier;
+    logger = pLogger;
+    interruptListener = reason -> workers.forEach(worker -> worker.interrupt(ALL_TARGETS));
+    shutdownNotifier.register(interruptListener);
+  }
+
+  /**
+   * Start the solver processes and create a context for them.
+   *
+   * @param pFrontend the context for creating formulas, owned by the new context afterwards. It
+   *     should use the same solver as the processes.
+   * @param pSolver the solver that runs in the processes.
+   * @param config the configuration of the solver, which is passed to the processes.
+   * @param processes the number of solver processes.
+   * @param pShutdownNotifier interrupts all running checks if shutdown is requested.
+   */
+  public static RemoteSolverContext create(
+      SolverContext pFrontend,
+      Solvers pSolver,
+      Configuration config,
+      int processes,
+      ShutdownNotifier pShutdownNotifier,
+      LogManager pLogger)
+      throws InvalidConfigurationException {
+    checkNotNull(pFrontend);
+    checkNotNull(pSolver);
+    checkNotNull(config);
+    checkNotNull(pShutdownNotifier);
+    checkNotNull(pLogger);
+    checkArgument(processes > 0, "at least one solver process is required");
+
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    String libraryPath = System.getProperty("java.library.path");
+    if (libraryPath != null) {
+      command.add("-Djava.library.path=" + libraryPath);
+    }
+    command.add(RemoteSolverServer.class.getName());
+    command.add(pSolver.name());
+    String properties = config.asPropertiesString();
+
+    List<RemoteWorker> workers = new ArrayList<>(processes);
+    try {
+      for (int i = 0; i < processes; i++) {
+        workers.add(new RemoteWorker(command, properties, pLogger));
+      }
+    } catch (IOException e) {
+      workers.forEach(RemoteWorker::close);
+      throw new InvalidConfigurationException(
+          String.format(
+              "The SMT solver %s could not be started in a separate process (%s).",
+              pSolver, e.getMessage()),
+          e);
+    }
+    return new RemoteSolverContext(pFrontend, pSolver, workers, pShutdownNotifier, pLogger);
+  }
+
+  @Override
+  public FormulaManager getFormulaManager() {
+    return fmgr;
+  }
+
+  @Override
+  public ProverEnvironment newProverEnvironment(ProverOptions... options) {
+    checkState(!closed);
+    RemoteWorker worker =
+        workers.stream().min(Comparator.comparingInt(w -> w.openProvers.get())).get();
+    return new RemoteProverEnvironment(this, worker, options);
+  }
+
+  @Override
+  public InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
+    checkState(!closed);
+    return frontend.newProverEnvironmentWithInterpolation();
+  }
+
+  @Override
+  public OptimizationProverEnvironment newOptimizationProverEnvironment() {
+    checkState(!closed);
+    return frontend.newOptimizationProverEnvironment();
+  }
+
+  @Override
+  public String getVersion() {
+    return workers.get(0).getVersion();
+  }
+
+  @Override
+  public Solvers getSolverName() {
+    return solver;
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      shutdownNotifier.unregister(interruptListener);
+      workers.forEach(RemoteWorker::close);
+      frontend.close();
+    }
+  }
+
+  int nextId() {
+    return ids.getAndIncrement();
+  }
+
+  ImmutableList<RemoteWorker> getWorkers() {
+    return workers;
+  }
+
+  ShutdownNotifier getShutdownNotifier() {
+    return shutdownNotifier;
+  }
+
+  LogManager getLogger() {
+    return logger;
+  }
+
+  String dump(BooleanFormula formula) {
+    return fmgr.dumpFormula(formula).toString();
+  }
+
+  /**
+   * Create the request for evaluating a formula in a model. A non-boolean formula is sent as
+   * equality with a variable of the same type, because only boolean formulas can be serialized.
+   */
+  Request makeEvaluationRequest(int model, Formula formula) {
+    if (formula instanceof BooleanFormula) {
+      return new Request(EVALUATE, model, 0, ImmutableList.of(dump((BooleanFormula) formula)));
+    }
+    FormulaType<?> type = fmgr.getFormulaType(formula);
+    String name = evaluationVariables.get(type);
+    if (name == null) {
+      name = EVALUATION_PREFIX + evaluationVariables.size();
+      evaluationVariables.put(type, name);
+    }
+    Formula variable = fmgr.makeVariable(type, name);
+    return new Request(
+        EVALUATE,
+        model,
+        0,
+        ImmutableList.of(dump(makeEqual(variable, formula)), name, type.toString()));
+  }
+
+  /**
+   * Rebuild the value assignments of a model in the formula manager of this context. Assignments
+   * of functions whose arguments can not be represented as formulas are omitted.
+   */
+  ImmutableList<ValueAssignment> toValueAssignments(List<Assignment> assignments) {
+    ImmutableList.Builder<ValueAssignment> result = ImmutableList.builder();
+    for (Assignment assignment : assignments) {
+      Formula key;
+      if (assignment.arguments.isEmpty()) {
+        key = fmgr.makeVariable(assignment.type, assignment.name);
+      } else {
+        List<Formula> arguments = new ArrayList<>(assignment.arguments.size());
+        try {
+          for (int i = 0; i < assignment.arguments.size(); i++) {
+            arguments.add(
+                makeValue(assignment.argumentTypes.get(i), assignment.arguments.get(i)));
+          }
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+          logger.logDebugException(e, "omitting assignment " + assignment.name);
+          continue;
+        }
+        FunctionDeclaration<?> function =
+            fmgr.getUFManager()
+                .declareUF(assignment.name, assignment.type, assignment.argumentTypes);
+        key = fmgr.getUFManager().callUF(function, arguments);
+      }
+      result.add(
+          new ValueAssignment(key, assignment.name, assignment.value, assignment.arguments));
+    }
+    return result.build();
+  }
+
+  private Formula makeValue(FormulaType<?> type, Object value) {
+    if (type.isBooleanType() && value instanceof Boolean) {
+      return fmgr.getBooleanFormulaManager().makeBoolean((Boolean) value);
+    } else if (type.isIntegerType() && value instanceof BigInteger) {
+      return fmgr.getIntegerFormulaManager().makeNumber((BigInteger) value);
+    } else if (type.isRationalType() && value instanceof BigInteger) {
+      return fmgr.getRationalFormulaManager().makeNumber((BigInteger) value);
+    } else if (type.isRationalType() && value instanceof Rational) {
+      return fmgr.getRationalFormulaManager().makeNumber((Rational) value);
+    } else if (type.isBitvectorType() && value instanceof BigInteger) {
+      return fmgr.getBitvectorFormulaManager()
+          .makeBitvector(((BitvectorType) type).getSize(), (BigInteger) value);
+    } else {
+      throw new IllegalArgumentException("cannot create formula for value " + value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private BooleanFormula makeEqual(Formula pLhs, Formula pRhs) {
+    if (pLhs instanceof IntegerFormula && pRhs instanceof IntegerFormula) {
+      return fmgr.getIntegerFormulaManager().equal((IntegerFormula) pLhs, (IntegerFormula) pRhs);
+    } else if (pLhs instanceof NumeralFormula && pRhs instanceof NumeralFormula) {
+      return fmgr.getRationalFormulaManager().equal((NumeralFormula) pLhs, (NumeralFormula) pRhs);
+    } else if (pLhs instanceof BitvectorFormula) {
+      return fmgr.getBitvectorFormulaManager()
+          .equal((BitvectorFormula) pLhs, (BitvectorFormula) pRhs);
+    } else if (pLhs instanceof FloatingPointFormula) {
+      return fmgr.getFloatingPointFormulaManager()
+          .assignment((FloatingPointFormula) pLhs, (FloatingPointFormula) pRhs);
+    } else if (pLhs instanceof ArrayFormula<?, ?>) {
+      @SuppressWarnings("rawtypes")
+      ArrayFormula rhs = (ArrayFormula) pRhs;
+      return fmgr.getArrayFormulaManager().equivalence((ArrayFormula<?, ?>) pLhs, rhs);
+    } else {
+      throw new IllegalArgumentException("cannot evaluate formula " + pRhs);
+    }
+  }
+}
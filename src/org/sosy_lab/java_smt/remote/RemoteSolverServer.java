@@ -0,0 +1,637 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ADD_CONSTRAINT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT_CHUNK_SIZE;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT_NEXT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_SAT_STOP;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ALL_TARGETS;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.CLOSE_MODEL;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.CLOSE_PROVER;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.EVALUATE;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.EXIT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.FAILURE;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.GET_MODEL;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.GET_UNSAT_CORE;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ILLEGAL_ARGUMENT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.INTERRUPT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.INTERRUPTED;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.IS_UNSAT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.IS_UNSAT_WITH_ASSUMPTIONS;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.NEW_PROVER;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.NO_MODEL;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.OK;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.POP;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.PUSH;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.SOLVER_EXCEPTION;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.UNSAT_CORE_OVER_ASSUMPTIONS;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.UNSUPPORTED;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.VERSION;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.hasReply;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.isTransferable;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.writeIndices;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.writeString;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.writeValue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharSource;
+import com.google.common.io.CharStreams;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import org.sosy_lab.common.ShutdownNotifier;
+import org.sosy_lab.common.configuration.Configuration;
+import org.sosy_lab.common.configuration.FileOption;
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import org.sosy_lab.common.configuration.converters.FileTypeConverter;
+import org.sosy_lab.common.log.BasicLogManager;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.SolverContextFactory;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.api.visitors.DefaultFormulaVisitor;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.AllSatChunk;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Assignment;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Request;
+
+/**
+ * Entry point of a solver process started by {@link RemoteWorker}. The process connects to the
+ * local port given as argument, creates a solver context, and executes the requests of {@link
+ * RemoteProtocol} until it receives {@link RemoteProtocol#EXIT} or the connection is closed.
+ *
+ * <p>Requests are executed one after the other by the main thread, except for interrupts, which
+ * are executed immediately by the thread that reads the requests. While all-sat waits for the
+ * client to request the next chunk of models, the main thread continues with the requests for other
+ * targets.
+ */
+public final class RemoteSolverServer {
+
+  private static final class ProverState {
+
+    private final ProverEnvironment prover;
+
+    /** The constraints of each level, the top level first. */
+    private final Deque<List<BooleanFormula>> levels = new ArrayDeque<>();
+
+    private ProverState(ProverEnvironment pProver) {
+      prover = pProver;
+      levels.push(new ArrayList<>());
+    }
+
+    /** All asserted constraints, from the bottom level to the top level. */
+    private List<BooleanFormula> getAssertedFormulas() {
+      List<BooleanFormula> asserted = new ArrayList<>();
+      for (Iterator<List<BooleanFormula>> it = levels.descendingIterator(); it.hasNext(); ) {
+        asserted.addAll(it.next());
+      }
+      return asserted;
+    }
+  }
+
+  private final SolverContext context;
+  private final FormulaManager fmgr;
+  private final BooleanFormulaManager bmgr;
+  private final DataOutputStream out;
+
+  /** Requests in the order they were received, except for interrupts. */
+  private final BlockingDeque<Request> requests = new LinkedBlockingDeque<>();
+
+  /** Provers by id, also accessed by the thread reading the requests for interrupts. */
+  private final Map<Integer, ProverState> provers = new ConcurrentHashMap<>();
+
+  private final Map<Integer, Model> models = new HashMap<>();
+
+  /** Errors of requests without reply, reported by the next reply for the same target. */
+  private final Map<Integer, RuntimeException> pendingErrors = new HashMap<>();
+
+  private RemoteSolverServer(SolverContext pContext, DataOutputStream pOut) {
+    context = pContext;
+    fmgr = context.getFormulaManager();
+    bmgr = fmgr.getBooleanFormulaManager();
+    out = pOut;
+  }
+
+  /**
+   * Start a solver process.
+   *
+   * @param args the name of the solver and the local port to connect to. The first line of the
+   *     standard input is sent back over the connection to authenticate the process. The rest of
+   *     the standard input is the configuration of the solver in the format of a properties file.
+   */
+  public static void main(String... args) throws IOException, InterruptedException {
+    checkArgument(args.length == 2, "expected arguments: solver, port");
+    Solvers solver = Solvers.valueOf(args[0]);
+    int port = Integer.parseInt(args[1]);
+    BufferedReader stdin =
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    String token = stdin.readLine();
+    checkArgument(token != null, "missing authentication token");
+    String properties = CharStreams.toString(stdin);
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, token);
+      out.flush();
+
+      SolverContext context;
+      try {
+        Configuration clientConfig =
+            Configuration.builder()
+                .loadFromSource(CharSource.wrap(properties), "", "configuration of the client")
+                .build();
+        Configuration config =
+            Configuration.builder()
+                .copyFrom(clientConfig)
+                // options for files, e.g., for logging, are relative to output.path of the client
+                .addConverter(FileOption.class, FileTypeConverter.create(clientConfig))
+                .setOption("solver.solver", solver.name())
+                // these options are applied to the context of the client
+                .clearOption("solver.isolatedProcesses")
+                .clearOption("solver.portfolio")
+                .clearOption("solver.reuseProvers")
+                .clearOption("solver.useLogger")
+                .build();
+        LogManager logger = BasicLogManager.create(config);
+        context =
+            SolverContextFactory.createSolverContext(
+                config, logger, ShutdownNotifier.createDummy(), solver);
+      } catch (InvalidConfigurationException e) {
+        reportStartupFailure(in, out, e);
+        return;
+      }
+
+      try (SolverContext c = context) {
+        new RemoteSolverServer(c, out).serve(in);
+      }
+    }
+  }
+
+  /** Answer all requests with the failure until the connection is closed. */
+  private static void reportStartupFailure(
+      DataInputStream in, DataOutputStream out, InvalidConfigurationException e)
+      throws IOException {
+    try {
+      while (true) {
+        Request request = Request.read(in);
+        if (request.command == EXIT) {
+          return;
+        } else if (hasReply(request.command)) {
+          out.writeByte(FAILURE);
+          writeString(out, describe(e));
+          out.flush();
+        }
+      }
+    } catch (IOException readFailure) {
+      // connection closed by the client
+    }
+  }
+
+  private void serve(DataInputStream in) throws IOException, InterruptedException {
+    Thread reader = new Thread(() -> readRequests(in), "remote-solver-reader");
+    reader.setDaemon(true);
+    reader.start();
+
+    try {
+      for (Request request = requests.take();
+          request.command != EXIT;
+          request = requests.take()) {
+        handle(request);
+      }
+    } finally {
+      models.values().forEach(Model::close);
+      provers.values().forEach(state -> state.prover.close());
+    }
+  }
+
+  private void handle(Request request) throws IOException {
+    if (hasReply(request.command)) {
+      executeWithReply(request);
+    } else {
+      try {
+        execute(request);
+      } catch (RuntimeException e) {
+        pendingErrors.putIfAbsent(request.target, e);
+      }
+    }
+  }
+
+  private void readRequests(DataInputStream in) {
+    try {
+      while (true) {
+        Request request = Request.read(in);
+        if (request.command == INTERRUPT) {
+          interrupt(request.target);
+        } else {
+          requests.add(request);
+        }
+      }
+    } catch (IOException e) {
+      // connection closed by the client
+      requests.add(new Request(EXIT, ALL_TARGETS));
+    }
+  }
+
+  private void interrupt(int target) {
+    if (target == ALL_TARGETS) {
+      provers.values().forEach(state -> state.prover.interrupt());
+    } else {
+      ProverState state = provers.get(target);
+      if (state != null) {
+        state.prover.interrupt();
+      }
+    }
+  }
+
+  private void execute(Request request) {
+    switch (request.command) {
+      case NEW_PROVER:
+        ProverState old = provers.remove(request.target);
+        if (old != null) {
+          // the client replays a prover after a restart, maybe more than once
+          old.prover.close();
+        }
+        pendingErrors.remove(request.target);
+        provers.put(
+            request.target,
+            new ProverState(
+                context.newProverEnvironment(RemoteProtocol.decodeOptions(request.argument))));
+        break;
+      case CLOSE_PROVER:
+        ProverState closed = provers.remove(request.target);
+        if (closed != null) {
+          closed.prover.close();
+        }
+        pendingErrors.remove(request.target);
+        break;
+      case PUSH:
+        ProverState pushed = getProver(request.target);
+        pushed.prover.push();
+        pushed.levels.push(new ArrayList<>());
+        break;
+      case POP:
+        ProverState popped = getProver(request.target);
+        popped.prover.pop();
+        popped.levels.pop();
+        break;
+      case ADD_CONSTRAINT:
+        ProverState state = getProver(request.target);
+        BooleanFormula constraint = fmgr.parse(request.formulas.get(0));
+        state.prover.addConstraint(constraint);
+        state.levels.peek().add(constraint);
+        break;
+      case CLOSE_MODEL:
+        Model model = models.remove(request.target);
+        if (model != null) {
+          model.close();
+        }
+        pendingErrors.remove(request.target);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown command " + request.command);
+    }
+  }
+
+  private void executeWithReply(Request request) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte status;
+    String message = "";
+    try {
+      RuntimeException pending = pendingErrors.remove(request.target);
+      if (pending != null) {
+        throw pending;
+      }
+      computeReply(request, new DataOutputStream(result));
+      status = OK;
+    } catch (SolverException e) {
+      status = SOLVER_EXCEPTION;
+      message = describe(e);
+    } catch (InterruptedException e) {
+      status = INTERRUPTED;
+      message = describe(e);
+    } catch (IllegalArgumentException e) {
+      status = ILLEGAL_ARGUMENT;
+      message = describe(e);
+    } catch (UnsupportedOperationException e) {
+      status = UNSUPPORTED;
+      message = describe(e);
+    } catch (RuntimeException | AssertionError e) {
+      status = FAILURE;
+      message = describe(e);
+    }
+
+    out.writeByte(status);
+    if (status == OK) {
+      result.writeTo(out);
+    } else {
+      writeString(out, message);
+    }
+    out.flush();
+  }
+
+  private void computeReply(Request request, DataOutputStream result)
+      throws IOException, SolverException, InterruptedException {
+    switch (request.command) {
+      case VERSION:
+        writeString(result, context.getVersion());
+        break;
+      case IS_UNSAT:
+        result.writeBoolean(getProver(request.target).prover.isUnsat());
+        break;
+      case IS_UNSAT_WITH_ASSUMPTIONS:
+        result.writeBoolean(
+            getProver(request.target).prover.isUnsatWithAssumptions(parse(request.formulas)));
+        break;
+      case GET_MODEL:
+        ProverState state = getProver(request.target);
+        if (request.argument == NO_MODEL) {
+          writeAssignments(result, state.prover.getModelAssignments());
+        } else {
+          Model model = state.prover.getModel();
+          models.put(request.argument, model);
+          writeAssignments(result, model);
+        }
+        break;
+      case EVALUATE:
+        Model model = models.get(request.target);
+        checkArgument(model != null, "unknown model %s", request.target);
+        writeValue(result, model.evaluate(parseEvaluated(request.formulas)));
+        break;
+      case GET_UNSAT_CORE:
+        ProverState coreState = getProver(request.target);
+        writeIndices(
+            result, indicesOf(coreState.prover.getUnsatCore(), coreState.getAssertedFormulas()));
+        break;
+      case UNSAT_CORE_OVER_ASSUMPTIONS:
+        List<BooleanFormula> assumptions = parse(request.formulas);
+        Optional<List<BooleanFormula>> core =
+            getProver(request.target).prover.unsatCoreOverAssumptions(assumptions);
+        result.writeBoolean(core.isPresent());
+        if (core.isPresent()) {
+          writeIndices(result, indicesOf(core.get(), assumptions));
+        }
+        break;
+      case ALL_SAT:
+        List<BooleanFormula> important = parse(request.formulas);
+        LiteralCollector collector = new LiteralCollector(request.target, important);
+        try {
+          getProver(request.target).prover.allSat(collector, important);
+        } catch (AllSatStopped e) {
+          // the client does not need more models
+        }
+        new AllSatChunk(collector.getResult(), false).write(result);
+        break;
+      case ALL_SAT_NEXT:
+      case ALL_SAT_STOP:
+        throw new IllegalStateException(
+            "prover " + request.target + " is not waiting for the next chunk of all-sat");
+      default:
+        throw new IllegalArgumentException("unknown command " + request.command);
+    }
+  }
+
+  /** Thrown by {@link LiteralCollector} for ending all-sat early. */
+  private static final class AllSatStopped extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * Collects the models of all-sat as indices of the important predicates. A negated predicate at
+   * index i is represented as -i-1. Each full chunk is sent as reply, and the enumeration only
+   * continues after the client requested the next chunk.
+   */
+  private class LiteralCollector implements AllSatCallback<List<List<Integer>>> {
+
+    private final int target;
+    private final Map<BooleanFormula, Integer> literals = new HashMap<>();
+
+    /** The models that were not sent yet. */
+    private List<List<Integer>> models = new ArrayList<>();
+
+    private LiteralCollector(int pTarget, List<BooleanFormula> important) {
+      target = pTarget;
+      for (int i = 0; i < important.size(); i++) {
+        literals.put(important.get(i), i);
+        literals.put(bmgr.not(important.get(i)), -i - 1);
+      }
+    }
+
+    @Override
+    public void apply(List<BooleanFormula> model) {
+      List<Integer> indices = new ArrayList<>(model.size());
+      for (BooleanFormula literal : model) {
+        Integer index = literals.get(literal);
+        checkState(index != null, "unexpected literal %s in all-sat model", literal);
+        indices.add(index);
+      }
+      models.add(indices);
+      if (models.size() >= ALL_SAT_CHUNK_SIZE) {
+        sendChunk();
+      }
+    }
+
+    private void sendChunk() {
+      try {
+        out.writeByte(OK);
+        new AllSatChunk(models, true).write(out);
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      models = new ArrayList<>();
+      awaitNextChunk();
+    }
+
+    /** Execute other requests until the client requests the next chunk or stops all-sat. */
+    private void awaitNextChunk() {
+      while (true) {
+        Request request;
+        try {
+          request = requests.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new AllSatStopped();
+        }
+        if (request.command == EXIT) {
+          requests.addFirst(request);
+          throw new AllSatStopped();
+        } else if (request.target == target && request.command == ALL_SAT_NEXT) {
+          return;
+        } else if (request.target == target && request.command == ALL_SAT_STOP) {
+          throw new AllSatStopped();
+        }
+        try {
+          handle(request);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    @Override
+    public List<List<Integer>> getResult() {
+      return models;
+    }
+  }
+
+  private ProverState getProver(int target) {
+    ProverState state = provers.get(target);
+    checkArgument(state != null, "unknown prover %s", target);
+    return state;
+  }
+
+  private List<BooleanFormula> parse(List<String> formulas) {
+    List<BooleanFormula> parsed = new ArrayList<>(formulas.size());
+    for (String formula : formulas) {
+      parsed.add(fmgr.parse(formula));
+    }
+    return parsed;
+  }
+
+  /**
+   * Parse the formula to evaluate. A non-boolean formula is sent as equality with a variable,
+   * followed by the name and the type of the variable.
+   */
+  private Formula parseEvaluated(List<String> formulas) {
+    if (formulas.size() == 1) {
+      return fmgr.parse(formulas.get(0));
+    }
+    Formula variable =
+        fmgr.makeVariable(FormulaType.fromString(formulas.get(2)), formulas.get(1));
+    return fmgr.visit(
+        fmgr.parse(formulas.get(0)),
+        new DefaultFormulaVisitor<Formula>() {
+          @Override
+          protected Formula visitDefault(Formula f) {
+            throw new IllegalArgumentException("expected an equality instead of " + f);
+          }
+
+          @Override
+          public Formula visitFunction(
+              Formula f, List<Formula> args, FunctionDeclaration<?> functionDeclaration) {
+            checkArgument(args.size() == 2, "expected an equality instead of %s", f);
+            return args.get(0).equals(variable) ? args.get(1) : args.get(0);
+          }
+        });
+  }
+
+  private static List<Integer> indicesOf(
+      List<BooleanFormula> formulas, List<BooleanFormula> allFormulas) {
+    Map<BooleanFormula, Integer> index = new HashMap<>();
+    for (int i = allFormulas.size() - 1; i >= 0; i--) {
+      index.put(allFormulas.get(i), i);
+    }
+    List<Integer> indices = new ArrayList<>(formulas.size());
+    for (BooleanFormula formula : formulas) {
+      Integer i = index.get(formula);
+      checkState(i != null, "unexpected formula %s in unsat core", formula);
+      indices.add(i);
+    }
+    return indices;
+  }
+
+  /**
+   * Write the assignments that can be represented independently of the context. Assignments of
+   * arrays and assignments with values that can not be transferred are omitted.
+   */
+  private void writeAssignments(DataOutputStream result, Iterable<ValueAssignment> assignments)
+      throws IOException {
+    List<Assignment> transferable = new ArrayList<>();
+    for (ValueAssignment assignment : assignments) {
+      FormulaType<?> type = fmgr.getFormulaType(assignment.getKey());
+      List<FormulaType<?>> argumentTypes =
+          assignment.isFunction() ? getArgumentTypes(assignment.getKey()) : ImmutableList.of();
+      if (!type.isArrayType()
+          && argumentTypes.size() == assignment.getArity()
+          && argumentTypes.stream().noneMatch(FormulaType::isArrayType)
+          && isTransferable(assignment.getValue())
+          && assignment.getArgumentsInterpretation().stream().allMatch(v -> isTransferable(v))) {
+        transferable.add(
+            new Assignment(
+                assignment.getName(),
+                type,
+                assignment.getValue(),
+                argumentTypes,
+                assignment.getArgumentsInterpretation()));
+      }
+    }
+    result.writeInt(transferable.size());
+    for (Assignment assignment : transferable) {
+      assignment.write(result);
+    }
+  }
+
+  private List<FormulaType<?>> getArgumentTypes(Formula application) {
+    return fmgr.visit(
+        application,
+        new DefaultFormulaVisitor<List<FormulaType<?>>>() {
+          @Override
+          protected List<FormulaType<?>> visitDefault(Formula f) {
+            return ImmutableList.of();
+          }
+
+          @Override
+          public List<FormulaType<?>> visitFunction(
+              Formula f, List<Formula> args, FunctionDeclaration<?> functionDeclaration) {
+            return functionDeclaration.getArgumentTypes();
+          }
+        });
+  }
+
+  private static String describe(Throwable e) {
+    return e.getMessage() != null ? e.getMessage() : e.toString();
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.remote;
+
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.EXIT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.ILLEGAL_ARGUMENT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.INTERRUPT;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.INTERRUPTED;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.OK;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.SOLVER_EXCEPTION;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.UNSUPPORTED;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.VERSION;
+import static org.sosy_lab.java_smt.remote.RemoteProtocol.readString;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sosy_lab.common.log.LogManager;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.ReplyReader;
+import org.sosy_lab.java_smt.remote.RemoteProtocol.Request;
+
+/**
+ * One solver process running {@link RemoteSolverServer} and the connection to it. The process is
+ * restarted on demand after it failed, which is visible to the users of this worker as a new
+ * generation.
+ *
+ * <p>Requests without reply are buffered and sent together with the next request that has a
+ * reply. Only one request with reply is executed at a time, but interrupts can be sent at any time.
+ */
+final class RemoteWorker implements AutoCloseable {
+
+  private static final int CONNECT_TIMEOUT_SECONDS = 60;
+  private static final int EXIT_TIMEOUT_SECONDS = 5;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final ImmutableList<String> command;
+  private final String configuration;
+  private final LogManager logger;
+
+  /** Taken for each request with reply, before {@link #outputLock}. */
+  private final Object requestLock = new Object();
+
+  private final Object outputLock = new Object();
+
+  @GuardedBy("outputLock")
+  private @Nullable Process process;
+
+  @GuardedBy("outputLock")
+  private @Nullable Socket socket;
+
+  @GuardedBy("outputLock")
+  private @Nullable DataOutputStream out;
+
+  /** Only read while holding {@link #requestLock}. */
+  private volatile @Nullable DataInputStream in;
+
+  private volatile int generation = 0;
+  private volatile String version = "";
+  private volatile boolean closed = false;
+
+  /** The number of open provers assigned to this worker, used for balancing the workers. */
+  final AtomicInteger openProvers = new AtomicInteger(0);
+
+  /**
+   * Held while the models of all-sat are enumerated by a prover of this worker. The process can
+   * only continue its innermost enumeration, thus enumerations of different threads must not
+   * overlap, while a callback may start another enumeration in the same thread.
+   */
+  final ReentrantLock allSatLock = new ReentrantLock();
+
+  /**
+   * Start a solver process.
+   *
+   * @param pCommand the command line of the process, without the port it has to connect to.
+   * @param pConfiguration the configuration of the solver in the format of a properties file.
+   */
+  RemoteWorker(List<String> pCommand, String pConfiguration, LogManager pLogger)
+      throws IOException {
+    command = ImmutableList.copyOf(pCommand);
+    configuration = pConfiguration;
+    logger = pLogger;
+    synchronized (requestLock) {
+      synchronized (outputLock) {
+        start();
+      }
+    }
+  }
+
+  @GuardedBy("requestLock")
+  private void start() throws IOException {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      List<String> commandLine = new ArrayList<>(command);
+      commandLine.add(Integer.toString(server.getLocalPort()));
+      synchronized (outputLock) {
+        process =
+            new ProcessBuilder(commandLine)
+                .redirectOutput(Redirect.INHERIT)
+                .redirectError(Redirect.INHERIT)
+                .start();
+
+        // The process authenticates itself with a token from its standard input,
+        // such that no other local process can take its place.
+        // The configuration follows the token, it is too long for the command line.
+        String token = new BigInteger(128, RANDOM).toString(16);
+        try (OutputStream stdin = process.getOutputStream()) {
+          stdin.write((token + "\n" + configuration).getBytes(StandardCharsets.UTF_8));
+        }
+        socket = accept(server, process, token);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      }
+    }
+    generation++;
+
+    try {
+      version = call(new Request(VERSION, 0), RemoteProtocol::readString);
+    } catch (SolverException | InterruptedException | RuntimeException e) {
+      stop();
+      throw new IOException("solver process could not be started: " + e.getMessage(), e);
+    }
+  }
+
+  private static Socket accept(ServerSocket server, Process process, String token)
+      throws IOException {
+    server.setSoTimeout(1000);
+    for (int i = 0; i < CONNECT_TIMEOUT_SECONDS; i++) {
+      if (!process.isAlive()) {
+        throw new IOException("solver process terminated with exit code " + process.exitValue());
+      }
+      Socket candidate;
+      try {
+        candidate = server.accept();
+      } catch (SocketTimeoutException e) {
+        continue;
+      }
+      candidate.setSoTimeout(1000 * CONNECT_TIMEOUT_SECONDS);
+      try {
+        if (token.equals(readString(new DataInputStream(candidate.getInputStream())))) {
+          candidate.setSoTimeout(0);
+          return candidate;
+        }
+      } catch (IOException e) {
+        // not our process
+      }
+      candidate.close();
+    }
+    process.destroyForcibly();
+    throw new IOException("solver process did not connect");
+  }
+
+  /** Stop the current process. */
+  @GuardedBy("outputLock")
+  private void stop() {
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } catch (IOException e) {
+      logger.logDebugException(e, "closing connection to solver process failed");
+    }
+    if (process != null) {
+      process.destroyForcibly();
+    }
+    socket = null;
+    process = null;
+    out = null;
+    in = null;
+  }
+
+  /**
+   * Restart the process after it failed, unless this already happened.
+   *
+   * @param failedGeneration the generation of the process that failed.
+   */
+  void restart(int failedGeneration) throws IOException {
+    synchronized (requestLock) {
+      synchronized (outputLock) {
+        if (closed || generation != failedGeneration) {
+          return;
+        }
+        logger.log(Level.WARNING, "Solver process failed and is restarted.");
+        stop();
+        start();
+      }
+    }
+  }
+
+  /** Kill the current process without closing the connection, as if the process crashed. */
+  void kill() throws InterruptedException {
+    Process current;
+    synchronized (outputLock) {
+      current = process;
+    }
+    if (current != null) {
+      current.destroyForcibly().waitFor();
+    }
+  }
+
+  /** The generation of the current process, which changes with each restart. */
+  int getGeneration() {
+    return generation;
+  }
+
+  String getVersion() {
+    return version;
+  }
+
+  /** Send a request without reply. It is buffered until the next request with reply. */
+  void send(Request request) throws IOException {
+    synchronized (outputLock) {
+      request.write(getOutput());
+    }
+  }
+
+  /**
+   * Execute a request with reply, together with all buffered requests.
+   *
+   * @throws IOException if the process failed. It can be restarted with {@link #restart}.
+   */
+  <T> T call(Request request, ReplyReader<T> reader)
+      throws IOException, SolverException, InterruptedException {
+    synchronized (requestLock) {
+      DataInputStream input;
+      synchronized (outputLock) {
+        DataOutputStream output = getOutput();
+        request.write(output);
+        output.flush();
+        input = in;
+      }
+      if (input == null) {
+        throw new IOException("solver process is not running");
+      }
+      byte status = input.readByte();
+      if (status == OK) {
+        return reader.read(input);
+      }
+      String message = readString(input);
+      switch (status) {
+        case SOLVER_EXCEPTION:
+          throw new SolverException(message);
+        case INTERRUPTED:
+          throw new InterruptedException(message);
+        case ILLEGAL_ARGUMENT:
+          throw new IllegalArgumentException(message);
+        case UNSUPPORTED:
+          throw new UnsupportedOperationException(message);
+        default:
+          throw new IllegalStateException(message);
+      }
+    }
+  }
+
+  /** Interrupt the running operation of a prover, or of all provers. */
+  void interrupt(int target) {
+    synchronized (outputLock) {
+      try {
+        DataOutputStream output = getOutput();
+        new Request(INTERRUPT, target).write(output);
+        output.flush();
+      } catch (IOException e) {
+        logger.logDebugException(e, "interrupting solver process failed");
+      }
+    }
+  }
+
+  @GuardedBy("outputLock")
+  private DataOutputStream getOutput() throws IOException {
+    if (out == null) {
+      throw new IOException("solver process is not running");
+    }
+    return out;
+  }
+
+  @Override
+  public void close() {
+    synchronized (outputLock) {
+      if (closed) {
+        return;
+      }
+      try {
+        DataOutputStream output = getOutput();
+        new Request(EXIT, 0).write(output);
+        output.flush();
+        if (process != null && !process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          logger.log(Level.WARNING, "Solver process did not exit and is killed.");
+        }
+      } catch (IOException e) {
+        logger.logDebugException(e, "stopping solver process failed");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      closed = true;
+      stop();
+    }
+  }
+}
@@ -46,13 +46,19 @@ abstract class Mathsat5AbstractProver<T2> implements BasicProverEnvironment<T2>
   protected final Mathsat5FormulaCreator creator;
   protected boolean closed = false;
 
+  /**
+   * Whether {@link #interrupt()} was called during the current operation, or since the last
+   * operation ended.
+   */
+  private volatile boolean interruptRequested = false;
+
   protected Mathsat5AbstractProver(
       Mathsat5SolverContext pContext, Map<String, String> pConfig, Mathsat5FormulaCreator creator) {
     context = pContext;
     this.creator = creator;
     curConfig = buildConfig(pConfig);
     curEnv = context.createEnvironment(curConfig);
-    terminationTest = context.addTerminationTest(curEnv);
+    terminationTest = context.addTerminationTest(curEnv, () -> interruptRequested);
   }
 
   private long buildConfig(Map<String, String> pConfig) {
@@ -63,10 +69,39 @@ abstract class Mathsat5AbstractProver<T2> implements BasicProverEnvironment<T2>
     return cfg;
   }
 
+  @Override
+  public void interrupt() {
+    interruptRequested = true;
+  }
+
+  /**
+   * Has to be called at the start of each operation that can be stopped by {@link #interrupt}.
+   * Throws an {@link InterruptedException} if the operation was interrupted before it started.
+   */
+  protected final void startInterruptibleOperation() throws InterruptedException {
+    if (interruptRequested) {
+      interruptRequested = false;
+      throw new InterruptedException("MathSAT operation was interrupted");
+    }
+  }
+
+  /**
+   * Has to be called when an operation started by {@link #startInterruptibleOperation} ends, also
+   * if it ends with an exception. Interrupts that arrive later do not affect the next operation.
+   */
+  protected final void endInterruptibleOperation() {
+    interruptRequested = false;
+  }
+
   @Override
   public boolean isUnsat() throws InterruptedException, SolverException {
     Preconditions.checkState(!closed);
-    return !msat_check_sat(curEnv);
+    startInterruptibleOperation();
+    try {
+      return !msat_check_sat(curEnv);
+    } finally {
+      endInterruptibleOperation();
+    }
   }
 
   @Override
@@ -88,8 +88,13 @@ class Mathsat5InterpolatingProver extends Mathsat5AbstractProver<Integer>
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> pAssumptions)
       throws SolverException, InterruptedException {
     Preconditions.checkState(!closed);
-    return !msat_check_sat_with_assumptions(
-        curEnv, Mathsat5FormulaManager.getMsatTerm(pAssumptions));
+    startInterruptibleOperation();
+    try {
+      return !msat_check_sat_with_assumptions(
+          curEnv, Mathsat5FormulaManager.getMsatTerm(pAssumptions));
+    } finally {
+      endInterruptibleOperation();
+    }
   }
 
   @Override
@@ -32,14 +32,17 @@ import static org.sosy_lab.java_smt.solvers.mathsat5.Mathsat5NativeApi.msat_term
 import static org.sosy_lab.java_smt.solvers.mathsat5.Mathsat5NativeApi.msat_term_get_type;
 import static org.sosy_lab.java_smt.solvers.mathsat5.Mathsat5NativeApi.msat_term_is_array_write;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 import org.sosy_lab.java_smt.api.Formula;
 import org.sosy_lab.java_smt.basicimpl.AbstractModel.CachingAbstractModel;
 
@@ -60,10 +63,34 @@ class Mathsat5Model extends CachingAbstractModel<Long, Long, Long> {
     return formulaCreator.convertValue(f, term);
   }
 
+  @Override
+  protected List<Object> evaluateAllImpl(List<Long> formulas) {
+    // MathSAT shares equal terms, thus equal values of several formulas share one conversion.
+    // Numerals are also shared across sorts, but are converted depending on the sort of the key.
+    Table<Long, Long, Object> convertedValues = HashBasedTable.create();
+    List<Object> values = new ArrayList<>(formulas.size());
+    for (long f : formulas) {
+      long type = msat_term_get_type(f);
+      long term = msat_model_eval(model, f);
+      Object value = convertedValues.get(type, term);
+      if (value == null) {
+        value = formulaCreator.convertValue(f, term);
+        convertedValues.put(type, term, value);
+      }
+      values.add(value);
+    }
+    return values;
+  }
+
   @Override
   protected ImmutableList<ValueAssignment> modelToList() {
-    Builder<ValueAssignment> assignments = ImmutableList.builder();
+    return ImmutableList.copyOf(modelIterator(name -> true));
+  }
 
+  @Override
+  protected Iterator<ValueAssignment> modelIterator(Predicate<String> symbolFilter) {
+    // The model entries are listed eagerly, their values are converted during the iteration.
+    List<long[]> entries = new ArrayList<>();
     long modelIterator = msat_model_create_iterator(model);
     while (msat_model_iterator_has_next(modelIterator)) {
       long[] key = new long[1];
@@ -71,15 +98,23 @@ class Mathsat5Model extends CachingAbstractModel<Long, Long, Long> {
       if (msat_model_iterator_next(modelIterator, key, value)) {
         throw new NoSuchElementException();
       }
-
-      if (msat_is_array_type(creator.getEnv(), msat_term_get_type(value[0]))) {
-        assignments.addAll(getArrayAssignments(key[0], key[0], value[0], Collections.emptyList()));
-      } else {
-        assignments.add(getAssignment(key[0], value[0]));
+      if (symbolFilter.test(formulaCreator.getName(key[0]))) {
+        entries.add(new long[] {key[0], value[0]});
       }
     }
     msat_destroy_model_iterator(modelIterator);
-    return assignments.build();
+    return entries
+        .stream()
+        .flatMap(entry -> getAssignments(entry[0], entry[1]).stream())
+        .iterator();
+  }
+
+  private Collection<ValueAssignment> getAssignments(long key, long value) {
+    if (msat_is_array_type(creator.getEnv(), msat_term_get_type(value))) {
+      return getArrayAssignments(key, key, value, Collections.emptyList());
+    } else {
+      return Collections.singletonList(getAssignment(key, value));
+    }
   }
 
   private ValueAssignment getAssignment(long key, long value) {
@@ -105,7 +105,13 @@ class Mathsat5OptimizationProver extends Mathsat5AbstractProver<Void>
 
   @Override
   public OptStatus check() throws InterruptedException, SolverException {
-    boolean out = msat_check_sat(curEnv);
+    startInterruptibleOperation();
+    boolean out;
+    try {
+      out = msat_check_sat(curEnv);
+    } finally {
+      endInterruptibleOperation();
+    }
     if (out) {
       if (!objectiveMap.isEmpty()) {
         objectives = new ArrayList<>();
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import javax.annotation.Nullable;
 import org.sosy_lab.common.NativeLibraries;
@@ -104,7 +105,6 @@ public final class Mathsat5SolverContext extends AbstractSolverContext {
   private final long randomSeed;
 
   private final ShutdownNotifier shutdownNotifier;
-  private final TerminationTest terminationTest;
   private final Mathsat5FormulaCreator creator;
 
   private static boolean loaded = false;
@@ -135,12 +135,6 @@ public final class Mathsat5SolverContext extends AbstractSolverContext {
     this.randomSeed = randomSeed;
     this.shutdownNotifier = shutdownNotifier;
     this.creator = creator;
-
-    terminationTest =
-        () -> {
-          shutdownNotifier.shutdownIfNecessary();
-          return false;
-        };
   }
 
   public static Mathsat5SolverContext create(
@@ -274,7 +268,19 @@ public final class Mathsat5SolverContext extends AbstractSolverContext {
     msat_destroy_config(mathsatConfig);
   }
 
-  long addTerminationTest(long env) {
+  /**
+   * Let the given environment stop on a shutdown request, or if {@code interruptRequested} returns
+   * true.
+   */
+  long addTerminationTest(long env, BooleanSupplier interruptRequested) {
+    TerminationTest terminationTest =
+        () -> {
+          shutdownNotifier.shutdownIfNecessary();
+          if (interruptRequested.getAsBoolean()) {
+            throw new InterruptedException("MathSAT operation was interrupted");
+          }
+          return false;
+        };
     return msat_set_termination_test(env, terminationTest);
   }
 
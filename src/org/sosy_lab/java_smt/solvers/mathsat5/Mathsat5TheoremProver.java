@@ -105,9 +105,16 @@ class Mathsat5TheoremProver extends Mathsat5AbstractProver<Void> implements Prov
       imp[i++] = getMsatTerm(impF);
     }
     MathsatAllSatCallback<T> uCallback = new MathsatAllSatCallback<>(callback);
+    startInterruptibleOperation();
     push();
-    int numModels = msat_all_sat(curEnv, imp, uCallback);
-    pop();
+    int numModels;
+    try {
+      numModels = msat_all_sat(curEnv, imp, uCallback);
+    } finally {
+      // also if the callback stopped the enumeration with an exception
+      pop();
+      endInterruptibleOperation();
+    }
 
     if (numModels == -1) {
       throw new SolverException(
@@ -146,8 +153,13 @@ class Mathsat5TheoremProver extends Mathsat5AbstractProver<Void> implements Prov
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
       throws SolverException, InterruptedException {
     Preconditions.checkState(!closed);
-    return !msat_check_sat_with_assumptions(
-        curEnv, Mathsat5FormulaManager.getMsatTerm(assumptions));
+    startInterruptibleOperation();
+    try {
+      return !msat_check_sat_with_assumptions(
+          curEnv, Mathsat5FormulaManager.getMsatTerm(assumptions));
+    } finally {
+      endInterruptibleOperation();
+    }
   }
 
   @Override
@@ -20,10 +20,13 @@
 package org.sosy_lab.java_smt.solvers.princess;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static scala.collection.JavaConversions.iterableAsScalaIterable;
 
 import ap.SimpleAPI;
+import ap.parser.IAtom;
+import ap.parser.IConstant;
+import ap.parser.IExpression;
 import ap.parser.IFormula;
+import ap.parser.IFunApp;
 import ap.parser.IFunction;
 import ap.parser.ITerm;
 import com.google.common.base.Preconditions;
@@ -31,8 +34,12 @@ import com.google.common.collect.ImmutableList;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import org.sosy_lab.common.ShutdownNotifier;
 import org.sosy_lab.java_smt.api.BasicProverEnvironment;
 import org.sosy_lab.java_smt.api.BooleanFormula;
@@ -46,12 +53,31 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
   protected final PrincessFormulaManager mgr;
   protected final Deque<List<AF>> assertedFormulas = new ArrayDeque<>(); // all terms on all levels
   private final Deque<Level> trackingStack = new ArrayDeque<>(); // symbols on all levels
+
+  /** All symbols declared in {@link #api} on any level, declared lazily on first use. */
+  private final Set<IFormula> declaredBooleanSymbols = new HashSet<>();
+
+  private final Set<ITerm> declaredIntSymbols = new HashSet<>();
+  private final Set<IFunction> declaredFunctionSymbols = new HashSet<>();
+
   protected final ShutdownNotifier shutdownNotifier;
 
   private final PrincessFormulaCreator creator;
   protected boolean closed = false;
   protected boolean wasLastSatCheckSat = false; // and stack is not changed
 
+  /**
+   * Princess has no native support for assumptions. Instead, all assumptions of a check are added
+   * on one additional level of the stack that is removed before the next operation on the stack.
+   */
+  private boolean hasAssumptionLevel = false;
+
+  /**
+   * Whether {@link #interrupt()} was called during the current check, or since the last check
+   * ended. Princess forgets a stop request when the next check starts, thus we keep it here.
+   */
+  private volatile boolean interruptRequested = false;
+
   protected PrincessAbstractProver(
       PrincessFormulaManager pMgr,
       PrincessFormulaCreator creator,
@@ -68,10 +94,22 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
    * SAT or UNSAT.
    */
   @Override
-  public boolean isUnsat() throws SolverException {
+  public boolean isUnsat() throws SolverException, InterruptedException {
     Preconditions.checkState(!closed);
+    clearAssumptions();
+    return isUnsat0();
+  }
+
+  private boolean isUnsat0() throws SolverException, InterruptedException {
     wasLastSatCheckSat = false;
-    final Value result = api.checkSat(true);
+    final Value result;
+    try {
+      checkInterrupted();
+      result = api.checkSat(true);
+      checkInterrupted();
+    } finally {
+      interruptRequested = false;
+    }
     if (result.equals(SimpleAPI.ProverStatus$.MODULE$.Sat())) {
       wasLastSatCheckSat = true;
       return false;
@@ -85,15 +123,30 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
     }
   }
 
+  private void checkInterrupted() throws InterruptedException {
+    if (interruptRequested) {
+      throw new InterruptedException("Princess check was interrupted");
+    }
+  }
+
+  /** Stop the running check with {@link SimpleAPI#stop()}, which is safe to call concurrently. */
+  @Override
+  public void interrupt() {
+    interruptRequested = true;
+    api.stop();
+  }
+
   protected void addConstraint0(IFormula t) {
     Preconditions.checkState(!closed);
     wasLastSatCheckSat = false;
+    declareSymbols(t);
     api.addAssertion(api.abbrevSharedExpressions(t, creator.getEnv().getMinAtomsForAbbreviation()));
   }
 
   @Override
   public final void push() {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     wasLastSatCheckSat = false;
     assertedFormulas.push(new ArrayList<>());
     api.push();
@@ -103,18 +156,17 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
   @Override
   public void pop() {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     wasLastSatCheckSat = false;
     assertedFormulas.pop();
     api.pop();
 
-    // we have to recreate symbols on lower levels, because JavaSMT assumes "global" symbols.
+    // Princess removes the symbols declared on the popped level. They are declared again lazily
+    // when they are used in a later constraint, because JavaSMT assumes "global" symbols.
     Level level = trackingStack.pop();
-    api.addBooleanVariables(iterableAsScalaIterable(level.booleanSymbols));
-    api.addConstants(iterableAsScalaIterable(level.intSymbols));
-    level.functionSymbols.forEach(api::addFunction);
-    if (!trackingStack.isEmpty()) {
-      trackingStack.peek().mergeWithHigher(level);
-    }
+    declaredBooleanSymbols.removeAll(level.booleanSymbols);
+    declaredIntSymbols.removeAll(level.intSymbols);
+    declaredFunctionSymbols.removeAll(level.functionSymbols);
   }
 
   @Override
@@ -131,10 +183,26 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
     }
   }
 
-  @SuppressWarnings("unused")
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> pAssumptions)
       throws SolverException, InterruptedException {
-    throw new UnsupportedOperationException("Solving with assumptions is not supported.");
+    Preconditions.checkState(!closed);
+    push(); // also removes the assumptions of the previous check
+    for (BooleanFormula assumption : pAssumptions) {
+      addConstraint0((IFormula) mgr.extractInfo(assumption));
+    }
+    hasAssumptionLevel = true;
+    return isUnsat0();
+  }
+
+  /**
+   * Remove the assumptions of the last check from the stack, if there are any. This has to be
+   * called before any operation that depends on the current level of the stack.
+   */
+  protected void clearAssumptions() {
+    if (hasAssumptionLevel) {
+      hasAssumptionLevel = false;
+      pop();
+    }
   }
 
   /**
@@ -150,6 +218,7 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
       if (shutdownNotifier.shouldShutdown()) {
         api.shutDown();
       } else {
+        clearAssumptions();
         for (int i = 0; i < trackingStack.size(); i++) {
           pop();
         }
@@ -159,43 +228,59 @@ abstract class PrincessAbstractProver<E, AF> implements BasicProverEnvironment<E
     closed = true;
   }
 
-  /** add external definition: boolean variable. */
-  void addSymbol(IFormula f) {
-    Preconditions.checkState(!closed);
-    api.addBooleanVariable(f);
-    if (!trackingStack.isEmpty()) {
-      trackingStack.getLast().booleanSymbols.add(f);
-    }
-  }
-
-  /** add external definition: integer variable. */
-  void addSymbol(ITerm f) {
-    Preconditions.checkState(!closed);
-    api.addConstant(f);
-    if (!trackingStack.isEmpty()) {
-      trackingStack.getLast().intSymbols.add(f);
-    }
-  }
-
-  /** add external definition: uninterpreted function. */
-  void addSymbol(IFunction f) {
-    Preconditions.checkState(!closed);
-    api.addFunction(f);
-    if (!trackingStack.isEmpty()) {
-      trackingStack.getLast().functionSymbols.add(f);
+  /**
+   * Declare all symbols of the environment that appear in the given expression and are not yet
+   * known to {@link #api}. Only the symbols of asserted formulas are needed by Princess, thus
+   * declaring them lazily avoids copying all symbols of the environment into each new prover.
+   */
+  void declareSymbols(IExpression expr) {
+    PrincessEnvironment env = creator.getEnv();
+    Set<IExpression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<IExpression> todo = new ArrayDeque<>();
+    todo.push(expr);
+    while (!todo.isEmpty()) {
+      IExpression e = todo.pop();
+      if (!seen.add(e)) {
+        continue;
+      }
+      if (e instanceof IAtom) {
+        IFormula var = (IFormula) e;
+        if (!declaredBooleanSymbols.contains(var) && env.isDeclaredSymbol(var)) {
+          declaredBooleanSymbols.add(var);
+          api.addBooleanVariable(var);
+          if (!trackingStack.isEmpty()) {
+            trackingStack.peek().booleanSymbols.add(var);
+          }
+        }
+      } else if (e instanceof IConstant) {
+        ITerm var = (ITerm) e;
+        if (!declaredIntSymbols.contains(var) && env.isDeclaredSymbol(var)) {
+          declaredIntSymbols.add(var);
+          api.addConstant(var);
+          if (!trackingStack.isEmpty()) {
+            trackingStack.peek().intSymbols.add(var);
+          }
+        }
+      } else if (e instanceof IFunApp) {
+        IFunction fun = ((IFunApp) e).fun();
+        if (!declaredFunctionSymbols.contains(fun) && env.isDeclaredSymbol(fun)) {
+          declaredFunctionSymbols.add(fun);
+          api.addFunction(fun);
+          if (!trackingStack.isEmpty()) {
+            trackingStack.peek().functionSymbols.add(fun);
+          }
+        }
+      }
+      for (int i = 0; i < e.length(); i++) {
+        todo.push(e.apply(i));
+      }
     }
   }
 
+  /** symbols declared on one level of the stack, Princess forgets them when the level is popped. */
   private static class Level {
     final List<IFormula> booleanSymbols = new ArrayList<>();
     final List<ITerm> intSymbols = new ArrayList<>();
     final List<IFunction> functionSymbols = new ArrayList<>();
-
-    /** add higher level to current level, we keep the order of creating symbols. */
-    void mergeWithHigher(Level other) {
-      this.booleanSymbols.addAll(other.booleanSymbols);
-      this.intSymbols.addAll(other.intSymbols);
-      this.functionSymbols.addAll(other.functionSymbols);
-    }
   }
 }
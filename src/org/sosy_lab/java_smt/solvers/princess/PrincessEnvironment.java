@@ -90,6 +90,15 @@ class PrincessEnvironment {
   )
   private int minAtomsForAbbreviation = 100;
 
+  @Option(
+    secure = true,
+    description =
+        "Generalize each model found by allSat to the smallest part of it that implies the"
+            + " asserted formulas. The callback then receives partial models, but fewer of them."
+            + " The partial models do not overlap."
+  )
+  private boolean generalizeAllSatModels = false;
+
   @Option(secure = true, description = "log all queries as Princess-specific Scala code")
   private boolean logAllQueriesAsScala = false;
 
@@ -115,8 +124,8 @@ class PrincessEnvironment {
 
   /**
    * The wrapped API is the first created API. It will never be used outside of this class and never
-   * be closed. If a variable is declared, it is declared in the first api, then copied into all
-   * registered APIs. Each API has its own stack for formulas.
+   * be closed. If a variable is declared, it is declared in the first api. The other APIs declare
+   * it on demand, see {@link #isDeclaredSymbol}. Each API has its own stack for formulas.
    */
   private final SimpleAPI api;
 
@@ -137,19 +146,14 @@ class PrincessEnvironment {
 
   /**
    * This method returns a new prover, that is registered in this environment. All variables are
-   * shared in all registered APIs.
+   * shared in all registered APIs, but each prover declares them only when they are used.
    */
   PrincessAbstractProver<?, ?> getNewProver(
       boolean useForInterpolation, PrincessFormulaManager mgr, PrincessFormulaCreator creator) {
 
     SimpleAPI newApi = getNewApi(useForInterpolation);
 
-    // add all symbols, that are available until now
-    boolVariablesCache.values().forEach(newApi::addBooleanVariable);
-    intVariablesCache.values().forEach(newApi::addConstant);
-    arrayVariablesCache.values().forEach(newApi::addConstant);
-    functionsCache.values().forEach(newApi::addFunction);
-
+    // symbols are added to the new api lazily, when they appear in an asserted formula
     PrincessAbstractProver<?, ?> prover;
     if (useForInterpolation) {
       prover = new PrincessInterpolatingProver(mgr, creator, newApi, shutdownNotifier);
@@ -218,6 +222,10 @@ class PrincessEnvironment {
     return minAtomsForAbbreviation;
   }
 
+  boolean generalizeAllSatModels() {
+    return generalizeAllSatModels;
+  }
+
   void unregisterStack(PrincessAbstractProver<?, ?> stack) {
     assert registeredProvers.contains(stack) : "cannot unregister stack, it is not registered";
     registeredProvers.remove(stack);
@@ -246,15 +254,12 @@ class PrincessEnvironment {
         } else {
           intVariablesCache.put(var.toString(), (ITerm) var);
         }
-        addSymbol((IConstant) var);
       } else if (var instanceof IAtom) {
         boolVariablesCache.put(((IAtom) var).pred().name(), (IFormula) var);
-        addSymbol((IAtom) var);
       } else if (var instanceof IFunApp) {
         IFunction fun = ((IFunApp) var).fun();
         functionsCache.put(fun.name(), fun);
         functionsReturnTypes.put(fun, convertToTermType(functionTypes.get(fun)));
-        addFunction(fun);
       }
     }
     return formula;
@@ -399,7 +404,6 @@ class PrincessEnvironment {
             return boolVariablesCache.get(varname);
           } else {
             IFormula var = api.createBooleanVariable(varname);
-            addSymbol(var);
             boolVariablesCache.put(varname, var);
             return var;
           }
@@ -411,7 +415,6 @@ class PrincessEnvironment {
             return intVariablesCache.get(varname);
           } else {
             ITerm var = api.createConstant(varname);
-            addSymbol(var);
             intVariablesCache.put(varname, var);
             return var;
           }
@@ -422,7 +425,6 @@ class PrincessEnvironment {
             return arrayVariablesCache.get(varname);
           } else {
             ITerm var = api.createConstant(varname);
-            addSymbol(var);
             arrayVariablesCache.put(varname, var);
             return var;
           }
@@ -444,7 +446,6 @@ class PrincessEnvironment {
 
     } else {
       IFunction funcDecl = api.createFunction(name, nofArgs);
-      addFunction(funcDecl);
       functionsCache.put(name, funcDecl);
       functionsReturnTypes.put(funcDecl, returnType);
       return funcDecl;
@@ -474,21 +475,22 @@ class PrincessEnvironment {
     return api.simplify(formula);
   }
 
-  private void addSymbol(IFormula symbol) {
-    for (PrincessAbstractProver<?, ?> prover : registeredProvers) {
-      prover.addSymbol(symbol);
-    }
+  /**
+   * Check whether the given variable was created by this environment and thus has to be declared
+   * in a prover before it can be used there.
+   */
+  boolean isDeclaredSymbol(IFormula var) {
+    return var instanceof IAtom && var.equals(boolVariablesCache.get(((IAtom) var).pred().name()));
   }
 
-  private void addSymbol(ITerm symbol) {
-    for (PrincessAbstractProver<?, ?> prover : registeredProvers) {
-      prover.addSymbol(symbol);
-    }
+  /** See {@link #isDeclaredSymbol(IFormula)}. */
+  boolean isDeclaredSymbol(ITerm var) {
+    String name = var.toString();
+    return var.equals(intVariablesCache.get(name)) || var.equals(arrayVariablesCache.get(name));
   }
 
-  private void addFunction(IFunction funcDecl) {
-    for (PrincessAbstractProver<?, ?> prover : registeredProvers) {
-      prover.addSymbol(funcDecl);
-    }
+  /** See {@link #isDeclaredSymbol(IFormula)}. */
+  boolean isDeclaredSymbol(IFunction fun) {
+    return fun.equals(functionsCache.get(fun.name()));
   }
 }
@@ -58,6 +58,7 @@ class PrincessInterpolatingProver extends PrincessAbstractProver<Integer, Intege
   @Override
   public void pop() {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     assertedFormulas.peek().forEach(annotatedTerms::remove);
     super.pop();
   }
@@ -65,6 +66,7 @@ class PrincessInterpolatingProver extends PrincessAbstractProver<Integer, Intege
   @Override
   public Integer addConstraint(BooleanFormula f) {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     int termIndex = counter.getFreshId();
     IFormula t = (IFormula) mgr.extractInfo(f);
 
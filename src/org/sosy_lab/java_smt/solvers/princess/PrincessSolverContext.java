@@ -105,6 +105,12 @@ public final class PrincessSolverContext extends AbstractSolverContext {
 
   @Override
   protected boolean supportsAssumptionSolving() {
+    return true;
+  }
+
+  @Override
+  protected boolean supportsAssumptionSolvingWithInterpolation() {
+    // interpolants must not contain symbols of assumptions, which is handled by the wrapper
     return false;
   }
 }
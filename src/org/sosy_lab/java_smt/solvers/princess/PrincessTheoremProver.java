@@ -29,6 +29,7 @@ import ap.parser.INot;
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -36,23 +37,28 @@ import org.sosy_lab.common.ShutdownNotifier;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.basicimpl.AssumptionBasedAllSat;
 import scala.Option;
 
 class PrincessTheoremProver extends PrincessAbstractProver<Void, IExpression>
     implements ProverEnvironment {
 
+  private final PrincessFormulaCreator creator;
+
   PrincessTheoremProver(
       PrincessFormulaManager pMgr,
       PrincessFormulaCreator creator,
       SimpleAPI pApi,
       ShutdownNotifier pShutdownNotifier) {
     super(pMgr, creator, pApi, pShutdownNotifier);
+    this.creator = creator;
   }
 
   @Override
   @Nullable
   public Void addConstraint(BooleanFormula constraint) {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     final IFormula t = (IFormula) mgr.extractInfo(constraint);
     assertedFormulas.peek().add(t);
     addConstraint0(t);
@@ -68,42 +74,126 @@ class PrincessTheoremProver extends PrincessAbstractProver<Void, IExpression>
   public <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
       throws InterruptedException, SolverException {
     Preconditions.checkState(!closed);
+    clearAssumptions();
 
     // unpack formulas to terms
     List<IFormula> importantFormulas = new ArrayList<>(important.size());
     for (BooleanFormula impF : important) {
-      importantFormulas.add((IFormula) mgr.extractInfo(impF));
+      IFormula f = (IFormula) mgr.extractInfo(impF);
+      declareSymbols(f); // needed for evaluation, even if not part of any asserted formula
+      importantFormulas.add(f);
+    }
+
+    if (!creator.getEnv().generalizeAllSatModels()) {
+      // Princess has no native enumeration, thus it uses the solver-independent one
+      return new AssumptionBasedAllSat(this, mgr.getBooleanFormulaManager())
+          .allSat(callback, important);
     }
 
+    PrincessTheoremProver negatedAssertions = getNegatedAssertions();
+    List<List<IFormula>> blockedModels = new ArrayList<>();
+
     api.push();
-    while (!isUnsat()) {
-      shutdownNotifier.shutdownIfNecessary();
+    try {
+      while (!isUnsat()) {
+        shutdownNotifier.shutdownIfNecessary();
 
-      IFormula newFormula = new IBoolLit(true); // neutral element for AND
-      List<BooleanFormula> wrappedPartialModel = new ArrayList<>(important.size());
-      for (final IFormula f : importantFormulas) {
-        final Option<Object> value = api.evalPartial(f);
-        if (value.isDefined()) {
-          final boolean isTrueValue = (boolean) value.get();
-          final IFormula newElement = isTrueValue ? f : new INot(f);
+        List<IFormula> partialModel = new ArrayList<>(important.size());
+        for (final IFormula f : importantFormulas) {
+          final Option<Object> value = api.evalPartial(f);
+          if (value.isDefined()) {
+            final boolean isTrueValue = (boolean) value.get();
+            partialModel.add(isTrueValue ? f : new INot(f));
+          }
+        }
+        partialModel = generalize(partialModel, negatedAssertions, blockedModels);
+        blockedModels.add(partialModel);
 
+        IFormula newFormula = new IBoolLit(true); // neutral element for AND
+        List<BooleanFormula> wrappedPartialModel = new ArrayList<>(partialModel.size());
+        for (IFormula newElement : partialModel) {
           wrappedPartialModel.add(mgr.encapsulateBooleanFormula(newElement));
           newFormula = new IBinFormula(IBinJunctor.And(), newFormula, newElement);
         }
-      }
-      callback.apply(wrappedPartialModel);
+        callback.apply(wrappedPartialModel);
 
-      // add negation of current formula to get a new model in next iteration
-      addConstraint0(new INot(newFormula));
+        // add negation of current formula to get a new model in next iteration
+        addConstraint0(new INot(newFormula));
+      }
+      shutdownNotifier.shutdownIfNecessary();
+    } finally {
+      // also if the callback stopped the enumeration with an exception
+      api.pop();
+      negatedAssertions.close();
     }
-    shutdownNotifier.shutdownIfNecessary();
-    api.pop();
 
     wasLastSatCheckSat = false; // we do not know about the current state, thus we reset the flag.
 
     return callback.getResult();
   }
 
+  /** Create a separate prover that contains the negation of all formulas asserted here. */
+  private PrincessTheoremProver getNegatedAssertions() {
+    IFormula assertions = new IBoolLit(true); // neutral element for AND
+    for (List<IExpression> level : assertedFormulas) {
+      for (IExpression assertion : level) {
+        assertions = new IBinFormula(IBinJunctor.And(), assertions, (IFormula) assertion);
+      }
+    }
+    PrincessTheoremProver prover =
+        (PrincessTheoremProver) creator.getEnv().getNewProver(false, mgr, creator);
+    prover.addConstraint0(new INot(assertions));
+    return prover;
+  }
+
+  /**
+   * Drop literals from the model as long as the remaining literals imply the asserted formulas.
+   * Then every assignment of the dropped predicates is a model as well, and the blocking clause
+   * excludes all of them at once. If the full model does not imply the asserted formulas, e.g.,
+   * because they contain other variables, the model is returned unchanged.
+   *
+   * <p>A literal is only dropped if the remaining literals still contradict each of the blocked
+   * models, such that no assignment is reported twice.
+   */
+  private List<IFormula> generalize(
+      List<IFormula> model,
+      PrincessTheoremProver negatedAssertions,
+      List<List<IFormula>> blockedModels)
+      throws SolverException, InterruptedException {
+    List<BooleanFormula> literals = new ArrayList<>(model.size());
+    for (IFormula literal : model) {
+      literals.add(mgr.encapsulateBooleanFormula(literal));
+    }
+    if (!negatedAssertions.isUnsatWithAssumptions(literals)) {
+      return model;
+    }
+    List<IFormula> generalized = new ArrayList<>(model);
+    for (int i = generalized.size() - 1; i >= 0; i--) {
+      IFormula dropped = generalized.remove(i);
+      BooleanFormula literal = literals.remove(i);
+      if (!contradictsAll(generalized, blockedModels)
+          || !negatedAssertions.isUnsatWithAssumptions(literals)) {
+        generalized.add(i, dropped);
+        literals.add(i, literal);
+      }
+    }
+    return generalized;
+  }
+
+  /** Whether the literals contradict each of the models, i.e., contain one of their negations. */
+  private static boolean contradictsAll(List<IFormula> literals, List<List<IFormula>> models) {
+    List<IFormula> negations = new ArrayList<>(literals.size());
+    for (IFormula literal : literals) {
+      negations.add(literal instanceof INot ? ((INot) literal).subformula() : new INot(literal));
+    }
+    for (List<IFormula> model : models) {
+      if (Collections.disjoint(model, negations)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
       Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
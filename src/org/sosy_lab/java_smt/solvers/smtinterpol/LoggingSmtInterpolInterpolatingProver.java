@@ -37,9 +37,9 @@ class LoggingSmtInterpolInterpolatingProver extends SmtInterpolInterpolatingProv
   }
 
   @Override
-  public void pop() {
-    out.println("(pop 1)");
-    super.pop();
+  public void pop(int levels) {
+    out.println("(pop " + levels + ")");
+    super.pop(levels);
   }
 
   @Override
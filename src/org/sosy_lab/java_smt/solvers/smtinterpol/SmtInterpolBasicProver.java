@@ -22,6 +22,9 @@ package org.sosy_lab.java_smt.solvers.smtinterpol;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
 import de.uni_freiburg.informatik.ultimate.logic.FunctionSymbol;
 import de.uni_freiburg.informatik.ultimate.logic.Sort;
 import de.uni_freiburg.informatik.ultimate.logic.Term;
@@ -40,10 +43,29 @@ import org.sosy_lab.java_smt.basicimpl.FormulaCreator;
 abstract class SmtInterpolBasicProver<T, AF> implements BasicProverEnvironment<T> {
 
   private boolean closed = false;
-  private final SmtInterpolEnvironment env;
+  protected final SmtInterpolEnvironment env;
   private final FormulaCreator<Term, Sort, SmtInterpolEnvironment, FunctionSymbol> creator;
   protected final Deque<List<AF>> assertedFormulas = new ArrayDeque<>();
 
+  /**
+   * The symbols of the asserted terms, with one index for each level of the stack. Listing a model
+   * then takes time proportional to the number of symbols instead of the size of all asserted
+   * terms.
+   */
+  private final Deque<SymbolIndex> symbolsPerLevel = new ArrayDeque<>();
+
+  /**
+   * All assumptions of a check are asserted on one additional level of the stack that is removed
+   * before the next operation on the stack. This keeps the solver state (including learned
+   * clauses) of the lower levels intact between checks with different assumptions.
+   *
+   * <p>SMTInterpol's own check-sat-assuming is not used on purpose: it ignores assumptions that
+   * are already refuted by propagation and returns models that violate them, and it does not
+   * terminate for some queries whose assumptions are refuted by a theory (see {@code
+   * SmtInterpolNativeApiTest}).
+   */
+  private boolean hasAssumptionLevel = false;
+
   private static final String PREFIX = "term_"; // for termnames
   private static final UniqueIdGenerator termIdGenerator =
       new UniqueIdGenerator(); // for different termnames
@@ -60,27 +82,70 @@ abstract class SmtInterpolBasicProver<T, AF> implements BasicProverEnvironment<T
   @Override
   public final void push() {
     Preconditions.checkState(!closed);
+    clearAssumptions();
     assertedFormulas.push(new ArrayList<>());
+    symbolsPerLevel.push(new SymbolIndex());
     env.push(1);
   }
 
   @Override
-  public void pop() {
+  public final void pop() {
+    pop(1);
+  }
+
+  @Override
+  public void pop(int levels) {
     Preconditions.checkState(!closed);
-    assertedFormulas.pop();
-    env.pop(1);
+    Preconditions.checkArgument(levels >= 0);
+    clearAssumptions();
+    Preconditions.checkState(assertedFormulas.size() >= levels, "not enough levels to remove");
+    for (int i = 0; i < levels; i++) {
+      assertedFormulas.pop();
+      symbolsPerLevel.pop();
+    }
+    env.pop(levels);
   }
 
   @Override
   public boolean isUnsat() throws InterruptedException {
     Preconditions.checkState(!closed);
+    clearAssumptions();
+    return !env.checkSat();
+  }
+
+  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> pAssumptions)
+      throws SolverException, InterruptedException {
+    Preconditions.checkState(!closed);
+    push(); // also removes the assumptions of the previous check
+    for (BooleanFormula assumption : pAssumptions) {
+      addConstraint(assumption);
+    }
+    hasAssumptionLevel = true;
     return !env.checkSat();
   }
 
+  @Override
+  public void interrupt() {
+    env.interrupt();
+  }
+
+  /**
+   * Remove the assumptions of the last check from the stack, if there are any. This has to be
+   * called before any operation that depends on the current level of the stack.
+   */
+  protected void clearAssumptions() {
+    if (hasAssumptionLevel) {
+      hasAssumptionLevel = false;
+      pop();
+    }
+  }
+
   @Override
   public SmtInterpolModel getModel() {
     Preconditions.checkState(!closed);
-    return new SmtInterpolModel(env.getModel(), creator, getAssertedTerms());
+    ImmutableSetMultimap.Builder<String, Term> symbols = ImmutableSetMultimap.builder();
+    symbolsPerLevel.descendingIterator().forEachRemaining(level -> level.putSymbolsInto(symbols));
+    return new SmtInterpolModel(env.getModel(), creator, symbols.build());
   }
 
   @Override
@@ -94,19 +159,36 @@ abstract class SmtInterpolBasicProver<T, AF> implements BasicProverEnvironment<T
     return PREFIX + termIdGenerator.getFreshId();
   }
 
-  protected abstract Collection<Term> getAssertedTerms();
+  /** Register a term that was asserted on the current level for the symbol index of the level. */
+  protected void addToSymbolIndex(Term t) {
+    symbolsPerLevel.peek().unindexedTerms.add(t);
+  }
 
   @Override
   public void close() {
     Preconditions.checkState(!closed);
+    hasAssumptionLevel = false;
     assertedFormulas.clear();
+    symbolsPerLevel.clear();
     env.pop(env.getStackDepth());
     closed = true;
   }
 
-  @SuppressWarnings("unused")
-  public boolean isUnsatWithAssumptions(Collection<BooleanFormula> pAssumptions)
-      throws SolverException, InterruptedException {
-    throw new UnsupportedOperationException("Assumption-solving is not supported.");
+  /**
+   * Variables and UFs of the terms asserted on one level of the stack. The terms are searched for
+   * symbols only when a model is requested, and each of them only once.
+   */
+  private final class SymbolIndex {
+
+    private final List<Term> unindexedTerms = new ArrayList<>();
+    private final SetMultimap<String, Term> symbols = LinkedHashMultimap.create();
+
+    private void putSymbolsInto(ImmutableSetMultimap.Builder<String, Term> builder) {
+      for (Term t : unindexedTerms) {
+        creator.extractVariablesAndUFs(t, true).forEach(symbols::put);
+      }
+      unindexedTerms.clear();
+      builder.putAll(symbols);
+    }
   }
 }
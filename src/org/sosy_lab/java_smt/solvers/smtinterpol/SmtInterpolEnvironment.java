@@ -24,6 +24,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import de.uni_freiburg.informatik.ultimate.logic.Annotation;
 import de.uni_freiburg.informatik.ultimate.logic.FunctionSymbol;
@@ -42,6 +43,7 @@ import de.uni_freiburg.informatik.ultimate.logic.Theory;
 import de.uni_freiburg.informatik.ultimate.logic.simplification.SimplifyDDA;
 import de.uni_freiburg.informatik.ultimate.smtinterpol.LogProxy;
 import de.uni_freiburg.informatik.ultimate.smtinterpol.option.OptionMap;
+import de.uni_freiburg.informatik.ultimate.smtinterpol.option.OptionMap.CopyMode;
 import de.uni_freiburg.informatik.ultimate.smtinterpol.smtlib2.ParseEnvironment;
 import de.uni_freiburg.informatik.ultimate.smtinterpol.smtlib2.SMTInterpol;
 import java.io.FileNotFoundException;
@@ -52,7 +54,11 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import javax.annotation.Nullable;
 import org.sosy_lab.common.ShutdownNotifier;
@@ -69,6 +75,10 @@ import org.sosy_lab.java_smt.api.SolverException;
  * This is a Wrapper around SmtInterpol. It guarantees the stack-behavior of function-declarations
  * towards the SmtSolver, so functions remain declared, if levels are popped. This Wrapper allows to
  * set a logfile for all Smt-Queries (default "smtinterpol.smt2").
+ *
+ * <p>The environment created by the solver context is used for declarations and term creation.
+ * Each prover gets its own environment from {@link #createIndependentEnvironment()}, which shares
+ * the {@link Theory} (and thus all declarations and terms), but has its own assertion stack.
  */
 @Options(prefix = "solver.smtinterpol")
 class SmtInterpolEnvironment {
@@ -94,9 +104,31 @@ class SmtInterpolEnvironment {
   private final LogProxy smtInterpolLogProxy;
   private final ShutdownNotifier shutdownNotifier;
 
+  /**
+   * Whether the currently running operation should be stopped, or the next one if none is running.
+   */
+  private final AtomicBoolean interruptRequested = new AtomicBoolean(false);
+
+  /**
+   * The interrupt flag of the environment whose operation runs in the current thread. All copies
+   * of an environment share the termination request of SMTInterpol, which polls this flag from
+   * the solving thread, such that an interrupt only stops the operation of its own environment.
+   */
+  private final ThreadLocal<AtomicBoolean> runningOperation;
+
+  /** the wrapped solver instance, needed for creating copies of it */
+  private final SMTInterpol smtInterpol;
+
   /** the wrapped Script */
   private final Script script;
 
+  /**
+   * The theory of all terms, which is shared by all copies of this environment. Theory is not
+   * thread-safe, and SMTInterpol creates terms via the theory while asserting and when building
+   * models, interpolants and unsat cores, thus these operations synchronize on it, such that
+   * provers can be used from different threads. The search of {@link #checkSat()} does not create
+   * terms and runs without the lock, such that provers can solve at the same time.
+   */
   private final Theory theory;
 
   /** The current depth of the stack in the solver. */
@@ -116,8 +148,12 @@ class SmtInterpolEnvironment {
     smtLogfile = pSmtLogfile;
     smtInterpolLogProxy = new LogProxyForwarder(logger.withComponentName("SMTInterpol"));
 
-    final SMTInterpol smtInterpol =
-        new SMTInterpol(smtInterpolLogProxy, pShutdownNotifier::shouldShutdown);
+    ThreadLocal<AtomicBoolean> running = new ThreadLocal<>();
+    runningOperation = running;
+    smtInterpol =
+        new SMTInterpol(
+            smtInterpolLogProxy,
+            () -> pShutdownNotifier.shouldShutdown() || isInterruptRequested(running.get()));
 
     if (smtLogfile != null) {
       script = createLoggingWrapper(smtInterpol);
@@ -149,6 +185,42 @@ class SmtInterpolEnvironment {
     theory = smtInterpol.getTheory();
   }
 
+  /**
+   * Create a copy of the given environment. The copy shares the theory with the original, but has
+   * an empty assertion stack and an interrupt flag of its own. The options (including the
+   * termination request) are copied from the original.
+   */
+  private SmtInterpolEnvironment(SmtInterpolEnvironment original) {
+    checkResults = original.checkResults;
+    furtherOptions = original.furtherOptions;
+    logger = original.logger;
+    shutdownNotifier = original.shutdownNotifier;
+    runningOperation = original.runningOperation;
+    smtLogfile = original.smtLogfile;
+    smtInterpolLogProxy = original.smtInterpolLogProxy;
+
+    smtInterpol = new SMTInterpol(original.smtInterpol, ImmutableMap.of(), CopyMode.CURRENT_VALUE);
+    if (smtLogfile != null) {
+      script = createLoggingWrapper(smtInterpol);
+    } else {
+      script = smtInterpol;
+    }
+    theory = original.theory;
+    assert theory == smtInterpol.getTheory();
+  }
+
+  /**
+   * Create a new environment with its own assertion stack that shares all declarations and terms
+   * with this environment. This allows several provers to push and pop independently of each
+   * other, also from different threads. Their satisfiability checks run in parallel, all other
+   * operations are executed one at a time, because they share the theory. Formulas must still not
+   * be created while a prover runs in another thread, because the formula managers use the theory
+   * without synchronization.
+   */
+  SmtInterpolEnvironment createIndependentEnvironment() {
+    return new SmtInterpolEnvironment(this);
+  }
+
   private Script createLoggingWrapper(SMTInterpol smtInterpol) {
     assert smtLogfile != null;
     String filename = smtLogfile.getFreshPath().toAbsolutePath().toString();
@@ -256,7 +328,9 @@ class SmtInterpolEnvironment {
 
   public void push(int levels) {
     checkArgument(levels > 0);
-    script.push(levels);
+    synchronized (theory) {
+      script.push(levels);
+    }
     stackDepth += levels;
   }
 
@@ -267,7 +341,9 @@ class SmtInterpolEnvironment {
   public void pop(int levels) {
     checkArgument(levels >= 0);
     checkState(stackDepth >= levels, "not enough levels to remove");
-    script.pop(levels);
+    synchronized (theory) {
+      script.pop(levels);
+    }
     stackDepth -= levels;
   }
 
@@ -276,9 +352,10 @@ class SmtInterpolEnvironment {
     checkState(
         stackDepth > 0,
         "assertions should be on higher levels, "
-            + "because we might need to remove the term again and "
-            + "we have a shared environment for all provers.");
-    script.assertTerm(term);
+            + "because we might need to remove the term again.");
+    synchronized (theory) {
+      script.assertTerm(term);
+    }
   }
 
   /**
@@ -290,52 +367,150 @@ class SmtInterpolEnvironment {
     // by using a shutdown listener. However, SmtInterpol resets the
     // mStopEngine flag in DPLLEngine before starting to solve,
     // so we check here, too.
-    shutdownNotifier.shutdownIfNecessary();
+    startInterruptibleOperation();
+    try {
+      LBool result = solve();
+      Object reason;
+      synchronized (theory) {
+        reason = result == LBool.UNKNOWN ? script.getInfo(":reason-unknown") : null;
+      }
+      switch (result) {
+        case SAT:
+          return true;
+        case UNSAT:
+          return false;
+        case UNKNOWN:
+          if (!(reason instanceof ReasonUnknown)) {
+            throw new SMTLIBException("checkSat returned UNKNOWN with unknown reason " + reason);
+          }
+          switch ((ReasonUnknown) reason) {
+            case MEMOUT:
+              // SMTInterpol catches OOM, but we want to have it thrown.
+              throw new OutOfMemoryError("Out of memory during SMTInterpol operation");
+            case CANCELLED:
+              // Expected if we requested termination, which is the only source of cancellation.
+              shutdownNotifier.shutdownIfNecessary();
+              throw new InterruptedException("SMTInterpol operation was interrupted");
+            default:
+              throw new SMTLIBException(
+                  "checkSat returned UNKNOWN with unexpected reason " + reason);
+          }
 
-    LBool result = script.checkSat();
-    switch (result) {
-      case SAT:
-        return true;
-      case UNSAT:
-        return false;
-      case UNKNOWN:
-        Object reason = script.getInfo(":reason-unknown");
-        if (!(reason instanceof ReasonUnknown)) {
-          throw new SMTLIBException("checkSat returned UNKNOWN with unknown reason " + reason);
-        }
-        switch ((ReasonUnknown) reason) {
-          case MEMOUT:
-            // SMTInterpol catches OOM, but we want to have it thrown.
-            throw new OutOfMemoryError("Out of memory during SMTInterpol operation");
-          case CANCELLED:
-            shutdownNotifier.shutdownIfNecessary(); // expected if we requested termination
-            throw new SMTLIBException("checkSat returned UNKNOWN with unexpected reason " + reason);
-          default:
-            throw new SMTLIBException("checkSat returned UNKNOWN with unexpected reason " + reason);
-        }
+        default:
+          throw new SMTLIBException("checkSat returned " + result);
+      }
+    } finally {
+      endInterruptibleOperation();
+    }
+  }
 
-      default:
-        throw new SMTLIBException("checkSat returned " + result);
+  private LBool solve() {
+    if (checkResults) {
+      // the model-check-mode builds a model via the theory directly after the search
+      synchronized (theory) {
+        return script.checkSat();
+      }
     }
+    // All terms of the assertions were clausified when asserting them,
+    // the search itself only reads the theory, so it does not block other provers.
+    return script.checkSat();
   }
 
-  public Iterable<Term[]> checkAllSat(Term[] importantPredicates) throws InterruptedException {
+  /** Pass all models over the given predicates to the callback. */
+  public void checkAllSat(Term[] importantPredicates, Consumer<Term[]> callback)
+      throws InterruptedException {
     // We actually terminate SmtInterpol during the analysis
     // by using a shutdown listener. However, SmtInterpol resets the
     // mStopEngine flag in DPLLEngine before starting to solve,
     // so we check here, too.
-    shutdownNotifier.shutdownIfNecessary();
+    startInterruptibleOperation();
+    try {
+      // SMTInterpol computes each model when it is requested from the iterator,
+      // the callback is executed without holding the lock
+      Iterator<Term[]> models;
+      synchronized (theory) {
+        models = script.checkAllsat(importantPredicates).iterator();
+      }
+      while (true) {
+        Term[] model;
+        synchronized (theory) {
+          if (!models.hasNext()) {
+            break;
+          }
+          model = models.next();
+        }
+        callback.accept(model);
+      }
+      // a terminated enumeration ends like a complete one
+      checkInterrupted();
+    } finally {
+      endInterruptibleOperation();
+    }
+  }
 
-    return script.checkAllsat(importantPredicates);
+  /**
+   * Stop the operation that currently runs in this environment, or the next one if none is
+   * running. The operation throws an {@link InterruptedException}. Operations of copies of this
+   * environment are not affected.
+   */
+  void interrupt() {
+    interruptRequested.set(true);
+  }
+
+  /**
+   * Has to be called before each operation that can be stopped by {@link #interrupt}. Throws an
+   * {@link InterruptedException} if the operation was interrupted before it started.
+   */
+  private void startInterruptibleOperation() throws InterruptedException {
+    checkInterrupted();
+    runningOperation.set(interruptRequested);
+  }
+
+  /**
+   * Has to be called when an operation started by {@link #startInterruptibleOperation} ends, also
+   * if it ends with an exception. Interrupts that arrive later do not affect the next operation.
+   */
+  private void endInterruptibleOperation() {
+    runningOperation.remove();
+    interruptRequested.set(false);
+  }
+
+  private static boolean isInterruptRequested(@Nullable AtomicBoolean flag) {
+    return flag != null && flag.get();
+  }
+
+  private void checkInterrupted() throws InterruptedException {
+    shutdownNotifier.shutdownIfNecessary();
+    if (interruptRequested.getAndSet(false)) {
+      throw new InterruptedException("SMTInterpol operation was interrupted");
+    }
   }
 
   /** This function returns a map, that contains assignments term->term for all terms in terms. */
   public Model getModel() {
-    return script.getModel();
+    synchronized (theory) {
+      return script.getModel();
+    }
+  }
+
+  /** Evaluate the terms in a model of a prover of this environment or of one of its copies. */
+  Map<Term, Term> evaluate(Model model, Term... terms) {
+    synchronized (theory) {
+      return model.evaluate(terms);
+    }
+  }
+
+  /** Evaluate the term in a model of a prover of this environment or of one of its copies. */
+  Term evaluate(Model model, Term term) {
+    synchronized (theory) {
+      return model.evaluate(term);
+    }
   }
 
   public Object getInfo(String info) {
-    return script.getInfo(info);
+    synchronized (theory) {
+      return script.getInfo(info);
+    }
   }
 
   public Sort getBooleanSort() {
@@ -356,7 +531,9 @@ class SmtInterpolEnvironment {
   }
 
   public Term term(String funcname, Term... params) {
-    return script.term(funcname, params);
+    synchronized (theory) {
+      return script.term(funcname, params);
+    }
   }
 
   public Term term(
@@ -377,7 +554,9 @@ class SmtInterpolEnvironment {
   }
 
   public Term annotate(Term t, Annotation... annotations) {
-    return script.annotate(t, annotations);
+    synchronized (theory) {
+      return script.annotate(t, annotations);
+    }
   }
 
   /** returns a number of type INT or REAL */
@@ -414,8 +593,11 @@ class SmtInterpolEnvironment {
    */
   public Term[] getInterpolants(Term[] partition) throws SolverException, InterruptedException {
     checkState(stackDepth > 0, "interpolants should be on higher levels");
+    startInterruptibleOperation();
     try {
-      return script.getInterpolants(partition);
+      synchronized (theory) {
+        return script.getInterpolants(partition);
+      }
     } catch (UnsupportedOperationException e) {
       if (e.getMessage() != null && e.getMessage().startsWith("Cannot interpolate ")) {
         // Not a bug, interpolation procedure is incomplete
@@ -425,9 +607,11 @@ class SmtInterpolEnvironment {
       }
     } catch (SMTLIBException e) {
       if ("Timeout exceeded".equals(e.getMessage())) {
-        shutdownNotifier.shutdownIfNecessary();
+        checkInterrupted();
       }
       throw new AssertionError(e);
+    } finally {
+      endInterruptibleOperation();
     }
   }
 
@@ -462,8 +646,11 @@ class SmtInterpolEnvironment {
   public Term[] getTreeInterpolants(Term[] partition, int[] startOfSubTree)
       throws SolverException, InterruptedException {
     checkState(stackDepth > 0, "interpolants should be on higher levels");
+    startInterruptibleOperation();
     try {
-      return script.getInterpolants(partition, startOfSubTree);
+      synchronized (theory) {
+        return script.getInterpolants(partition, startOfSubTree);
+      }
     } catch (UnsupportedOperationException e) {
       if (e.getMessage() != null && e.getMessage().startsWith("Cannot interpolate ")) {
         // Not a bug, interpolation procedure is incomplete
@@ -473,15 +660,19 @@ class SmtInterpolEnvironment {
       }
     } catch (SMTLIBException e) {
       if ("Timeout exceeded".equals(e.getMessage())) {
-        shutdownNotifier.shutdownIfNecessary();
+        checkInterrupted();
       }
       throw new AssertionError(e);
+    } finally {
+      endInterruptibleOperation();
     }
   }
 
   public Term[] getUnsatCore() {
     checkState(stackDepth > 0, "unsat core should be on higher levels");
-    return script.getUnsatCore();
+    synchronized (theory) {
+      return script.getUnsatCore();
+    }
   }
 
   public Term simplify(Term input) {
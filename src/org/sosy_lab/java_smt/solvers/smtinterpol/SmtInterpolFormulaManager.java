@@ -151,9 +151,12 @@ class SmtInterpolFormulaManager
     return getFormulaCreator().visit(f, rFormulaVisitor);
   }
 
-  /** This method returns a 'shared' environment or a complete new environment. */
+  /**
+   * This method returns a new environment with its own assertion stack, sharing all declarations
+   * with the environment of this formula manager.
+   */
   SmtInterpolEnvironment createEnvironment() {
-    return getEnvironment();
+    return getEnvironment().createIndependentEnvironment();
   }
 
   @Override
@@ -20,11 +20,11 @@
 package org.sosy_lab.java_smt.solvers.smtinterpol;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import de.uni_freiburg.informatik.ultimate.logic.Annotation;
 import de.uni_freiburg.informatik.ultimate.logic.Term;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -39,34 +39,38 @@ class SmtInterpolInterpolatingProver extends SmtInterpolBasicProver<String, Stri
     implements InterpolatingProverEnvironment<String> {
 
   private final SmtInterpolFormulaManager mgr;
-  private final SmtInterpolEnvironment env;
 
   private final Map<String, Term> annotatedTerms; // Collection of termNames
 
   SmtInterpolInterpolatingProver(SmtInterpolFormulaManager pMgr) {
     super(pMgr);
     mgr = pMgr;
-    env = mgr.createEnvironment();
     annotatedTerms = new HashMap<>();
   }
 
   @Override
-  public void pop() {
-    for (String removed : assertedFormulas.peek()) {
-      annotatedTerms.remove(removed);
+  public void pop(int levels) {
+    Preconditions.checkArgument(levels >= 0);
+    clearAssumptions();
+    for (List<String> level : Iterables.limit(assertedFormulas, levels)) {
+      for (String removed : level) {
+        annotatedTerms.remove(removed);
+      }
     }
-    super.pop();
+    super.pop(levels);
   }
 
   @Override
   public String addConstraint(BooleanFormula f) {
     Preconditions.checkState(!isClosed());
+    clearAssumptions();
     String termName = generateTermName();
     Term t = mgr.extractInfo(f);
     Term annotatedTerm = env.annotate(t, new Annotation(":named", termName));
     env.assertTerm(annotatedTerm);
     assertedFormulas.peek().add(termName);
     annotatedTerms.put(termName, t);
+    addToSymbolIndex(t);
     return termName;
   }
 
@@ -202,9 +206,4 @@ class SmtInterpolInterpolatingProver extends SmtInterpolBasicProver<String, Stri
     annotatedTerms.clear();
     super.close();
   }
-
-  @Override
-  protected Collection<Term> getAssertedTerms() {
-    return annotatedTerms.values();
-  }
 }
@@ -20,8 +20,7 @@
 package org.sosy_lab.java_smt.solvers.smtinterpol;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSet.Builder;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Lists;
 import de.uni_freiburg.informatik.ultimate.logic.ApplicationTerm;
 import de.uni_freiburg.informatik.ultimate.logic.ConstantTerm;
@@ -33,8 +32,11 @@ import de.uni_freiburg.informatik.ultimate.logic.Term;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Nullable;
 import org.sosy_lab.java_smt.api.Formula;
 import org.sosy_lab.java_smt.api.FormulaType;
@@ -44,51 +46,68 @@ import org.sosy_lab.java_smt.basicimpl.FormulaCreator;
 class SmtInterpolModel extends CachingAbstractModel<Term, Sort, SmtInterpolEnvironment> {
 
   private final Model model;
-  private final ImmutableList<Term> assertedTerms;
+  private final ImmutableSetMultimap<String, Term> symbols;
   private final SmtInterpolFormulaCreator formulaCreator;
 
   SmtInterpolModel(
       Model pModel,
       FormulaCreator<Term, Sort, SmtInterpolEnvironment, ?> pCreator,
-      Collection<Term> assertedTerms) {
+      ImmutableSetMultimap<String, Term> pSymbols) {
     super(pCreator);
     formulaCreator = (SmtInterpolFormulaCreator) pCreator;
     model = pModel;
-    this.assertedTerms = ImmutableList.copyOf(assertedTerms);
+    symbols = pSymbols;
   }
 
   @Nullable
   @Override
   public Object evaluateImpl(Term f) {
-    Term out = model.evaluate(f);
+    Term out = formulaCreator.getEnv().evaluate(model, f);
     return getValue(out);
   }
 
+  @Override
+  protected List<Object> evaluateAllImpl(List<Term> formulas) {
+    // one query for the whole batch, and one conversion per distinct value
+    Map<Term, Term> evaluated =
+        formulaCreator.getEnv().evaluate(model, formulas.toArray(new Term[formulas.size()]));
+    Map<Term, Object> convertedValues = new HashMap<>();
+    List<Object> values = new ArrayList<>(formulas.size());
+    for (Term f : formulas) {
+      values.add(convertedValues.computeIfAbsent(evaluated.get(f), this::getValue));
+    }
+    return values;
+  }
+
   @Override
   protected ImmutableList<ValueAssignment> modelToList() {
+    return ImmutableList.copyOf(modelIterator(name -> true));
+  }
 
-    Builder<ValueAssignment> assignments = ImmutableSet.builder();
+  @Override
+  protected Iterator<ValueAssignment> modelIterator(Predicate<String> symbolFilter) {
+    return symbols
+        .entries()
+        .stream()
+        .filter(entry -> symbolFilter.test(entry.getKey()))
+        .flatMap(entry -> getAssignments(entry.getKey(), entry.getValue()).stream())
+        .distinct()
+        .iterator();
+  }
 
-    for (Term t : assertedTerms) {
-      for (Entry<String, Term> entry : creator.extractVariablesAndUFs(t, true).entrySet()) {
-        if (entry.getValue().getSort().isArraySort()) {
-          assignments.addAll(
-              getArrayAssignment(
-                  entry.getKey(), entry.getValue(), entry.getValue(), Collections.emptyList()));
-        } else {
-          assignments.add(getAssignment(entry.getKey(), (ApplicationTerm) entry.getValue()));
-        }
-      }
+  private Collection<ValueAssignment> getAssignments(String symbol, Term term) {
+    if (term.getSort().isArraySort()) {
+      return getArrayAssignment(symbol, term, term, Collections.emptyList());
+    } else {
+      return Collections.singletonList(getAssignment(symbol, (ApplicationTerm) term));
     }
-
-    return assignments.build().asList();
   }
 
   private Collection<ValueAssignment> getArrayAssignment(
       String symbol, Term key, Term array, List<Object> upperIndices) {
     assert array.getSort().isArraySort();
     Collection<ValueAssignment> assignments = new ArrayList<>();
-    Term evaluation = model.evaluate(array);
+    Term evaluation = formulaCreator.getEnv().evaluate(model, array);
 
     // get all assignments for the current array
     while (evaluation instanceof ApplicationTerm) {
@@ -0,0 +1,83 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.solvers.smtinterpol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.uni_freiburg.informatik.ultimate.logic.Logics;
+import de.uni_freiburg.informatik.ultimate.logic.Model;
+import de.uni_freiburg.informatik.ultimate.logic.Script.LBool;
+import de.uni_freiburg.informatik.ultimate.logic.Sort;
+import de.uni_freiburg.informatik.ultimate.logic.Term;
+import de.uni_freiburg.informatik.ultimate.smtinterpol.smtlib2.SMTInterpol;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the plain SMTInterpol API that document why {@link SmtInterpolBasicProver} does not use
+ * some of its features. If a test fails after updating SMTInterpol, the bug is fixed and the
+ * workaround in the prover can be removed.
+ */
+public class SmtInterpolNativeApiTest {
+
+  private SMTInterpol script;
+
+  @Before
+  public void createScript() {
+    // the same options as in SmtInterpolEnvironment
+    script = new SMTInterpol();
+    script.setOption(":verbosity", 0);
+    script.setOption(":global-declarations", true);
+    script.setOption(":produce-interpolants", true);
+    script.setOption(":produce-models", true);
+    script.setOption(":produce-unsat-cores", true);
+    script.setOption(":produce-unsat-assumptions", true);
+    script.setLogic(Logics.QF_AUFLIRA);
+  }
+
+  @Test
+  public void checkSatAssumingReturnsModelsViolatingAssumptions() {
+    Sort bool = script.sort("Bool");
+    Term[] predicates = new Term[4];
+    for (int i = 0; i < predicates.length; i++) {
+      script.declareFun("p" + i, new Sort[0], bool);
+      predicates[i] = script.term("p" + i);
+    }
+    script.push(1);
+    Term[] assumptions = {predicates[1], script.term("not", predicates[2])};
+
+    // Only four models satisfy the assumptions. After blocking them one after another,
+    // SMTInterpol drops the assumption on p2 instead of reporting UNSAT.
+    boolean violated = false;
+    for (int k = 0; k <= 4 && !violated; k++) {
+      assertEquals(LBool.SAT, script.checkSatAssuming(assumptions));
+      Model model = script.getModel();
+      Term[] literals = new Term[predicates.length];
+      for (int i = 0; i < predicates.length; i++) {
+        boolean value = model.evaluate(predicates[i]) == script.term("true");
+        literals[i] = value ? predicates[i] : script.term("not", predicates[i]);
+        violated |= i == 2 && value;
+      }
+      script.assertTerm(script.term("not", script.term("and", literals)));
+    }
+    assertTrue("SMTInterpol respected the assumptions", violated);
+  }
+}
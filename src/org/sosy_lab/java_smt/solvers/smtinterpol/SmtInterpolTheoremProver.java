@@ -19,15 +19,13 @@
  */
 package org.sosy_lab.java_smt.solvers.smtinterpol;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import de.uni_freiburg.informatik.ultimate.logic.Annotation;
 import de.uni_freiburg.informatik.ultimate.logic.FunctionSymbol;
 import de.uni_freiburg.informatik.ultimate.logic.Sort;
 import de.uni_freiburg.informatik.ultimate.logic.Term;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -35,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
@@ -46,7 +45,6 @@ class SmtInterpolTheoremProver extends SmtInterpolBasicProver<Void, Term>
     implements ProverEnvironment {
 
   private final SmtInterpolFormulaManager mgr;
-  private final SmtInterpolEnvironment env;
   private final Map<String, Term> annotatedTerms; // Collection of termNames
   private final FormulaCreator<Term, Sort, SmtInterpolEnvironment, FunctionSymbol> creator;
   private final boolean generateUnsatCores;
@@ -57,39 +55,32 @@ class SmtInterpolTheoremProver extends SmtInterpolBasicProver<Void, Term>
       Set<ProverOptions> options) {
     super(pMgr);
     mgr = pMgr;
-    env = mgr.createEnvironment();
     creator = pCreator;
-    checkNotNull(env);
     annotatedTerms = new HashMap<>();
-    generateUnsatCores = options.contains(ProverOptions.GENERATE_UNSAT_CORE);
+    generateUnsatCores =
+        options.contains(ProverOptions.GENERATE_UNSAT_CORE)
+            || options.contains(ProverOptions.GENERATE_UNSAT_CORE_OVER_ASSUMPTIONS);
   }
 
   @Override
   public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
       Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
-    push();
-    Preconditions.checkState(
-        annotatedTerms.isEmpty(),
-        "Empty environment required for UNSAT core" + " over assumptions.");
-    for (BooleanFormula assumption : assumptions) {
-      String termName = generateTermName();
-      Term t = mgr.extractInfo(assumption);
-      Term annotated = env.annotate(t, new Annotation(":named", termName));
-      annotatedTerms.put(termName, t);
-      env.assertTerm(annotated);
-    }
-    if (!isUnsat()) {
+    Preconditions.checkState(!isClosed());
+    Preconditions.checkState(generateUnsatCores);
+    if (!isUnsatWithAssumptions(assumptions)) {
       return Optional.empty();
     }
-    List<BooleanFormula> out = getUnsatCore();
-    pop();
-    return Optional.of(out);
+    // the unsat core might also contain other named constraints, but we only want assumptions
+    Set<BooleanFormula> assumptionSet = ImmutableSet.copyOf(assumptions);
+    return Optional.of(
+        getUnsatCore().stream().filter(assumptionSet::contains).collect(Collectors.toList()));
   }
 
   @Override
   @Nullable
   public Void addConstraint(BooleanFormula constraint) {
     Preconditions.checkState(!isClosed());
+    clearAssumptions();
     Term t = mgr.extractInfo(constraint);
     if (generateUnsatCores) {
       String termName = generateTermName();
@@ -100,6 +91,7 @@ class SmtInterpolTheoremProver extends SmtInterpolBasicProver<Void, Term>
       env.assertTerm(t);
     }
     assertedFormulas.peek().add(t);
+    addToSymbolIndex(t);
     return null;
   }
 
@@ -116,21 +108,23 @@ class SmtInterpolTheoremProver extends SmtInterpolBasicProver<Void, Term>
   public <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
       throws InterruptedException, SolverException {
     Preconditions.checkState(!isClosed());
+    clearAssumptions();
     Term[] importantTerms = new Term[important.size()];
     int i = 0;
     for (BooleanFormula impF : important) {
       importantTerms[i++] = mgr.extractInfo(impF);
     }
-    for (Term[] model : env.checkAllSat(importantTerms)) {
-      callback.apply(Lists.transform(Arrays.asList(model), creator::encapsulateBoolean));
+    // the blocking clauses of SMTInterpol stay on the current level,
+    // and the callback may stop the enumeration by throwing an exception
+    env.push(1);
+    try {
+      env.checkAllSat(
+          importantTerms,
+          model ->
+              callback.apply(Lists.transform(Arrays.asList(model), creator::encapsulateBoolean)));
+    } finally {
+      env.pop(1);
     }
     return callback.getResult();
   }
-
-  @Override
-  protected Collection<Term> getAssertedTerms() {
-    List<Term> result = new ArrayList<>();
-    assertedFormulas.forEach(result::addAll);
-    return result;
-  }
 }
@@ -21,6 +21,7 @@ package org.sosy_lab.java_smt.solvers.z3;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.microsoft.z3.Native;
 import org.sosy_lab.java_smt.api.BasicProverEnvironment;
 import org.sosy_lab.java_smt.api.Model.ValueAssignment;
 import org.sosy_lab.java_smt.api.SolverException;
@@ -31,6 +32,13 @@ abstract class Z3AbstractProver<T> implements BasicProverEnvironment<T> {
 
   protected boolean closed = false;
 
+  /**
+   * Whether {@link #interrupt()} was called during the current operation, or since the last
+   * operation ended. Z3 ignores interrupts that arrive before it starts solving, thus such an
+   * interrupt is kept until the next operation starts.
+   */
+  private volatile boolean interruptRequested = false;
+
   protected Z3AbstractProver(Z3FormulaCreator creator) {
     this.creator = creator;
     z3context = creator.getEnv();
@@ -38,6 +46,38 @@ abstract class Z3AbstractProver<T> implements BasicProverEnvironment<T> {
 
   protected abstract long getZ3Model();
 
+  @Override
+  public void interrupt() {
+    interruptRequested = true;
+    Native.interrupt(z3context);
+  }
+
+  /**
+   * Has to be called at the start of each operation that can be stopped by {@link #interrupt},
+   * directly before calling Z3. Throws an {@link InterruptedException} if the operation was
+   * interrupted before it started.
+   */
+  protected final void startInterruptibleOperation() throws InterruptedException {
+    checkInterrupted();
+  }
+
+  /**
+   * Has to be called when an operation started by {@link #startInterruptibleOperation} ends, also
+   * if it ends with an exception. Interrupts that arrive later do not affect the next operation.
+   */
+  protected final void endInterruptibleOperation() {
+    interruptRequested = false;
+  }
+
+  /** Throw an {@link InterruptedException} if Z3 stopped because of a shutdown or interrupt. */
+  protected final void checkInterrupted() throws InterruptedException {
+    creator.shutdownNotifier.shutdownIfNecessary();
+    if (interruptRequested) {
+      interruptRequested = false;
+      throw new InterruptedException("Z3 operation was interrupted");
+    }
+  }
+
   @Override
   public Z3Model getModel() {
     Preconditions.checkState(!closed);
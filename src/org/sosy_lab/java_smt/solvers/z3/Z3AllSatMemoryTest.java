@@ -0,0 +1,74 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.solvers.z3;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.microsoft.z3.Native;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.test.SolverBasedTest0;
+
+/** Checks that the allSat loop of Z3 releases the native terms and models of each iteration. */
+public class Z3AllSatMemoryTest extends SolverBasedTest0 {
+
+  private static final int PREDICATES = 12;
+  private static final int ROUNDS = 25; // about 100k models
+  private static final int WARMUP_ROUNDS = 3;
+
+  /**
+   * Each leaked blocking clause over {@link #PREDICATES} literals takes about 200 bytes, such that
+   * leaking all of them would exceed this limit several times.
+   */
+  private static final long MEMORY_LIMIT = 8L * 1024 * 1024;
+
+  @Override
+  protected Solvers solverToUse() {
+    return Solvers.Z3;
+  }
+
+  @Test
+  public void allSatWithStableNativeMemory() throws Exception {
+    long memoryAfterWarmup = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      // fresh predicates, such that the terms of different rounds are not shared
+      List<BooleanFormula> predicates = new ArrayList<>();
+      for (int i = 0; i < PREDICATES; i++) {
+        predicates.add(bmgr.makeVariable("p" + round + "_" + i));
+      }
+
+      try (ProverEnvironment prover = context.newProverEnvironment()) {
+        prover.push(bmgr.or(predicates));
+        int models = prover.allSat(new AllSatCollector(), predicates).size();
+        assertThat(models).isEqualTo((1 << PREDICATES) - 1);
+      }
+
+      if (round == WARMUP_ROUNDS - 1) {
+        memoryAfterWarmup = Native.getEstimatedAllocSize();
+      }
+    }
+
+    assertThat(Native.getEstimatedAllocSize() - memoryAfterWarmup).isLessThan(MEMORY_LIMIT);
+  }
+}
@@ -70,10 +70,12 @@ class Z3InterpolatingProver extends Z3SolverBasedProver<Long>
   }
 
   @Override
-  public void pop() {
+  public void pop(int levels) {
     Preconditions.checkState(getLevel() == assertedFormulas.size() - 1);
-    super.pop();
-    assertedFormulas.pop();
+    super.pop(levels);
+    for (int i = 0; i < levels; i++) {
+      assertedFormulas.pop();
+    }
   }
 
   @Override
@@ -128,6 +130,17 @@ class Z3InterpolatingProver extends Z3SolverBasedProver<Long>
       List<Set<Long>> partitionedFormulas, int[] startOfSubTree)
       throws InterruptedException, SolverException {
     Preconditions.checkState(!closed);
+    startInterruptibleOperation();
+    try {
+      return getTreeInterpolants0(partitionedFormulas, startOfSubTree);
+    } finally {
+      endInterruptibleOperation();
+    }
+  }
+
+  private List<BooleanFormula> getTreeInterpolants0(
+      List<Set<Long>> partitionedFormulas, int[] startOfSubTree)
+      throws InterruptedException, SolverException {
     final long[] conjunctionFormulas = new long[partitionedFormulas.size()];
 
     // build conjunction of each partition
@@ -214,6 +227,7 @@ class Z3InterpolatingProver extends Z3SolverBasedProver<Long>
       if ("theory not supported by interpolation or bad proof".equals(e.getMessage())) {
         throw new SolverException(e.getMessage(), e);
       }
+      checkInterrupted();
       throw creator.handleZ3Exception(e);
     }
 
@@ -23,14 +23,19 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 import com.google.common.base.VerifyException;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.Lists;
 import com.microsoft.z3.Native;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.sosy_lab.java_smt.api.Formula;
 import org.sosy_lab.java_smt.basicimpl.AbstractModel.CachingAbstractModel;
@@ -74,30 +79,79 @@ class Z3Model extends CachingAbstractModel<Long, Long, Long> {
     return null;
   }
 
+  @Override
+  protected List<Object> evaluateAllImpl(List<Long> formulas) {
+    // Values are hash-consed ASTs, so equal values of several formulas share one conversion.
+    // The values are kept alive until the end of the batch, otherwise Z3 could reuse their address.
+    Map<Long, Object> convertedValues = new HashMap<>();
+    List<Object> values = new ArrayList<>(formulas.size());
+    Native.LongPtr out = new Native.LongPtr();
+    try {
+      for (long f : formulas) {
+        boolean status = Native.modelEval(z3context, model, f, false, out);
+        Verify.verify(status, "Error during model evaluation");
+        long outValue = out.value;
+        if (!convertedValues.containsKey(outValue)) {
+          Native.incRef(z3context, outValue);
+          convertedValues.put(
+              outValue, creator.isConstant(outValue) ? creator.convertValue(outValue) : null);
+        }
+        values.add(convertedValues.get(outValue));
+      }
+    } finally {
+      for (long value : convertedValues.keySet()) {
+        Native.decRef(z3context, value);
+      }
+    }
+    return values;
+  }
+
   @Override
   protected ImmutableList<ValueAssignment> modelToList() {
-    Builder<ValueAssignment> out = ImmutableList.builder();
+    return ImmutableList.copyOf(modelIterator(name -> true));
+  }
 
-    // Iterate through constants.
-    for (int constIdx = 0; constIdx < Native.modelGetNumConsts(z3context, model); constIdx++) {
-      long keyDecl = Native.modelGetConstDecl(z3context, model, constIdx);
-      Native.incRef(z3context, keyDecl);
-      out.addAll(getConstAssignments(keyDecl));
+  @Override
+  protected Iterator<ValueAssignment> modelIterator(Predicate<String> symbolFilter) {
+    // The symbols are listed eagerly, their assignments only when the iteration reaches them.
+    Stream<Collection<ValueAssignment>> constAssignments =
+        IntStream.range(0, Native.modelGetNumConsts(z3context, model))
+            .mapToObj(constIdx -> getConstAssignments(constIdx, symbolFilter));
+    Stream<Collection<ValueAssignment>> functionAssignments =
+        IntStream.range(0, Native.modelGetNumFuncs(z3context, model))
+            .mapToObj(funcIdx -> getFunctionAssignments(funcIdx, symbolFilter));
+    return Stream.concat(constAssignments, functionAssignments)
+        .flatMap(Collection::stream)
+        .iterator();
+  }
+
+  private Collection<ValueAssignment> getConstAssignments(
+      int constIdx, Predicate<String> symbolFilter) {
+    long keyDecl = Native.modelGetConstDecl(z3context, model, constIdx);
+    Native.incRef(z3context, keyDecl);
+    try {
+      if (!symbolFilter.test(creator.symbolToString(Native.getDeclName(z3context, keyDecl)))) {
+        return Collections.emptyList();
+      }
+      return getConstAssignments(keyDecl);
+    } finally {
       Native.decRef(z3context, keyDecl);
     }
+  }
 
-    // Iterate through function applications.
-    for (int funcIdx = 0; funcIdx < Native.modelGetNumFuncs(z3context, model); funcIdx++) {
-      long funcDecl = Native.modelGetFuncDecl(z3context, model, funcIdx);
-      Native.incRef(z3context, funcDecl);
-      if (!isInternalSymbol(funcDecl)) {
-        String functionName = creator.symbolToString(Native.getDeclName(z3context, funcDecl));
-        out.addAll(getFunctionAssignments(funcDecl, funcDecl, functionName));
+  private Collection<ValueAssignment> getFunctionAssignments(
+      int funcIdx, Predicate<String> symbolFilter) {
+    long funcDecl = Native.modelGetFuncDecl(z3context, model, funcIdx);
+    Native.incRef(z3context, funcDecl);
+    try {
+      String functionName = creator.symbolToString(Native.getDeclName(z3context, funcDecl));
+      if (isInternalSymbol(funcDecl) || !symbolFilter.test(functionName)) {
+        return Collections.emptyList();
       }
+      return getFunctionAssignments(funcDecl, funcDecl, functionName);
+    } finally {
       Native.decRef(z3context, funcDecl);
     }
-
-    return out.build();
   }
 
   /**
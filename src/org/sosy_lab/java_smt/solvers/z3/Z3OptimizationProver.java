@@ -80,16 +80,24 @@ class Z3OptimizationProver extends Z3AbstractProver<Void> implements Optimizatio
   @Override
   public OptStatus check() throws InterruptedException, SolverException {
     Preconditions.checkState(!closed);
+    startInterruptibleOperation();
     int status;
     try {
-      status = Native.optimizeCheck(z3context, z3optContext);
-    } catch (Z3Exception ex) {
-      throw creator.handleZ3Exception(ex);
+      try {
+        status = Native.optimizeCheck(z3context, z3optContext);
+      } catch (Z3Exception ex) {
+        checkInterrupted();
+        throw creator.handleZ3Exception(ex);
+      }
+      if (status == Z3_lbool.Z3_L_UNDEF.toInt()) {
+        checkInterrupted();
+      }
+    } finally {
+      endInterruptibleOperation();
     }
     if (status == Z3_lbool.Z3_L_FALSE.toInt()) {
       return OptStatus.UNSAT;
     } else if (status == Z3_lbool.Z3_L_UNDEF.toInt()) {
-      creator.shutdownNotifier.shutdownIfNecessary();
       logger.log(
           Level.INFO,
           "Solver returned an unknown status, explanation: ",
@@ -44,39 +44,50 @@ abstract class Z3SolverBasedProver<T> extends Z3AbstractProver<T> {
   @Override
   public boolean isUnsat() throws Z3SolverException, InterruptedException {
     Preconditions.checkState(!closed);
-    int result;
+    startInterruptibleOperation();
     try {
-      result = Native.solverCheck(z3context, z3solver);
-    } catch (Z3Exception e) {
-      throw creator.handleZ3Exception(e);
+      int result;
+      try {
+        result = Native.solverCheck(z3context, z3solver);
+      } catch (Z3Exception e) {
+        checkInterrupted();
+        throw creator.handleZ3Exception(e);
+      }
+      undefinedStatusToException(result);
+      return result == Z3_lbool.Z3_L_FALSE.toInt();
+    } finally {
+      endInterruptibleOperation();
     }
-    undefinedStatusToException(result);
-    return result == Z3_lbool.Z3_L_FALSE.toInt();
   }
 
   public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
       throws Z3SolverException, InterruptedException {
     Preconditions.checkState(!closed);
-
-    int result;
+    startInterruptibleOperation();
     try {
-      result =
-          Native.solverCheckAssumptions(
-              z3context,
-              z3solver,
-              assumptions.size(),
-              assumptions.stream().mapToLong(creator::extractInfo).toArray());
-    } catch (Z3Exception e) {
-      throw creator.handleZ3Exception(e);
+      int result;
+      try {
+        result =
+            Native.solverCheckAssumptions(
+                z3context,
+                z3solver,
+                assumptions.size(),
+                assumptions.stream().mapToLong(creator::extractInfo).toArray());
+      } catch (Z3Exception e) {
+        checkInterrupted();
+        throw creator.handleZ3Exception(e);
+      }
+      undefinedStatusToException(result);
+      return result == Z3_lbool.Z3_L_FALSE.toInt();
+    } finally {
+      endInterruptibleOperation();
     }
-    undefinedStatusToException(result);
-    return result == Z3_lbool.Z3_L_FALSE.toInt();
   }
 
   protected final void undefinedStatusToException(int solverStatus)
       throws Z3SolverException, InterruptedException {
     if (solverStatus == Z3_lbool.Z3_L_UNDEF.toInt()) {
-      creator.shutdownNotifier.shutdownIfNecessary();
+      checkInterrupted();
       throw new Z3SolverException(
           "Solver returned 'unknown' status, reason: "
               + Native.solverGetReasonUnknown(z3context, z3solver));
@@ -107,10 +118,16 @@ abstract class Z3SolverBasedProver<T> extends Z3AbstractProver<T> {
 
   @Override
   public void pop() {
+    pop(1);
+  }
+
+  @Override
+  public void pop(int levels) {
     Preconditions.checkState(!closed);
-    Preconditions.checkState(Native.solverGetNumScopes(z3context, z3solver) >= 1);
-    level--;
-    Native.solverPop(z3context, z3solver, 1);
+    Preconditions.checkArgument(levels >= 0);
+    Preconditions.checkState(Native.solverGetNumScopes(z3context, z3solver) >= levels);
+    level -= levels;
+    Native.solverPop(z3context, z3solver, levels);
   }
 
   protected int getLevel() {
@@ -64,6 +64,15 @@ final class Z3SolverContext extends AbstractSolverContext {
   )
   String objectivePrioritizationMode = "box";
 
+  @Option(
+    secure = true,
+    description =
+        "Generalize each model found by allSat to the smallest part of it that implies the"
+            + " asserted formulas. The callback then receives partial models, but fewer of them."
+            + " The partial models do not overlap."
+  )
+  private boolean generalizeAllSatModels = false;
+
   @Option(
     secure = true,
     description = "Dump failed interpolation queries to this file in SMTLIB2 format"
@@ -230,7 +239,7 @@ final class Z3SolverContext extends AbstractSolverContext {
 
   @Override
   protected ProverEnvironment newProverEnvironment0(Set<ProverOptions> options) {
-    return new Z3TheoremProver(creator, manager, z3params, options);
+    return new Z3TheoremProver(creator, manager, z3params, options, generalizeAllSatModels);
   }
 
   @Override
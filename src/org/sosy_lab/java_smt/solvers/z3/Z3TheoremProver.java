@@ -22,11 +22,14 @@ package org.sosy_lab.java_smt.solvers.z3;
 import static org.sosy_lab.java_smt.solvers.z3.Z3FormulaCreator.isOP;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Verify;
 import com.google.common.base.VerifyException;
 import com.microsoft.z3.Native;
 import com.microsoft.z3.Z3Exception;
 import com.microsoft.z3.enumerations.Z3_decl_kind;
+import com.microsoft.z3.enumerations.Z3_lbool;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -40,7 +43,6 @@ import org.sosy_lab.java_smt.api.FormulaManager;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
 import org.sosy_lab.java_smt.api.SolverException;
-import org.sosy_lab.java_smt.basicimpl.LongArrayBackedList;
 
 class Z3TheoremProver extends Z3SolverBasedProver<Void> implements ProverEnvironment {
 
@@ -51,10 +53,18 @@ class Z3TheoremProver extends Z3SolverBasedProver<Void> implements ProverEnviron
 
   private final @Nullable Map<String, BooleanFormula> storedConstraints;
 
+  /** Whether {@link #allSat} generalizes models before blocking them. */
+  private final boolean generalizeAllSatModels;
+
   Z3TheoremProver(
-      Z3FormulaCreator creator, Z3FormulaManager pMgr, long z3params, Set<ProverOptions> opts) {
+      Z3FormulaCreator creator,
+      Z3FormulaManager pMgr,
+      long z3params,
+      Set<ProverOptions> opts,
+      boolean pGeneralizeAllSatModels) {
     super(creator, z3params);
     mgr = pMgr;
+    generalizeAllSatModels = pGeneralizeAllSatModels;
     if (opts.contains(ProverOptions.GENERATE_UNSAT_CORE)) {
       storedConstraints = new HashMap<>();
     } else {
@@ -134,16 +144,73 @@ class Z3TheoremProver extends Z3SolverBasedProver<Void> implements ProverEnviron
       importantFormulas[i++] = Z3FormulaManager.getZ3Expr(impF);
     }
 
+    // created before the push, such that it does not contain the blocking clauses
+    long negatedAssertions = generalizeAllSatModels ? makeNegatedAssertionsSolver() : 0;
+
+    // the blocked models for generalization, index i for the predicate i and -i-1 for its negation
+    List<int[]> blockedModels = new ArrayList<>();
+
     try {
       Native.solverPush(z3context, z3solver);
     } catch (Z3Exception e) {
       throw creator.handleZ3Exception(e);
     }
 
-    while (!isUnsat()) {
-      long[] valuesOfModel = new long[importantFormulas.length];
-      long z3model = Native.solverGetModel(z3context, z3solver);
+    try {
+      while (!isUnsat()) {
+        // The literals of the model, the negated ones are created here and released below.
+        long[] valuesOfModel = new long[importantFormulas.length];
+        try {
+          getValuesOfModel(importantFormulas, valuesOfModel);
+
+          long[] blockedValues = valuesOfModel;
+          if (negatedAssertions != 0) {
+            blockedValues =
+                generalize(importantFormulas, valuesOfModel, negatedAssertions, blockedModels);
+          }
+
+          // the callback may keep the formulas, thus they have to own their terms
+          List<BooleanFormula> model = new ArrayList<>(blockedValues.length);
+          for (long value : blockedValues) {
+            model.add(creator.encapsulateBoolean(value));
+          }
+          callback.apply(model);
+
+          long negatedModel =
+              Native.mkNot(
+                  z3context, Native.mkAnd(z3context, blockedValues.length, blockedValues));
+          Native.incRef(z3context, negatedModel);
+          Native.solverAssert(z3context, z3solver, negatedModel);
+          Native.decRef(z3context, negatedModel);
+        } finally {
+          for (int j = 0; j < valuesOfModel.length; j++) {
+            if (valuesOfModel[j] != 0 && valuesOfModel[j] != importantFormulas[j]) {
+              Native.decRef(z3context, valuesOfModel[j]);
+            }
+          }
+        }
+      }
+    } finally {
+      if (negatedAssertions != 0) {
+        Native.solverDecRef(z3context, negatedAssertions);
+      }
+      // we pushed some levels on assertionStack, remove them and delete solver,
+      // also if the callback stopped the enumeration with an exception
+      Native.solverPop(z3context, z3solver, 1);
+    }
 
+    return callback.getResult();
+  }
+
+  /**
+   * Store the literal of each important predicate that holds in the current model, either the
+   * predicate itself or its negation with an additional reference.
+   */
+  private void getValuesOfModel(long[] importantFormulas, long[] valuesOfModel)
+      throws InterruptedException {
+    long z3model = Native.solverGetModel(z3context, z3solver);
+    Native.modelIncRef(z3context, z3model);
+    try {
       for (int j = 0; j < importantFormulas.length; j++) {
         long funcDecl = Native.getAppDecl(z3context, importantFormulas[j]);
         long valueOfExpr = Native.modelGetConstInterp(z3context, z3model, funcDecl);
@@ -167,23 +234,134 @@ class Z3TheoremProver extends Z3SolverBasedProver<Void> implements ProverEnviron
           valuesOfModel[j] = importantFormulas[j];
         }
       }
+    } finally {
+      Native.modelDecRef(z3context, z3model);
+    }
+  }
 
-      callback.apply(
-          new LongArrayBackedList<BooleanFormula>(valuesOfModel) {
-            @Override
-            protected BooleanFormula convert(long pE) {
-              return creator.encapsulateBoolean(pE);
-            }
-          });
+  /** Create a separate solver that contains the negation of all formulas asserted here. */
+  private long makeNegatedAssertionsSolver() {
+    long assertions = Native.solverGetAssertions(z3context, z3solver);
+    Native.astVectorIncRef(z3context, assertions);
+    long[] terms = new long[Native.astVectorSize(z3context, assertions)];
+    for (int i = 0; i < terms.length; i++) {
+      terms[i] = Native.astVectorGet(z3context, assertions, i);
+    }
+    long conjunction = Native.mkAnd(z3context, terms.length, terms);
+    Native.incRef(z3context, conjunction);
+    Native.astVectorDecRef(z3context, assertions);
+    long negation = Native.mkNot(z3context, conjunction);
+    Native.incRef(z3context, negation);
+    Native.decRef(z3context, conjunction);
 
-      long negatedModel =
-          Native.mkNot(z3context, Native.mkAnd(z3context, valuesOfModel.length, valuesOfModel));
-      Native.incRef(z3context, negatedModel);
-      Native.solverAssert(z3context, z3solver, negatedModel);
+    long solver = Native.mkSolver(z3context);
+    Native.solverIncRef(z3context, solver);
+    Native.solverAssert(z3context, solver, negation);
+    Native.decRef(z3context, negation);
+    if (storedConstraints != null) {
+      // tracked constraints are asserted as implications from their tracking variables
+      for (String varName : storedConstraints.keySet()) {
+        Native.solverAssert(
+            z3context,
+            solver,
+            creator.extractInfo(mgr.getBooleanFormulaManager().makeVariable(varName)));
+      }
     }
+    return solver;
+  }
 
-    // we pushed some levels on assertionStack, remove them and delete solver
-    Native.solverPop(z3context, z3solver, 1);
-    return callback.getResult();
+  /**
+   * Reduce the model to the literals of an unsat core of the model and the negated assertions. The
+   * remaining literals imply the asserted formulas, thus every assignment of the dropped
+   * predicates is a model as well, and the blocking clause excludes all of them at once. If the
+   * full model does not imply the asserted formulas, e.g., because they contain other variables,
+   * the model is returned unchanged.
+   *
+   * <p>The reduced model is extended again until it contradicts each of the blocked models, such
+   * that no assignment is reported twice. The result is added to the blocked models.
+   */
+  private long[] generalize(
+      long[] importantFormulas, long[] model, long negatedAssertions, List<int[]> blockedModels)
+      throws Z3SolverException, InterruptedException {
+    boolean[] polarity = new boolean[model.length];
+    boolean[] kept = new boolean[model.length];
+    for (int i = 0; i < model.length; i++) {
+      polarity[i] = model[i] == importantFormulas[i];
+      kept[i] = true;
+    }
+    if (reduceToCore(model, negatedAssertions, kept)) {
+      separateFromBlockedModels(polarity, kept, blockedModels);
+    }
+
+    List<Integer> blocked = new ArrayList<>();
+    for (int i = 0; i < model.length; i++) {
+      if (kept[i]) {
+        blocked.add(polarity[i] ? i : -i - 1);
+      }
+    }
+    blockedModels.add(blocked.stream().mapToInt(Integer::intValue).toArray());
+    return blocked.stream().mapToLong(i -> model[i >= 0 ? i : -i - 1]).toArray();
+  }
+
+  /**
+   * Keep only the literals of the model in an unsat core with the negated assertions.
+   *
+   * @return whether the model implies the asserted formulas, otherwise all literals are kept.
+   */
+  private boolean reduceToCore(long[] model, long negatedAssertions, boolean[] kept)
+      throws Z3SolverException, InterruptedException {
+    startInterruptibleOperation();
+    try {
+      int result;
+      try {
+        result = Native.solverCheckAssumptions(z3context, negatedAssertions, model.length, model);
+      } catch (Z3Exception e) {
+        checkInterrupted();
+        throw creator.handleZ3Exception(e);
+      }
+      if (result != Z3_lbool.Z3_L_FALSE.toInt()) {
+        checkInterrupted();
+        return false;
+      }
+    } finally {
+      endInterruptibleOperation();
+    }
+
+    long unsatCore = Native.solverGetUnsatCore(z3context, negatedAssertions);
+    Native.astVectorIncRef(z3context, unsatCore);
+    long[] core = new long[Native.astVectorSize(z3context, unsatCore)];
+    for (int i = 0; i < core.length; i++) {
+      core[i] = Native.astVectorGet(z3context, unsatCore, i);
+    }
+    Native.astVectorDecRef(z3context, unsatCore);
+
+    // the core consists of the same ASTs as the model, which keeps them alive
+    Arrays.sort(core);
+    for (int i = 0; i < model.length; i++) {
+      kept[i] = Arrays.binarySearch(core, model[i]) >= 0;
+    }
+    return true;
+  }
+
+  /**
+   * Keep more literals of the full model until the kept ones contradict each blocked model. This
+   * is always possible, because the full model satisfies the blocking clauses.
+   */
+  private static void separateFromBlockedModels(
+      boolean[] polarity, boolean[] kept, List<int[]> blockedModels) {
+    for (int[] blockedModel : blockedModels) {
+      int contradiction = -1;
+      for (int literal : blockedModel) {
+        int i = literal >= 0 ? literal : -literal - 1;
+        if (polarity[i] != literal >= 0) {
+          contradiction = i;
+          if (kept[i]) {
+            break;
+          }
+        }
+      }
+      Verify.verify(contradiction >= 0, "model does not satisfy a blocking clause");
+      kept[contradiction] = true;
+    }
   }
 }
@@ -0,0 +1,153 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.basicimpl.AssumptionBasedAllSat;
+
+@RunWith(Parameterized.class)
+public class AssumptionBasedAllSatTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  private ProverEnvironment prover;
+  private AssumptionBasedAllSat engine;
+  private List<BooleanFormula> predicates;
+
+  /** The predicates p_i <=> x > i, such that x determines a prefix of true predicates. */
+  @Before
+  public void setupProver() {
+    prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS);
+    engine = new AssumptionBasedAllSat(prover, bmgr);
+    predicates = makePredicates(4);
+    for (BooleanFormula constraint : makeThresholds(predicates, imgr.makeVariable("x"))) {
+      prover.push(constraint);
+    }
+  }
+
+  @After
+  public void closeProver() {
+    prover.close();
+  }
+
+  @Test
+  public void sameModelsAsSolver() throws Exception {
+    Set<Set<BooleanFormula>> models = asSets(engine.allSat(new AllSatCollector(), predicates));
+    assertThat(models).hasSize(predicates.size() + 1);
+    assertThat(models).isEqualTo(asSets(prover.allSat(new AllSatCollector(), predicates)));
+  }
+
+  @Test
+  public void projection() throws Exception {
+    List<BooleanFormula> important = predicates.subList(1, 3);
+    Set<Set<BooleanFormula>> models = asSets(engine.allSat(new AllSatCollector(), important));
+    assertThat(models).hasSize(important.size() + 1);
+    assertThat(models).isEqualTo(asSets(prover.allSat(new AllSatCollector(), important)));
+  }
+
+  @Test
+  public void proverIsReused() throws Exception {
+    Set<Set<BooleanFormula>> models = asSets(engine.allSat(new AllSatCollector(), predicates));
+    assertThat(asSets(engine.allSat(new AllSatCollector(), predicates))).isEqualTo(models);
+
+    // blocking clauses of finished calls do not constrain the prover
+    prover.push(bmgr.and(predicates));
+    assertThat(prover.isUnsat()).isFalse();
+    assertThat(engine.allSat(new AllSatCollector(), predicates)).hasSize(1);
+    prover.pop();
+    assertThat(asSets(engine.allSat(new AllSatCollector(), predicates))).isEqualTo(models);
+  }
+
+  @Test
+  public void assumptions() throws Exception {
+    List<BooleanFormula> cube = ImmutableList.of(predicates.get(1), bmgr.not(predicates.get(2)));
+    Set<Set<BooleanFormula>> models =
+        asSets(engine.allSat(new AllSatCollector(), predicates, cube));
+    assertThat(models)
+        .containsExactly(
+            ImmutableSet.of(
+                predicates.get(0),
+                predicates.get(1),
+                bmgr.not(predicates.get(2)),
+                bmgr.not(predicates.get(3))));
+
+    // the assumptions are not asserted
+    assertThat(engine.allSat(new AllSatCollector(), predicates)).hasSize(predicates.size() + 1);
+  }
+
+  @Test
+  public void noAuxiliaryVariablesInModels() throws Exception {
+    engine.allSat(new AllSatCollector(), predicates);
+    assertThat(prover.isUnsat()).isFalse();
+    Set<String> names = new HashSet<>();
+    for (ValueAssignment assignment : prover.getModelAssignments()) {
+      names.add(assignment.getName());
+    }
+    assertThat(names).containsExactly("x", "p0", "p1", "p2", "p3");
+  }
+
+  @Test
+  public void earlyTermination() throws Exception {
+    try {
+      engine.allSat(new AllSatCollector(1), predicates);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("enough models");
+    }
+
+    assertThat(engine.allSat(new AllSatCollector(), predicates)).hasSize(predicates.size() + 1);
+  }
+
+  @Test
+  public void unsatisfiable() throws Exception {
+    prover.push(bmgr.and(bmgr.not(predicates.get(0)), predicates.get(1)));
+    assertThat(engine.allSat(new AllSatCollector(), predicates)).isEmpty();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.utils.SolverUtils;
+
+@RunWith(Parameterized.class)
+public class CubeAndConquerTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  private SolverContextPool pool;
+
+  @Before
+  public void createPool() throws Exception {
+    pool = SolverContextPool.create(config, logger, shutdownNotifierToUse(), solverToUse(), 3);
+  }
+
+  @After
+  public void closePool() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  /** (p_i or x > i) and (!p_i or x < -i) for all i, which constrains x by the choice of p_i. */
+  private BooleanFormula makeChoices(IntegerFormula x, int n) {
+    List<BooleanFormula> choices = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      BooleanFormula p = bmgr.makeVariable("p" + i);
+      choices.add(bmgr.or(p, imgr.greaterThan(x, imgr.makeNumber(i))));
+      choices.add(bmgr.or(bmgr.not(p), imgr.lessThan(x, imgr.makeNumber(-i))));
+    }
+    return bmgr.and(choices);
+  }
+
+  @Test
+  public void satisfiableFormula() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula g = bmgr.and(makeChoices(x, 5), imgr.greaterThan(x, imgr.makeNumber(2)));
+    Optional<ImmutableList<ValueAssignment>> model =
+        SolverUtils.cubeAndConquer(pool, 3).solve(g, mgr);
+    assertThat(model.isPresent()).isTrue();
+
+    List<BooleanFormula> assignments = new ArrayList<>();
+    for (ValueAssignment assignment : model.get()) {
+      if (assignment.getKey() instanceof BooleanFormula) {
+        assignments.add(
+            bmgr.equivalence(
+                (BooleanFormula) assignment.getKey(),
+                bmgr.makeBoolean((Boolean) assignment.getValue())));
+      } else {
+        assignments.add(
+            imgr.equal(
+                (IntegerFormula) assignment.getKey(),
+                imgr.makeNumber((BigInteger) assignment.getValue())));
+      }
+    }
+    assertThatFormula(bmgr.and(assignments)).implies(g);
+  }
+
+  @Test
+  public void unsatisfiableFormula() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula f =
+        bmgr.and(
+            makeChoices(x, 6),
+            imgr.lessThan(x, imgr.makeNumber(3)),
+            imgr.greaterThan(x, imgr.makeNumber(-3)));
+    assertThat(SolverUtils.cubeAndConquer(pool, 4).solve(f, mgr).isPresent()).isFalse();
+  }
+
+  @Test
+  public void withoutSplitting() throws Exception {
+    BooleanFormula p = bmgr.makeVariable("p");
+    assertThat(SolverUtils.cubeAndConquer(pool, 0).solve(p, mgr).isPresent()).isTrue();
+    assertThat(
+            SolverUtils.cubeAndConquer(pool, 0).solve(bmgr.and(p, bmgr.not(p)), mgr).isPresent())
+        .isFalse();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.utils.Houdini;
+import org.sosy_lab.java_smt.utils.SolverUtils;
+
+@RunWith(Parameterized.class)
+public class HoudiniTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  private Houdini houdini;
+  private BooleanFormula transition;
+  private List<BooleanFormula> lemmas;
+  private List<BooleanFormula> expected;
+
+  @Before
+  public void init() {
+    houdini = SolverUtils.houdini(context);
+
+    // transition x' = x + 1 and y' = x
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula y = imgr.makeVariable("y");
+    transition =
+        bmgr.and(
+            imgr.equal(imgr.makeVariable("x'"), imgr.add(x, imgr.makeNumber(1))),
+            imgr.equal(imgr.makeVariable("y'"), x));
+
+    BooleanFormula xNonNegative = imgr.greaterOrEquals(x, imgr.makeNumber(0));
+    BooleanFormula xSmall = imgr.lessThan(x, imgr.makeNumber(5));
+    // only inductive together with xSmall, thus removed in a later iteration
+    BooleanFormula ySmall = imgr.lessThan(y, imgr.makeNumber(5));
+    BooleanFormula yBelowX = imgr.lessOrEquals(y, x);
+    lemmas = ImmutableList.of(xNonNegative, xSmall, ySmall, yBelowX);
+    expected = ImmutableList.of(xNonNegative, yBelowX);
+  }
+
+  @Test
+  public void incrementalHoudini() throws Exception {
+    assertThat(houdini.findInductiveSubset(lemmas, transition))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+  }
+
+  @Test
+  public void emptyLemmas() throws Exception {
+    assertThat(houdini.findInductiveSubset(ImmutableList.of(), transition)).isEmpty();
+  }
+
+  @Test
+  public void parallelHoudini() throws Exception {
+    try (SolverContextPool pool =
+        SolverContextPool.create(config, logger, shutdownNotifierToUse(), solverToUse(), 2)) {
+      assertThat(houdini.findInductiveSubset(lemmas, transition, pool))
+          .containsExactlyElementsIn(expected)
+          .inOrder();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_MODELS;
+import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_UNSAT_CORE;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.common.configuration.ConfigurationBuilder;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+
+@RunWith(Parameterized.class)
+public class IsolatedSolverTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  @Override
+  protected ConfigurationBuilder createTestConfigBuilder() {
+    return super.createTestConfigBuilder().setOption("solver.isolatedProcesses", "2");
+  }
+
+  @Test
+  public void pushAndPop() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(imgr.greaterThan(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(imgr.lessThan(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+      pe.pop();
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(imgr.equal(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+      pe.pop(2);
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+  }
+
+  @Test
+  public void bitvectorsOfBackend() throws Exception {
+    requireBitvectors();
+    BitvectorFormula x = bvmgr.makeVariable(8, "x");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(bvmgr.equal(bvmgr.add(x, bvmgr.makeBitvector(8, 1)), bvmgr.makeBitvector(8, 0)));
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(bvmgr.lessThan(x, bvmgr.makeBitvector(8, 0), false));
+      assertThatEnvironment(pe).isUnsatisfiable();
+    }
+  }
+
+  @Test
+  public void modelFromProcess() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula a = bmgr.makeVariable("a");
+    try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+      pe.addConstraint(imgr.equal(x, imgr.makeNumber(3)));
+      pe.addConstraint(a);
+      assertThatEnvironment(pe).isSatisfiable();
+      try (Model m = pe.getModel()) {
+        assertThat(m.evaluate(x)).isEqualTo(BigInteger.valueOf(3));
+        assertThat(m.evaluate(imgr.add(x, imgr.makeNumber(2)))).isEqualTo(BigInteger.valueOf(5));
+        assertThat(m.evaluate(bmgr.and(a, imgr.greaterThan(x, imgr.makeNumber(2))))).isTrue();
+      }
+      assertThat(pe.getModelAssignments())
+          .containsExactly(
+              new ValueAssignment(x, "x", BigInteger.valueOf(3), ImmutableList.of()),
+              new ValueAssignment(a, "a", true, ImmutableList.of()));
+    }
+  }
+
+  @Test
+  public void modelWithAssumptions() throws Exception {
+    BooleanFormula a = bmgr.makeVariable("a");
+    BooleanFormula b = bmgr.makeVariable("b");
+    try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+      pe.addConstraint(bmgr.implication(a, b));
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(a, bmgr.not(b)))).isTrue();
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(a))).isFalse();
+      try (Model m = pe.getModel()) {
+        assertThat(m.evaluate(b)).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void unsatCoreFromProcess() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula greater = imgr.greaterThan(x, imgr.makeNumber(1));
+    BooleanFormula less = imgr.lessThan(x, imgr.makeNumber(0));
+    try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_UNSAT_CORE)) {
+      pe.addConstraint(bmgr.makeVariable("a"));
+      pe.push(greater);
+      pe.push(less);
+      assertThatEnvironment(pe).isUnsatisfiable();
+      assertThat(pe.getUnsatCore()).containsExactly(greater, less);
+    }
+  }
+
+  @Test
+  public void allSatFromProcess() throws Exception {
+    BooleanFormula a = bmgr.makeVariable("a");
+    BooleanFormula b = bmgr.makeVariable("b");
+    try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+      pe.addConstraint(bmgr.or(a, b));
+      List<List<BooleanFormula>> models =
+          pe.allSat(
+              new AllSatCallback<List<List<BooleanFormula>>>() {
+                private final List<List<BooleanFormula>> result = new ArrayList<>();
+
+                @Override
+                public void apply(List<BooleanFormula> model) {
+                  result.add(model);
+                }
+
+                @Override
+                public List<List<BooleanFormula>> getResult() {
+                  return result;
+                }
+              },
+              ImmutableList.of(a, b));
+      assertThat(models).hasSize(3);
+    }
+  }
+
+  @Test
+  public void manyProversOnFewProcesses() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    List<ProverEnvironment> provers = new ArrayList<>();
+    try {
+      for (int i = 0; i < 5; i++) {
+        ProverEnvironment pe = context.newProverEnvironment();
+        provers.add(pe);
+        pe.addConstraint(imgr.equal(x, imgr.makeNumber(i)));
+      }
+      for (ProverEnvironment pe : provers) {
+        pe.push(imgr.lessThan(x, imgr.makeNumber(3)));
+      }
+      for (int i = 0; i < 5; i++) {
+        assertThat(provers.get(i).isUnsat()).isEqualTo(i >= 3);
+      }
+    } finally {
+      provers.forEach(ProverEnvironment::close);
+    }
+  }
+}
@@ -24,8 +24,10 @@ import static com.google.common.truth.TruthJUnit.assume;
 import static org.sosy_lab.java_smt.api.FormulaType.IntegerType;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.junit.Test;
@@ -44,7 +46,9 @@ import org.sosy_lab.java_smt.api.FormulaType.BitvectorType;
 import org.sosy_lab.java_smt.api.FunctionDeclaration;
 import org.sosy_lab.java_smt.api.Model;
 import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ModelSnapshot;
 import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.NumeralFormula.RationalFormula;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
 import org.sosy_lab.java_smt.api.SolverException;
@@ -180,6 +184,206 @@ public class ModelTest extends SolverBasedTest0 {
     }
   }
 
+  @Test
+  public void testEvaluateAll() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula y = imgr.makeVariable("y");
+    BooleanFormula p = bmgr.makeVariable("p");
+
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(imgr.equal(x, imgr.makeNumber(3)));
+      prover.push(imgr.equal(y, imgr.makeNumber(3)));
+      prover.push(p);
+
+      assertThatEnvironment(prover).isSatisfiable();
+
+      try (Model m = prover.getModel()) {
+        List<Formula> formulas = ImmutableList.of(x, p, imgr.add(x, y), y, x);
+        List<Object> values = m.evaluateAll(formulas);
+        assertThat(values)
+            .containsExactly(
+                BigInteger.valueOf(3),
+                true,
+                BigInteger.valueOf(6),
+                BigInteger.valueOf(3),
+                BigInteger.valueOf(3))
+            .inOrder();
+        for (int i = 0; i < formulas.size(); i++) {
+          assertThat(values.get(i)).isEqualTo(m.evaluate(formulas.get(i)));
+        }
+        assertThat(m.evaluateAll(ImmutableList.of())).isEmpty();
+      }
+    }
+
+    if (rmgr != null) {
+      // equal numerals of different sorts have to be converted according to their own sort
+      RationalFormula r = rmgr.makeVariable("r");
+      try (ProverEnvironment prover =
+          context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+        prover.push(imgr.equal(x, imgr.makeNumber(3)));
+        prover.push(rmgr.equal(r, rmgr.makeNumber(3)));
+
+        assertThatEnvironment(prover).isSatisfiable();
+
+        try (Model m = prover.getModel()) {
+          assertThat(m.evaluateAll(ImmutableList.of(x, r, x, r)))
+              .containsExactly(
+                  BigInteger.valueOf(3), Rational.of(3), BigInteger.valueOf(3), Rational.of(3))
+              .inOrder();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEvaluateRepeatedly() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula sum = imgr.add(x, imgr.makeNumber(1));
+
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(imgr.equal(x, imgr.makeNumber(2)));
+
+      assertThatEnvironment(prover).isSatisfiable();
+
+      try (Model m = prover.getModel()) {
+        assertThat(m.evaluate(sum)).isEqualTo(BigInteger.valueOf(3));
+        assertThat(m.evaluate(imgr.add(x, imgr.makeNumber(1)))).isEqualTo(BigInteger.valueOf(3));
+        assertThat(m.evaluate((Formula) sum)).isEqualTo(BigInteger.valueOf(3));
+        assertThat(m.evaluateAll(ImmutableList.of(sum, x, sum)))
+            .containsExactly(BigInteger.valueOf(3), BigInteger.valueOf(2), BigInteger.valueOf(3))
+            .inOrder();
+        assertThat(m.evaluate(x)).isEqualTo(BigInteger.valueOf(2));
+      }
+    }
+  }
+
+  @Test
+  public void testFilteredIterator() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula y = imgr.makeVariable("y");
+    BooleanFormula p = bmgr.makeVariable("p");
+
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(imgr.equal(x, imgr.makeNumber(1)));
+      prover.push(imgr.equal(y, imgr.makeNumber(2)));
+      prover.push(p);
+
+      assertThatEnvironment(prover).isSatisfiable();
+
+      ValueAssignment xValue = new ValueAssignment(x, "x", BigInteger.ONE, ImmutableList.of());
+      ValueAssignment pValue = new ValueAssignment(p, "p", true, ImmutableList.of());
+      try (Model m = prover.getModel()) {
+        assertThat(ImmutableList.copyOf(m.iterator(ImmutableSet.of("x", "p", "unknown"))))
+            .containsExactly(xValue, pValue);
+        assertThat(ImmutableList.copyOf(m.iterator(ImmutableSet.of()))).isEmpty();
+
+        // iterating the whole model and filtering it again must give the same results
+        assertThat(m).contains(xValue);
+        assertThat(ImmutableList.copyOf(m.iterator(ImmutableSet.of("x", "p"))))
+            .containsExactly(xValue, pValue);
+      }
+    }
+  }
+
+  @Test
+  public void testModelAfterPop() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula y = imgr.makeVariable("y");
+
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(imgr.equal(x, imgr.makeNumber(1)));
+      prover.push(imgr.equal(y, imgr.makeNumber(2)));
+      assertThatEnvironment(prover).isSatisfiable();
+      assertThat(prover.getModelAssignments())
+          .containsExactly(
+              new ValueAssignment(x, "x", BigInteger.ONE, ImmutableList.of()),
+              new ValueAssignment(y, "y", BigInteger.valueOf(2), ImmutableList.of()));
+
+      prover.pop();
+      assertThatEnvironment(prover).isSatisfiable();
+      assertThat(prover.getModelAssignments())
+          .containsExactly(new ValueAssignment(x, "x", BigInteger.ONE, ImmutableList.of()));
+
+      prover.push(imgr.equal(y, imgr.makeNumber(3)));
+      assertThatEnvironment(prover).isSatisfiable();
+      assertThat(prover.getModelAssignments())
+          .containsExactly(
+              new ValueAssignment(x, "x", BigInteger.ONE, ImmutableList.of()),
+              new ValueAssignment(y, "y", BigInteger.valueOf(3), ImmutableList.of()));
+    }
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula large = imgr.makeVariable("large");
+    BooleanFormula p = bmgr.makeVariable("p");
+    FunctionDeclaration<IntegerFormula> declaration =
+        fmgr.declareUF("UF", IntegerType, IntegerType);
+    BigInteger largeValue = BigInteger.ONE.shiftLeft(100);
+
+    ModelSnapshot snapshot;
+    List<ValueAssignment> assignments;
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(imgr.equal(x, imgr.makeNumber(-5)));
+      prover.push(imgr.equal(large, imgr.makeNumber(largeValue)));
+      prover.push(bmgr.not(p));
+      prover.push(imgr.equal(fmgr.callUF(declaration, x), imgr.makeNumber(7)));
+
+      assertThatEnvironment(prover).isSatisfiable();
+
+      try (Model m = prover.getModel()) {
+        assignments = ImmutableList.copyOf(m);
+        snapshot = m.snapshot();
+      }
+    }
+
+    // the snapshot stays usable after the model and the prover are closed
+    assertThat(snapshot.size()).isEqualTo(assignments.size());
+    assertThat(snapshot.getValue("x")).isEqualTo(BigInteger.valueOf(-5));
+    assertThat(snapshot.getValue("large")).isEqualTo(largeValue);
+    assertThat(snapshot.getValue("p")).isEqualTo(false);
+    assertThat(snapshot.getValue("UF", ImmutableList.of(BigInteger.valueOf(-5))))
+        .isEqualTo(BigInteger.valueOf(7));
+    assertThat(snapshot.getValue("UF")).isNull();
+    assertThat(snapshot.getValue("unknown")).isNull();
+    for (ValueAssignment assignment : assignments) {
+      assertThat(snapshot.getValue(assignment.getName(), assignment.getArgumentsInterpretation()))
+          .isEqualTo(assignment.getValue());
+    }
+  }
+
+  @Test
+  public void testSnapshotWithManyApplications() {
+    IntegerFormula x = imgr.makeVariable("x");
+    BigInteger large = BigInteger.ONE.shiftLeft(100);
+    List<ValueAssignment> assignments = new ArrayList<>();
+    for (int i = 99; i >= 0; i--) {
+      BigInteger arg = BigInteger.valueOf(i % 2 == 0 ? i : -i);
+      assignments.add(new ValueAssignment(x, "f", arg.add(arg), ImmutableList.of(arg, arg)));
+      assignments.add(new ValueAssignment(x, "f", arg, ImmutableList.of(arg)));
+    }
+    assignments.add(new ValueAssignment(x, "f", large, ImmutableList.of(large)));
+    assignments.add(new ValueAssignment(x, "f", true, ImmutableList.of(Rational.ofLongs(1, 2))));
+    assignments.add(new ValueAssignment(x, "f", false, ImmutableList.of(true)));
+    assignments.add(new ValueAssignment(x, "f", BigInteger.TEN, ImmutableList.of()));
+    assignments.add(new ValueAssignment(x, "g", BigInteger.ONE, ImmutableList.of(large)));
+
+    ModelSnapshot snapshot = ModelSnapshot.of(assignments);
+    assertThat(snapshot.size()).isEqualTo(assignments.size());
+    for (ValueAssignment assignment : assignments) {
+      assertThat(snapshot.getValue(assignment.getName(), assignment.getArgumentsInterpretation()))
+          .isEqualTo(assignment.getValue());
+    }
+    assertThat(snapshot.getValue("f", ImmutableList.of(BigInteger.valueOf(-2)))).isNull();
+    assertThat(snapshot.getValue("f", ImmutableList.of(large.negate()))).isNull();
+    assertThat(snapshot.getValue("f", ImmutableList.of(Rational.ofLongs(1, 3)))).isNull();
+    assertThat(snapshot.getValue("f", ImmutableList.of(false))).isNull();
+    assertThat(snapshot.getValue("g")).isNull();
+    assertThat(snapshot.getArguments(0)).isEqualTo(ImmutableList.of());
+    assertThat(snapshot.getName(snapshot.size() - 1)).isEqualTo("g");
+  }
+
   @Test
   public void testQuantifiedUF() throws Exception {
     requireQuantifiers();
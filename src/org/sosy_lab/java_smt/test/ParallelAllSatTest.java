@@ -0,0 +1,171 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.utils.SolverUtils;
+
+@RunWith(Parameterized.class)
+public class ParallelAllSatTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  private SolverContextPool pool;
+
+  @Before
+  public void createPool() throws Exception {
+    pool = SolverContextPool.create(config, logger, shutdownNotifierToUse(), solverToUse(), 3);
+  }
+
+  @After
+  public void closePool() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  /**
+   * Enumerate the models with ParallelAllSat and check that all models are passed to the callback
+   * in the calling thread. The models are returned as sets, because their order is unspecified.
+   */
+  private Set<Set<BooleanFormula>> parallelAllSat(
+      int splitDepth, BooleanFormula formula, List<BooleanFormula> important) throws Exception {
+    Thread caller = Thread.currentThread();
+    AllSatCollector collector =
+        new AllSatCollector() {
+          @Override
+          public void apply(List<BooleanFormula> model) {
+            assertThat(Thread.currentThread()).isSameAs(caller);
+            super.apply(model);
+          }
+        };
+    return asSets(
+        SolverUtils.parallelAllSat(pool, splitDepth).allSat(formula, collector, important, mgr));
+  }
+
+  private Set<Set<BooleanFormula>> sequentialAllSat(
+      BooleanFormula formula, List<BooleanFormula> important) throws Exception {
+    try (ProverEnvironment prover = context.newProverEnvironment()) {
+      prover.push(formula);
+      return asSets(prover.allSat(new AllSatCollector(), important));
+    }
+  }
+
+  @Test
+  public void sameModelsAsSequential() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(5);
+    BooleanFormula formula = bmgr.and(makeThresholds(predicates, imgr.makeVariable("x")));
+
+    Set<Set<BooleanFormula>> models = parallelAllSat(3, formula, predicates);
+
+    // x determines a prefix of predicates that are true
+    assertThat(models).hasSize(predicates.size() + 1);
+    assertThat(models).isEqualTo(sequentialAllSat(formula, predicates));
+  }
+
+  @Test
+  public void allAssignments() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(4);
+    Set<Set<BooleanFormula>> models = parallelAllSat(2, bmgr.makeBoolean(true), predicates);
+    assertThat(models).hasSize(16);
+  }
+
+  @Test
+  public void unsatisfiableFormula() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(3);
+    BooleanFormula formula = bmgr.and(bmgr.or(predicates), bmgr.not(bmgr.or(predicates)));
+    assertThat(parallelAllSat(2, formula, predicates)).isEmpty();
+  }
+
+  @Test
+  public void splitDepthLargerThanPredicates() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(2);
+    BooleanFormula formula = bmgr.or(predicates);
+    assertThat(parallelAllSat(5, formula, predicates))
+        .isEqualTo(sequentialAllSat(formula, predicates));
+  }
+
+  @Test
+  public void withoutSplitting() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(3);
+    BooleanFormula formula = bmgr.xor(predicates.get(0), predicates.get(1));
+    assertThat(parallelAllSat(0, formula, predicates))
+        .isEqualTo(sequentialAllSat(formula, predicates));
+  }
+
+  @Test
+  public void moreModelsThanPending() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(11);
+    Set<Set<BooleanFormula>> models = parallelAllSat(2, bmgr.makeBoolean(true), predicates);
+    assertThat(models).hasSize(2048);
+  }
+
+  @Test
+  public void failingCallbackStopsWorkers() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(11);
+    try {
+      SolverUtils.parallelAllSat(pool, 2)
+          .allSat(bmgr.makeBoolean(true), new AllSatCollector(1), predicates, mgr);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("enough models");
+    }
+
+    // the workers are not blocked and can execute further tasks
+    for (int i = 0; i < pool.getSize(); i++) {
+      assertThat(pool.submit(poolContext -> true).get(1, TimeUnit.MINUTES)).isTrue();
+    }
+  }
+
+  @Test
+  public void noPredicates() throws Exception {
+    assertThat(parallelAllSat(2, bmgr.makeVariable("q"), ImmutableList.of()))
+        .containsExactly(ImmutableSet.of());
+  }
+}
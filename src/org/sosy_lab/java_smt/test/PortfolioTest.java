@@ -0,0 +1,290 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_MODELS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.common.ShutdownManager;
+import org.sosy_lab.common.configuration.ConfigurationBuilder;
+import org.sosy_lab.java_smt.SolverContextFactory;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.IntegerFormulaManager;
+import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.OptimizationProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.portfolio.PortfolioSolverContext;
+
+@RunWith(Parameterized.class)
+public class PortfolioTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  @Override
+  protected ConfigurationBuilder createTestConfigBuilder() {
+    return super.createTestConfigBuilder()
+        .setOption("solver.portfolio", solverToUse() + "," + Solvers.SMTINTERPOL);
+  }
+
+  @Test
+  public void racingWithPushAndPop() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(imgr.greaterThan(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(imgr.lessThan(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+      pe.pop();
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(imgr.equal(x, imgr.makeNumber(1)));
+      assertThatEnvironment(pe).isUnsatisfiable();
+      pe.pop(2);
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+  }
+
+  @Test
+  public void modelAfterRacedCheck() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    for (int i = 0; i < 5; i++) {
+      try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+        pe.addConstraint(imgr.equal(x, imgr.makeNumber(i)));
+        assertThatEnvironment(pe).isSatisfiable();
+        try (Model m = pe.getModel()) {
+          assertThat(m.evaluate(x)).isEqualTo(BigInteger.valueOf(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void racingWithAssumptions() throws Exception {
+    BooleanFormula a = bmgr.makeVariable("a");
+    BooleanFormula b = bmgr.makeVariable("b");
+    try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+      pe.addConstraint(bmgr.implication(a, b));
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(a, bmgr.not(b)))).isTrue();
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(a))).isFalse();
+      try (Model m = pe.getModel()) {
+        assertThat(m.evaluate(b)).isTrue();
+      }
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+  }
+
+  @Test(timeout = 60_000)
+  public void losingSolverIsInterrupted() throws Exception {
+    // The slow solver blocks in its first check until it is interrupted, the fast solver fails
+    // from its second check on. Thus the second check can only be answered by the slow solver,
+    // which has to be interrupted after losing the first check.
+    ScriptedContext slow = new ScriptedContext(SolverContextFactory.createSolverContext(solver));
+    ScriptedContext fast = new ScriptedContext(SolverContextFactory.createSolverContext(solver));
+    slow.blockInCheck = 0;
+    fast.failFromCheck = 1;
+    fast.waitForChecksOf = slow;
+    try (SolverContext portfolio =
+        new PortfolioSolverContext(
+            logger,
+            SolverContextFactory.createSolverContext(solver),
+            ImmutableMap.of(slow, ShutdownManager.create(), fast, ShutdownManager.create()))) {
+      IntegerFormulaManager pimgr = portfolio.getFormulaManager().getIntegerFormulaManager();
+      IntegerFormula x = pimgr.makeVariable("x");
+      try (ProverEnvironment pe = portfolio.newProverEnvironment()) {
+        pe.addConstraint(pimgr.greaterThan(x, pimgr.makeNumber(1)));
+        assertThat(pe.isUnsat()).isFalse();
+        pe.addConstraint(pimgr.lessThan(x, pimgr.makeNumber(1)));
+        assertThat(pe.isUnsat()).isTrue();
+      }
+    }
+    assertThat(slow.checks.get()).isEqualTo(2);
+  }
+
+  /**
+   * Context for racing in a portfolio, whose provers block in a given check until they are
+   * interrupted, or fail from a given check on. The checks can be delayed until another context
+   * has started checking.
+   */
+  private static final class ScriptedContext implements SolverContext {
+
+    private final SolverContext delegate;
+    private final AtomicInteger checks = new AtomicInteger();
+    private volatile int blockInCheck = -1;
+    private volatile int failFromCheck = Integer.MAX_VALUE;
+    private volatile @Nullable ScriptedContext waitForChecksOf = null;
+    private final CountDownLatch checkStarted = new CountDownLatch(1);
+
+    private ScriptedContext(SolverContext pDelegate) {
+      delegate = pDelegate;
+    }
+
+    @Override
+    public FormulaManager getFormulaManager() {
+      return delegate.getFormulaManager();
+    }
+
+    @Override
+    public ProverEnvironment newProverEnvironment(ProverOptions... options) {
+      return new ScriptedProver(delegate.newProverEnvironment(options));
+    }
+
+    @Override
+    public InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public OptimizationProverEnvironment newOptimizationProverEnvironment() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getVersion() {
+      return delegate.getVersion();
+    }
+
+    @Override
+    public Solvers getSolverName() {
+      return delegate.getSolverName();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    private final class ScriptedProver implements ProverEnvironment {
+
+      private final ProverEnvironment prover;
+      private final CountDownLatch interrupted = new CountDownLatch(1);
+
+      private ScriptedProver(ProverEnvironment pProver) {
+        prover = pProver;
+      }
+
+      @Override
+      public boolean isUnsat() throws SolverException, InterruptedException {
+        int check = checks.getAndIncrement();
+        checkStarted.countDown();
+        ScriptedContext other = waitForChecksOf;
+        if (other != null) {
+          other.checkStarted.await();
+        }
+        if (check == blockInCheck) {
+          interrupted.await();
+          throw new InterruptedException();
+        } else if (check >= failFromCheck) {
+          throw new SolverException("scripted failure");
+        }
+        return prover.isUnsat();
+      }
+
+      @Override
+      public void interrupt() {
+        interrupted.countDown();
+      }
+
+      @Override
+      public void pop() {
+        prover.pop();
+      }
+
+      @Override
+      @Nullable
+      public Void addConstraint(BooleanFormula constraint) {
+        return prover.addConstraint(constraint);
+      }
+
+      @Override
+      public void push() {
+        prover.push();
+      }
+
+      @Override
+      public Model getModel() throws SolverException {
+        return prover.getModel();
+      }
+
+      @Override
+      public ImmutableList<ValueAssignment> getModelAssignments() throws SolverException {
+        return prover.getModelAssignments();
+      }
+
+      @Override
+      public List<BooleanFormula> getUnsatCore() {
+        return prover.getUnsatCore();
+      }
+
+      @Override
+      public <T> T allSat(AllSatCallback<T> callback, List<BooleanFormula> important)
+          throws InterruptedException, SolverException {
+        return prover.allSat(callback, important);
+      }
+
+      @Override
+      public boolean isUnsatWithAssumptions(Collection<BooleanFormula> assumptions)
+          throws SolverException, InterruptedException {
+        return prover.isUnsatWithAssumptions(assumptions);
+      }
+
+      @Override
+      public Optional<List<BooleanFormula>> unsatCoreOverAssumptions(
+          Collection<BooleanFormula> assumptions) throws SolverException, InterruptedException {
+        return prover.unsatCoreOverAssumptions(assumptions);
+      }
+
+      @Override
+      public void close() {
+        prover.close();
+      }
+    }
+  }
+}
@@ -28,6 +28,7 @@ import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_UNS
 import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_UNSAT_CORE_OVER_ASSUMPTIONS;
 
 import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import org.junit.Test;
@@ -38,6 +39,7 @@ import org.junit.runners.Parameterized.Parameters;
 import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 
 @RunWith(Parameterized.class)
@@ -93,6 +95,47 @@ public class ProverEnvironmentTest extends SolverBasedTest0 {
     }
   }
 
+  @Test
+  public void assumptionsAreRemovedAfterCheckTest() throws Exception {
+    BooleanFormula b = bmgr.makeVariable("b");
+    BooleanFormula c = bmgr.makeVariable("c");
+
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push();
+      pe.addConstraint(bmgr.or(b, c));
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(b), bmgr.not(c)))).isTrue();
+      assertThat(pe.isUnsat()).isFalse();
+
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(b)))).isFalse();
+      pe.addConstraint(b);
+      assertThat(pe.isUnsat()).isFalse();
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(b)))).isTrue();
+
+      pe.pop();
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(b), bmgr.not(c)))).isFalse();
+    }
+  }
+
+  @Test
+  public void assumptionsRefutedByTheoryTest() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    List<BooleanFormula> predicates = makePredicates(4);
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      for (BooleanFormula constraint : makeThresholds(predicates, x)) {
+        pe.addConstraint(constraint);
+      }
+      List<BooleanFormula> assumptions =
+          ImmutableList.of(predicates.get(1), bmgr.not(predicates.get(2)));
+      assertThat(pe.isUnsatWithAssumptions(assumptions)).isFalse();
+
+      // only x = 2 satisfies the assumptions, and it is excluded by arithmetic reasoning
+      pe.addConstraint(bmgr.not(imgr.equal(x, imgr.makeNumber(2))));
+      assertThat(pe.isUnsatWithAssumptions(assumptions)).isTrue();
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(predicates.get(2)))))
+          .isFalse();
+    }
+  }
+
   @Test
   public void unsatCoreTest() throws Exception {
     assume()
@@ -132,4 +175,28 @@ public class ProverEnvironmentTest extends SolverBasedTest0 {
       assertThat(unsatCore).containsExactly(bmgr.not(selector));
     }
   }
+
+  @Test
+  public void checkAllTest() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    List<BooleanFormula> queries = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      queries.add(
+          bmgr.and(
+              imgr.greaterThan(x, imgr.makeNumber(i)), imgr.lessThan(x, imgr.makeNumber(4))));
+    }
+    assertThat(context.checkAll(queries))
+        .containsExactly(false, false, false, true, true, true)
+        .inOrder();
+
+    List<BooleanFormula> unsatQueries = new ArrayList<>();
+    context.checkAll(
+        queries,
+        (query, unsat) -> {
+          if (unsat) {
+            unsatQueries.add(query);
+          }
+        });
+    assertThat(unsatQueries).containsExactlyElementsIn(queries.subList(3, 6)).inOrder();
+  }
 }
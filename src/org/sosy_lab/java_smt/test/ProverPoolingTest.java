@@ -0,0 +1,206 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.sosy_lab.java_smt.api.SolverContext.ProverOptions.GENERATE_MODELS;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.common.configuration.ConfigurationBuilder;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.InterpolatingProverEnvironment;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.OptimizationProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.pooling.PoolingSolverContext;
+
+@RunWith(Parameterized.class)
+public class ProverPoolingTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  @Override
+  protected ConfigurationBuilder createTestConfigBuilder() {
+    return super.createTestConfigBuilder().setOption("solver.reuseProvers", "true");
+  }
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void constraintsAreRemovedOnClose() throws Exception {
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.makeBoolean(false));
+      assertThatEnvironment(pe).isUnsatisfiable();
+    }
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      assertThatEnvironment(pe).isSatisfiable();
+      pe.push(bmgr.makeBoolean(false));
+      pe.push(bmgr.makeBoolean(false));
+      assertThatEnvironment(pe).isUnsatisfiable();
+    }
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+  }
+
+  @Test
+  public void closedProverIsHandedOutAgain() throws Exception {
+    List<ProverEnvironment> created = new ArrayList<>();
+    SolverContext recordingContext =
+        new SolverContext() {
+          @Override
+          public FormulaManager getFormulaManager() {
+            return context.getFormulaManager();
+          }
+
+          @Override
+          public ProverEnvironment newProverEnvironment(ProverOptions... options) {
+            ProverEnvironment prover = context.newProverEnvironment(options);
+            created.add(prover);
+            return prover;
+          }
+
+          @Override
+          public InterpolatingProverEnvironment<?> newProverEnvironmentWithInterpolation() {
+            return context.newProverEnvironmentWithInterpolation();
+          }
+
+          @Override
+          public OptimizationProverEnvironment newOptimizationProverEnvironment() {
+            return context.newOptimizationProverEnvironment();
+          }
+
+          @Override
+          public String getVersion() {
+            return context.getVersion();
+          }
+
+          @Override
+          public Solvers getSolverName() {
+            return context.getSolverName();
+          }
+
+          @Override
+          public void close() {
+            // the context of the test is closed by the test itself
+          }
+        };
+    PoolingSolverContext pool = new PoolingSolverContext(recordingContext, 1);
+
+    for (int i = 0; i < 3; i++) {
+      try (ProverEnvironment pe = pool.newProverEnvironment()) {
+        assertThatEnvironment(pe).isSatisfiable();
+      }
+    }
+    assertThat(created).hasSize(1);
+
+    // provers in use are not handed out twice, and other options need other provers
+    try (ProverEnvironment pe1 = pool.newProverEnvironment();
+        ProverEnvironment pe2 = pool.newProverEnvironment();
+        ProverEnvironment pe3 = pool.newProverEnvironment(GENERATE_MODELS)) {
+      assertThat(created).hasSize(3);
+      pe1.push(bmgr.makeBoolean(false));
+      assertThatEnvironment(pe1).isUnsatisfiable();
+      assertThatEnvironment(pe2).isSatisfiable();
+      assertThatEnvironment(pe3).isSatisfiable();
+    }
+    try (ProverEnvironment pe = pool.newProverEnvironment(GENERATE_MODELS)) {
+      assertThat(created).hasSize(3);
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+    pool.close();
+  }
+
+  @Test
+  public void reusedProverWithModels() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    for (int i = 0; i < 10; i++) {
+      try (ProverEnvironment pe = context.newProverEnvironment(GENERATE_MODELS)) {
+        pe.addConstraint(imgr.equal(x, imgr.makeNumber(i)));
+        assertThatEnvironment(pe).isSatisfiable();
+        try (Model m = pe.getModel()) {
+          assertThat(m.evaluate(x)).isEqualTo(BigInteger.valueOf(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void assumptionsAreRemovedOnClose() throws Exception {
+    BooleanFormula a = bmgr.makeVariable("a");
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.addConstraint(a);
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(a)))).isTrue();
+    }
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      assertThat(pe.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(a)))).isFalse();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("resource")
+  public void interruptDoesNotAffectNextUser() throws Exception {
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.addConstraint(bmgr.makeVariable("a"));
+      pe.interrupt();
+    }
+    ProverEnvironment closed = context.newProverEnvironment();
+    closed.close();
+    closed.interrupt(); // ignored
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      assertThatEnvironment(pe).isSatisfiable();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("resource")
+  public void closedProverIsUnusable() {
+    ProverEnvironment pe = context.newProverEnvironment();
+    pe.close();
+    thrown.expect(IllegalStateException.class);
+    pe.push();
+  }
+}
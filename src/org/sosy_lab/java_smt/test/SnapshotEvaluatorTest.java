@@ -0,0 +1,245 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.sosy_lab.java_smt.api.FormulaType.IntegerType;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.ArrayFormula;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.ModelSnapshot;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.basicimpl.SnapshotEvaluator;
+
+@RunWith(Parameterized.class)
+public class SnapshotEvaluatorTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  /**
+   * Check that the evaluator computes the same values as the model of the solver, and return the
+   * evaluator, which stays usable after the prover is closed.
+   */
+  private SnapshotEvaluator assertSameValuesAsModel(
+      List<BooleanFormula> constraints, List<Formula> formulas)
+      throws SolverException, InterruptedException {
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      for (BooleanFormula constraint : constraints) {
+        prover.push(constraint);
+      }
+      assertThatEnvironment(prover).isSatisfiable();
+
+      try (Model model = prover.getModel()) {
+        SnapshotEvaluator evaluator = new SnapshotEvaluator(model.snapshot(), mgr);
+        for (Formula f : formulas) {
+          assertWithMessage("value of %s", f)
+              .that(evaluator.evaluate(f))
+              .isEqualTo(model.evaluate(f));
+        }
+        return evaluator;
+      }
+    }
+  }
+
+  @Test
+  public void integerArithmetic() throws SolverException, InterruptedException {
+    IntegerFormula x = imgr.makeVariable("x");
+    IntegerFormula y = imgr.makeVariable("y");
+    IntegerFormula three = imgr.makeNumber(3);
+
+    List<Formula> formulas =
+        ImmutableList.of(
+            imgr.add(x, y),
+            imgr.subtract(x, y),
+            imgr.multiply(x, three),
+            imgr.negate(x),
+            imgr.divide(x, three),
+            imgr.modulo(x, three),
+            imgr.lessThan(x, y),
+            imgr.greaterOrEquals(x, imgr.makeNumber(-7)),
+            imgr.equal(imgr.add(x, imgr.makeNumber(10)), y),
+            bmgr.ifThenElse(imgr.lessThan(x, y), x, y));
+
+    SnapshotEvaluator evaluator =
+        assertSameValuesAsModel(
+            ImmutableList.of(imgr.equal(x, imgr.makeNumber(-7)), imgr.equal(y, three)),
+            formulas);
+
+    assertThat(evaluator.evaluate(imgr.divide(x, three))).isEqualTo(BigInteger.valueOf(-3));
+    assertThat(evaluator.evaluate(imgr.modulo(x, three))).isEqualTo(BigInteger.valueOf(2));
+    assertThat(evaluator.evaluate(imgr.multiply(imgr.add(x, y), imgr.makeNumber(2))))
+        .isEqualTo(BigInteger.valueOf(-8));
+  }
+
+  @Test
+  public void booleanConnectives() throws SolverException, InterruptedException {
+    BooleanFormula p = bmgr.makeVariable("p");
+    BooleanFormula q = bmgr.makeVariable("q");
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula positive = imgr.greaterThan(x, imgr.makeNumber(0));
+
+    List<Formula> formulas =
+        ImmutableList.of(
+            bmgr.and(p, q),
+            bmgr.or(q, positive),
+            bmgr.not(q),
+            bmgr.implication(p, q),
+            bmgr.implication(q, p),
+            bmgr.xor(p, positive),
+            bmgr.equivalence(p, positive),
+            bmgr.ifThenElse(q, p, positive));
+
+    assertSameValuesAsModel(
+        ImmutableList.of(p, bmgr.not(q), imgr.equal(x, imgr.makeNumber(5))), formulas);
+  }
+
+  @Test
+  public void uninterpretedFunctions() throws SolverException, InterruptedException {
+    IntegerFormula x = imgr.makeVariable("x");
+    FunctionDeclaration<IntegerFormula> f = fmgr.declareUF("f", IntegerType, IntegerType);
+    IntegerFormula fx = fmgr.callUF(f, x);
+
+    SnapshotEvaluator evaluator =
+        assertSameValuesAsModel(
+            ImmutableList.of(imgr.equal(x, imgr.makeNumber(2)), imgr.equal(fx, imgr.makeNumber(9))),
+            ImmutableList.of(fx, imgr.add(fx, x)));
+
+    // the argument is evaluated before looking up the application
+    assertThat(evaluator.evaluate(fmgr.callUF(f, imgr.add(imgr.makeNumber(1), x)))).isNull();
+    assertThat(evaluator.evaluate(fmgr.callUF(f, imgr.subtract(x, imgr.makeNumber(0)))))
+        .isEqualTo(BigInteger.valueOf(9));
+  }
+
+  @Test
+  public void missingValues() throws SolverException, InterruptedException {
+    BooleanFormula p = bmgr.makeVariable("p");
+    IntegerFormula unknown = imgr.makeVariable("unknown");
+    BooleanFormula unknownIsPositive = imgr.greaterThan(unknown, imgr.makeNumber(0));
+
+    ModelSnapshot snapshot;
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.push(bmgr.not(p));
+      assertThatEnvironment(prover).isSatisfiable();
+      try (Model model = prover.getModel()) {
+        snapshot = model.snapshot();
+      }
+    }
+
+    SnapshotEvaluator evaluator = new SnapshotEvaluator(snapshot, mgr);
+    assertThat(evaluator.evaluate(unknown)).isNull();
+    assertThat(evaluator.evaluate(unknownIsPositive)).isNull();
+    assertThat(evaluator.evaluate(bmgr.and(unknownIsPositive, p))).isFalse();
+    assertThat(evaluator.evaluate(bmgr.or(bmgr.not(p), unknownIsPositive))).isTrue();
+    assertThat(evaluator.evaluate(bmgr.implication(p, unknownIsPositive))).isTrue();
+    assertThat(evaluator.evaluate(bmgr.or(p, unknownIsPositive))).isNull();
+  }
+
+  @Test
+  public void bitvectors() throws SolverException, InterruptedException {
+    requireBitvectors();
+
+    BitvectorFormula a = bvmgr.makeVariable(8, "a");
+    BitvectorFormula b = bvmgr.makeVariable(8, "b");
+
+    List<Formula> formulas =
+        ImmutableList.of(
+            bvmgr.add(a, b),
+            bvmgr.add(b, b),
+            bvmgr.subtract(a, b),
+            bvmgr.multiply(a, b),
+            bvmgr.negate(a),
+            bvmgr.and(a, b),
+            bvmgr.or(a, b),
+            bvmgr.xor(a, b),
+            bvmgr.not(a),
+            bvmgr.divide(a, b, false),
+            bvmgr.divide(a, b, true),
+            bvmgr.divide(b, a, true),
+            bvmgr.modulo(a, b, false),
+            bvmgr.modulo(a, b, true),
+            bvmgr.modulo(b, a, true),
+            bvmgr.shiftRight(b, bvmgr.makeBitvector(8, 2), false),
+            bvmgr.shiftRight(b, bvmgr.makeBitvector(8, 2), true),
+            bvmgr.extend(b, 4, false),
+            bvmgr.extend(b, 4, true),
+            bvmgr.lessThan(a, b, false),
+            bvmgr.lessThan(a, b, true),
+            bvmgr.greaterOrEquals(a, b, true),
+            bvmgr.equal(a, b));
+
+    assertSameValuesAsModel(
+        ImmutableList.of(
+            bvmgr.equal(a, bvmgr.makeBitvector(8, 5)),
+            bvmgr.equal(b, bvmgr.makeBitvector(8, 250))),
+        formulas);
+  }
+
+  @Test
+  public void arrays() throws SolverException, InterruptedException {
+    requireArrays();
+
+    IntegerFormula x = imgr.makeVariable("x");
+    ArrayFormula<IntegerFormula, IntegerFormula> array =
+        amgr.makeArray("array", IntegerType, IntegerType);
+    IntegerFormula one = imgr.makeNumber(1);
+    IntegerFormula two = imgr.makeNumber(2);
+
+    SnapshotEvaluator evaluator =
+        assertSameValuesAsModel(
+            ImmutableList.of(
+                imgr.equal(x, imgr.makeNumber(7)),
+                imgr.equal(amgr.select(array, one), imgr.makeNumber(4)),
+                imgr.equal(amgr.select(array, two), imgr.makeNumber(9))),
+            ImmutableList.of(amgr.select(array, one), amgr.select(array, two)));
+
+    assertThat(evaluator.evaluate(amgr.select(amgr.store(array, one, x), one)))
+        .isEqualTo(BigInteger.valueOf(7));
+    assertThat(evaluator.evaluate(amgr.select(amgr.store(array, one, x), two)))
+        .isEqualTo(BigInteger.valueOf(9));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.common.configuration.ConfigurationBuilder;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+
+/** Checks that the (possibly partial) models of allSat cover exactly the satisfying assignments. */
+@RunWith(Parameterized.class)
+public class SolverAllSatGeneralizationTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Object[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  @Override
+  protected ConfigurationBuilder createTestConfigBuilder() {
+    return super.createTestConfigBuilder()
+        .setOption("solver.z3.generalizeAllSatModels", "true")
+        .setOption("solver.princess.generalizeAllSatModels", "true");
+  }
+
+  /**
+   * All full assignments of the predicates that extend one of the partial models. An assignment
+   * that extends several models is contained several times.
+   */
+  private List<Set<BooleanFormula>> expand(
+      List<List<BooleanFormula>> models, List<BooleanFormula> predicates) {
+    List<Set<BooleanFormula>> assignments = new ArrayList<>();
+    for (List<BooleanFormula> model : models) {
+      Set<Set<BooleanFormula>> extensions = ImmutableSet.of(ImmutableSet.of());
+      for (BooleanFormula predicate : predicates) {
+        BooleanFormula negated = bmgr.not(predicate);
+        Set<Set<BooleanFormula>> next = new HashSet<>();
+        for (Set<BooleanFormula> extension : extensions) {
+          if (!model.contains(negated)) {
+            next.add(with(extension, predicate));
+          }
+          if (!model.contains(predicate)) {
+            next.add(with(extension, negated));
+          }
+        }
+        extensions = next;
+      }
+      assignments.addAll(extensions);
+    }
+    return assignments;
+  }
+
+  private static Set<BooleanFormula> with(Set<BooleanFormula> set, BooleanFormula element) {
+    return ImmutableSet.<BooleanFormula>builder().addAll(set).add(element).build();
+  }
+
+  private Set<Set<BooleanFormula>> satisfyingAssignments(
+      BooleanFormula formula, List<BooleanFormula> predicates) throws Exception {
+    Set<Set<BooleanFormula>> assignments = new HashSet<>();
+    try (ProverEnvironment prover = context.newProverEnvironment()) {
+      prover.push(formula);
+      for (Set<BooleanFormula> assignment :
+          expand(ImmutableList.of(ImmutableList.of()), predicates)) {
+        if (!prover.isUnsatWithAssumptions(assignment)) {
+          assignments.add(assignment);
+        }
+      }
+    }
+    return assignments;
+  }
+
+  @Test
+  public void booleanFormula() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(4);
+    BooleanFormula formula =
+        bmgr.or(predicates.get(0), bmgr.and(predicates.get(1), predicates.get(2)));
+
+    List<List<BooleanFormula>> models;
+    try (ProverEnvironment prover = context.newProverEnvironment()) {
+      prover.push(formula);
+      models = prover.allSat(new AllSatCollector(), predicates);
+    }
+
+    assertThat(expand(models, predicates)).containsNoDuplicates();
+    assertThat(ImmutableSet.copyOf(expand(models, predicates)))
+        .isEqualTo(satisfyingAssignments(formula, predicates));
+    assertThat(expand(models, predicates)).hasSize(10);
+    if (solver == Solvers.Z3 || solver == Solvers.PRINCESS) {
+      assertThat(models.size()).isLessThan(10);
+    }
+  }
+
+  @Test
+  public void overlappingImplicants() throws Exception {
+    // each predicate alone implies the formula, thus generalized models easily overlap
+    List<BooleanFormula> predicates = makePredicates(4);
+    BooleanFormula formula = bmgr.or(predicates);
+
+    List<List<BooleanFormula>> models;
+    try (ProverEnvironment prover = context.newProverEnvironment()) {
+      prover.push(formula);
+      models = prover.allSat(new AllSatCollector(), predicates);
+    }
+
+    assertThat(expand(models, predicates)).containsNoDuplicates();
+    assertThat(ImmutableSet.copyOf(expand(models, predicates)))
+        .isEqualTo(satisfyingAssignments(formula, predicates));
+    assertThat(expand(models, predicates)).hasSize(15);
+  }
+
+  @Test
+  public void formulaWithOtherVariables() throws Exception {
+    List<BooleanFormula> predicates = makePredicates(3);
+    BooleanFormula formula = bmgr.and(makeThresholds(predicates, imgr.makeVariable("x")));
+
+    List<List<BooleanFormula>> models;
+    try (ProverEnvironment prover = context.newProverEnvironment()) {
+      prover.push(formula);
+      models = prover.allSat(new AllSatCollector(), predicates);
+    }
+
+    // x determines a prefix of predicates that are true
+    assertThat(expand(models, predicates)).containsNoDuplicates();
+    assertThat(ImmutableSet.copyOf(expand(models, predicates)))
+        .isEqualTo(satisfyingAssignments(formula, predicates));
+    assertThat(expand(models, predicates)).hasSize(predicates.size() + 1);
+  }
+}
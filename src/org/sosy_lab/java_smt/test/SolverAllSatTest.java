@@ -25,6 +25,12 @@ import static org.junit.Assert.fail;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +43,7 @@ import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
 import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatIterator;
 import org.sosy_lab.java_smt.api.SolverException;
 
 @RunWith(Parameterized.class)
@@ -137,4 +144,105 @@ public class SolverAllSatTest extends SolverBasedTest0 {
     assertThat(callback.models)
         .containsExactly(ImmutableList.of(v1, bmgr.not(v2)), ImmutableList.of(bmgr.not(v1), v2));
   }
+
+  @Test
+  public void allSatAsync_errorInCallback() throws InterruptedException, TimeoutException {
+    List<BooleanFormula> predicates = pushChoices(2);
+
+    AssertionError error = new AssertionError("failing callback");
+    TestAllSatCallback callback =
+        new TestAllSatCallback() {
+          @Override
+          public void apply(List<BooleanFormula> pModel) {
+            throw error;
+          }
+        };
+
+    CompletableFuture<String> result = env.allSatAsync(callback, predicates);
+    try {
+      result.get(1, TimeUnit.MINUTES);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isSameAs(error);
+    }
+  }
+
+  private List<BooleanFormula> pushChoices(int n) {
+    List<BooleanFormula> predicates = makePredicates(n);
+    env.push(bmgr.or(predicates));
+    return predicates;
+  }
+
+  @Test
+  public void allSatIterator_allModels() throws SolverException, InterruptedException {
+    List<BooleanFormula> predicates = pushChoices(3);
+
+    List<List<BooleanFormula>> models = new ArrayList<>();
+    try (AllSatIterator iterator =
+        env.allSatIterator(predicates, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+      iterator.forEachRemaining(models::add);
+    }
+
+    TestAllSatCallback callback = new TestAllSatCallback();
+    env.allSat(callback, predicates);
+    assertThat(models).containsExactlyElementsIn(callback.models);
+    assertThat(env.isUnsat()).isFalse();
+  }
+
+  @Test
+  public void allSatIterator_maxModels() throws SolverException, InterruptedException {
+    List<BooleanFormula> predicates = pushChoices(4);
+
+    try (AllSatIterator iterator =
+        env.allSatIterator(predicates, 2, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+      assertThat(iterator.hasNext()).isTrue();
+      iterator.next();
+      assertThat(iterator.hasNext()).isTrue();
+      iterator.next();
+      assertThat(iterator.hasNext()).isFalse();
+    }
+
+    // the prover is not affected by the stopped enumeration
+    assertThat(env.isUnsat()).isFalse();
+    TestAllSatCallback callback = new TestAllSatCallback();
+    env.allSat(callback, predicates);
+    assertThat(callback.models).isNotEmpty();
+  }
+
+  @Test
+  public void allSatIterator_closeEarly() throws SolverException, InterruptedException {
+    List<BooleanFormula> predicates = pushChoices(4);
+
+    try (AllSatIterator iterator =
+        env.allSatIterator(predicates, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+      assertThat(iterator.next()).isNotEmpty();
+    }
+
+    env.push(bmgr.not(predicates.get(0)));
+    assertThat(env.isUnsat()).isFalse();
+    env.push(bmgr.and(predicates.stream().map(bmgr::not).collect(Collectors.toList())));
+    assertThat(env.isUnsat()).isTrue();
+  }
+
+  @Test
+  public void allSatIterator_noTimeLeft() throws SolverException, InterruptedException {
+    List<BooleanFormula> predicates = pushChoices(2);
+
+    try (AllSatIterator iterator =
+        env.allSatIterator(predicates, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS)) {
+      assertThat(iterator.hasNext()).isFalse();
+    }
+    assertThat(env.isUnsat()).isFalse();
+  }
+
+  @Test
+  public void allSatStream_limit() throws SolverException, InterruptedException {
+    List<BooleanFormula> predicates = pushChoices(4);
+
+    try (Stream<List<BooleanFormula>> models =
+        env.allSatStream(predicates, Integer.MAX_VALUE, 1, TimeUnit.MINUTES)) {
+      assertThat(models.limit(3).count()).isEqualTo(3);
+    }
+    assertThat(env.isUnsat()).isFalse();
+  }
 }
@@ -19,14 +19,21 @@
  */
 package org.sosy_lab.java_smt.test;
 
+import static com.google.common.truth.Truth.assertWithMessage;
 import static com.google.common.truth.Truth.assert_;
 import static com.google.common.truth.TruthJUnit.assume;
 import static org.sosy_lab.java_smt.test.ProverEnvironmentSubject.proverEnvironment;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.truth.FailureStrategy;
 import com.google.common.truth.SubjectFactory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.junit.After;
 import org.junit.Before;
@@ -45,6 +52,9 @@ import org.sosy_lab.java_smt.api.BooleanFormulaManager;
 import org.sosy_lab.java_smt.api.FloatingPointFormulaManager;
 import org.sosy_lab.java_smt.api.FormulaManager;
 import org.sosy_lab.java_smt.api.IntegerFormulaManager;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
 import org.sosy_lab.java_smt.api.QuantifiedFormulaManager;
 import org.sosy_lab.java_smt.api.RationalFormulaManager;
 import org.sosy_lab.java_smt.api.SolverContext;
@@ -245,6 +255,73 @@ public abstract class SolverBasedTest0 {
     return assert_().about(proverEnvironment()).that(prover);
   }
 
+  /** Create the boolean variables p0, p1, ... */
+  protected final List<BooleanFormula> makePredicates(int n) {
+    List<BooleanFormula> predicates = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      predicates.add(bmgr.makeVariable("p" + i));
+    }
+    return predicates;
+  }
+
+  /**
+   * Create the constraints p_i <=> x > i for the given predicates p_i, such that each value of x
+   * determines a prefix of true predicates.
+   */
+  protected final List<BooleanFormula> makeThresholds(
+      List<BooleanFormula> predicates, IntegerFormula x) {
+    List<BooleanFormula> constraints = new ArrayList<>();
+    for (int i = 0; i < predicates.size(); i++) {
+      constraints.add(
+          bmgr.equivalence(predicates.get(i), imgr.greaterThan(x, imgr.makeNumber(i))));
+    }
+    return constraints;
+  }
+
+  /**
+   * Callback for {@link ProverEnvironment#allSat} that collects all models in the order in which
+   * they are found. It can throw an {@link IllegalStateException} after a given number of models,
+   * in order to abort the enumeration.
+   */
+  protected static class AllSatCollector implements AllSatCallback<List<List<BooleanFormula>>> {
+
+    private final List<List<BooleanFormula>> models = new ArrayList<>();
+    private final int failAfter;
+
+    public AllSatCollector() {
+      this(Integer.MAX_VALUE);
+    }
+
+    public AllSatCollector(int pFailAfter) {
+      failAfter = pFailAfter;
+    }
+
+    @Override
+    public void apply(List<BooleanFormula> model) {
+      models.add(ImmutableList.copyOf(model));
+      if (models.size() == failAfter) {
+        throw new IllegalStateException("enough models");
+      }
+    }
+
+    @Override
+    public List<List<BooleanFormula>> getResult() {
+      return models;
+    }
+  }
+
+  /**
+   * The given models as sets, for comparisons that ignore the order of models and of their
+   * literals. Fails if a model occurs twice.
+   */
+  protected static Set<Set<BooleanFormula>> asSets(List<List<BooleanFormula>> models) {
+    Set<Set<BooleanFormula>> sets = new HashSet<>();
+    for (List<BooleanFormula> model : models) {
+      assertWithMessage("duplicate model").that(sets.add(ImmutableSet.copyOf(model))).isTrue();
+    }
+    return sets;
+  }
+
   @Deprecated
   protected final JavaOptionalSubject assertThatOptional(Optional<?> pOptional) {
     return assert_()
@@ -0,0 +1,179 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+
+@RunWith(Parameterized.class)
+public class SolverContextPoolTest extends SolverBasedTest0 {
+
+  @Parameters(name = "{0}")
+  public static Solvers[] getAllSolvers() {
+    return Solvers.values();
+  }
+
+  @Parameter(0)
+  public Solvers solver;
+
+  @Override
+  protected Solvers solverToUse() {
+    return solver;
+  }
+
+  private SolverContextPool pool;
+
+  @Before
+  public void createPool() throws Exception {
+    pool = SolverContextPool.create(config, logger, shutdownNotifierToUse(), solverToUse(), 3);
+  }
+
+  @After
+  public void closePool() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  private static boolean isUnsat(SolverContext pContext, BooleanFormula f) {
+    try (ProverEnvironment prover = pContext.newProverEnvironment()) {
+      prover.push(f);
+      return prover.isUnsat();
+    } catch (SolverException | InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Test
+  public void translatedQueries() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      BooleanFormula query =
+          bmgr.and(
+              imgr.greaterThan(x, imgr.makeNumber(i)), imgr.lessThan(x, imgr.makeNumber(5)));
+      results.add(
+          pool.submit(
+              ImmutableList.of(query),
+              mgr,
+              (poolContext, formulas) -> isUnsat(poolContext, formulas.get(0))));
+    }
+    for (int i = 0; i < 10; i++) {
+      assertThat(results.get(i).get()).isEqualTo(i >= 4);
+    }
+  }
+
+  @Test
+  public void resultIsTranslatedBack() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    BooleanFormula a = imgr.equal(x, imgr.makeNumber(1));
+    BooleanFormula b = bmgr.makeVariable("b");
+    BooleanFormula result =
+        pool.submitAndTranslateBack(
+                ImmutableList.of(a, b),
+                mgr,
+                (poolContext, formulas) ->
+                    poolContext.getFormulaManager().getBooleanFormulaManager().or(formulas))
+            .get();
+    assertThatFormula(result).isEquivalentTo(bmgr.or(a, b));
+  }
+
+  @Test
+  public void checkAllInChunks() throws Exception {
+    IntegerFormula x = imgr.makeVariable("x");
+    List<BooleanFormula> queries = new ArrayList<>();
+    List<Boolean> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      queries.add(imgr.equal(imgr.multiply(imgr.makeNumber(2), x), imgr.makeNumber(i)));
+      expected.add(i % 2 == 1);
+    }
+    assertThat(pool.checkAll(queries, mgr).get()).containsExactlyElementsIn(expected).inOrder();
+  }
+
+  @Test
+  public void errorsCompleteTasks() throws Exception {
+    AssertionError error = new AssertionError("failing task");
+    List<CompletableFuture<SolverContext>> failing = new ArrayList<>();
+    for (int i = 0; i < 2 * pool.getSize(); i++) {
+      failing.add(
+          pool.submit(
+              poolContext -> {
+                throw error;
+              }));
+    }
+    for (CompletableFuture<SolverContext> result : failing) {
+      try {
+        result.get(1, TimeUnit.MINUTES);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isSameAs(error);
+      }
+    }
+
+    // all contexts are still available for later tasks
+    List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 2 * pool.getSize(); i++) {
+      results.add(
+          pool.submit(
+              poolContext -> {
+                BooleanFormulaManager poolBmgr =
+                    poolContext.getFormulaManager().getBooleanFormulaManager();
+                return isUnsat(poolContext, poolBmgr.makeBoolean(false));
+              }));
+    }
+    for (CompletableFuture<Boolean> result : results) {
+      assertThat(result.get(1, TimeUnit.MINUTES)).isTrue();
+    }
+  }
+
+  @Test
+  public void closeCancelsPendingTasks() {
+    List<CompletableFuture<SolverContext>> results = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      results.add(pool.submit(poolContext -> poolContext));
+    }
+    pool.close();
+    for (CompletableFuture<SolverContext> result : results) {
+      assertThat(result.isDone()).isTrue();
+    }
+  }
+}
@@ -182,4 +182,42 @@ public class SolverFormulaWithAssumptionsTest extends SolverBasedTest0 {
       }
     }
   }
+
+  @Test
+  public <T> void changingAssumptionsTest()
+      throws SolverException, InterruptedException, InvalidConfigurationException {
+    int n = 5;
+
+    IntegerFormula x = imgr.makeVariable("x");
+    List<BooleanFormula> suffices = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      suffices.add(bmgr.makeVariable("suffix" + i));
+    }
+
+    try (InterpolatingProverEnvironment<T> env = newEnvironmentForTest()) {
+      for (int i = 0; i < n; i++) {
+        env.push(bmgr.or(imgr.equal(x, imgr.makeNumber(i)), suffices.get(i)));
+      }
+
+      // only the last assumption changes
+      List<BooleanFormula> assumptions = new ArrayList<>(Lists.transform(suffices, bmgr::not));
+      assertThat(env.isUnsatWithAssumptions(assumptions)).isTrue();
+      assumptions.set(n - 1, suffices.get(n - 1));
+      assertThat(env.isUnsatWithAssumptions(assumptions)).isTrue();
+
+      // only one assumption remains
+      assertThat(env.isUnsatWithAssumptions(ImmutableList.of(bmgr.not(suffices.get(0)))))
+          .isFalse();
+
+      // same assumptions in a different order
+      assertThat(env.isUnsatWithAssumptions(Lists.reverse(assumptions))).isTrue();
+      assertThat(env.isUnsatWithAssumptions(assumptions.subList(1, n))).isTrue();
+      assertThat(env.isUnsatWithAssumptions(assumptions.subList(n - 2, n))).isFalse();
+
+      // constraints added after a check with assumptions do not depend on them
+      env.push(suffices.get(1));
+      assertThat(env.isUnsat()).isFalse();
+      assertThat(env.isUnsatWithAssumptions(assumptions.subList(0, 1))).isFalse();
+    }
+  }
 }
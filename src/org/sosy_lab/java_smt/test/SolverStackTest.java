@@ -27,6 +27,11 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -86,13 +91,6 @@ public class SolverStackTest extends SolverBasedTest0 {
 
   private static final UniqueIdGenerator index = new UniqueIdGenerator(); // to get different names
 
-  private void requireMultipleStackSupport() {
-    assume()
-        .withFailureMessage("Solver does not support multiple stacks yet")
-        .that(solver)
-        .isNotEqualTo(Solvers.SMTINTERPOL);
-  }
-
   protected final void requireUfValuesInModel() {
     assume()
         .withFailureMessage(
@@ -147,6 +145,74 @@ public class SolverStackTest extends SolverBasedTest0 {
     stack.pop(); //L0 empty stack
   }
 
+  @Test
+  public void multiLevelPopTest() throws SolverException, InterruptedException {
+    BasicProverEnvironment<?> stack = newEnvironmentForTest();
+    BooleanFormula a = bmgr.makeVariable("bool_a");
+
+    stack.push(a); // L1
+    stack.push(bmgr.makeBoolean(true)); // L2
+    stack.push(bmgr.not(a)); // L3
+    stack.push(bmgr.makeBoolean(true)); // L4
+    assertThatEnvironment(stack).isUnsatisfiable();
+
+    stack.pop(0); // L4
+    assertThatEnvironment(stack).isUnsatisfiable();
+
+    stack.pop(2); // L2
+    assertThatEnvironment(stack).isSatisfiable();
+
+    stack.push(bmgr.not(a)); // L3
+    assertThatEnvironment(stack).isUnsatisfiable();
+
+    stack.pop(3); // L0
+    stack.push(bmgr.not(a)); // L1
+    assertThatEnvironment(stack).isSatisfiable();
+    stack.pop(); // L0
+  }
+
+  @Test
+  public void multiLevelPopNegativeTest() {
+    BasicProverEnvironment<?> stack = newEnvironmentForTest();
+    stack.push(bmgr.makeVariable("bool_a")); // L1
+
+    thrown.expect(IllegalArgumentException.class);
+    stack.pop(-1);
+  }
+
+  @Test
+  public void lazyStackTest() throws SolverException, InterruptedException {
+    assume().that(useInterpolatingEnvironment).isFalse();
+    BasicProverEnvironment<?> stack = newEnvironmentForTest(ProverOptions.LAZY_STACK);
+    BooleanFormula a = bmgr.makeVariable("bool_a");
+    BooleanFormula b = bmgr.makeVariable("bool_b");
+
+    stack.push(bmgr.or(a, b)); // L1
+    assertThatEnvironment(stack).isSatisfiable();
+
+    // levels without a check in between
+    stack.push(bmgr.not(a)); // L2
+    stack.push(bmgr.not(b)); // L3
+    stack.pop(); // L2
+    stack.push(bmgr.makeBoolean(true)); // L3
+    stack.pop(2); // L1
+    assertThatEnvironment(stack).isSatisfiable();
+
+    stack.push(bmgr.not(a)); // L2
+    stack.push(bmgr.not(b)); // L3
+    assertThatEnvironment(stack).isUnsatisfiable();
+    stack.pop(); // L2
+    assertThatEnvironment(stack).isSatisfiable();
+    stack.push(bmgr.not(b)); // L3
+    stack.pop(2); // L1
+    stack.addConstraint(bmgr.not(a));
+    assertThatEnvironment(stack).isSatisfiable();
+    stack.addConstraint(bmgr.not(b));
+    assertThatEnvironment(stack).isUnsatisfiable();
+    stack.pop(); // L0
+    assertThatEnvironment(stack).isSatisfiable();
+  }
+
   @Test
   public void singleStackTestInteger() throws Exception {
     BasicProverEnvironment<?> env = newEnvironmentForTest();
@@ -309,8 +375,6 @@ public class SolverStackTest extends SolverBasedTest0 {
 
   @Test
   public void dualStackTest() throws Exception {
-    requireMultipleStackSupport();
-
     BooleanFormula a = bmgr.makeVariable("bool_a");
     BooleanFormula not = bmgr.not(a);
 
@@ -333,8 +397,6 @@ public class SolverStackTest extends SolverBasedTest0 {
 
   @Test
   public void dualStackTest2() throws Exception {
-    requireMultipleStackSupport();
-
     BooleanFormula a = bmgr.makeVariable("bool_a");
     BooleanFormula not = bmgr.not(a);
 
@@ -354,6 +416,91 @@ public class SolverStackTest extends SolverBasedTest0 {
     assertThatEnvironment(stack1).isSatisfiable();
   }
 
+  @Test
+  public void dualStackConcurrentThreads() throws Exception {
+    assume()
+        .withFailureMessage("Only SMTInterpol supports provers of one context in several threads")
+        .that(solver)
+        .isEqualTo(Solvers.SMTINTERPOL);
+
+    int checks = 400;
+    List<List<BooleanFormula>> queries = new ArrayList<>();
+    List<BasicProverEnvironment<?>> stacks = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      // all formulas are created before the threads start
+      IntegerFormula x = imgr.makeVariable("x" + t);
+      IntegerFormula y = imgr.makeVariable("y" + t);
+      IntegerFormula zero = imgr.makeNumber(0);
+      List<BooleanFormula> query = new ArrayList<>();
+      for (int k = 0; k < checks; k++) {
+        IntegerFormula sum = imgr.makeNumber(k);
+        BooleanFormula sumIsK = imgr.equal(imgr.add(x, y), sum);
+        BooleanFormula bound =
+            k % 2 == 0 ? imgr.greaterOrEquals(x, zero) : imgr.greaterThan(x, sum);
+        query.add(bmgr.and(sumIsK, bound, imgr.greaterOrEquals(y, zero)));
+      }
+      queries.add(query);
+      stacks.add(newEnvironmentForTest());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<List<Boolean>>> results = new ArrayList<>();
+      for (int t = 0; t < 2; t++) {
+        BasicProverEnvironment<?> stack = stacks.get(t);
+        List<BooleanFormula> query = queries.get(t);
+        results.add(
+            executor.submit(
+                () -> {
+                  List<Boolean> unsat = new ArrayList<>();
+                  for (BooleanFormula f : query) {
+                    stack.push(f);
+                    unsat.add(stack.isUnsat());
+                    stack.pop();
+                  }
+                  return unsat;
+                }));
+      }
+      for (Future<List<Boolean>> result : results) {
+        List<Boolean> unsat = result.get();
+        for (int k = 0; k < checks; k++) {
+          assertThat(unsat.get(k)).isEqualTo(k % 2 != 0);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void dualStackCheckWhileOtherProverSolves() throws Exception {
+    assume()
+        .withFailureMessage("Only SMTInterpol supports provers of one context in several threads")
+        .that(solver)
+        .isEqualTo(Solvers.SMTINTERPOL);
+
+    HardIntegerFormulaGenerator gen = new HardIntegerFormulaGenerator(imgr, bmgr);
+    BooleanFormula hard = gen.generate(20);
+    BooleanFormula a = bmgr.makeVariable("bool_a");
+
+    BasicProverEnvironment<?> stack1 = newEnvironmentForTest();
+    BasicProverEnvironment<?> stack2 = newEnvironmentForTest();
+    stack1.push(hard);
+    stack2.push(a);
+    CompletableFuture<Boolean> hardResult = stack1.isUnsatAsync();
+    try {
+      Thread.sleep(10);
+
+      // the check of the second prover does not wait for the search of the first one
+      assertThat(stack2.isUnsatAsync().get(1, TimeUnit.MINUTES)).isFalse();
+      stack2.push(bmgr.not(a));
+      assertThat(stack2.isUnsatAsync().get(1, TimeUnit.MINUTES)).isTrue();
+      assertThat(hardResult.isDone()).isFalse();
+    } finally {
+      hardResult.cancel(true);
+    }
+  }
+
   /**
    * This test checks that a SMT solver uses "global declarations": regardless of the stack at
    * declaration time, declarations always live for the full life time of the solver (i.e., they do
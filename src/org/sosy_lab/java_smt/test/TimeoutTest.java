@@ -20,8 +20,12 @@
 
 package org.sosy_lab.java_smt.test;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
 import com.google.common.truth.TruthJUnit;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import org.junit.Rule;
 import org.junit.Test;
@@ -33,6 +37,7 @@ import org.junit.runners.Parameterized.Parameters;
 import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
 import org.sosy_lab.java_smt.api.BasicProverEnvironment;
 import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
 import org.sosy_lab.java_smt.api.Tactic;
 
 /** Check that timeout is handled gracefully. */
@@ -93,6 +98,57 @@ public class TimeoutTest extends SolverBasedTest0 {
     testBasicProverTimeout(() -> context.newOptimizationProverEnvironment());
   }
 
+  @Test
+  public void testAsyncCheckCancellation() throws Exception {
+    TruthJUnit.assume()
+        .withFailureMessage("Princess does not support interruption")
+        .that(solverToUse())
+        .isNotEqualTo(Solvers.PRINCESS);
+    HardIntegerFormulaGenerator gen = new HardIntegerFormulaGenerator(imgr, bmgr);
+    BooleanFormula instance = gen.generate(20);
+    try (ProverEnvironment pe = context.newProverEnvironment()) {
+      pe.push(instance);
+      CompletableFuture<Boolean> result = pe.isUnsatAsync();
+      Thread.sleep(10);
+      assertThat(result.cancel(true)).isTrue();
+      assertThat(result.isCancelled()).isTrue();
+
+      // the prover is usable again after cancelling the check
+      pe.pop();
+      pe.push(bmgr.makeBoolean(false));
+      assertThat(pe.isUnsatAsync().get()).isTrue();
+    }
+  }
+
+  @Test
+  public void testInterruptBeforeCheck() throws Exception {
+    try (ProverEnvironment pe = context.newProverEnvironment();
+        ProverEnvironment other = context.newProverEnvironment()) {
+      pe.push(bmgr.makeVariable("a"));
+      other.push(bmgr.makeVariable("a"));
+
+      // an interrupt that arrives before the check is not lost
+      pe.interrupt();
+      try {
+        pe.isUnsat();
+        fail();
+      } catch (InterruptedException e) {
+        // expected
+      }
+
+      // only the next check of the interrupted prover is affected
+      pe.interrupt();
+      assertThat(other.isUnsat()).isFalse();
+      try {
+        pe.isUnsat();
+        fail();
+      } catch (InterruptedException e) {
+        // expected
+      }
+      assertThat(pe.isUnsat()).isFalse();
+    }
+  }
+
   @SuppressWarnings("CheckReturnValue")
   private void testBasicProverTimeout(Supplier<BasicProverEnvironment<?>> proverConstructor)
       throws Exception {
@@ -20,6 +20,7 @@
 package org.sosy_lab.java_smt.test;
 
 import static com.google.common.truth.Truth.assert_;
+import static com.google.common.truth.TruthJUnit.assume;
 
 import org.junit.After;
 import org.junit.Before;
@@ -33,9 +34,12 @@ import org.sosy_lab.common.configuration.Configuration;
 import org.sosy_lab.common.log.LogManager;
 import org.sosy_lab.java_smt.SolverContextFactory;
 import org.sosy_lab.java_smt.SolverContextFactory.Solvers;
+import org.sosy_lab.java_smt.api.BitvectorFormula;
+import org.sosy_lab.java_smt.api.BitvectorFormulaManager;
 import org.sosy_lab.java_smt.api.BooleanFormula;
 import org.sosy_lab.java_smt.api.BooleanFormulaManager;
 import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
 import org.sosy_lab.java_smt.api.IntegerFormulaManager;
 import org.sosy_lab.java_smt.api.NumeralFormula.IntegerFormula;
 import org.sosy_lab.java_smt.api.SolverContext;
@@ -106,6 +110,71 @@ public class TranslateFormulaTest {
     assertThatFormula(createTestFormula(managerTo), to).isEquivalentTo(parsed);
   }
 
+  @Test
+  public void testTranslatingArithmeticAndUFs() throws Exception {
+    BooleanFormula input = createArithmeticTestFormula(managerFrom);
+    BooleanFormula translated = managerTo.translateFrom(input, managerFrom);
+
+    assertThatFormula(createArithmeticTestFormula(managerTo), to).isEquivalentTo(translated);
+  }
+
+  @Test
+  public void testTranslatingBitvectors() throws Exception {
+    assume().that(supportsBitvectors(managerFrom) && supportsBitvectors(managerTo)).isTrue();
+    BooleanFormula input = createBitvectorTestFormula(managerFrom);
+    BooleanFormula translated = managerTo.translateFrom(input, managerFrom);
+
+    assertThatFormula(createBitvectorTestFormula(managerTo), to).isEquivalentTo(translated);
+  }
+
+  @Test
+  public void testTranslatingUnsupportedSubterms() throws Exception {
+    // to_int has no counterpart in the API, only the comparison containing it is parsed
+    String query =
+        "(declare-fun r () Real)(declare-fun x () Int)(declare-fun p () Bool)"
+            + "(assert (and (or p (< x 3)) (>= (to_int r) x)))";
+    BooleanFormula input = managerFrom.parse(query);
+    BooleanFormula translated = managerTo.translateFrom(input, managerFrom);
+
+    assertThatFormula(managerTo.parse(query), to).isEquivalentTo(translated);
+  }
+
+  private static boolean supportsBitvectors(FormulaManager mgr) {
+    try {
+      mgr.getBitvectorFormulaManager();
+      return true;
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  private BooleanFormula createBitvectorTestFormula(FormulaManager mgr) {
+    BooleanFormulaManager bfmgr = mgr.getBooleanFormulaManager();
+    BitvectorFormulaManager bvmgr = mgr.getBitvectorFormulaManager();
+    BitvectorFormula x = bvmgr.makeVariable(8, "x");
+    BitvectorFormula y = bvmgr.makeVariable(8, "y");
+    BitvectorFormula sum = bvmgr.add(bvmgr.multiply(x, bvmgr.makeBitvector(8, 3)), bvmgr.negate(y));
+    return bfmgr.and(
+        bvmgr.lessThan(sum, bvmgr.divide(x, y, true), true),
+        bvmgr.equal(
+            bvmgr.extract(bvmgr.concat(x, y), 11, 4, false), bvmgr.shiftRight(x, y, true)),
+        bvmgr.greaterOrEquals(bvmgr.extend(x, 4, true), bvmgr.extend(y, 4, false), false));
+  }
+
+  private BooleanFormula createArithmeticTestFormula(FormulaManager mgr) {
+    BooleanFormulaManager bfmgr = mgr.getBooleanFormulaManager();
+    IntegerFormulaManager ifmgr = mgr.getIntegerFormulaManager();
+    IntegerFormula x = ifmgr.makeVariable("x");
+    IntegerFormula y = ifmgr.makeVariable("y");
+    BooleanFormula p = bfmgr.makeVariable("p");
+    IntegerFormula fx = mgr.getUFManager().declareAndCallUF("f", FormulaType.IntegerType, x);
+    IntegerFormula sum = ifmgr.add(ifmgr.multiply(ifmgr.makeNumber(3), x), ifmgr.negate(y));
+    return bfmgr.and(
+        bfmgr.implication(p, ifmgr.lessThan(sum, fx)),
+        bfmgr.xor(p, ifmgr.greaterOrEquals(ifmgr.subtract(fx, y), ifmgr.makeNumber(-5))),
+        ifmgr.equal(bfmgr.ifThenElse(p, x, y), ifmgr.add(fx, fx)));
+  }
+
   private BooleanFormula createTestFormula(FormulaManager mgr) {
     BooleanFormulaManager bfmgr = mgr.getBooleanFormulaManager();
     IntegerFormulaManager ifmgr = mgr.getIntegerFormulaManager();
@@ -0,0 +1,374 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BasicProverEnvironment;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.FormulaType;
+import org.sosy_lab.java_smt.api.FunctionDeclaration;
+import org.sosy_lab.java_smt.api.Model.ValueAssignment;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.QuantifiedFormulaManager.Quantifier;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.api.visitors.DefaultBooleanFormulaVisitor;
+import org.sosy_lab.java_smt.api.visitors.TraversalProcess;
+
+/**
+ * CubeAndConquer solves a hard formula by splitting it into cubes, i.e., into all combinations of
+ * polarities of some boolean atoms of the formula, and checking the cubes in parallel with the
+ * contexts of a {@link SolverContextPool}.
+ *
+ * <p>The splitting atoms are the atoms that are referenced most often in the formula. Each context
+ * asserts the formula once and then checks one cube after the other as assumptions with {@link
+ * BasicProverEnvironment#isUnsatWithAssumptions}, until some cube is satisfiable or all cubes are
+ * unsatisfiable.
+ */
+public final class CubeAndConquer {
+
+  /** Prefix of the boolean variables that stand for the splitting atoms in the contexts. */
+  private static final String SELECTOR_PREFIX = "__cube_selector_";
+
+  private final SolverContextPool pool;
+  private final int splitDepth;
+
+  CubeAndConquer(SolverContextPool pPool, int pSplitDepth) {
+    checkArgument(
+        0 <= pSplitDepth && pSplitDepth < Integer.SIZE - 1,
+        "split depth %s out of range",
+        pSplitDepth);
+    pool = checkNotNull(pPool);
+    splitDepth = pSplitDepth;
+  }
+
+  /**
+   * Check the formula for satisfiability.
+   *
+   * @param formula the formula to solve, created by {@code formulaManager}.
+   * @param formulaManager the formula manager of the formula and of the returned model, only used
+   *     by the calling thread.
+   * @return the assignments of a model of the formula, or an empty optional if the formula is
+   *     unsatisfiable. The model only contains assignments of variables, not of uninterpreted
+   *     functions.
+   */
+  public Optional<ImmutableList<ValueAssignment>> solve(
+      BooleanFormula formula, FormulaManager formulaManager)
+      throws SolverException, InterruptedException {
+    List<BooleanFormula> atoms = selectAtoms(formula, formulaManager.getBooleanFormulaManager());
+    List<BooleanFormula> formulas = new ArrayList<>();
+    formulas.add(formula);
+    formulas.addAll(atoms);
+
+    Search search = new Search(atoms.size());
+    List<CompletableFuture<?>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(pool.getSize(), search.numberOfCubes); i++) {
+      workers.add(
+          pool.submit(
+              formulas,
+              formulaManager,
+              (context, translated) -> {
+                search.conquer(context, translated);
+                return null;
+              }));
+    }
+
+    try {
+      CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).get();
+    } catch (InterruptedException e) {
+      search.stop();
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      Throwables.propagateIfPossible(cause, SolverException.class, InterruptedException.class);
+      throw new AssertionError("unexpected exception during cube-and-conquer", cause);
+    }
+
+    if (search.model == null) {
+      return Optional.empty();
+    }
+    ImmutableList.Builder<ValueAssignment> model = ImmutableList.builder();
+    for (Assignment assignment : search.model) {
+      Formula key = formulaManager.makeVariable(assignment.type, assignment.name);
+      model.add(new ValueAssignment(key, assignment.name, assignment.value, ImmutableList.of()));
+    }
+    return Optional.of(model.build());
+  }
+
+  /** Select up to {@link #splitDepth} atoms, preferring those with the most references. */
+  private List<BooleanFormula> selectAtoms(BooleanFormula formula, BooleanFormulaManager bmgr) {
+    Multiset<BooleanFormula> references = HashMultiset.create();
+    Set<BooleanFormula> atoms = new LinkedHashSet<>();
+    bmgr.visitRecursively(
+        formula,
+        new DefaultBooleanFormulaVisitor<TraversalProcess>() {
+          @Override
+          protected TraversalProcess visitDefault() {
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitAtom(
+              BooleanFormula atom, FunctionDeclaration<BooleanFormula> decl) {
+            atoms.add(atom);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitNot(BooleanFormula operand) {
+            references.add(operand);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitAnd(List<BooleanFormula> operands) {
+            references.addAll(operands);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitOr(List<BooleanFormula> operands) {
+            references.addAll(operands);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitXor(BooleanFormula operand1, BooleanFormula operand2) {
+            Collections.addAll(references, operand1, operand2);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitEquivalence(
+              BooleanFormula operand1, BooleanFormula operand2) {
+            Collections.addAll(references, operand1, operand2);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitImplication(
+              BooleanFormula operand1, BooleanFormula operand2) {
+            Collections.addAll(references, operand1, operand2);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitIfThenElse(
+              BooleanFormula condition, BooleanFormula thenFormula, BooleanFormula elseFormula) {
+            Collections.addAll(references, condition, thenFormula, elseFormula);
+            return TraversalProcess.CONTINUE;
+          }
+
+          @Override
+          public TraversalProcess visitQuantifier(
+              Quantifier quantifier,
+              BooleanFormula quantifiedAST,
+              List<Formula> boundVars,
+              BooleanFormula body) {
+            // atoms below a quantifier may contain bound variables
+            return TraversalProcess.SKIP;
+          }
+        });
+
+    List<BooleanFormula> sorted = new ArrayList<>(atoms);
+    sorted.sort(Comparator.comparingInt(references::count).reversed());
+    return sorted.subList(0, Math.min(splitDepth, sorted.size()));
+  }
+
+  /** A context-independent representation of a variable assignment. */
+  private static final class Assignment {
+    private final String name;
+    private final FormulaType<?> type;
+    private final Object value;
+
+    private Assignment(String pName, FormulaType<?> pType, Object pValue) {
+      name = pName;
+      type = pType;
+      value = pValue;
+    }
+  }
+
+  /** The state of one call to {@link #solve}, shared by all workers. */
+  private static final class Search {
+
+    private final int numberOfSplitAtoms;
+    private final int numberOfCubes;
+    private final AtomicInteger nextCube = new AtomicInteger(0);
+
+    /**
+     * Provers that are currently checking a cube, such that they can be interrupted. Provers
+     * between two checks are not interrupted, because the interrupt would stay pending after the
+     * task finished, e.g., in a pooled prover.
+     */
+    @GuardedBy("runningProvers")
+    private final Set<ProverEnvironment> runningProvers = new HashSet<>();
+
+    private volatile boolean done = false;
+
+    /** The model of the first satisfiable cube, written by the worker that claimed the result. */
+    private volatile @Nullable List<Assignment> model = null;
+
+    private Search(int pNumberOfSplitAtoms) {
+      numberOfSplitAtoms = pNumberOfSplitAtoms;
+      numberOfCubes = 1 << pNumberOfSplitAtoms;
+    }
+
+    /**
+     * Check cubes until the search is done.
+     *
+     * @param formulas the formula to solve, followed by the splitting atoms, all in the given
+     *     context.
+     */
+    private void conquer(SolverContext context, List<BooleanFormula> formulas) {
+      BooleanFormulaManager bmgr = context.getFormulaManager().getBooleanFormulaManager();
+      try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+        prover.push(formulas.get(0));
+        // Solvers may only accept literals as assumptions,
+        // thus we use a fresh variable for each splitting atom.
+        List<BooleanFormula> selectors = new ArrayList<>(numberOfSplitAtoms);
+        for (int i = 0; i < numberOfSplitAtoms; i++) {
+          BooleanFormula selector = bmgr.makeVariable(SELECTOR_PREFIX + i);
+          prover.addConstraint(bmgr.equivalence(selector, formulas.get(i + 1)));
+          selectors.add(selector);
+        }
+
+        for (int cube = nextCube.getAndIncrement();
+            cube < numberOfCubes;
+            cube = nextCube.getAndIncrement()) {
+          if (!check(prover, getLiterals(cube, selectors, bmgr))) {
+            if (!done) {
+              finish(getAssignments(prover, context.getFormulaManager()));
+            }
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        if (!done) {
+          stop();
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+        // interrupted because another worker found a model
+      } catch (SolverException e) {
+        stop();
+        throw new CompletionException(e);
+      } catch (RuntimeException e) {
+        stop();
+        throw e;
+      }
+    }
+
+    /**
+     * Check a cube, while the prover can be interrupted by other workers.
+     *
+     * @return whether the cube is unsatisfiable, or false if the search is already done.
+     */
+    private boolean check(ProverEnvironment prover, List<BooleanFormula> cube)
+        throws SolverException, InterruptedException {
+      synchronized (runningProvers) {
+        if (done) {
+          return false;
+        }
+        runningProvers.add(prover);
+      }
+      try {
+        return prover.isUnsatWithAssumptions(cube);
+      } finally {
+        synchronized (runningProvers) {
+          runningProvers.remove(prover);
+        }
+      }
+    }
+
+    /** Bit i of the cube index selects the polarity of the i-th splitting atom. */
+    private static List<BooleanFormula> getLiterals(
+        int cube, List<BooleanFormula> selectors, BooleanFormulaManager bmgr) {
+      List<BooleanFormula> literals = new ArrayList<>(selectors.size());
+      for (int i = 0; i < selectors.size(); i++) {
+        BooleanFormula selector = selectors.get(i);
+        literals.add((cube & (1 << i)) != 0 ? selector : bmgr.not(selector));
+      }
+      return literals;
+    }
+
+    private static List<Assignment> getAssignments(
+        ProverEnvironment prover, FormulaManager formulaManager) throws SolverException {
+      List<Assignment> assignments = new ArrayList<>();
+      for (ValueAssignment assignment : prover.getModelAssignments()) {
+        if (!assignment.isFunction() && !assignment.getName().startsWith(SELECTOR_PREFIX)) {
+          assignments.add(
+              new Assignment(
+                  assignment.getName(),
+                  formulaManager.getFormulaType(assignment.getKey()),
+                  assignment.getValue()));
+        }
+      }
+      return assignments;
+    }
+
+    /** Store the model if no other worker found one before, and stop all other workers. */
+    private void finish(List<Assignment> assignments) {
+      synchronized (runningProvers) {
+        if (done) {
+          return;
+        }
+        model = assignments;
+        done = true;
+        runningProvers.forEach(ProverEnvironment::interrupt);
+      }
+    }
+
+    /** Stop all workers without a result. */
+    private void stop() {
+      synchronized (runningProvers) {
+        done = true;
+        runningProvers.forEach(ProverEnvironment::interrupt);
+      }
+    }
+  }
+}
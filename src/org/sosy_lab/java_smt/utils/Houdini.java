@@ -0,0 +1,278 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.utils;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.Formula;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.Model;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverContext.ProverOptions;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.api.visitors.FormulaTransformationVisitor;
+
+/**
+ * Houdini computes the maximal inductive subset of a set of candidate lemmas, following Flanagan
+ * and Leino: "Houdini, an Annotation Assistant for ESC/Java".
+ *
+ * <p>The lemmas and the transition relation T(X, X') are quantifier-free formulas. A set L of
+ * lemmas is inductive with respect to T if the formula AND( L(X), T(X, X'), NOT(L(X')) ) is
+ * unsatisfiable. The primed version of a variable "x" is the variable "x'" of the same type.
+ *
+ * <p>Houdini repeatedly checks the conjunction of the remaining lemmas for inductiveness and
+ * removes all lemmas that are violated by the counterexample-to-induction.
+ */
+public class Houdini {
+
+  private static final String SELECTOR_PREFIX = "__houdini_selector_";
+
+  private final FormulaManager fmgr;
+  private final BooleanFormulaManager bfmgr;
+  private final SolverContext context;
+
+  Houdini(SolverContext pContext) {
+    context = checkNotNull(pContext);
+    fmgr = context.getFormulaManager();
+    bfmgr = fmgr.getBooleanFormulaManager();
+  }
+
+  /**
+   * Compute the maximal inductive subset of the lemmas with a single prover of the context of this
+   * instance.
+   *
+   * <p>All lemmas are asserted once, guarded by selector variables. Removing a lemma only asserts
+   * its selector, such that the prover keeps everything learned so far, and each model is only
+   * evaluated for the lemmas that are still alive.
+   *
+   * @param lemmas candidate lemmas over the unprimed variables.
+   * @param transition the transition relation over the unprimed and primed variables.
+   * @return the inductive lemmas, in the order of the input.
+   */
+  public ImmutableList<BooleanFormula> findInductiveSubset(
+      List<BooleanFormula> lemmas, BooleanFormula transition)
+      throws SolverException, InterruptedException {
+    List<BooleanFormula> primedLemmas = new ArrayList<>(lemmas.size());
+    List<BooleanFormula> selectors = new ArrayList<>(lemmas.size());
+    List<BooleanFormula> annotated = new ArrayList<>(lemmas.size());
+    List<BooleanFormula> annotatedPrimes = new ArrayList<>(lemmas.size());
+    for (int i = 0; i < lemmas.size(); i++) {
+      BooleanFormula selector = bfmgr.makeVariable(SELECTOR_PREFIX + i);
+      BooleanFormula primed = prime(lemmas.get(i));
+      selectors.add(selector);
+      primedLemmas.add(primed);
+      annotated.add(bfmgr.or(selector, lemmas.get(i)));
+      annotatedPrimes.add(bfmgr.or(selector, primed));
+    }
+
+    BitSet alive = new BitSet(lemmas.size());
+    alive.set(0, lemmas.size());
+
+    try (ProverEnvironment prover = context.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.addConstraint(transition);
+      prover.addConstraint(bfmgr.and(annotated));
+      prover.addConstraint(bfmgr.not(bfmgr.and(annotatedPrimes)));
+
+      while (!prover.isUnsat()) {
+        try (Model m = prover.getModel()) {
+          for (int i = alive.nextSetBit(0); i >= 0; i = alive.nextSetBit(i + 1)) {
+            if (isViolated(m, primedLemmas.get(i))) {
+              alive.clear(i);
+              prover.addConstraint(selectors.get(i));
+            }
+          }
+        }
+      }
+    }
+    return select(lemmas, alive);
+  }
+
+  /**
+   * Compute the maximal inductive subset of the lemmas with the contexts of a pool.
+   *
+   * <p>In each round, the remaining lemmas are partitioned into one chunk per context. Each context
+   * assumes all remaining lemmas and the transition, and removes the lemmas of its own chunk that
+   * do not hold after the transition. The removals of all chunks are merged before the next round,
+   * until a round does not remove any lemma.
+   *
+   * @param lemmas candidate lemmas over the unprimed variables, created by the context of this
+   *     instance.
+   * @param transition the transition relation over the unprimed and primed variables.
+   * @param pool the contexts that check the chunks in parallel.
+   * @return the inductive lemmas, in the order of the input.
+   */
+  public ImmutableList<BooleanFormula> findInductiveSubset(
+      List<BooleanFormula> lemmas, BooleanFormula transition, SolverContextPool pool)
+      throws SolverException, InterruptedException {
+    List<BooleanFormula> primedLemmas = new ArrayList<>(lemmas.size());
+    for (BooleanFormula lemma : lemmas) {
+      primedLemmas.add(prime(lemma));
+    }
+
+    BitSet alive = new BitSet(lemmas.size());
+    alive.set(0, lemmas.size());
+
+    boolean changed = true;
+    while (changed && !alive.isEmpty()) {
+      List<Integer> aliveIndices = new ArrayList<>(alive.cardinality());
+      List<BooleanFormula> aliveLemmas = new ArrayList<>(alive.cardinality());
+      for (int i = alive.nextSetBit(0); i >= 0; i = alive.nextSetBit(i + 1)) {
+        aliveIndices.add(i);
+        aliveLemmas.add(lemmas.get(i));
+      }
+      BooleanFormula assumption = bfmgr.and(transition, bfmgr.and(aliveLemmas));
+
+      int chunkSize = IntMath.divide(aliveIndices.size(), pool.getSize(), RoundingMode.CEILING);
+      List<CompletableFuture<List<Integer>>> chunkResults = new ArrayList<>();
+      for (List<Integer> chunk : Lists.partition(aliveIndices, chunkSize)) {
+        List<BooleanFormula> formulas = new ArrayList<>(chunk.size() + 1);
+        formulas.add(assumption);
+        for (int i : chunk) {
+          formulas.add(primedLemmas.get(i));
+        }
+        chunkResults.add(
+            pool.submit(
+                formulas,
+                fmgr,
+                (poolContext, translated) -> removeViolated(poolContext, translated, chunk)));
+      }
+
+      changed = false;
+      for (List<Integer> removed : getAll(chunkResults)) {
+        for (int i : removed) {
+          alive.clear(i);
+          changed = true;
+        }
+      }
+    }
+    return select(lemmas, alive);
+  }
+
+  /**
+   * Remove the lemmas of a chunk that do not hold after the transition.
+   *
+   * @param formulas the assumption, followed by the primed lemmas of the chunk.
+   * @param chunk the indices of the lemmas of the chunk.
+   * @return the indices of the removed lemmas.
+   */
+  private static List<Integer> removeViolated(
+      SolverContext poolContext, List<BooleanFormula> formulas, List<Integer> chunk) {
+    BooleanFormulaManager bmgr = poolContext.getFormulaManager().getBooleanFormulaManager();
+    List<Integer> removed = new ArrayList<>();
+    BitSet alive = new BitSet(chunk.size());
+    alive.set(0, chunk.size());
+
+    try (ProverEnvironment prover =
+        poolContext.newProverEnvironment(ProverOptions.GENERATE_MODELS)) {
+      prover.addConstraint(formulas.get(0));
+      while (!alive.isEmpty()) {
+        List<BooleanFormula> violations = new ArrayList<>(alive.cardinality());
+        for (int j = alive.nextSetBit(0); j >= 0; j = alive.nextSetBit(j + 1)) {
+          violations.add(bmgr.not(formulas.get(j + 1)));
+        }
+        prover.push(bmgr.or(violations));
+        if (prover.isUnsat()) {
+          break;
+        }
+        try (Model m = prover.getModel()) {
+          for (int j = alive.nextSetBit(0); j >= 0; j = alive.nextSetBit(j + 1)) {
+            if (isViolated(m, formulas.get(j + 1))) {
+              alive.clear(j);
+              removed.add(chunk.get(j));
+            }
+          }
+        }
+        prover.pop();
+      }
+    } catch (SolverException e) {
+      throw new CompletionException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+    return removed;
+  }
+
+  private static <T> List<T> getAll(List<CompletableFuture<T>> futures)
+      throws SolverException, InterruptedException {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (CompletableFuture<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw e;
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      Throwables.propagateIfPossible(cause, SolverException.class, InterruptedException.class);
+      throw new AssertionError("unexpected exception during Houdini", cause);
+    }
+    return results;
+  }
+
+  /**
+   * A lemma is violated if it does not evaluate to true. An unknown value counts as violation, such
+   * that each counterexample removes at least one lemma.
+   */
+  private static boolean isViolated(Model m, BooleanFormula primedLemma) {
+    return !Boolean.TRUE.equals(m.evaluate(primedLemma));
+  }
+
+  private static ImmutableList<BooleanFormula> select(List<BooleanFormula> lemmas, BitSet alive) {
+    ImmutableList.Builder<BooleanFormula> result = ImmutableList.builder();
+    for (int i = alive.nextSetBit(0); i >= 0; i = alive.nextSetBit(i + 1)) {
+      result.add(lemmas.get(i));
+    }
+    return result.build();
+  }
+
+  /** traverse the formula and replace all symbols in the formula with their primed version. */
+  private BooleanFormula prime(BooleanFormula input) {
+    return fmgr.transformRecursively(
+        input,
+        new FormulaTransformationVisitor(fmgr) {
+
+          @Override
+          public Formula visitFreeVariable(Formula f, String name) {
+            return fmgr.makeVariable(fmgr.getFormulaType(f), name + "'");
+          }
+        });
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ *  JavaSMT is an API wrapper for a collection of SMT solvers.
+ *  This file is part of JavaSMT.
+ *
+ *  Copyright (C) 2007-2016  Dirk Beyer
+ *  All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.sosy_lab.java_smt.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sosy_lab.java_smt.SolverContextPool;
+import org.sosy_lab.java_smt.api.BooleanFormula;
+import org.sosy_lab.java_smt.api.BooleanFormulaManager;
+import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.ProverEnvironment;
+import org.sosy_lab.java_smt.api.ProverEnvironment.AllSatCallback;
+import org.sosy_lab.java_smt.api.SolverContext;
+import org.sosy_lab.java_smt.api.SolverException;
+import org.sosy_lab.java_smt.api.visitors.DefaultBooleanFormulaVisitor;
+
+/**
+ * ParallelAllSat enumerates all satisfying assignments of a formula to a list of important
+ * predicates with the contexts of a {@link SolverContextPool}.
+ *
+ * <p>The space of assignments is split into cubes over the first important predicates, i.e., into
+ * all combinations of their polarities. Each context asserts the formula once and then enumerates
+ * one cube after the other with {@link ProverEnvironment#allSat}. The cubes are disjoint, thus
+ * every assignment is found exactly once.
+ *
+ * <p>All models are passed to the callback in the calling thread, such that the callback and the
+ * formula manager of the caller need not be thread-safe. The order of the models is unspecified.
+ * The workers wait while {@link #MAX_PENDING_MODELS} models are not yet passed to the callback,
+ * such that they never run arbitrarily far ahead of a slow callback.
+ */
+public final class ParallelAllSat {
+
+  /** The maximal number of models found by the workers and not yet passed to the callback. */
+  static final int MAX_PENDING_MODELS = 1024;
+
+  private final SolverContextPool pool;
+  private final int splitDepth;
+
+  ParallelAllSat(SolverContextPool pPool, int pSplitDepth) {
+    checkArgument(
+        0 <= pSplitDepth && pSplitDepth < Integer.SIZE - 1,
+        "split depth %s out of range",
+        pSplitDepth);
+    pool = checkNotNull(pPool);
+    splitDepth = pSplitDepth;
+  }
+
+  /**
+   * Enumerate all satisfying assignments of the important predicates, like {@link
+   * ProverEnvironment#allSat} on a prover that contains only the given formula.
+   *
+   * @param formula the formula whose models are enumerated, created by {@code formulaManager}.
+   * @param callback receives each model, always in the calling thread.
+   * @param important the predicates of the models, created by {@code formulaManager}.
+   * @param formulaManager the formula manager of the formulas and of the models, only used by the
+   *     calling thread.
+   * @return the result of the callback.
+   */
+  public <T> T allSat(
+      BooleanFormula formula,
+      AllSatCallback<T> callback,
+      List<BooleanFormula> important,
+      FormulaManager formulaManager)
+      throws SolverException, InterruptedException {
+    List<BooleanFormula> formulas = new ArrayList<>();
+    formulas.add(formula);
+    formulas.addAll(important);
+
+    Enumeration enumeration =
+        new Enumeration(important.size(), Math.min(splitDepth, important.size()));
+    List<CompletableFuture<?>> workers = new ArrayList<>();
+    int numberOfWorkers = Math.min(pool.getSize(), enumeration.numberOfCubes);
+    for (int i = 0; i < numberOfWorkers; i++) {
+      workers.add(
+          pool.submit(
+              formulas,
+              formulaManager,
+              (context, translated) -> {
+                enumeration.enumerate(context, translated);
+                return null;
+              }));
+    }
+
+    BooleanFormulaManager bmgr = formulaManager.getBooleanFormulaManager();
+    try {
+      int finishedWorkers = 0;
+      while (finishedWorkers < numberOfWorkers) {
+        byte[] polarities = enumeration.models.take();
+        if (polarities == WORKER_FINISHED) {
+          finishedWorkers++;
+        } else if (!enumeration.stopped) {
+          enumeration.capacity.release();
+          callback.apply(toModel(polarities, important, bmgr));
+        }
+      }
+      CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).get();
+    } catch (InterruptedException e) {
+      enumeration.stop();
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      Throwables.propagateIfPossible(cause, SolverException.class, InterruptedException.class);
+      throw new AssertionError("unexpected exception during parallel all-sat", cause);
+    } catch (RuntimeException e) {
+      // thrown by the callback
+      enumeration.stop();
+      throw e;
+    }
+
+    return callback.getResult();
+  }
+
+  private static List<BooleanFormula> toModel(
+      byte[] polarities, List<BooleanFormula> important, BooleanFormulaManager bmgr) {
+    List<BooleanFormula> model = new ArrayList<>(important.size());
+    for (int i = 0; i < polarities.length; i++) {
+      if (polarities[i] == TRUE) {
+        model.add(important.get(i));
+      } else if (polarities[i] == FALSE) {
+        model.add(bmgr.not(important.get(i)));
+      }
+    }
+    return model;
+  }
+
+  /** Polarity of an important predicate in a model, predicates without value are omitted. */
+  private static final byte TRUE = 1;
+
+  private static final byte FALSE = -1;
+
+  /** Marker in the queue of models, sent by each worker when it has no more cubes. */
+  private static final byte[] WORKER_FINISHED = new byte[0];
+
+  /** The state of one call to {@link #allSat}, shared by all workers. */
+  private static final class Enumeration {
+
+    private final int numberOfPredicates;
+    private final int numberOfSplitPredicates;
+    private final int numberOfCubes;
+    private final AtomicInteger nextCube = new AtomicInteger(0);
+
+    /**
+     * Models found by the workers, as polarities of the important predicates. The markers {@link
+     * #WORKER_FINISHED} are always added, the models only after acquiring {@link #capacity}.
+     */
+    private final BlockingQueue<byte[]> models = new LinkedBlockingQueue<>();
+
+    /** The number of models that the workers may still add to the queue. */
+    private final Semaphore capacity = new Semaphore(MAX_PENDING_MODELS);
+
+    /** Provers that are currently enumerating cubes, such that they can be interrupted. */
+    @GuardedBy("runningProvers")
+    private final Set<ProverEnvironment> runningProvers = new HashSet<>();
+
+    private volatile boolean stopped = false;
+
+    private Enumeration(int pNumberOfPredicates, int pNumberOfSplitPredicates) {
+      numberOfPredicates = pNumberOfPredicates;
+      numberOfSplitPredicates = pNumberOfSplitPredicates;
+      numberOfCubes = 1 << pNumberOfSplitPredicates;
+    }
+
+    /**
+     * Enumerate cubes until all cubes are claimed.
+     *
+     * @param formulas the formula, followed by the important predicates, all in the given context.
+     */
+    private void enumerate(SolverContext context, List<BooleanFormula> formulas) {
+      try {
+        enumerate0(context, formulas);
+      } catch (InterruptedException e) {
+        if (!stopped) {
+          stop();
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+        // interrupted because the enumeration was aborted
+      } catch (SolverException e) {
+        stop();
+        throw new CompletionException(e);
+      } catch (RuntimeException e) {
+        stop();
+        throw e;
+      } finally {
+        models.add(WORKER_FINISHED);
+      }
+    }
+
+    private void enumerate0(SolverContext context, List<BooleanFormula> formulas)
+        throws SolverException, InterruptedException {
+      BooleanFormulaManager bmgr = context.getFormulaManager().getBooleanFormulaManager();
+      List<BooleanFormula> important = formulas.subList(1, formulas.size());
+      Map<BooleanFormula, Integer> indices = new HashMap<>();
+      for (int i = 0; i < important.size(); i++) {
+        indices.putIfAbsent(important.get(i), i);
+      }
+      AllSatCallback<Void> collector =
+          new AllSatCallback<Void>() {
+            @Override
+            public void apply(List<BooleanFormula> model) {
+              byte[] polarities = getPolarities(model, indices, bmgr);
+              try {
+                capacity.acquire();
+              } catch (InterruptedException e) {
+                throw new CompletionException(e);
+              }
+              if (!stopped) {
+                models.add(polarities);
+              }
+            }
+
+            @Override
+            public Void getResult() {
+              return null;
+            }
+          };
+
+      try (ProverEnvironment prover = context.newProverEnvironment()) {
+        synchronized (runningProvers) {
+          if (stopped) {
+            return;
+          }
+          runningProvers.add(prover);
+        }
+        try {
+          prover.push(formulas.get(0));
+          for (int cube = nextCube.getAndIncrement();
+              cube < numberOfCubes && !stopped;
+              cube = nextCube.getAndIncrement()) {
+            prover.push();
+            for (int i = 0; i < numberOfSplitPredicates; i++) {
+              BooleanFormula predicate = important.get(i);
+              prover.addConstraint((cube & (1 << i)) != 0 ? predicate : bmgr.not(predicate));
+            }
+            prover.allSat(collector, important);
+            prover.pop();
+          }
+        } finally {
+          synchronized (runningProvers) {
+            runningProvers.remove(prover);
+          }
+        }
+      }
+    }
+
+    /** Map each literal of the model to the index of its predicate. */
+    private byte[] getPolarities(
+        List<BooleanFormula> model,
+        Map<BooleanFormula, Integer> indices,
+        BooleanFormulaManager bmgr) {
+      byte[] polarities = new byte[numberOfPredicates];
+      for (BooleanFormula literal : model) {
+        Integer index = indices.get(literal);
+        if (index != null) {
+          polarities[index] = TRUE;
+        } else {
+          BooleanFormula negated = bmgr.visit(literal, new NegatedPredicate());
+          index = indices.get(checkNotNull(negated, "unexpected literal %s in model", literal));
+          polarities[checkNotNull(index, "unexpected literal %s in model", literal)] = FALSE;
+        }
+      }
+      return polarities;
+    }
+
+    /** Stop all workers, the remaining models are dropped. */
+    private void stop() {
+      synchronized (runningProvers) {
+        if (stopped) {
+          return;
+        }
+        stopped = true;
+        runningProvers.forEach(ProverEnvironment::interrupt);
+      }
+      // nobody takes models anymore, so workers must not wait for capacity
+      capacity.release(Integer.MAX_VALUE / 2);
+    }
+  }
+
+  /** Returns the operand of a negation, and null for all other formulas. */
+  private static final class NegatedPredicate extends DefaultBooleanFormulaVisitor<BooleanFormula> {
+
+    @Override
+    protected @Nullable BooleanFormula visitDefault() {
+      return null;
+    }
+
+    @Override
+    public BooleanFormula visitNot(BooleanFormula operand) {
+      return operand;
+    }
+  }
+}
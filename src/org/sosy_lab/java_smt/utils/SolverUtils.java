@@ -19,7 +19,9 @@
  */
 package org.sosy_lab.java_smt.utils;
 
+import org.sosy_lab.java_smt.SolverContextPool;
 import org.sosy_lab.java_smt.api.FormulaManager;
+import org.sosy_lab.java_smt.api.SolverContext;
 
 /** Central entry point for all utility classes. */
 public class SolverUtils {
@@ -35,4 +37,37 @@ public class SolverUtils {
   public static UfElimination ufElimination(FormulaManager pFormulaManager) {
     return new UfElimination(pFormulaManager);
   }
+
+  /**
+   * Creates a new {@link CubeAndConquer} instance.
+   *
+   * @param pPool the contexts used for checking the cubes in parallel
+   * @param pSplitDepth the number of atoms to split on, yielding 2^pSplitDepth cubes
+   * @return a new {@link CubeAndConquer} instance
+   */
+  public static CubeAndConquer cubeAndConquer(SolverContextPool pPool, int pSplitDepth) {
+    return new CubeAndConquer(pPool, pSplitDepth);
+  }
+
+  /**
+   * Creates a new {@link ParallelAllSat} instance.
+   *
+   * @param pPool the contexts used for enumerating the cubes in parallel
+   * @param pSplitDepth the number of important predicates to split on, yielding 2^pSplitDepth
+   *     cubes
+   * @return a new {@link ParallelAllSat} instance
+   */
+  public static ParallelAllSat parallelAllSat(SolverContextPool pPool, int pSplitDepth) {
+    return new ParallelAllSat(pPool, pSplitDepth);
+  }
+
+  /**
+   * Creates a new {@link Houdini} instance.
+   *
+   * @param pContext the {@link SolverContext} of the lemmas
+   * @return a new {@link Houdini} instance
+   */
+  public static Houdini houdini(SolverContext pContext) {
+    return new Houdini(pContext);
+  }
 }